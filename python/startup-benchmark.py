@@ -0,0 +1,213 @@
+"""Startup benchmark: time from launching the application to the first successful /chat answer.
+
+Build first with
+    mvn -P fast-start package -DskipTests
+then run
+    python python/startup-benchmark.py [--runs 5]
+
+The LLM is a stub Ollama server started by this script, so only the startup of the application is measured.
+After the first answer a full GC is run with jcmd and the loaded classes and the used heap are read from the
+metrics endpoint, so the heap is the live data rather than whatever garbage the first answer left behind.
+    python python/startup-benchmark.py --config jar --config jar-ollama
+runs only the named configurations.
+Configurations:
+    jar             java -jar on the repackaged jar, Ollama and OpenAI backends
+    jar-ollama      the same with only the Ollama backend (app.llm.backends=ollama)
+    jar-eager       both backends created at startup (app.startup.lazy-backends=false)
+    aot             the extracted jar with the Spring AOT initializer
+    aot-cds         AOT plus the AppCDS archive from the training run
+    crac            restore from a checkpoint taken after the context refresh, only on JDKs with CRaC support
+"""
+import argparse
+import json
+import shutil
+import socket
+import statistics
+import subprocess
+import tempfile
+import threading
+import time
+import urllib.error
+import urllib.request
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+from pathlib import Path
+
+ROOT = Path(__file__).resolve().parent.parent
+TARGET = ROOT / 'target'
+JAR_NAME = 'gdp-ai-agent-1.0-SNAPSHOT.jar'
+FAST_START = TARGET / 'fast-start'
+FAILED_PREFIX = 'Could not process prompt'
+QUESTION = 'What was the GDP of Czechia in 2020?'
+
+
+class StubOllama(BaseHTTPRequestHandler):
+    """Answers every chat request at once with a fixed text."""
+    protocol_version = 'HTTP/1.1'
+
+    def do_POST(self):
+        self.read_body()
+        body = json.dumps({
+            'model': 'mistral',
+            'created_at': '2025-01-01T00:00:00Z',
+            'message': {'role': 'assistant', 'content': 'The GDP of Czechia in 2020 was 245 billion USD.'},
+            'done_reason': 'stop',
+            'done': True,
+            'prompt_eval_count': 100,
+            'eval_count': 20,
+        }).encode()
+        self.send_response(200)
+        self.send_header('Content-Type', 'application/json')
+        self.send_header('Content-Length', str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
+    def read_body(self):
+        # the Java HTTP client sends the request chunked
+        if self.headers.get('Transfer-Encoding', '').lower() != 'chunked':
+            return self.rfile.read(int(self.headers.get('Content-Length', 0)))
+        body = b''
+        while True:
+            size = int(self.rfile.readline().split(b';')[0], 16)
+            body += self.rfile.read(size)
+            self.rfile.readline()
+            if size == 0:
+                return body
+
+    def log_message(self, *args):
+        pass
+
+
+def free_port():
+    with socket.socket() as s:
+        s.bind(('localhost', 0))
+        return s.getsockname()[1]
+
+
+def app_arguments(port, stub_port, work):
+    return [f'--server.port={port}',
+            f'--spring.ai.ollama.base-url=http://localhost:{stub_port}',
+            f'--app.chat-memory.directory={work / "chat-memory"}',
+            '--app.default-model=ollama',
+            '--spring.ai.retry.max-attempts=1']
+
+
+def first_answer(port, process, timeout):
+    """Polls /chat until it answers successfully."""
+    request = urllib.request.Request(f'http://localhost:{port}/chat', method='POST',
+                                     data=json.dumps({'prompt': QUESTION}).encode(),
+                                     headers={'Content-Type': 'application/json'})
+    deadline = time.monotonic() + timeout
+    while time.monotonic() < deadline:
+        if process.poll() is not None:
+            raise RuntimeError(f'application exited with {process.returncode}')
+        try:
+            with urllib.request.urlopen(request, timeout=30) as response:
+                answer = response.read().decode()
+                if response.status == 200 and not answer.startswith(FAILED_PREFIX):
+                    return
+                raise RuntimeError(f'unsuccessful answer: {answer[:200]}')
+        except (urllib.error.URLError, ConnectionError):
+            time.sleep(0.02)
+    raise RuntimeError('no answer before the timeout')
+
+
+def metric(port, name, tag=None):
+    url = f'http://localhost:{port}/actuator/metrics/{name}' + (f'?tag={tag}' if tag else '')
+    with urllib.request.urlopen(url, timeout=10) as response:
+        return json.load(response)['measurements'][0]['value']
+
+
+def measure(command, port, cwd, log, timeout):
+    """Returns the seconds to the first answer, the loaded classes and the used heap in MB."""
+    started = time.monotonic()
+    process = subprocess.Popen(command, cwd=cwd, stdout=log, stderr=subprocess.STDOUT)
+    try:
+        first_answer(port, process, timeout)
+        seconds = time.monotonic() - started
+        subprocess.run(['jcmd', str(process.pid), 'GC.run'], capture_output=True)
+        return seconds, metric(port, 'jvm.classes.loaded'), metric(port, 'jvm.memory.used', 'area:heap') / 2 ** 20
+    finally:
+        process.terminate()
+        try:
+            process.wait(10)
+        except subprocess.TimeoutExpired:
+            process.kill()
+            process.wait()
+
+
+def crac_supported():
+    result = subprocess.run(['java', '-XX:CRaCCheckpointTo=' + tempfile.gettempdir(), '-version'],
+                            capture_output=True)
+    return result.returncode == 0
+
+
+def configurations(stub_port):
+    """Yields the name and a function returning the command and working directory of a run."""
+    jar = str(TARGET / JAR_NAME)
+    extracted = str(FAST_START / JAR_NAME)
+
+    def java(cwd, *options):
+        return lambda port, work: (['java', *options, *app_arguments(port, stub_port, work)], cwd)
+
+    yield 'jar', java(ROOT, '-jar', jar)
+    yield 'jar-ollama', java(ROOT, '-jar', jar, '--app.llm.backends=ollama')
+    yield 'jar-eager', java(ROOT, '-Dapp.startup.lazy-backends=false', '-jar', jar)
+    yield 'aot', java(FAST_START, '-Dspring.aot.enabled=true', '-jar', extracted)
+    yield 'aot-cds', java(FAST_START, '-XX:SharedArchiveFile=application.jsa', '-Dspring.aot.enabled=true',
+                          '-jar', extracted)
+    if crac_supported():
+        yield 'crac', lambda port, work: crac_restore(extracted, port, stub_port, work)
+    else:
+        print('crac: skipped, the JDK does not support CRaC')
+
+
+def crac_restore(extracted, port, stub_port, work):
+    """Takes a checkpoint after the context refresh, the restored process keeps the arguments of the checkpoint."""
+    checkpoint = work / 'crac'
+    subprocess.run(['java', f'-XX:CRaCCheckpointTo={checkpoint}', '-Dspring.aot.enabled=true',
+                    '-Dspring.context.checkpoint=onRefresh', '-jar', extracted,
+                    *app_arguments(port, stub_port, work)],
+                   cwd=FAST_START, capture_output=True)
+    return ['java', f'-XX:CRaCRestoreFrom={checkpoint}'], FAST_START
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument('--runs', type=int, default=5)
+    parser.add_argument('--timeout', type=float, default=120)
+    parser.add_argument('--config', action='append', help='run only this configuration, can be repeated')
+    args = parser.parse_args()
+    if not (TARGET / JAR_NAME).exists() or not (FAST_START / 'application.jsa').exists():
+        raise SystemExit('Build first with: mvn -P fast-start package -DskipTests')
+
+    stub_port = free_port()
+    stub = ThreadingHTTPServer(('localhost', stub_port), StubOllama)
+    threading.Thread(target=stub.serve_forever, daemon=True).start()
+    print(f'{"configuration":<14}{"median s":>10}{"min s":>8}{"max s":>8}{"classes":>10}{"heap MB":>10}')
+    for name, launch in configurations(stub_port):
+        if args.config and name not in args.config:
+            continue
+        runs = []
+        for _ in range(args.runs):
+            work = Path(tempfile.mkdtemp(prefix=f'startup-benchmark-{name}-'))
+            try:
+                port = free_port()
+                command, cwd = launch(port, work)
+                with open(work / 'application.log', 'w') as log:
+                    try:
+                        runs.append(measure(command, port, cwd, log, args.timeout))
+                    except RuntimeError as e:
+                        log_tail = (work / 'application.log').read_text()[-2000:]
+                        raise SystemExit(f'{name}: {e}\n{log_tail}')
+            finally:
+                shutil.rmtree(work, ignore_errors=True)
+        times = [run[0] for run in runs]
+        classes = statistics.median(run[1] for run in runs)
+        heap = statistics.median(run[2] for run in runs)
+        print(f'{name:<14}{statistics.median(times):>10.2f}{min(times):>8.2f}{max(times):>8.2f}'
+              f'{classes:>10.0f}{heap:>10.0f}', flush=True)
+    stub.shutdown()
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,28 @@
+package com.katrikken.gdpai.config;
+
+import com.katrikken.gdpai.repository.FileChatMemoryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+public class ChatMemoryConfig {
+
+    /**
+     * Chat memory shared by the instances of the application through a common directory.
+     * With app.chat-memory.store: memory the in-process repository of Spring AI is used instead.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "app.chat-memory.store", havingValue = "file", matchIfMissing = true)
+    public ChatMemoryRepository fileChatMemoryRepository(@Value("${app.chat-memory.directory:chat-memory}") Path directory,
+                                                         @Value("${app.chat-memory.near-cache-size:10000}") int nearCacheSize,
+                                                         @Value("${app.chat-memory.flush-interval-ms:1000}") long flushIntervalMillis,
+                                                         MeterRegistry meterRegistry) {
+        return new FileChatMemoryRepository(directory, nearCacheSize, flushIntervalMillis, meterRegistry);
+    }
+}
@@ -0,0 +1,20 @@
+package com.katrikken.gdpai.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * Executor for work started by the chat workflow next to the LLM calls (e.g. speculative data lookups).
+     * The tasks are blocking database or HTTP calls, so a virtual thread is used per task.
+     */
+    @Bean(destroyMethod = "close")
+    public ExecutorService workflowExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
@@ -0,0 +1,49 @@
+package com.katrikken.gdpai.config;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@Log4j2
+public class LazyBackendConfig {
+
+    private static final List<String> BACKEND_PACKAGES = List.of(
+            "org.springframework.ai.model.openai.autoconfigure.",
+            "org.springframework.ai.model.ollama.autoconfigure.");
+
+    /**
+     * Makes the beans of the LLM backend auto-configurations (API clients, chat, embedding, image and audio models)
+     * lazy, so a backend is only set up when a request uses it. Disabled with app.startup.lazy-backends: false.
+     * With the AOT-processed application (fast-start profile) this is decided at build time.
+     */
+    @Bean
+    public static BeanFactoryPostProcessor lazyLlmBackends(Environment environment) {
+        return beanFactory -> {
+            if (!environment.getProperty("app.startup.lazy-backends", Boolean.class, true)) {
+                return;
+            }
+            List<String> lazy = new ArrayList<>();
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                String factoryBean = definition.getFactoryBeanName();
+                if (factoryBean != null && beanFactory.containsBeanDefinition(factoryBean)
+                        && isBackendConfiguration(beanFactory.getBeanDefinition(factoryBean).getBeanClassName())) {
+                    definition.setLazyInit(true);
+                    lazy.add(name);
+                }
+            }
+            log.debug("Lazy LLM backend beans: {}", lazy);
+        };
+    }
+
+    private static boolean isBackendConfiguration(String className) {
+        return className != null && BACKEND_PACKAGES.stream().anyMatch(className::startsWith);
+    }
+}
@@ -0,0 +1,28 @@
+package com.katrikken.gdpai.config;
+
+import com.katrikken.gdpai.dto.LLMType;
+import com.katrikken.gdpai.model.LlmBackend;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The LLM providers. Adding a provider takes its Spring AI starter, an {@link LLMType} and a backend bean here.
+ * The chat models are looked up on first use, so providers that are not enabled in app.llm.backends need no
+ * configuration (e.g. no OpenAI API key).
+ */
+@Configuration
+public class LlmBackendConfig {
+
+    @Bean
+    public LlmBackend openAiBackend(ObjectProvider<OpenAiChatModel> chatModel) {
+        return LlmBackend.of(LLMType.OPENAI, chatModel::getObject);
+    }
+
+    @Bean
+    public LlmBackend ollamaBackend(ObjectProvider<OllamaChatModel> chatModel) {
+        return LlmBackend.of(LLMType.OLLAMA, chatModel::getObject);
+    }
+}
@@ -0,0 +1,85 @@
+package com.katrikken.gdpai.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Switches off the Spring AI auto-configurations the agent does not use: all of a provider that is not in
+ * app.llm.backends, and the embedding, image, audio and moderation models of every provider.
+ * <p>
+ * They are added to spring.autoconfigure.exclude, merged with the classes excluded in the configuration, so they
+ * are not even loaded. The spring.ai.model.* properties are added with the lowest precedence as well, for
+ * auto-configurations of providers that are not listed here.
+ */
+public class LlmBackendEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    static final String PROPERTY_SOURCE = "llmBackends";
+    static final String EXCLUDE_PROPERTY_SOURCE = "llmBackendsExclude";
+    static final String EXCLUDE = "spring.autoconfigure.exclude";
+
+    private static final List<String> UNUSED_MODELS = List.of("spring.ai.model.embedding", "spring.ai.model.image",
+            "spring.ai.model.audio.speech", "spring.ai.model.audio.transcription", "spring.ai.model.moderation");
+
+    private static final String OLLAMA = "org.springframework.ai.model.ollama.autoconfigure.";
+    private static final String OPENAI = "org.springframework.ai.model.openai.autoconfigure.";
+
+    /**
+     * The auto-configurations of the chat model of each backend, needed only when the backend is enabled.
+     */
+    private static final Map<String, List<String>> CHAT_AUTO_CONFIGURATIONS = Map.of(
+            "ollama", List.of(OLLAMA + "OllamaApiAutoConfiguration", OLLAMA + "OllamaChatAutoConfiguration"),
+            "openai", List.of(OPENAI + "OpenAiChatAutoConfiguration"));
+
+    private static final List<String> UNUSED_AUTO_CONFIGURATIONS = List.of(
+            OLLAMA + "OllamaEmbeddingAutoConfiguration",
+            OPENAI + "OpenAiEmbeddingAutoConfiguration",
+            OPENAI + "OpenAiImageAutoConfiguration",
+            OPENAI + "OpenAiAudioSpeechAutoConfiguration",
+            OPENAI + "OpenAiAudioTranscriptionAutoConfiguration",
+            OPENAI + "OpenAiModerationAutoConfiguration");
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        List<String> enabled = Arrays.stream(environment.getProperty("app.llm.backends", String[].class,
+                        new String[]{"ollama", "openai"}))
+                .map(name -> name.trim().toLowerCase(Locale.ROOT))
+                .filter(name -> !name.isEmpty())
+                .toList();
+        Map<String, Object> properties = new HashMap<>();
+        UNUSED_MODELS.forEach(property -> properties.put(property, "none"));
+        // spring.ai.model.chat selects a single chat model, without it every provider on the class path is configured
+        if (enabled.size() == 1) {
+            properties.put("spring.ai.model.chat", enabled.getFirst());
+        }
+        environment.getPropertySources().addLast(new MapPropertySource(PROPERTY_SOURCE, properties));
+
+        // the merged list has to take precedence over the configured one, which it already contains
+        Set<String> excluded = new LinkedHashSet<>(Binder.get(environment).bind(EXCLUDE, String[].class)
+                .map(Arrays::asList).orElse(List.of()));
+        excluded.addAll(excludedAutoConfigurations(enabled));
+        environment.getPropertySources().addFirst(new MapPropertySource(EXCLUDE_PROPERTY_SOURCE,
+                Map.of(EXCLUDE, String.join(",", excluded))));
+    }
+
+    static List<String> excludedAutoConfigurations(List<String> enabledBackends) {
+        List<String> excluded = new ArrayList<>(UNUSED_AUTO_CONFIGURATIONS);
+        CHAT_AUTO_CONFIGURATIONS.forEach((backend, autoConfigurations) -> {
+            if (!enabledBackends.contains(backend)) {
+                excluded.addAll(autoConfigurations);
+            }
+        });
+        return excluded;
+    }
+}
@@ -2,29 +2,137 @@ package com.katrikken.gdpai.controller;
 
 import com.katrikken.gdpai.dto.PromptDto;
 import com.katrikken.gdpai.model.AiAgentService;
-import lombok.RequiredArgsConstructor;
+import com.katrikken.gdpai.model.BackendSaturatedException;
+import com.katrikken.gdpai.model.PhaseTimeoutException;
+import com.katrikken.gdpai.model.RateLimitedException;
+import com.katrikken.gdpai.model.RateLimiter;
+import com.katrikken.gdpai.model.RequestDeadline;
+import com.katrikken.gdpai.model.RequestDeadlines;
+import com.katrikken.gdpai.model.SessionManager;
+import com.katrikken.gdpai.model.TokenUsageAdvisor;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.validation.constraints.NotNull;
+import java.util.concurrent.ExecutorService;
 
+/**
+ * Answers chat questions asynchronously, so the LLM calls of a request are cancelled when the container reports an
+ * error of the request, e.g. a disconnected client, or gives up waiting. Tomcat reports the disconnect of an HTTP/1.1
+ * client only when the response is written, such requests end with their deadline (app.timeouts).
+ */
 @RestController
-@RequiredArgsConstructor
+@Log4j2
 public class ChatController {
+    static final String LIMIT_HEADER = "X-RateLimit-Limit";
+    static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    /**
+     * Time the container waits for the answer beyond the request budget before it gives up.
+     */
+    private static final long RESPONSE_MARGIN_MILLIS = 5000;
+
     private final AiAgentService aiAgentService;
+    private final RateLimiter rateLimiter;
+    private final SessionManager sessionManager;
+    private final RequestDeadlines requestDeadlines;
+    private final ExecutorService workflowExecutor;
     @Value("${app.default-model:ollama}")
     private String defaultModel;
+    @Value("${app.default-workflow:chain}")
+    private String defaultWorkflow;
+
+    public ChatController(AiAgentService aiAgentService,
+                          RateLimiter rateLimiter,
+                          SessionManager sessionManager,
+                          RequestDeadlines requestDeadlines,
+                          @Qualifier("workflowExecutor") ExecutorService workflowExecutor) {
+        this.aiAgentService = aiAgentService;
+        this.rateLimiter = rateLimiter;
+        this.sessionManager = sessionManager;
+        this.requestDeadlines = requestDeadlines;
+        this.workflowExecutor = workflowExecutor;
+    }
 
     @PostMapping("/chat")
-    public ResponseEntity<String> chat(@RequestBody @NotNull PromptDto prompt) {
+    public DeferredResult<ResponseEntity<String>> chat(@RequestBody @NotNull PromptDto prompt, HttpServletRequest request) {
         if (prompt.getModel() == null || prompt.getModel().isEmpty()) {
             prompt.setModel(defaultModel);
         }
+        if (prompt.getWorkflow() == null || prompt.getWorkflow().isEmpty()) {
+            prompt.setWorkflow(defaultWorkflow);
+        }
+
+        String sessionId = SessionController.sessionId(request, sessionManager);
+        // a request without a session is limited by its client IP, the new conversation is not charged on its own
+        RateLimiter.Permit permit = rateLimiter.acquire(sessionId, request.getRemoteAddr(), prompt.getPrompt());
+        String conversationId = sessionId != null ? sessionId : SessionController.newSessionId();
+        TokenUsageAdvisor tokenUsage = new TokenUsageAdvisor();
+        RequestDeadline deadline = requestDeadlines.start();
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>(
+                requestDeadlines.getRequestTimeoutMillis() + RESPONSE_MARGIN_MILLIS,
+                () -> ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body("The request did not finish in time"));
+        result.onError(e -> {
+            log.info("Cancelling the request of conversation {}: {}", conversationId, e.getMessage());
+            deadline.cancel();
+        });
+        result.onTimeout(deadline::cancel);
+
+        workflowExecutor.execute(() -> {
+            try {
+                String response;
+                try {
+                    response = aiAgentService.chat(prompt.getModel(), prompt.getWorkflow(), prompt.getPrompt(),
+                            conversationId, tokenUsage, deadline);
+                } finally {
+                    permit.settle(tokenUsage.getTokens());
+                    sessionManager.turnCompleted(conversationId);
+                }
+                result.setResult(ok(response, conversationId, permit));
+            } catch (RuntimeException e) {
+                result.setErrorResult(e);
+            }
+        });
+        return result;
+    }
+
+    private static ResponseEntity<String> ok(String response, String conversationId, RateLimiter.Permit permit) {
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .header(HttpHeaders.SET_COOKIE, SessionController.sessionCookie(conversationId).toString());
+        if (permit.getLimit() >= 0) {
+            ok.header(LIMIT_HEADER, String.valueOf(permit.getLimit()))
+                    .header(REMAINING_HEADER, String.valueOf(permit.getRemaining()));
+        }
+        return ok.body(response);
+    }
+
+    @ExceptionHandler(BackendSaturatedException.class)
+    public ResponseEntity<String> backendSaturated(BackendSaturatedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler(PhaseTimeoutException.class)
+    public ResponseEntity<String> phaseTimeout(PhaseTimeoutException e) {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(e.getMessage());
+    }
 
-        String response = aiAgentService.chat(prompt.getModel(), prompt.getPrompt());
-        return ResponseEntity.ok(response);
+    @ExceptionHandler(RateLimitedException.class)
+    public ResponseEntity<String> rateLimited(RateLimitedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .header(LIMIT_HEADER, String.valueOf(e.getLimit()))
+                .header(REMAINING_HEADER, "0")
+                .body(e.getMessage());
     }
 }
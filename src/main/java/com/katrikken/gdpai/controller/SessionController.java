@@ -1,21 +1,92 @@
 package com.katrikken.gdpai.controller;
 
+import com.katrikken.gdpai.model.RateLimitedException;
+import com.katrikken.gdpai.model.RateLimiter;
+import com.katrikken.gdpai.model.SessionManager;
+import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpSession;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Map;
+import java.util.UUID;
 
+/**
+ * Starts the conversation of a client. The conversation id is kept in a cookie instead of the servlet session,
+ * so the following turns can be served by any instance of the application.
+ * Session ids are only generated here. A cookie with an id the {@link SessionManager} does not know, e.g. one chosen
+ * by another party to fixate the session, is ignored and a new session is started.
+ */
 @RestController
+@RequiredArgsConstructor
 public class SessionController {
+    static final String SESSION_COOKIE = "AGENT_SESSION";
+
+    private final RateLimiter rateLimiter;
+    private final SessionManager sessionManager;
 
     // Allow the React dev server to create the session cookie.
     @CrossOrigin(origins = "http://localhost:8080", allowCredentials = "true")
     @GetMapping("/session/start")
-    public Map<String, String> startSession(HttpServletRequest request) {
-        HttpSession session = request.getSession(true); // create session if missing
-        return Map.of("sessionId", session.getId(), "status", "started");
+    public ResponseEntity<Map<String, String>> startSession(HttpServletRequest request) {
+        String sessionId = sessionId(request, sessionManager);
+        if (sessionId == null) {
+            // a new session counts as a request of the client IP
+            rateLimiter.acquireSessionStart(request.getRemoteAddr());
+            sessionId = newSessionId();
+        }
+        sessionManager.sessionStarted(sessionId);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.SET_COOKIE, sessionCookie(sessionId).toString())
+                .body(Map.of("sessionId", sessionId, "status", "started"));
+    }
+
+    /**
+     * The session id of the request's cookie, null if there is none or it is not a session this application issued.
+     */
+    static String sessionId(HttpServletRequest request, SessionManager sessionManager) {
+        if (request.getCookies() == null) {
+            return null;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (SESSION_COOKIE.equals(cookie.getName()) && isValid(cookie.getValue())
+                    && sessionManager.isKnown(cookie.getValue())) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    static String newSessionId() {
+        return UUID.randomUUID().toString();
+    }
+
+    static ResponseCookie sessionCookie(String sessionId) {
+        return ResponseCookie.from(SESSION_COOKIE, sessionId).path("/").httpOnly(true).sameSite("Lax").build();
+    }
+
+    private static boolean isValid(String sessionId) {
+        try {
+            UUID.fromString(sessionId);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @ExceptionHandler(RateLimitedException.class)
+    public ResponseEntity<String> rateLimited(RateLimitedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .header(ChatController.LIMIT_HEADER, String.valueOf(e.getLimit()))
+                .header(ChatController.REMAINING_HEADER, "0")
+                .body(e.getMessage());
     }
 }
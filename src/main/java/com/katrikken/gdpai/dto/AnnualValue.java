@@ -0,0 +1,20 @@
+package com.katrikken.gdpai.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Row of the METRIC_ANNUAL analytics table: a metric value of a country in a year with its growth
+ * over the previous year and its rank among all countries in that year.
+ *
+ * @param metric      The metric.
+ * @param countryCode The 3-letter country code.
+ * @param countryName The country name, only set when read.
+ * @param year        The data year.
+ * @param value       The metric value.
+ * @param yoyGrowth   Growth over the previous year in percent, null when the previous year is missing.
+ * @param valueRank   Rank by value, 1 is the highest.
+ * @param growthRank  Rank by growth, 1 is the fastest, null without growth.
+ */
+public record AnnualValue(Metric metric, String countryCode, String countryName, int year, BigDecimal value,
+                          Double yoyGrowth, int valueRank, Integer growthRank) {
+}
@@ -0,0 +1,20 @@
+package com.katrikken.gdpai.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Compound annual growth rate of a metric for a country between two years.
+ *
+ * @param metric      The metric.
+ * @param countryCode The 3-letter country code.
+ * @param countryName The country name, only set when read.
+ * @param startYear   The first year of the period.
+ * @param endYear     The last year of the period.
+ * @param startValue  The value in the first year.
+ * @param endValue    The value in the last year.
+ * @param cagr        The compound annual growth rate in percent.
+ * @param rank        Rank among all countries over the same period, 1 is the fastest.
+ */
+public record CagrValue(Metric metric, String countryCode, String countryName, int startYear, int endYear,
+                        BigDecimal startValue, BigDecimal endValue, double cagr, int rank) {
+}
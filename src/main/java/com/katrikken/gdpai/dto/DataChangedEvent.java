@@ -0,0 +1,9 @@
+package com.katrikken.gdpai.dto;
+
+/**
+ * Published after values of a metric were inserted or updated, e.g. by the insert tools.
+ *
+ * @param metric The metric that changed.
+ */
+public record DataChangedEvent(Metric metric) {
+}
@@ -0,0 +1,14 @@
+package com.katrikken.gdpai.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Read-only value of a single metric (GDP, Population or GDP per capita) for a country and year.
+ * Used on the read path instead of managed JPA entities.
+ *
+ * @param countryCode The 3-letter country code.
+ * @param year        The data year.
+ * @param value       The metric value, null if missing.
+ */
+public record DataPoint(String countryCode, int year, BigDecimal value) {
+}
@@ -0,0 +1,18 @@
+package com.katrikken.gdpai.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Total of a metric over the countries of a region or income group in a year.
+ *
+ * @param metric    The metric. For GDP per capita the value is the group's GDP divided by its population.
+ * @param groupType Region or income group.
+ * @param groupName The name of the region or income group.
+ * @param year      The data year.
+ * @param value     The total over the countries with data in that year.
+ * @param countries The number of countries with data in that year.
+ * @param yoyGrowth Growth over the previous year in percent, null for the first year.
+ */
+public record GroupAggregate(Metric metric, GroupType groupType, String groupName, int year, BigDecimal value,
+                             int countries, Double yoyGrowth) {
+}
@@ -0,0 +1,9 @@
+package com.katrikken.gdpai.dto;
+
+/**
+ * Country groupings the analytics aggregate over, taken from the COUNTRY table.
+ */
+public enum GroupType {
+    REGION,
+    INCOME_GROUP
+}
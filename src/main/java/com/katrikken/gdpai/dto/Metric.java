@@ -0,0 +1,35 @@
+package com.katrikken.gdpai.dto;
+
+/**
+ * Metrics available to the agent, with the table or view and the column holding their values.
+ */
+public enum Metric {
+    GDP("GDP", "GDP", "GDP"),
+    POPULATION("Population", "POPULATION", "POPULATION"),
+    GDP_PER_CAPITA("GDP per capita", "GDP_PER_CAPITA_VIEW", "GDP_PER_CAPITA");
+
+    private final String label;
+    private final String table;
+    private final String column;
+
+    Metric(String label, String table, String column) {
+        this.label = label;
+        this.table = table;
+        this.column = column;
+    }
+
+    /**
+     * Name shown to the LLM, e.g. in "GDP development for the country".
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,47 @@
+package com.katrikken.gdpai.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The data needed to answer a question, as returned by the plan call in JSON.
+ *
+ * @param request   The data request in words, handed to the tools call when the plan is not executed directly.
+ * @param metrics   The metrics needed.
+ * @param countries The names of the countries needed, empty for rankings, regions, income groups or all countries.
+ * @param startYear The first year needed, null for the whole series.
+ * @param endYear   The last year needed, null for the whole series.
+ */
+public record PlanSpec(
+        @JsonPropertyDescription("The data needed to answer the question in words, e.g. Find GDP and Population trends data on Czechia from 2014 to 2024.")
+        String request,
+        @JsonPropertyDescription("The metrics needed to answer the question.")
+        List<Metric> metrics,
+        @JsonPropertyDescription("English names of the countries the question is about. Empty for rankings, regions, income groups or all countries.")
+        List<String> countries,
+        @JsonPropertyDescription("The first year needed, e.g. 2014. Null when the whole history is needed.")
+        Integer startYear,
+        @JsonPropertyDescription("The last year needed, e.g. 2024. Null when the whole history is needed.")
+        Integer endYear) {
+
+    /**
+     * Describes the plan in words, e.g. "GDP, Population of Czechia from 2014 to 2024".
+     */
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        text.append(metrics == null ? "" : metrics.stream().map(Metric::getLabel).collect(Collectors.joining(", ")))
+                .append(" of ").append(countries == null ? "" : String.join(", ", countries));
+        if (startYear != null && startYear.equals(endYear)) {
+            text.append(" in ").append(startYear);
+        } else if (startYear != null && endYear != null) {
+            text.append(" from ").append(startYear).append(" to ").append(endYear);
+        } else if (startYear != null) {
+            text.append(" since ").append(startYear);
+        } else if (endYear != null) {
+            text.append(" until ").append(endYear);
+        }
+        return text.toString();
+    }
+}
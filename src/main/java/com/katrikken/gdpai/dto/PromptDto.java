@@ -8,4 +8,5 @@ import lombok.NoArgsConstructor;
 public class PromptDto {
     public String prompt;
     public String model;
+    public String workflow;
 }
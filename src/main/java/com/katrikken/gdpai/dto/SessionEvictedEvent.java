@@ -0,0 +1,9 @@
+package com.katrikken.gdpai.dto;
+
+/**
+ * Published after a session stopped being tracked by this instance, e.g. because it was idle for too long.
+ *
+ * @param sessionId The id of the evicted session.
+ */
+public record SessionEvictedEvent(String sessionId) {
+}
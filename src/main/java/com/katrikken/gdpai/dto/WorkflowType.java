@@ -0,0 +1,13 @@
+package com.katrikken.gdpai.dto;
+
+public enum WorkflowType {
+    CHAIN("chain"),
+    SINGLE_CALL("single_call");
+    private final String value;
+    WorkflowType(String value) {
+        this.value = value;
+    }
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,47 @@
+package com.katrikken.gdpai.dto;
+
+/**
+ * Position in a result sorted by (DATA_YEAR, COUNTRY_CODE), used for keyset pagination.
+ * The next page starts with the first row after this position.
+ * Rendered for the LLM as {@code year:countryCode}, e.g. {@code 2005:USA}.
+ *
+ * @param year        The data year of the last returned row.
+ * @param countryCode The 3-letter country code of the last returned row.
+ */
+public record YearCountryCursor(int year, String countryCode) {
+
+    /**
+     * Position before the first row of the given year.
+     */
+    public static YearCountryCursor startOf(int year) {
+        return new YearCountryCursor(year, "");
+    }
+
+    public static YearCountryCursor after(DataPoint point) {
+        return new YearCountryCursor(point.year(), point.countryCode());
+    }
+
+    /**
+     * @return the cursor, or null if the text is null or blank
+     * @throws IllegalArgumentException if the text is not in the year:countryCode form
+     */
+    public static YearCountryCursor parse(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        String[] parts = text.strip().split(":");
+        if (parts.length != 2 || !parts[1].matches("[A-Za-z0-9]{3}")) {
+            throw new IllegalArgumentException("Cursor must have the form year:countryCode, got " + text);
+        }
+        try {
+            return new YearCountryCursor(Integer.parseInt(parts[0]), parts[1].toUpperCase());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor must have the form year:countryCode, got " + text, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return year + ":" + countryCode;
+    }
+}
@@ -5,8 +5,14 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Immutable;
 
 @Entity
+@Cacheable
+@Cache(region = "country", usage = CacheConcurrencyStrategy.READ_ONLY)
+@Immutable
 @Table(name = "COUNTRY")
 @Data
 @NoArgsConstructor
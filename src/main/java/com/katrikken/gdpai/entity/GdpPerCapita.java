@@ -1,11 +1,15 @@
 package com.katrikken.gdpai.entity;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.EmbeddedId;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import lombok.Data;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Synchronize;
 
 import java.math.BigDecimal;
 
@@ -15,11 +19,17 @@ import java.math.BigDecimal;
  * <p>
  * The primary key is the composite key (COUNTRY_CODE, DATA_YEAR).
  * The value column (GDP_PER_CAPITA) is the result of the division, mapped to Double.
+ * <p>
+ * Cached read-only: the cached queries are invalidated through @Synchronize when Hibernate writes
+ * to the underlying tables, and the insert tools evict the affected entity.
  */
 @Entity
 @Data
 @Table(name = "GDP_PER_CAPITA_VIEW")
 @Immutable
+@Cacheable
+@Cache(region = "gdp-per-capita", usage = CacheConcurrencyStrategy.READ_ONLY)
+@Synchronize({"GDP", "POPULATION", "COUNTRY"})
 public class GdpPerCapita {
 
     @EmbeddedId
@@ -1,5 +1,6 @@
 package com.katrikken.gdpai.entity;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.EmbeddedId;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
@@ -7,8 +8,12 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@Cacheable
+@Cache(region = "population", usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "POPULATION")
 @Data
 @NoArgsConstructor
@@ -0,0 +1,70 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.WorkflowType;
+import com.katrikken.gdpai.tool.ToolCallRecorder;
+import com.katrikken.gdpai.tool.ToolExecutionContext;
+import org.apache.logging.log4j.LogManager;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A way of answering a user question with the LLM and the data tools.
+ * Implementations are interchangeable in {@link AiAgentService} and are selected by their {@link WorkflowType}.
+ */
+public interface AgentWorkflow {
+
+    WorkflowType type();
+
+    /**
+     * Answers the user's question.
+     *
+     * @param userInput   the user's question
+     * @param chatClients chat clients to use for the phases of the workflow
+     * @param workingSet  the data of the earlier turns of the session, keeps the data fetched in this turn
+     * @param deadline    the time budget of the LLM calls
+     */
+    String chain(String userInput, PhaseChatClients chatClients, DataWorkingSet workingSet, RequestDeadline deadline);
+
+    /**
+     * The response when the analysis did not finish in time: the data found for the question.
+     */
+    static String degradedResponse(String data) {
+        return "The analysis of the data did not finish in time. This is the data found for your question:\n\n" + data;
+    }
+
+    /**
+     * Runs the analysis call that answers the question from the data.
+     * When it does not finish in time, the {@link #degradedResponse(String)} with the data is returned.
+     */
+    default String analyze(PromptTemplates prompts, String userInput, String data, PhaseChatClients chatClients,
+                           RequestDeadline deadline) {
+        try {
+            return deadline.call(WorkflowPhase.ANALYSIS, () -> prompts.analysis()
+                    .apply(chatClients.prompt(WorkflowPhase.ANALYSIS),
+                            Map.of(PromptTemplates.QUESTION, userInput, PromptTemplates.DATA, data))
+                    .call().content());
+        } catch (PhaseTimeoutException e) {
+            LogManager.getLogger(getClass()).warn("Returning the data without analysis: {}", e.getMessage());
+            return degradedResponse(data);
+        }
+    }
+
+    /**
+     * Runs the tools call with the tool calls going through the recorder. When it does not finish in time
+     * but some tools were already called, partialResponse is returned so that their results are analyzed.
+     */
+    default String callTools(ToolCallRecorder recorder, RequestDeadline deadline, Supplier<String> call,
+                             String partialResponse) {
+        try {
+            return ToolExecutionContext.callWith(recorder, () -> deadline.call(WorkflowPhase.TOOLS, call));
+        } catch (PhaseTimeoutException e) {
+            if (recorder.getCalls().isEmpty()) {
+                throw e;
+            }
+            LogManager.getLogger(getClass())
+                    .warn("Continuing with the {} tool results fetched before the timeout", recorder.getCalls().size());
+            return partialResponse;
+        }
+    }
+}
@@ -1,53 +1,126 @@
 package com.katrikken.gdpai.model;
 
 import com.katrikken.gdpai.dto.LLMType;
+import com.katrikken.gdpai.dto.WorkflowType;
 import lombok.extern.log4j.Log4j2;
-import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.ollama.OllamaChatModel;
-import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.stereotype.Component;
-import org.springframework.web.context.annotation.SessionScope;
 
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Answers the questions of all conversations. The history is kept by the chat memory under the conversation id, so
+ * with a shared chat memory store any instance of the application can serve any turn. The data of earlier turns is
+ * only kept by the instance that fetched it, see {@link DataWorkingSets}, another instance fetches it again.
+ */
 @Component
-@SessionScope
 @Log4j2
 public class AiAgentService {
 
-    private final ChatClient ollamaChatClient;
-    private final ChatClient openAIChatClient;
-    private final ChainWorkflow chainWorkflow;
+    private final LlmBackendRegistry backends;
+    private final Map<WorkflowType, AgentWorkflow> workflows = new EnumMap<>(WorkflowType.class);
+    private final ModelRouter modelRouter;
+    private final RequestCoalescer requestCoalescer;
+    private final ChatMemory chatMemory;
+    private final ChatMemoryRepository chatMemoryRepository;
+    private final DataWorkingSets workingSets;
 
-    public AiAgentService(OpenAiChatModel openAiChatModel,
-                          OllamaChatModel ollamaChatModel,
+    public AiAgentService(LlmBackendRegistry backends,
                           ChatMemory chatMemory,
-                          ChainWorkflow chainWorkflow) {
-        log.debug("In AiAgentService initialization for session");
-        this.openAIChatClient = ChatClient.builder(openAiChatModel)
-                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build())
-                .build();
-
-        this.ollamaChatClient = ChatClient.builder(ollamaChatModel)
-                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build())
-                .build();
-        this.chainWorkflow = chainWorkflow;
+                          ChatMemoryRepository chatMemoryRepository,
+                          List<AgentWorkflow> workflows,
+                          ModelRouter modelRouter,
+                          RequestCoalescer requestCoalescer,
+                          DataWorkingSets workingSets) {
+        this.backends = backends;
+        this.modelRouter = modelRouter;
+        this.requestCoalescer = requestCoalescer;
+        this.chatMemory = chatMemory;
+        this.chatMemoryRepository = chatMemoryRepository;
+        this.workingSets = workingSets;
+        workflows.forEach(workflow -> this.workflows.put(workflow.type(), workflow));
     }
 
-    public String chat(String model, String prompt) {
+    /**
+     * Answers a question of the conversation.
+     *
+     * @param tokenUsage adds up the LLM tokens used for the answer
+     * @param deadline   the time budget of the LLM calls, cancelled when the client disconnects
+     */
+    public String chat(String model, String workflow, String prompt, String conversationId, TokenUsageAdvisor tokenUsage,
+                       RequestDeadline deadline) {
         try {
-            ChatClient chatClient = getChatModel(LLMType.valueOf(model.toUpperCase()));
-            return chainWorkflow.chain(prompt, chatClient);
+            LLMType llmType = LLMType.valueOf(model.toUpperCase());
+            WorkflowType workflowType = WorkflowType.valueOf(workflow.toUpperCase());
+            PhaseChatClients routed = modelRouter.route(prompt, llmType, backends::chatClient);
+            PhaseChatClients chatClients = phase -> routed.prompt(phase)
+                    .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, conversationId).advisors(tokenUsage));
+            AgentWorkflow agentWorkflow = workflows.get(workflowType);
+            DataWorkingSet workingSet = workingSets.forSession(conversationId);
+            if (!chatMemory.get(conversationId).isEmpty()) {
+                return agentWorkflow.chain(prompt, chatClients, workingSet, deadline);
+            }
+            // the first question of a conversation does not depend on earlier turns, so identical ones can share an answer
+            SharedAnswer shared = requestCoalescer.execute(RequestCoalescer.Key.of(prompt, llmType, workflowType),
+                    deadline.remainingMillis(), () -> new SharedAnswer(conversationId,
+                            agentWorkflow.chain(prompt, chatClients, workingSet, deadline), workingSet, tokenUsage));
+            if (!conversationId.equals(shared.conversationId())) {
+                adopt(shared, prompt, conversationId, workingSet, tokenUsage);
+            }
+            return shared.answer();
+        } catch (BackendSaturatedException | PhaseTimeoutException e) {
+            throw e;
+        } catch (CancellationException e) {
+            log.info("Request of conversation {} was cancelled: {}", conversationId, e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             return "Could not process prompt, got the following error: " + e.getMessage();
+        } finally {
+            flushChatMemory();
+        }
+    }
+
+    /**
+     * Makes the answer of another conversation's request the turn of this conversation: the question and the answer
+     * are added to its history, the data to its working set and the tokens to its usage, as if it had computed them.
+     */
+    private void adopt(SharedAnswer shared, String prompt, String conversationId, DataWorkingSet workingSet,
+                       TokenUsageAdvisor tokenUsage) {
+        chatMemory.add(conversationId, List.of(new UserMessage(prompt),
+                new AssistantMessage(shared.answer() == null ? "" : shared.answer())));
+        workingSet.keepAll(shared.workingSet());
+        tokenUsage.add(shared.tokens());
+    }
+
+    /**
+     * The answer of a request that identical requests of other conversations share.
+     */
+    private record SharedAnswer(String conversationId, String answer, DataWorkingSet workingSet, long tokens) {
+
+        SharedAnswer(String conversationId, String answer, DataWorkingSet workingSet, TokenUsageAdvisor tokenUsage) {
+            this(conversationId, answer, workingSet, tokenUsage == null ? 0 : tokenUsage.getTokens());
         }
     }
 
-    private ChatClient getChatModel(LLMType llmName) {
-        return switch (llmName) {
-            case OPENAI -> openAIChatClient;
-            case OLLAMA -> ollamaChatClient;
-        };
+    /**
+     * Writes the turn to a buffering chat memory store, so the next turn can be served by another instance.
+     */
+    private void flushChatMemory() {
+        if (chatMemoryRepository instanceof Flushable flushable) {
+            try {
+                flushable.flush();
+            } catch (IOException e) {
+                log.error("Could not write the chat memory", e);
+            }
+        }
     }
 }
@@ -0,0 +1,489 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.AnnualValue;
+import com.katrikken.gdpai.dto.CagrValue;
+import com.katrikken.gdpai.dto.DataChangedEvent;
+import com.katrikken.gdpai.dto.GroupAggregate;
+import com.katrikken.gdpai.dto.GroupType;
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.repository.AnalyticsRepository;
+import com.katrikken.gdpai.repository.AnalyticsRepository.Changes;
+import com.katrikken.gdpai.repository.AnalyticsRepository.CountryGroups;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Builds the analytics tables (see schema.sql) from GDP and POPULATION:
+ * growth over the previous year, compound annual growth rates over the periods in app.analytics.cagr-periods,
+ * ranks among all countries per year and totals per region and income group.
+ * <p>
+ * The tables are built at startup and again after a {@link DataChangedEvent}. GDP and population are read
+ * concurrently with full scans into one array per year indexed by country, GDP per capita is divided from them
+ * instead of scanning the view. The years and periods are then ranked in parallel and the rows come out
+ * in primary key order, so they are written without sorting and two builds are compared in one pass.
+ * Builds do not overlap: changes published during a build start one more build.
+ * <p>
+ * The first build replaces the content of the tables with one INSERT ... SELECT per table.
+ * The rows it wrote are kept, and later builds only write the rows that differ from them: a single inserted value
+ * changes the ranks of one or two years, while deleting and inserting all rows costs more than computing them.
+ */
+@Component
+@Log4j2
+public class AnalyticsBuilder {
+
+    // CAGR periods start in years divisible by this step, e.g. 2010-2020 and 2015-2020
+    private static final int PERIOD_START_STEP = 5;
+    // scale of GDP_PER_CAPITA_VIEW and of the value columns
+    private static final int PER_CAPITA_SCALE = 10;
+    // the first columns of the primary keys hold the names of these enums
+    private static final List<Metric> METRICS_BY_NAME = Arrays.stream(Metric.values())
+            .sorted(Comparator.comparing(Metric::name)).toList();
+    private static final List<GroupType> GROUP_TYPES_BY_NAME = Arrays.stream(GroupType.values())
+            .sorted(Comparator.comparing(GroupType::name)).toList();
+
+    private final DataPointReadRepository readRepository;
+    private final AnalyticsRepository analyticsRepository;
+    private final ExecutorService workflowExecutor;
+    private final boolean enabled;
+    private final List<Integer> cagrPeriods;
+    private final Timer buildTimer;
+
+    private final ReentrantLock buildLock = new ReentrantLock();
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    // content of the tables written by the last build, null when it is not known (before the first build or after a failed one)
+    private Written written;
+
+    public AnalyticsBuilder(DataPointReadRepository readRepository,
+                            AnalyticsRepository analyticsRepository,
+                            @Qualifier("workflowExecutor") ExecutorService workflowExecutor,
+                            @Value("${app.analytics.enabled:true}") boolean enabled,
+                            @Value("${app.analytics.cagr-periods:5,10}") List<Integer> cagrPeriods,
+                            MeterRegistry meterRegistry) {
+        this.readRepository = readRepository;
+        this.analyticsRepository = analyticsRepository;
+        this.workflowExecutor = workflowExecutor;
+        this.enabled = enabled;
+        this.cagrPeriods = cagrPeriods.stream().filter(length -> length > 0).distinct().sorted().toList();
+        this.buildTimer = Timer.builder("agent.analytics.build")
+                .description("Time to rebuild the analytics tables")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The first build runs on the workflow executor, until it is written the tools report that the tables are being built.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (enabled) {
+            requestRebuild();
+        }
+    }
+
+    @EventListener
+    public void onDataChanged(DataChangedEvent event) {
+        if (enabled) {
+            log.info("{} data changed, rebuilding analytics", event.metric().getLabel());
+            requestRebuild();
+        }
+    }
+
+    /**
+     * Schedules a rebuild on the workflow executor unless one is already waiting to start.
+     */
+    public void requestRebuild() {
+        if (rebuildPending.compareAndSet(false, true)) {
+            workflowExecutor.execute(() -> {
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    log.error("Analytics rebuild failed", e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Recomputes and replaces the content of the analytics tables.
+     */
+    public BuildStats rebuild() {
+        buildLock.lock();
+        try {
+            // changes published from here on are not guaranteed to be seen by this build
+            rebuildPending.set(false);
+            long start = System.nanoTime();
+
+            List<CountryGroups> countries = analyticsRepository.findCountryGroups();
+            Map<Metric, Grid> grids = readGrids(countries);
+
+            List<AnnualValue> annual = new ArrayList<>();
+            List<CagrValue> cagr = new ArrayList<>();
+            for (Metric metric : METRICS_BY_NAME) {
+                annual.addAll(annualValues(metric, grids.get(metric), countries));
+                cagr.addAll(cagrValues(metric, grids.get(metric), countries));
+            }
+            List<GroupAggregate> groups = new ArrayList<>();
+            for (Metric metric : METRICS_BY_NAME) {
+                for (GroupType groupType : GROUP_TYPES_BY_NAME) {
+                    groups.addAll(aggregateGroups(metric, groupType, countries, grids));
+                }
+            }
+
+            int writtenRows = write(annual, cagr, groups);
+            long nanos = System.nanoTime() - start;
+            buildTimer.record(nanos, TimeUnit.NANOSECONDS);
+            BuildStats stats = new BuildStats(annual.size(), cagr.size(), groups.size(), writtenRows,
+                    TimeUnit.NANOSECONDS.toMillis(nanos));
+            log.info("Analytics rebuilt: {}", stats);
+            return stats;
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the rows of the build and returns the number of rows written.
+     */
+    private int write(List<AnnualValue> annual, List<CagrValue> cagr, List<GroupAggregate> groups) {
+        Written previous = written;
+        written = null;
+        int writtenRows;
+        if (previous == null) {
+            analyticsRepository.replaceAll(annual, cagr, groups);
+            writtenRows = annual.size() + cagr.size() + groups.size();
+        } else {
+            Changes<AnnualValue> annualChanges = changes(previous.annual(), annual, AnalyticsRepository.ANNUAL_ORDER);
+            Changes<CagrValue> cagrChanges = changes(previous.cagr(), cagr, AnalyticsRepository.CAGR_ORDER);
+            Changes<GroupAggregate> groupChanges = changes(previous.groups(), groups, AnalyticsRepository.GROUP_ORDER);
+            analyticsRepository.applyChanges(annualChanges, cagrChanges, groupChanges);
+            writtenRows = annualChanges.size() + cagrChanges.size() + groupChanges.size();
+        }
+        written = new Written(annual, cagr, groups);
+        return writtenRows;
+    }
+
+    /**
+     * Compares the rows of two builds, both in primary key order, in one pass: rows of a new key or with other
+     * values are merged, rows of a key that is gone are deleted.
+     */
+    private static <T> Changes<T> changes(List<T> previous, List<T> current, Comparator<T> keyOrder) {
+        List<T> merged = new ArrayList<>();
+        List<T> deleted = new ArrayList<>();
+        int p = 0;
+        int c = 0;
+        while (p < previous.size() || c < current.size()) {
+            int order = p == previous.size() ? 1 : c == current.size() ? -1 : keyOrder.compare(previous.get(p), current.get(c));
+            if (order < 0) {
+                deleted.add(previous.get(p++));
+            } else if (order > 0) {
+                merged.add(current.get(c++));
+            } else {
+                if (!previous.get(p).equals(current.get(c))) {
+                    merged.add(current.get(c));
+                }
+                p++;
+                c++;
+            }
+        }
+        return new Changes<>(merged, deleted);
+    }
+
+    /**
+     * Reads GDP and population concurrently into grids and divides them into the GDP per capita grid,
+     * with the scale and rounding of GDP_PER_CAPITA_VIEW. Countries without a region are skipped.
+     */
+    private Map<Metric, Grid> readGrids(List<CountryGroups> countries) {
+        Map<String, Integer> countryIndex = new HashMap<>();
+        for (int i = 0; i < countries.size(); i++) {
+            countryIndex.put(countries.get(i).countryCode(), i);
+        }
+        CompletableFuture<Grid> gdp = CompletableFuture.supplyAsync(() -> readGrid(Metric.GDP, countryIndex), workflowExecutor);
+        CompletableFuture<Grid> population = CompletableFuture.supplyAsync(() -> readGrid(Metric.POPULATION, countryIndex), workflowExecutor);
+
+        Map<Metric, Grid> grids = new EnumMap<>(Metric.class);
+        grids.put(Metric.GDP, gdp.join());
+        grids.put(Metric.POPULATION, population.join());
+        grids.put(Metric.GDP_PER_CAPITA, perCapita(grids.get(Metric.GDP), grids.get(Metric.POPULATION), countries.size()));
+        return grids;
+    }
+
+    /**
+     * Scans the metric in (DATA_YEAR, COUNTRY_CODE) order into one array of values per year.
+     */
+    private Grid readGrid(Metric metric, Map<String, Integer> countryIndex) {
+        List<BigDecimal[]> years = new ArrayList<>();
+        int[] firstYear = new int[1];
+        readRepository.scanAll(metric, point -> {
+            Integer country = countryIndex.get(point.countryCode());
+            if (country != null && point.value() != null) {
+                if (years.isEmpty()) {
+                    firstYear[0] = point.year();
+                }
+                while (firstYear[0] + years.size() <= point.year()) {
+                    years.add(new BigDecimal[countryIndex.size()]);
+                }
+                years.get(point.year() - firstYear[0])[country] = point.value();
+            }
+        });
+        return Grid.of(firstYear[0], years.toArray(BigDecimal[][]::new));
+    }
+
+    private static Grid perCapita(Grid gdp, Grid population, int countries) {
+        int firstYear = Math.max(gdp.firstYear(), population.firstYear());
+        int lastYear = Math.min(gdp.lastYear(), population.lastYear());
+        if (gdp.isEmpty() || population.isEmpty() || lastYear < firstYear) {
+            return Grid.EMPTY;
+        }
+        BigDecimal[][] values = new BigDecimal[lastYear - firstYear + 1][countries];
+        for (int year = firstYear; year <= lastYear; year++) {
+            for (int country = 0; country < countries; country++) {
+                BigDecimal countryGdp = gdp.value(year, country);
+                BigDecimal countryPopulation = population.value(year, country);
+                if (countryGdp != null && countryPopulation != null && countryPopulation.signum() != 0) {
+                    values[year - firstYear][country] = countryGdp.divide(countryPopulation, PER_CAPITA_SCALE, RoundingMode.HALF_UP);
+                }
+            }
+        }
+        return Grid.of(firstYear, values);
+    }
+
+    /**
+     * Values with growth and ranks of every year, computed in parallel across years, in primary key order.
+     */
+    private static List<AnnualValue> annualValues(Metric metric, Grid grid, List<CountryGroups> countries) {
+        return IntStream.rangeClosed(grid.firstYear(), grid.lastYear()).parallel()
+                .mapToObj(year -> annualValues(metric, grid, countries, year))
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    private static List<AnnualValue> annualValues(Metric metric, Grid grid, List<CountryGroups> countries, int year) {
+        Double[] values = new Double[countries.size()];
+        Double[] growth = new Double[countries.size()];
+        for (int country = 0; country < countries.size(); country++) {
+            if (grid.has(year, country)) {
+                values[country] = grid.doubleValue(year, country);
+                growth[country] = grid.has(year - 1, country)
+                        ? growthPercent(grid.doubleValue(year - 1, country), values[country], 1) : null;
+            }
+        }
+        Integer[] valueRanks = ranks(values);
+        Integer[] growthRanks = ranks(growth);
+        List<AnnualValue> rows = new ArrayList<>();
+        for (int country = 0; country < countries.size(); country++) {
+            if (values[country] != null) {
+                rows.add(new AnnualValue(metric, countries.get(country).countryCode(), null, year,
+                        grid.value(year, country), growth[country], valueRanks[country], growthRanks[country]));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Compound annual growth rates and ranks of every period, computed in parallel across periods,
+     * in primary key order.
+     */
+    private List<CagrValue> cagrValues(Metric metric, Grid grid, List<CountryGroups> countries) {
+        List<Period> periods = new ArrayList<>();
+        int firstStart = Math.ceilDiv(grid.firstYear(), PERIOD_START_STEP) * PERIOD_START_STEP;
+        for (int startYear = firstStart; startYear < grid.lastYear(); startYear += PERIOD_START_STEP) {
+            for (int length : cagrPeriods) {
+                if (startYear + length <= grid.lastYear()) {
+                    periods.add(new Period(startYear, startYear + length));
+                }
+            }
+        }
+        return periods.parallelStream()
+                .flatMap(period -> cagrValues(metric, grid, countries, period).stream())
+                .toList();
+    }
+
+    private static List<CagrValue> cagrValues(Metric metric, Grid grid, List<CountryGroups> countries, Period period) {
+        Double[] growth = new Double[countries.size()];
+        for (int country = 0; country < countries.size(); country++) {
+            if (grid.has(period.startYear(), country) && grid.has(period.endYear(), country)) {
+                growth[country] = growthPercent(grid.doubleValue(period.startYear(), country),
+                        grid.doubleValue(period.endYear(), country), period.endYear() - period.startYear());
+            }
+        }
+        Integer[] ranks = ranks(growth);
+        List<CagrValue> rows = new ArrayList<>();
+        for (int country = 0; country < countries.size(); country++) {
+            if (growth[country] != null) {
+                rows.add(new CagrValue(metric, countries.get(country).countryCode(), null, period.startYear(),
+                        period.endYear(), grid.value(period.startYear(), country), grid.value(period.endYear(), country),
+                        growth[country], ranks[country]));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Compound growth per year in percent, null when it is undefined (a value that is not positive).
+     */
+    private static Double growthPercent(double from, double to, int years) {
+        if (from <= 0 || to <= 0) {
+            return null;
+        }
+        double ratio = to / from;
+        return (years == 1 ? ratio - 1 : Math.pow(ratio, 1.0 / years) - 1) * 100;
+    }
+
+    /**
+     * Ranks from the highest key down, equal keys share a rank (1, 2, 2, 4). Null keys get no rank.
+     */
+    private static Integer[] ranks(Double[] keys) {
+        Integer[] order = IntStream.range(0, keys.length).filter(i -> keys[i] != null).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, (a, b) -> Double.compare(keys[b], keys[a]));
+        Integer[] ranks = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            boolean tie = i > 0 && keys[order[i]].doubleValue() == keys[order[i - 1]].doubleValue();
+            ranks[order[i]] = tie ? ranks[order[i - 1]] : i + 1;
+        }
+        return ranks;
+    }
+
+    /**
+     * Totals of the metric per group and year in primary key order. GDP per capita of a group is computed
+     * from the countries that have both GDP and population in that year.
+     */
+    private static List<GroupAggregate> aggregateGroups(Metric metric, GroupType groupType, List<CountryGroups> countries,
+                                                        Map<Metric, Grid> grids) {
+        Function<CountryGroups, String> groupOf = groupType == GroupType.REGION ? CountryGroups::region : CountryGroups::incomeGroup;
+        List<String> names = countries.stream().map(groupOf).filter(Objects::nonNull).distinct().sorted().toList();
+        int[] group = countries.stream().mapToInt(country -> {
+            String name = groupOf.apply(country);
+            return name == null ? -1 : Collections.binarySearch(names, name);
+        }).toArray();
+        boolean perCapita = metric == Metric.GDP_PER_CAPITA;
+        Grid values = grids.get(perCapita ? Metric.GDP : metric);
+        Grid population = grids.get(Metric.POPULATION);
+
+        List<GroupAggregate> aggregates = new ArrayList<>();
+        // total of the previous year per group, for the growth over the previous year
+        BigDecimal[] previous = new BigDecimal[names.size()];
+        for (int year = values.firstYear(); year <= values.lastYear(); year++) {
+            Total[] totals = new Total[names.size()];
+            Total[] populations = new Total[names.size()];
+            for (int country = 0; country < countries.size(); country++) {
+                BigDecimal value = values.value(year, country);
+                BigDecimal countryPopulation = perCapita ? population.value(year, country) : null;
+                if (group[country] < 0 || value == null || perCapita && countryPopulation == null) {
+                    continue;
+                }
+                if (totals[group[country]] == null) {
+                    totals[group[country]] = new Total();
+                    populations[group[country]] = new Total();
+                }
+                totals[group[country]].add(value);
+                if (perCapita) {
+                    populations[group[country]].add(countryPopulation);
+                }
+            }
+            for (int i = 0; i < names.size(); i++) {
+                if (totals[i] == null) {
+                    previous[i] = null;
+                    continue;
+                }
+                BigDecimal total = perCapita
+                        ? totals[i].sum.divide(populations[i].sum, PER_CAPITA_SCALE, RoundingMode.HALF_UP)
+                        : totals[i].sum;
+                Double growth = previous[i] == null ? null : growthPercent(previous[i].doubleValue(), total.doubleValue(), 1);
+                aggregates.add(new GroupAggregate(metric, groupType, names.get(i), year, total, totals[i].count(), growth));
+                previous[i] = total;
+            }
+        }
+        return aggregates;
+    }
+
+    /**
+     * Row counts of the analytics tables after a build, the number of rows the build wrote and its duration.
+     */
+    public record BuildStats(int annualRows, int cagrRows, int groupRows, int writtenRows, long millis) {
+    }
+
+    private record Written(List<AnnualValue> annual, List<CagrValue> cagr, List<GroupAggregate> groups) {
+    }
+
+    private record Period(int startYear, int endYear) {
+    }
+
+    /**
+     * Values of a metric per year and country, the countries in the order of the country list. Missing values are
+     * null, their doubles are kept next to them for the growth rates and ranks.
+     */
+    private record Grid(int firstYear, BigDecimal[][] values, double[][] doubles) {
+
+        static final Grid EMPTY = of(0, new BigDecimal[0][]);
+
+        static Grid of(int firstYear, BigDecimal[][] values) {
+            double[][] doubles = new double[values.length][];
+            for (int year = 0; year < values.length; year++) {
+                doubles[year] = new double[values[year].length];
+                for (int country = 0; country < values[year].length; country++) {
+                    doubles[year][country] = values[year][country] == null ? Double.NaN : values[year][country].doubleValue();
+                }
+            }
+            return new Grid(firstYear, values, doubles);
+        }
+
+        boolean isEmpty() {
+            return values.length == 0;
+        }
+
+        int lastYear() {
+            return firstYear + values.length - 1;
+        }
+
+        boolean has(int year, int country) {
+            return value(year, country) != null;
+        }
+
+        BigDecimal value(int year, int country) {
+            return year < firstYear || year > lastYear() ? null : values[year - firstYear][country];
+        }
+
+        double doubleValue(int year, int country) {
+            return doubles[year - firstYear][country];
+        }
+    }
+
+    private static final class Total {
+        private BigDecimal sum = BigDecimal.ZERO;
+        private int count;
+
+        void add(BigDecimal value) {
+            sum = sum.add(value);
+            count++;
+        }
+
+        int count() {
+            return count;
+        }
+    }
+}
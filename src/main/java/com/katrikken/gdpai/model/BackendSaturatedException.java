@@ -0,0 +1,20 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.LLMType;
+import lombok.Getter;
+
+/**
+ * Thrown when an LLM backend has no free capacity and its wait queue is full or the wait timed out.
+ */
+@Getter
+public class BackendSaturatedException extends RuntimeException {
+
+    private final LLMType backend;
+    private final long retryAfterSeconds;
+
+    public BackendSaturatedException(LLMType backend, long retryAfterSeconds) {
+        super(String.format("The %s backend is busy, retry in %d seconds", backend.getValue(), retryAfterSeconds));
+        this.backend = backend;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,170 @@
+package com.katrikken.gdpai.model;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit with a bounded wait queue for a single LLM backend.
+ * <p>
+ * The limit adapts to the observed latency (AIMD): it grows by 1/limit after every call finishing within the
+ * target latency and shrinks by a fixed factor after every slower or failed call. The limit stays between the
+ * configured minimum and maximum.
+ */
+class Bulkhead {
+
+    private static final double DECREASE_FACTOR = 0.9;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long targetLatencyNanos;
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private double averageLatencyNanos;
+
+    Bulkhead(int initialLimit, int minLimit, int maxLimit, int maxQueue, long targetLatencyMillis) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.clamp(initialLimit, this.minLimit, this.maxLimit);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+    }
+
+    /**
+     * Takes a permit, waiting at most maxWaitMillis when the limit is reached.
+     *
+     * @return the rejection reason, or null if the permit was acquired
+     */
+    Rejection acquire(long maxWaitMillis) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (inFlight < currentLimit()) {
+                inFlight++;
+                return null;
+            }
+            if (waiting >= maxQueue) {
+                return Rejection.QUEUE_FULL;
+            }
+            waiting++;
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+                while (inFlight >= currentLimit()) {
+                    if (remaining <= 0) {
+                        return Rejection.WAIT_TIMEOUT;
+                    }
+                    remaining = permitReleased.awaitNanos(remaining);
+                }
+                inFlight++;
+                return null;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a permit only when one is free, without waiting or queueing, e.g. for an optional extra call.
+     */
+    boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight < currentLimit()) {
+                inFlight++;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the permit of a call that was cancelled or never made, without adjusting the limit.
+     */
+    void cancel() {
+        lock.lock();
+        try {
+            inFlight--;
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the permit and adjusts the limit by the latency of the finished call.
+     */
+    void release(long latencyNanos, boolean success) {
+        lock.lock();
+        try {
+            inFlight--;
+            averageLatencyNanos = averageLatencyNanos == 0
+                    ? latencyNanos
+                    : 0.8 * averageLatencyNanos + 0.2 * latencyNanos;
+            if (success && latencyNanos <= targetLatencyNanos) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            } else {
+                limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+            }
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimated time until a new request could be served, at least one second.
+     */
+    long retryAfterSeconds() {
+        lock.lock();
+        try {
+            double queuedRounds = (waiting + 1.0) / currentLimit();
+            return Math.max(1, (long) Math.ceil(queuedRounds * averageLatencyNanos / 1_000_000_000.0));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    enum Rejection {
+        QUEUE_FULL, WAIT_TIMEOUT
+    }
+}
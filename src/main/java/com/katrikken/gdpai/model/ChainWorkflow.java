@@ -1,72 +1,96 @@
 package com.katrikken.gdpai.model;
 
+import com.katrikken.gdpai.dto.PlanSpec;
+import com.katrikken.gdpai.dto.WorkflowType;
+import com.katrikken.gdpai.tool.ToolCallRecorder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Workflow of three LLM calls: the plan call determines the data needed, the tools call fetches it and the analysis
+ * call answers the question from it. When the plan call returns a {@link PlanSpec} that {@link PlanExecutor} can
+ * execute, the data is fetched without the tools call.
+ */
 @Log4j2
 @RequiredArgsConstructor
 @Service
-public class ChainWorkflow {
-
-    private final String QUESTION = "{question}";
-    private final String DATA = "{data}";
-    @Value("${app.system-message.plan}")
-    private String SYSTEM_MESSAGE_PLAN;
-    @Value("${app.system-message.tools}")
-    private String SYSTEM_MESSAGE_TOOLS;
-    @Value("${app.system-message.analysis}")
-    private String SYSTEM_MESSAGE_ANALYSIS;
+public class ChainWorkflow implements AgentWorkflow {
+
+    private final PromptTemplates prompts;
+    private final SpeculativePrefetcher speculativePrefetcher;
+    private final DataReducer dataReducer;
+    private final ToolSelector toolSelector;
+    private final DataWorkingSets workingSets;
+    private final PlanExecutor planExecutor;
+
+    @Override
+    public WorkflowType type() {
+        return WorkflowType.CHAIN;
+    }
 
-    public String chain(String userInput, ChatClient chatClient) {
+    @Override
+    public String chain(String userInput, PhaseChatClients chatClients, DataWorkingSet workingSet, RequestDeadline deadline) {
 
         log.info("Received user query: {}", userInput);
 
-        String input = SYSTEM_MESSAGE_PLAN.replace(QUESTION, userInput);
-
-        String dataRequest = chatClient.prompt(input).call().content();
-
-        log.info("Need following data to respond: {}", dataRequest);
-
-        if (dataRequest == null || dataRequest.isEmpty()) {
-            return "ERROR. Could not determine needed data";
+        workingSet.startTurn();
+        String keptData = workingSets.reusableData(workingSet, userInput);
+        if (keptData != null) {
+            return analyze(prompts, userInput, keptData, chatClients, deadline);
         }
 
-        String data = chatClient.prompt(SYSTEM_MESSAGE_TOOLS.replace(QUESTION, dataRequest))
-// this is for openAi only
-//                    .tools(new MathematicalTool(),
-//                            countryToolService,
-//                            gdpToolService,
-//                            populationToolService,
-//                            gdpPerCapitaToolService)
-                .toolNames("gdpPerCapitaByCountry", "gdpPerCapitaByYear",
-                        "gdpPerCapitaByYearRange", "gdpPerCapitaTrendForCountry",
-
-                        "populationByCountryYear", "populationByCountry", "populationByYear",
-                        "populationBetweenYears", "populationTrendForCountry", "insertPopulation",
-
-                        "gdpByCountryYear", "gdpByCountry", "gdpByYear",
-                        "gdpBetweenYears", "gdpTrendForCountry", "insertGdp",
-
-                        "countryNameToCountryCode",
-
-                        "getCurrentYear", "operateOnBigDecimals"
-                )
-                .call().content();
-
-        if (data == null || data.isEmpty()) {
-            return "ERROR. Could not find data to answer the question";
+        try (SpeculativePrefetcher.Prefetch prefetch = speculativePrefetcher.start(userInput)) {
+            String planResponse = deadline.call(WorkflowPhase.PLAN, () -> planExecutor.requestPlan(prompts.plan()
+                            .apply(chatClients.prompt(WorkflowPhase.PLAN), Map.of(PromptTemplates.QUESTION, userInput)))
+                    .call().content());
+
+            log.info("Need following data to respond: {}", planResponse);
+
+            if (planResponse == null || planResponse.isEmpty()) {
+                return "ERROR. Could not determine needed data";
+            }
+
+            PlanSpec plan = planExecutor.parse(planResponse);
+            if (plan != null) {
+                List<ToolCallRecorder.RecordedCall> calls = deadline.call(WorkflowPhase.TOOLS,
+                        () -> planExecutor.execute(plan, userInput, workingSet.interceptor(prefetch)));
+                if (calls != null) {
+                    String data = dataReducer.reduce(userInput + "\n" + plan.describe(), calls, "");
+                    log.info("Obtained data: {}", data);
+                    return analyze(prompts, userInput, data, chatClients, deadline);
+                }
+            }
+            String dataRequest = plan == null || plan.request() == null || plan.request().isBlank()
+                    ? planResponse
+                    : plan.request();
+
+            ToolCallRecorder recorder = new ToolCallRecorder(workingSet.interceptor(prefetch));
+            String toolsResponse = callTools(recorder, deadline,
+                    () -> requestData(userInput, dataRequest, chatClients), "");
+
+            if ((toolsResponse == null || toolsResponse.isEmpty()) && recorder.getCalls().isEmpty()) {
+                return "ERROR. Could not find data to answer the question";
+            }
+            if (toolsResponse == null) {
+                toolsResponse = "";
+            }
+
+            String data = dataReducer.reduce(userInput + "\n" + dataRequest, recorder.getCalls(), toolsResponse);
+
+            log.info("Obtained data: {}", data);
+
+            return analyze(prompts, userInput, data, chatClients, deadline);
         }
+    }
 
-        log.info("Obtained data: {}", data);
-
-        String response = chatClient
-                .prompt(SYSTEM_MESSAGE_ANALYSIS.replace(QUESTION, userInput)
-                        .replace(DATA, data))
+    private String requestData(String userInput, String dataRequest, PhaseChatClients chatClients) {
+        return prompts.tools()
+                .apply(chatClients.prompt(WorkflowPhase.TOOLS), Map.of(PromptTemplates.QUESTION, dataRequest))
+                .toolCallbacks(toolSelector.select(userInput + "\n" + dataRequest))
                 .call().content();
-
-        return response;
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.entity.Country;
+import com.katrikken.gdpai.repository.CountryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizes countries mentioned by name in free text, e.g. in the user's question.
+ * The names are loaded from the COUNTRY table on first use and matched as whole words, ignoring case.
+ */
+@Component
+@RequiredArgsConstructor
+public class CountryIndex {
+
+    private final CountryRepository countryRepository;
+
+    private volatile List<CountryPattern> index;
+
+    /**
+     * Returns the countries whose name appears in the text, in the order of the COUNTRY table.
+     */
+    public List<Country> findCountries(String text) {
+        List<Country> countries = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return countries;
+        }
+        for (CountryPattern countryPattern : getIndex()) {
+            if (countryPattern.pattern().matcher(text).find()) {
+                countries.add(countryPattern.country());
+            }
+        }
+        return countries;
+    }
+
+    private List<CountryPattern> getIndex() {
+        List<CountryPattern> current = index;
+        if (current == null) {
+            current = countryRepository.findAll().stream()
+                    .filter(c -> c.getName() != null && !c.getName().isBlank())
+                    .map(c -> new CountryPattern(c,
+                            Pattern.compile("\\b" + Pattern.quote(c.getName()) + "\\b", Pattern.CASE_INSENSITIVE)))
+                    .toList();
+            index = current;
+        }
+        return current;
+    }
+
+    private record CountryPattern(Country country, Pattern pattern) {
+    }
+}
@@ -0,0 +1,393 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.DataPoint;
+import com.katrikken.gdpai.entity.Country;
+import com.katrikken.gdpai.tool.ResultFormat;
+import com.katrikken.gdpai.tool.SeriesResult;
+import com.katrikken.gdpai.tool.ToolCallRecorder;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces the data retrieved in the tools phase before it is put into the analysis prompt.
+ * <p>
+ * The results of the data tools are merged into series per metric and country. When the question names countries
+ * or a range of years, the other countries and years are dropped. Long series are downsampled and summarized
+ * by statistics computed here, and the result is shrunk until it fits the token budget.
+ * The results of the other tools, e.g. country lookups, calculations and analytics, are kept as notes, and the data
+ * returned by the LLM follows in the room left by the budget. When no tool was called, the data returned by the LLM
+ * is truncated to the budget.
+ */
+@Component
+@Log4j2
+public class DataReducer {
+
+    static final Pattern YEAR = Pattern.compile("\\b(19[6-9]\\d|20\\d{2})\\b");
+    private static final Pattern COUNTRY_CODE = Pattern.compile("\\b[A-Z]{3}\\b");
+    private static final MathContext STATS_PRECISION = new MathContext(6, RoundingMode.HALF_UP);
+    private static final String TRUNCATED = "\n[truncated to fit the token budget]";
+    private static final String LLM_DATA = "Data reported by the tools phase:\n";
+
+    private final CountryIndex countryIndex;
+    private final DistributionSummary inputTokens;
+    private final DistributionSummary outputTokens;
+
+    @Value("${app.reduction.enabled:true}")
+    private boolean enabled;
+    @Value("${app.reduction.token-budget:1500}")
+    private int tokenBudget;
+    @Value("${app.reduction.max-points-per-series:16}")
+    private int maxPointsPerSeries;
+
+    public DataReducer(CountryIndex countryIndex, MeterRegistry meterRegistry) {
+        this.countryIndex = countryIndex;
+        this.inputTokens = tokenSummary(meterRegistry, "input");
+        this.outputTokens = tokenSummary(meterRegistry, "output");
+    }
+
+    private static DistributionSummary tokenSummary(MeterRegistry meterRegistry, String stage) {
+        return DistributionSummary.builder("agent.reduction.tokens")
+                .description("Estimated tokens of the tool data before and after reduction")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tokens are estimated as 4 characters per token.
+     */
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+
+    /**
+     * @param context  question and plan text used to find the relevant countries and years
+     * @param calls    tool calls of the tools phase
+     * @param fallback data returned by the LLM, added after the tool data as far as the budget allows
+     */
+    public String reduce(String context, List<ToolCallRecorder.RecordedCall> calls, String fallback) {
+        if (!enabled) {
+            return fallback;
+        }
+        List<Series> series = new ArrayList<>();
+        Set<String> notes = new LinkedHashSet<>();
+        int rawLength = collect(calls, series, notes);
+        if (series.isEmpty() && notes.isEmpty()) {
+            inputTokens.record(estimateTokens(fallback));
+            String truncated = truncate(fallback);
+            outputTokens.record(estimateTokens(truncated));
+            return truncated;
+        }
+        rawLength += fallback == null ? 0 : fallback.length();
+        inputTokens.record((rawLength + 3) / 4);
+
+        series = filterCountries(series, context);
+        series = filterYears(series, context);
+        String reduced = withLlmData(fitToBudget(series, new ArrayList<>(notes)), fallback);
+        outputTokens.record(estimateTokens(reduced));
+        log.info("Reduced tool data from about {} to {} tokens", (rawLength + 3) / 4, estimateTokens(reduced));
+        return reduced;
+    }
+
+    /**
+     * Collects the values of the data tool results into series, messages of the results and the results of the other
+     * tools become notes.
+     *
+     * @return length of the results as rendered in text
+     */
+    private static int collect(List<ToolCallRecorder.RecordedCall> calls, List<Series> series, Set<String> notes) {
+        Map<String, Series> byKey = new LinkedHashMap<>();
+        int rawLength = 0;
+        for (ToolCallRecorder.RecordedCall call : calls) {
+            if (call.result() == null) {
+                continue;
+            }
+            if (!(call.result() instanceof SeriesResult result)) {
+                String text = call.toolName() + ": " + call.result().render(ResultFormat.TEXT).strip();
+                rawLength += text.length();
+                notes.add(text);
+                continue;
+            }
+            String text = result.render(ResultFormat.TEXT);
+            rawLength += text.length();
+            if (result.getMessage() != null || result.getPoints().isEmpty()) {
+                notes.add(text);
+                continue;
+            }
+            for (DataPoint point : result.getPoints()) {
+                seriesFor(byKey, result.getMetric(), point.countryCode()).points().put(point.year(), point.value());
+            }
+            if (result.getNextCursor() != null) {
+                notes.add(result.getMetric() + " rows after " + result.getNextCursor() + " were not retrieved (row limit).");
+            }
+        }
+        series.addAll(byKey.values());
+        return rawLength;
+    }
+
+    private static Series seriesFor(Map<String, Series> byKey, String metric, String countryCode) {
+        return byKey.computeIfAbsent(metric + "/" + countryCode, key -> new Series(metric, countryCode, new TreeMap<>()));
+    }
+
+    private List<Series> filterCountries(List<Series> series, String context) {
+        Set<String> countries = new LinkedHashSet<>();
+        if (context != null) {
+            countryIndex.findCountries(context).stream().map(Country::getCountryCode).forEach(countries::add);
+            COUNTRY_CODE.matcher(context).results().map(MatchResult::group).forEach(countries::add);
+        }
+        List<Series> relevant = series.stream().filter(s -> countries.contains(s.countryCode())).toList();
+        return relevant.isEmpty() ? series : relevant;
+    }
+
+    /**
+     * Keeps the years between the first and the last year mentioned, when at least two years are mentioned.
+     */
+    private static List<Series> filterYears(List<Series> series, String context) {
+        if (context == null) {
+            return series;
+        }
+        TreeSet<Integer> years = new TreeSet<>();
+        YEAR.matcher(context).results().map(m -> Integer.parseInt(m.group())).forEach(years::add);
+        if (years.size() < 2) {
+            return series;
+        }
+        List<Series> filtered = new ArrayList<>(series.size());
+        for (Series s : series) {
+            NavigableMap<Integer, BigDecimal> inRange = s.points().subMap(years.first(), true, years.last(), true);
+            filtered.add(inRange.isEmpty() ? s : new Series(s.metric(), s.countryCode(), new TreeMap<>(inRange)));
+        }
+        return filtered;
+    }
+
+    /**
+     * Halves the points shown per series until the data fits the budget, then shows statistics only,
+     * then leaves out series from the end.
+     */
+    private String fitToBudget(List<Series> series, List<String> notes) {
+        int maxPoints = maxPointsPerSeries;
+        List<String> blocks = render(series, maxPoints, true);
+        while (totalTokens(blocks, notes) > tokenBudget && maxPoints > 2) {
+            maxPoints = Math.max(2, maxPoints / 2);
+            blocks = render(series, maxPoints, true);
+        }
+        if (totalTokens(blocks, notes) > tokenBudget) {
+            blocks = render(series, 0, false);
+        }
+
+        // leave room for the omission note when not all series fit
+        int blockBudget = totalTokens(blocks, List.of()) > tokenBudget
+                ? tokenBudget - estimateTokens(omitted(blocks.size()))
+                : tokenBudget;
+        StringBuilder text = new StringBuilder();
+        int shown = 0;
+        for (String block : blocks) {
+            if (shown > 0 && estimateTokens(text + block) > blockBudget) {
+                break;
+            }
+            text.append(block).append('\n');
+            shown++;
+        }
+        if (shown < blocks.size()) {
+            text.append(omitted(blocks.size() - shown)).append('\n');
+        }
+        for (String note : notes) {
+            if (estimateTokens(text + note) > tokenBudget) {
+                break;
+            }
+            text.append(note).append('\n');
+        }
+        return text.toString().strip();
+    }
+
+    /**
+     * Adds the data returned by the LLM in the room the tool data left in the budget.
+     */
+    private String withLlmData(String reduced, String llmData) {
+        if (llmData == null || llmData.isBlank()) {
+            return reduced;
+        }
+        int room = tokenBudget - estimateTokens(reduced) - estimateTokens(LLM_DATA) - 1;
+        if (room < estimateTokens(TRUNCATED) + 8) {
+            return reduced;
+        }
+        String text = llmData.strip();
+        if (estimateTokens(text) > room) {
+            text = text.substring(0, Math.max(0, room * 4 - TRUNCATED.length())) + TRUNCATED;
+        }
+        return reduced.isEmpty() ? LLM_DATA + text : reduced + "\n" + LLM_DATA + text;
+    }
+
+    private static String omitted(int count) {
+        return "(" + count + " more series omitted to fit the token budget)";
+    }
+
+    private static int totalTokens(List<String> blocks, List<String> notes) {
+        int length = 0;
+        for (String block : blocks) {
+            length += block.length() + 1;
+        }
+        for (String note : notes) {
+            length += note.length() + 1;
+        }
+        return (length + 3) / 4;
+    }
+
+    private static List<String> render(List<Series> series, int maxPoints, boolean withPoints) {
+        List<String> blocks = new ArrayList<>(series.size());
+        for (Series s : series) {
+            blocks.add(render(s, maxPoints, withPoints));
+        }
+        return blocks;
+    }
+
+    private static String render(Series series, int maxPoints, boolean withPoints) {
+        TreeMap<Integer, BigDecimal> points = series.points();
+        if (points.size() == 1) {
+            Map.Entry<Integer, BigDecimal> point = points.firstEntry();
+            return String.format("%s, %s, %d: %s", series.metric(), series.countryCode(), point.getKey(),
+                    plain(point.getValue()));
+        }
+        StringBuilder text = new StringBuilder();
+        text.append(series.metric()).append(", ").append(series.countryCode()).append(", ")
+                .append(points.firstKey()).append('-').append(points.lastKey())
+                .append(" (").append(points.size()).append(" values");
+        if (withPoints) {
+            Set<Integer> shownYears = downsample(series, maxPoints);
+            if (shownYears.size() < points.size()) {
+                text.append(", ").append(shownYears.size()).append(" shown");
+            }
+            text.append("):\n");
+            List<String> shown = new ArrayList<>(shownYears.size());
+            for (Integer year : shownYears) {
+                shown.add(year + ": " + plain(points.get(year)));
+            }
+            text.append(String.join("; ", shown));
+        } else {
+            text.append("):");
+        }
+        String statistics = statistics(series);
+        if (statistics != null) {
+            text.append('\n').append(statistics);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Keeps the first and the last year, evenly spaced years in between and the years of the minimum and maximum.
+     */
+    private static Set<Integer> downsample(Series series, int maxPoints) {
+        List<Integer> years = new ArrayList<>(series.points().keySet());
+        if (years.size() <= maxPoints) {
+            return new TreeSet<>(years);
+        }
+        Map.Entry<Integer, BigDecimal> min = null;
+        Map.Entry<Integer, BigDecimal> max = null;
+        for (Map.Entry<Integer, BigDecimal> point : numericPoints(series).entrySet()) {
+            if (min == null || point.getValue().compareTo(min.getValue()) < 0) {
+                min = point;
+            }
+            if (max == null || point.getValue().compareTo(max.getValue()) > 0) {
+                max = point;
+            }
+        }
+        for (int spaced = maxPoints; ; spaced--) {
+            TreeSet<Integer> shown = new TreeSet<>();
+            for (int i = 0; i < spaced; i++) {
+                shown.add(years.get((int) Math.round((double) i * (years.size() - 1) / (spaced - 1))));
+            }
+            if (min != null) {
+                shown.add(min.getKey());
+                shown.add(max.getKey());
+            }
+            if (shown.size() <= maxPoints || spaced == 2) {
+                return shown;
+            }
+        }
+    }
+
+    private static TreeMap<Integer, BigDecimal> numericPoints(Series series) {
+        TreeMap<Integer, BigDecimal> numeric = new TreeMap<>();
+        series.points().forEach((year, value) -> {
+            if (value != null) {
+                numeric.put(year, value);
+            }
+        });
+        return numeric;
+    }
+
+    private static String plain(BigDecimal value) {
+        return value == null ? "null" : value.toPlainString();
+    }
+
+    private static String statistics(Series series) {
+        TreeMap<Integer, BigDecimal> numeric = numericPoints(series);
+        if (numeric.size() < 2) {
+            return null;
+        }
+        Map.Entry<Integer, BigDecimal> first = numeric.firstEntry();
+        Map.Entry<Integer, BigDecimal> last = numeric.lastEntry();
+        Map.Entry<Integer, BigDecimal> min = first;
+        Map.Entry<Integer, BigDecimal> max = first;
+        BigDecimal sum = BigDecimal.ZERO;
+        for (Map.Entry<Integer, BigDecimal> point : numeric.entrySet()) {
+            sum = sum.add(point.getValue());
+            if (point.getValue().compareTo(min.getValue()) < 0) {
+                min = point;
+            }
+            if (point.getValue().compareTo(max.getValue()) > 0) {
+                max = point;
+            }
+        }
+        BigDecimal mean = sum.divide(BigDecimal.valueOf(numeric.size()), STATS_PRECISION);
+
+        StringBuilder text = new StringBuilder("stats: ");
+        text.append("min ").append(min.getKey()).append(": ").append(round(min.getValue()))
+                .append(", max ").append(max.getKey()).append(": ").append(round(max.getValue()))
+                .append(", mean ").append(round(mean));
+        if (first.getValue().signum() != 0) {
+            BigDecimal change = last.getValue().subtract(first.getValue())
+                    .multiply(BigDecimal.valueOf(100))
+                    .divide(first.getValue().abs(), 2, RoundingMode.HALF_UP);
+            text.append(", change ").append(first.getKey()).append('-').append(last.getKey()).append(": ")
+                    .append(change.signum() >= 0 ? "+" : "").append(change.toPlainString()).append('%');
+        }
+        int period = last.getKey() - first.getKey();
+        if (period > 0 && first.getValue().signum() > 0 && last.getValue().signum() > 0) {
+            double cagr = Math.pow(last.getValue().doubleValue() / first.getValue().doubleValue(), 1.0 / period) - 1;
+            text.append(", CAGR ").append(String.format("%.2f%%", cagr * 100));
+        }
+        return text.toString();
+    }
+
+    private static String round(BigDecimal value) {
+        return value.round(STATS_PRECISION).stripTrailingZeros().toPlainString();
+    }
+
+    private String truncate(String text) {
+        if (text == null || estimateTokens(text) <= tokenBudget) {
+            return text;
+        }
+        int length = Math.max(0, tokenBudget * 4 - TRUNCATED.length());
+        return text.substring(0, Math.min(length, text.length())) + TRUNCATED;
+    }
+
+    private record Series(String metric, String countryCode, TreeMap<Integer, BigDecimal> points) {
+    }
+}
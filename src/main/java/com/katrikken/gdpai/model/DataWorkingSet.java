@@ -0,0 +1,236 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.DataPoint;
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.tool.DataTool;
+import com.katrikken.gdpai.tool.SeriesResult;
+import com.katrikken.gdpai.tool.TextResult;
+import com.katrikken.gdpai.tool.ToolExecutionContext;
+import com.katrikken.gdpai.tool.ToolResult;
+import io.micrometer.core.instrument.Counter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The data fetched in the turns of one session, by metric and country, so follow-up questions reuse it.
+ * <p>
+ * Results of the country tools are kept: whole series (by country and trend tools) and single years (by country and
+ * year tools), as well as the resolved country codes. Calls asking for data that is kept are served from it. The
+ * series used in the last turn are its focus: a follow-up question that names no metric or country is about them.
+ * At most maxSeries series are kept, the least recently used are dropped first.
+ */
+public class DataWorkingSet {
+
+    private static final Map<String, SeriesTool> SERIES_TOOLS = Map.of(
+            "gdpByCountry", new SeriesTool(Metric.GDP, false),
+            "gdpTrendForCountry", new SeriesTool(Metric.GDP, true),
+            "populationByCountry", new SeriesTool(Metric.POPULATION, false),
+            "populationTrendForCountry", new SeriesTool(Metric.POPULATION, true),
+            "gdpPerCapitaByCountry", new SeriesTool(Metric.GDP_PER_CAPITA, false),
+            "gdpPerCapitaTrendForCountry", new SeriesTool(Metric.GDP_PER_CAPITA, true));
+    private static final Map<String, Metric> YEAR_TOOLS = Map.of(
+            "gdpByCountryYear", Metric.GDP,
+            "populationByCountryYear", Metric.POPULATION);
+    private static final String COUNTRY_CODE_TOOL = "countryNameToCountryCode";
+
+    private final int maxSeries;
+    private final Counter servedCalls;
+    private final Counter keptResults;
+    private final Map<SeriesKey, Series> series = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, TextResult> countryCodes = new LinkedHashMap<>();
+    private Set<SeriesKey> focus = Set.of();
+    private final Set<SeriesKey> turnFocus = new LinkedHashSet<>();
+
+    DataWorkingSet(int maxSeries, Counter servedCalls, Counter keptResults) {
+        this.maxSeries = maxSeries;
+        this.servedCalls = servedCalls;
+        this.keptResults = keptResults;
+    }
+
+    /**
+     * Starts a turn, the series used in it become the focus of the next turn.
+     */
+    synchronized void startTurn() {
+        if (!turnFocus.isEmpty()) {
+            focus = Set.copyOf(turnFocus);
+            turnFocus.clear();
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return series.isEmpty();
+    }
+
+    /**
+     * The series the last turn was about.
+     */
+    synchronized Set<SeriesKey> getFocus() {
+        return turnFocus.isEmpty() ? focus : Set.copyOf(turnFocus);
+    }
+
+    /**
+     * Returns the kept series, or null if it is not kept.
+     */
+    synchronized SeriesResult get(SeriesKey key, Collection<Integer> years) {
+        Series kept = series.get(key);
+        if (kept == null || !(kept.complete() || !years.isEmpty() && kept.points().keySet().containsAll(years))) {
+            return null;
+        }
+        turnFocus.add(key);
+        return SeriesResult.trend(key.metric().getLabel(), key.countryCode(), List.copyOf(kept.points().values()));
+    }
+
+    /**
+     * Describes the kept series, e.g. "GDP of CZE 1990-2024 (35 values)".
+     */
+    synchronized List<String> describe() {
+        List<String> descriptions = new ArrayList<>(series.size());
+        series.forEach((key, kept) -> descriptions.add(String.format("%s of %s %d-%d (%d values)",
+                key.metric().getLabel(), key.countryCode(), kept.points().firstKey(), kept.points().lastKey(),
+                kept.points().size())));
+        return descriptions;
+    }
+
+    /**
+     * Keeps the data of another working set as if it was fetched in this turn, e.g. the data of a request whose answer
+     * this session shared.
+     */
+    void keepAll(DataWorkingSet source) {
+        if (source == this) {
+            return;
+        }
+        Map<SeriesKey, Series> sourceSeries;
+        Map<String, TextResult> sourceCountryCodes;
+        synchronized (source) {
+            sourceSeries = new LinkedHashMap<>(source.series);
+            sourceCountryCodes = new LinkedHashMap<>(source.countryCodes);
+        }
+        synchronized (this) {
+            countryCodes.putAll(sourceCountryCodes);
+            sourceSeries.forEach((key, kept) -> {
+                series.put(key, kept);
+                turnFocus.add(key);
+            });
+            trim();
+        }
+    }
+
+    /**
+     * Drops the kept series of the metrics, e.g. after their data changed.
+     */
+    synchronized void forget(Set<Metric> metrics) {
+        series.keySet().removeIf(key -> metrics.contains(key.metric()));
+        turnFocus.removeIf(key -> metrics.contains(key.metric()));
+    }
+
+    /**
+     * Serves the tool calls asking for kept data, passes all other calls to the delegate and keeps their results.
+     */
+    ToolExecutionContext.ToolCallInterceptor interceptor(ToolExecutionContext.ToolCallInterceptor delegate) {
+        return (toolName, argument, call) -> {
+            ToolResult kept = serve(toolName, argument);
+            if (kept != null) {
+                servedCalls.increment();
+                return kept;
+            }
+            ToolResult result = delegate == null ? call.get() : delegate.intercept(toolName, argument, call);
+            keep(toolName, argument, result);
+            return result;
+        };
+    }
+
+    private synchronized ToolResult serve(String toolName, Object argument) {
+        if (COUNTRY_CODE_TOOL.equals(toolName) && argument instanceof DataTool.CountryQuery query && query.countryName() != null) {
+            return countryCodes.get(query.countryName().toLowerCase(Locale.ROOT));
+        }
+        SeriesTool seriesTool = SERIES_TOOLS.get(toolName);
+        if (seriesTool != null && argument instanceof DataTool.CountryCodeQuery query && query.countryCode() != null) {
+            SeriesKey key = SeriesKey.of(seriesTool.metric(), query.countryCode());
+            Series kept = series.get(key);
+            if (kept == null || !kept.complete()) {
+                return null;
+            }
+            turnFocus.add(key);
+            List<DataPoint> points = List.copyOf(kept.points().values());
+            return seriesTool.trend()
+                    ? SeriesResult.trend(key.metric().getLabel(), key.countryCode(), points)
+                    : SeriesResult.records(key.metric().getLabel(), points);
+        }
+        Metric metric = YEAR_TOOLS.get(toolName);
+        if (metric != null && argument instanceof DataTool.CountryCodeYearQuery query && query.countryCode() != null) {
+            SeriesKey key = SeriesKey.of(metric, query.countryCode());
+            Series kept = series.get(key);
+            DataPoint point = kept == null ? null : kept.points().get(query.year());
+            if (point == null) {
+                return null;
+            }
+            turnFocus.add(key);
+            return SeriesResult.records(metric.getLabel(), List.of(point));
+        }
+        return null;
+    }
+
+    private synchronized void keep(String toolName, Object argument, ToolResult result) {
+        if (COUNTRY_CODE_TOOL.equals(toolName) && argument instanceof DataTool.CountryQuery query
+                && query.countryName() != null && result instanceof TextResult text && !text.text().startsWith("Error")) {
+            countryCodes.put(query.countryName().toLowerCase(Locale.ROOT), text);
+            return;
+        }
+        if (!(result instanceof SeriesResult seriesResult) || seriesResult.getMessage() != null
+                || seriesResult.getPoints().isEmpty()) {
+            return;
+        }
+        SeriesTool seriesTool = SERIES_TOOLS.get(toolName);
+        if (seriesTool != null && argument instanceof DataTool.CountryCodeQuery query) {
+            keptResults.increment();
+            put(SeriesKey.of(seriesTool.metric(), query.countryCode()), seriesResult.getPoints(), true);
+        } else if (YEAR_TOOLS.containsKey(toolName) && argument instanceof DataTool.CountryCodeYearQuery query) {
+            keptResults.increment();
+            put(SeriesKey.of(YEAR_TOOLS.get(toolName), query.countryCode()), seriesResult.getPoints(), false);
+        }
+    }
+
+    private void put(SeriesKey key, List<DataPoint> points, boolean complete) {
+        Series kept = series.get(key);
+        TreeMap<Integer, DataPoint> merged = complete || kept == null ? new TreeMap<>() : new TreeMap<>(kept.points());
+        points.forEach(point -> merged.put(point.year(), point));
+        series.put(key, new Series(merged, complete || kept != null && kept.complete()));
+        turnFocus.add(key);
+        trim();
+    }
+
+    private void trim() {
+        while (series.size() > maxSeries) {
+            SeriesKey eldest = series.keySet().iterator().next();
+            series.remove(eldest);
+            turnFocus.remove(eldest);
+        }
+    }
+
+    /**
+     * A metric of a country.
+     */
+    record SeriesKey(Metric metric, String countryCode) {
+
+        static SeriesKey of(Metric metric, String countryCode) {
+            return new SeriesKey(metric, countryCode.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Values by year, complete when the whole series was fetched.
+     */
+    private record Series(TreeMap<Integer, DataPoint> points, boolean complete) {
+    }
+
+    private record SeriesTool(Metric metric, boolean trend) {
+    }
+}
@@ -0,0 +1,139 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.DataChangedEvent;
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.dto.SessionEvictedEvent;
+import com.katrikken.gdpai.entity.Country;
+import com.katrikken.gdpai.tool.SeriesResult;
+import com.katrikken.gdpai.tool.ToolCallRecorder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a {@link DataWorkingSet} per session, so follow-up questions reuse the data of the earlier turns.
+ * <p>
+ * Working sets are kept in memory of this instance as long as the {@link SessionManager} tracks their session, and are
+ * dropped when it evicts the session. A turn served by another instance fetches its data again. When the data of a
+ * metric changes, the kept series of the metric and of GDP per capita computed from it are dropped from all sessions.
+ * A follow-up question is answered from the working set alone, without the plan and tool calls, when it asks about
+ * kept series only: the metrics and countries it names, or those of the last turn when it names none.
+ */
+@Component
+@Log4j2
+public class DataWorkingSets {
+
+    static final String EARLIER_DATA = "Data retrieved in earlier turns of this conversation:\n";
+
+    private final CountryIndex countryIndex;
+    private final DataReducer dataReducer;
+    private final Map<String, DataWorkingSet> workingSets = new ConcurrentHashMap<>();
+    private final Counter servedCalls;
+    private final Counter keptResults;
+    private final Counter followUps;
+
+    @Value("${app.working-set.enabled:true}")
+    private boolean enabled = true;
+    @Value("${app.working-set.max-series:32}")
+    private int maxSeries = 32;
+
+    public DataWorkingSets(CountryIndex countryIndex, DataReducer dataReducer, MeterRegistry meterRegistry) {
+        this.countryIndex = countryIndex;
+        this.dataReducer = dataReducer;
+        this.servedCalls = resultCounter(meterRegistry, "served");
+        this.keptResults = resultCounter(meterRegistry, "kept");
+        this.followUps = Counter.builder("agent.working.set.follow.ups")
+                .description("Follow-up questions answered from the data of earlier turns without plan and tool calls")
+                .register(meterRegistry);
+    }
+
+    private static Counter resultCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("agent.working.set.results")
+                .description("Tool results served from or kept in the session working sets")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the working set of the session, a new one for every call when working sets are disabled.
+     */
+    public DataWorkingSet forSession(String conversationId) {
+        if (!enabled || conversationId == null) {
+            return newWorkingSet();
+        }
+        return workingSets.computeIfAbsent(conversationId, id -> newWorkingSet());
+    }
+
+    @EventListener
+    public void onSessionEvicted(SessionEvictedEvent event) {
+        workingSets.remove(event.sessionId());
+    }
+
+    @EventListener
+    public void onDataChanged(DataChangedEvent event) {
+        Set<Metric> changed = EnumSet.of(event.metric());
+        if (event.metric() != Metric.GDP_PER_CAPITA) {
+            changed.add(Metric.GDP_PER_CAPITA);
+        }
+        workingSets.values().forEach(workingSet -> workingSet.forget(changed));
+        log.info("{} data changed, dropped the kept series of {}", event.metric().getLabel(), changed);
+    }
+
+    /**
+     * A working set for a single turn, e.g. of a request outside a session.
+     */
+    public DataWorkingSet newWorkingSet() {
+        return new DataWorkingSet(maxSeries, servedCalls, keptResults);
+    }
+
+    /**
+     * Returns the data to answer a follow-up question from, or null when the question needs data that is not kept.
+     */
+    public String reusableData(DataWorkingSet workingSet, String userInput) {
+        if (!enabled || userInput == null || workingSet.isEmpty() || ToolSelector.needsCrossCountryData(userInput)) {
+            return null;
+        }
+        Set<DataWorkingSet.SeriesKey> focus = workingSet.getFocus();
+        Set<Metric> metrics = MetricKeywords.find(userInput);
+        if (metrics.isEmpty()) {
+            focus.stream().map(DataWorkingSet.SeriesKey::metric).forEach(metrics::add);
+        }
+        Set<String> countries = new LinkedHashSet<>();
+        countryIndex.findCountries(userInput).stream().map(Country::getCountryCode).forEach(countries::add);
+        if (countries.isEmpty()) {
+            focus.stream().map(DataWorkingSet.SeriesKey::countryCode).forEach(countries::add);
+        }
+        if (metrics.isEmpty() || countries.isEmpty()) {
+            return null;
+        }
+
+        Set<Integer> years = new TreeSet<>();
+        DataReducer.YEAR.matcher(userInput).results().map(m -> Integer.parseInt(m.group())).forEach(years::add);
+        List<ToolCallRecorder.RecordedCall> calls = new ArrayList<>();
+        for (Metric metric : metrics) {
+            for (String country : countries) {
+                DataWorkingSet.SeriesKey key = DataWorkingSet.SeriesKey.of(metric, country);
+                SeriesResult series = workingSet.get(key, years);
+                if (series == null) {
+                    return null;
+                }
+                calls.add(new ToolCallRecorder.RecordedCall("workingSet", key, series));
+            }
+        }
+        followUps.increment();
+        log.info("Answering the follow-up from the data of earlier turns: {}", workingSet.describe());
+        return EARLIER_DATA + dataReducer.reduce(userInput, calls, "");
+    }
+}
@@ -0,0 +1,40 @@
+package com.katrikken.gdpai.model;
+
+import java.util.Arrays;
+
+/**
+ * The latencies of the last calls, for percentiles of the recent latency.
+ */
+class LatencyWindow {
+
+    private final long[] latencies;
+    private int next;
+    private int size;
+
+    LatencyWindow(int capacity) {
+        this.latencies = new long[Math.max(1, capacity)];
+    }
+
+    synchronized void record(long latencyMillis) {
+        latencies[next] = latencyMillis;
+        next = (next + 1) % latencies.length;
+        size = Math.min(size + 1, latencies.length);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * The latency below which the given share of the recorded calls finished, -1 when nothing was recorded.
+     */
+    synchronized long percentile(double share) {
+        if (size == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(share * size) - 1;
+        return sorted[Math.clamp(index, 0, size - 1)];
+    }
+}
@@ -0,0 +1,31 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.LLMType;
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.util.function.Supplier;
+
+/**
+ * An LLM provider the agent can use, registered as a bean. The {@link LlmBackendRegistry} only asks for the chat model
+ * when the backend is enabled in app.llm.backends and used for the first time.
+ */
+public interface LlmBackend {
+
+    LLMType type();
+
+    ChatModel chatModel();
+
+    static LlmBackend of(LLMType type, Supplier<? extends ChatModel> chatModel) {
+        return new LlmBackend() {
+            @Override
+            public LLMType type() {
+                return type;
+            }
+
+            @Override
+            public ChatModel chatModel() {
+                return chatModel.get();
+            }
+        };
+    }
+}
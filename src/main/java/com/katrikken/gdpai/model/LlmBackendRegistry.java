@@ -0,0 +1,109 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.LLMType;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chat clients of the LLM backends enabled in app.llm.backends, keyed by {@link LLMType}.
+ * <p>
+ * A backend is a {@link LlmBackend} bean; its chat client, with the bulkhead, metrics, chat memory and retry
+ * advisors, is created when the backend is first used. The backend of app.default-model is created at startup, so the
+ * first request does not wait for it. Backends that are not enabled are never created, and their Spring AI
+ * auto-configurations are switched off by {@code LlmBackendEnvironmentPostProcessor}.
+ */
+@Component
+@Log4j2
+public class LlmBackendRegistry {
+
+    private final Map<LLMType, LlmBackend> backends = new EnumMap<>(LLMType.class);
+    private final Map<LLMType, ChatClient> chatClients = new ConcurrentHashMap<>();
+    private final ChatMemory chatMemory;
+    private final ModelRouter modelRouter;
+    private final LlmBulkheads bulkheads;
+    private final LlmCallPolicy callPolicy;
+
+    public LlmBackendRegistry(List<LlmBackend> backends,
+                              @Value("${app.llm.backends:ollama,openai}") List<String> enabled,
+                              @Value("${app.default-model:ollama}") String defaultModel,
+                              ChatMemory chatMemory,
+                              ModelRouter modelRouter,
+                              LlmBulkheads bulkheads,
+                              LlmCallPolicy callPolicy) {
+        this.chatMemory = chatMemory;
+        this.modelRouter = modelRouter;
+        this.bulkheads = bulkheads;
+        this.callPolicy = callPolicy;
+        Set<LLMType> enabledTypes = parse(enabled);
+        for (LlmBackend backend : backends) {
+            if (enabledTypes.contains(backend.type())) {
+                this.backends.put(backend.type(), backend);
+            }
+        }
+        enabledTypes.removeAll(this.backends.keySet());
+        if (!enabledTypes.isEmpty()) {
+            throw new IllegalStateException("No provider for the LLM backends " + enabledTypes + " in app.llm.backends");
+        }
+        LLMType defaultType = parse(List.of(defaultModel)).iterator().next();
+        if (!isEnabled(defaultType)) {
+            throw new IllegalStateException("app.default-model " + defaultModel + " is not in app.llm.backends " + enabled);
+        }
+        log.info("Enabled LLM backends: {}", this.backends.keySet());
+        chatClient(defaultType);
+    }
+
+    private static Set<LLMType> parse(List<String> names) {
+        Set<LLMType> types = EnumSet.noneOf(LLMType.class);
+        for (String name : names) {
+            if (!name.isBlank()) {
+                types.add(LLMType.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Chat client of the backend, created on first use.
+     *
+     * @throws IllegalArgumentException when the backend is not enabled
+     */
+    public ChatClient chatClient(LLMType type) {
+        LlmBackend backend = backends.get(type);
+        if (backend == null) {
+            throw new IllegalArgumentException("The LLM backend " + type.getValue() + " is not enabled");
+        }
+        return chatClients.computeIfAbsent(type, t -> createChatClient(backend));
+    }
+
+    public boolean isEnabled(LLMType type) {
+        return backends.containsKey(type);
+    }
+
+    public Set<LLMType> getEnabled() {
+        return Collections.unmodifiableSet(backends.keySet());
+    }
+
+    private ChatClient createChatClient(LlmBackend backend) {
+        log.info("Initializing the {} backend", backend.type());
+        return ChatClient.builder(backend.chatModel())
+                .defaultAdvisors(bulkheads.advisor(backend.type()),
+                        modelRouter.metricsAdvisor(backend.type()),
+                        MessageChatMemoryAdvisor.builder(chatMemory).build(),
+                        callPolicy.advisor(),
+                        new SystemMessageFirstAdvisor())
+                .build();
+    }
+}
@@ -0,0 +1,169 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.LLMType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One {@link Bulkhead} per LLM backend, applied to every call of the backend's chat client through
+ * {@link #advisor(LLMType)}. Calls over the limit wait in a bounded queue; when the queue is full or the wait
+ * times out a {@link BackendSaturatedException} is thrown, which the controller turns into 503 with Retry-After.
+ * The backend's bulkhead is put into the context of the request under {@link #BULKHEAD}, so an extra call made for
+ * it, e.g. a hedged call of {@link LlmCallPolicy}, can take a permit of its own. The call's {@link Permit} is put
+ * there under {@link #PERMIT}, so it can be returned while the call is not running, e.g. during the backoff of a retry.
+ * <p>
+ * Configured per backend under app.bulkhead.{backend}, e.g. app.bulkhead.ollama.max-queue.
+ */
+@Component
+@Log4j2
+public class LlmBulkheads {
+
+    static final String BULKHEAD = "agent.bulkhead";
+    static final String PERMIT = "agent.bulkhead.permit";
+
+    private final Map<LLMType, Bulkhead> bulkheads = new EnumMap<>(LLMType.class);
+    private final Map<LLMType, Long> maxWaitMillis = new EnumMap<>(LLMType.class);
+    private final Map<LLMType, Map<Bulkhead.Rejection, Counter>> rejections = new EnumMap<>(LLMType.class);
+
+    public LlmBulkheads(Environment environment, MeterRegistry meterRegistry) {
+        for (LLMType backend : LLMType.values()) {
+            String prefix = "app.bulkhead." + backend.getValue() + ".";
+            Bulkhead bulkhead = new Bulkhead(
+                    environment.getProperty(prefix + "initial-limit", Integer.class, 4),
+                    environment.getProperty(prefix + "min-limit", Integer.class, 1),
+                    environment.getProperty(prefix + "max-limit", Integer.class, 16),
+                    environment.getProperty(prefix + "max-queue", Integer.class, 32),
+                    environment.getProperty(prefix + "target-latency-ms", Long.class, 30000L));
+            bulkheads.put(backend, bulkhead);
+            maxWaitMillis.put(backend, environment.getProperty(prefix + "max-wait-ms", Long.class, 30000L));
+
+            Gauge.builder("agent.bulkhead.queue.depth", bulkhead, Bulkhead::getWaiting)
+                    .description("LLM calls waiting for a permit")
+                    .tag("backend", backend.getValue())
+                    .register(meterRegistry);
+            Gauge.builder("agent.bulkhead.in.flight", bulkhead, Bulkhead::getInFlight)
+                    .description("LLM calls being executed")
+                    .tag("backend", backend.getValue())
+                    .register(meterRegistry);
+            Gauge.builder("agent.bulkhead.limit", bulkhead, Bulkhead::getLimit)
+                    .description("Current adaptive concurrency limit")
+                    .tag("backend", backend.getValue())
+                    .register(meterRegistry);
+
+            Map<Bulkhead.Rejection, Counter> counters = new EnumMap<>(Bulkhead.Rejection.class);
+            for (Bulkhead.Rejection rejection : Bulkhead.Rejection.values()) {
+                counters.put(rejection, Counter.builder("agent.bulkhead.rejections")
+                        .description("LLM calls rejected because the backend was saturated")
+                        .tags("backend", backend.getValue(), "reason", rejection.name().toLowerCase(Locale.ROOT))
+                        .register(meterRegistry));
+            }
+            rejections.put(backend, counters);
+        }
+    }
+
+    /**
+     * Advisor limiting the concurrent calls of the backend's chat client.
+     */
+    public CallAdvisor advisor(LLMType backend) {
+        return new BulkheadAdvisor(backend);
+    }
+
+    private class BulkheadAdvisor implements CallAdvisor {
+
+        private final LLMType backend;
+        private final Bulkhead bulkhead;
+
+        private BulkheadAdvisor(LLMType backend) {
+            this.backend = backend;
+            this.bulkhead = bulkheads.get(backend);
+        }
+
+        @Override
+        public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+            Permit permit = new Permit(backend, bulkhead);
+            permit.acquire();
+            boolean success = false;
+            try {
+                ChatClientResponse response = chain.nextCall(request.mutate()
+                        .context(BULKHEAD, bulkhead)
+                        .context(PERMIT, permit)
+                        .build());
+                success = true;
+                return response;
+            } finally {
+                permit.release(success);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "BulkheadAdvisor";
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+
+    /**
+     * The permit of one call through the {@link BulkheadAdvisor}. It is used by the thread of the call only.
+     */
+    final class Permit {
+
+        private final LLMType backend;
+        private final Bulkhead bulkhead;
+        private boolean held;
+        private long acquiredNanos;
+
+        private Permit(LLMType backend, Bulkhead bulkhead) {
+            this.backend = backend;
+            this.bulkhead = bulkhead;
+        }
+
+        /**
+         * Takes the permit, waiting at most app.bulkhead.{backend}.max-wait-ms.
+         *
+         * @throws BackendSaturatedException when the queue is full or the wait timed out
+         */
+        void acquire() {
+            Bulkhead.Rejection rejection;
+            try {
+                rejection = bulkhead.acquire(maxWaitMillis.get(backend));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the " + backend.getValue() + " backend", e);
+            }
+            if (rejection != null) {
+                rejections.get(backend).get(rejection).increment();
+                log.warn("Rejecting call to {} backend: {}", backend, rejection);
+                throw new BackendSaturatedException(backend, bulkhead.retryAfterSeconds());
+            }
+            held = true;
+            acquiredNanos = System.nanoTime();
+        }
+
+        /**
+         * Returns the permit, adjusting the limit by the latency since it was taken. Does nothing when it is not held.
+         */
+        void release(boolean success) {
+            if (held) {
+                held = false;
+                bulkhead.release(System.nanoTime() - acquiredNanos, success);
+            }
+        }
+    }
+}
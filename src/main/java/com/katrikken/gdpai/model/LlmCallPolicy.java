@@ -0,0 +1,333 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.tool.ToolExecutionContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Retries and hedging of the LLM calls, applied to every call of the chat clients through {@link #advisor()}.
+ * <p>
+ * A call failing with a transient error (I/O errors, 5xx responses) is repeated up to max-attempts times after an
+ * exponential backoff with jitter: half of the backoff is fixed, the other half random, so the retries of concurrent
+ * requests do not arrive together. Only the failed call is repeated: the workflow keeps the results of its earlier
+ * phases, and the tool results of a repeated tools call are served from the session's {@link DataWorkingSet}.
+ * The retries end with the deadline of the phase ({@link RequestDeadline}), which interrupts the backoff.
+ * The bulkhead permit of the call ({@link LlmBulkheads#PERMIT}) is returned during the backoff and taken again
+ * before the retry, so a waiting call does not keep other calls to the backend waiting.
+ * Calls offering a tool that writes data ({@link ToolSelector#WRITE_TOOLS}) are neither repeated nor hedged, as the
+ * tools may have run before the call failed.
+ * <p>
+ * With hedging, a second identical call is made when the first one has not returned after the recent p95 latency of
+ * the phase (app.llm-calls.hedge.percentile of the last window calls, at least min-delay-ms), and the first result is
+ * taken. No call is hedged until min-samples calls of the phase were measured. Hedging cuts the tail latency at the
+ * cost of extra calls, so it is off by default. The hedged call takes a permit of its own from the backend's
+ * {@link Bulkhead} without waiting; when none is free the call is not hedged.
+ * <p>
+ * Configured per phase under app.llm-calls.{phase}, e.g. app.llm-calls.analysis.max-attempts.
+ */
+@Component
+@Log4j2
+public class LlmCallPolicy {
+
+    private final Map<WorkflowPhase, PhasePolicy> policies = new EnumMap<>(WorkflowPhase.class);
+    private final Map<WorkflowPhase, LatencyWindow> latencies = new EnumMap<>(WorkflowPhase.class);
+    private final Map<WorkflowPhase, Counter> retries = new EnumMap<>(WorkflowPhase.class);
+    private final Map<WorkflowPhase, Counter> hedges = new EnumMap<>(WorkflowPhase.class);
+    private final Map<WorkflowPhase, Counter> hedgeWins = new EnumMap<>(WorkflowPhase.class);
+    private final double hedgePercentile;
+    private final long hedgeMinDelayMillis;
+    private final int hedgeMinSamples;
+    private final ExecutorService workflowExecutor;
+
+    public LlmCallPolicy(Environment environment,
+                         @Qualifier("workflowExecutor") ExecutorService workflowExecutor,
+                         MeterRegistry meterRegistry) {
+        this.workflowExecutor = workflowExecutor;
+        this.hedgePercentile = environment.getProperty("app.llm-calls.hedge.percentile", Double.class, 0.95);
+        this.hedgeMinDelayMillis = environment.getProperty("app.llm-calls.hedge.min-delay-ms", Long.class, 1000L);
+        this.hedgeMinSamples = environment.getProperty("app.llm-calls.hedge.min-samples", Integer.class, 20);
+        int window = environment.getProperty("app.llm-calls.hedge.window", Integer.class, 200);
+        for (WorkflowPhase phase : WorkflowPhase.values()) {
+            String name = phase.name().toLowerCase(Locale.ROOT);
+            String prefix = "app.llm-calls." + name + ".";
+            policies.put(phase, new PhasePolicy(
+                    Math.max(1, environment.getProperty(prefix + "max-attempts", Integer.class, 3)),
+                    environment.getProperty(prefix + "backoff-ms", Long.class, 500L),
+                    environment.getProperty(prefix + "max-backoff-ms", Long.class, 4000L),
+                    environment.getProperty(prefix + "hedge", Boolean.class, false)));
+            latencies.put(phase, new LatencyWindow(window));
+            retries.put(phase, Counter.builder("agent.llm.retries")
+                    .description("LLM calls repeated after a transient failure")
+                    .tag("phase", name)
+                    .register(meterRegistry));
+            hedges.put(phase, hedgeCounter(meterRegistry, name, "fired"));
+            hedgeWins.put(phase, hedgeCounter(meterRegistry, name, "won"));
+        }
+    }
+
+    private static Counter hedgeCounter(MeterRegistry meterRegistry, String phase, String outcome) {
+        return Counter.builder("agent.llm.hedges")
+                .description("Hedged LLM calls made, and those returning before the call they hedged")
+                .tags("phase", phase, "outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Advisor repeating and hedging the calls of a chat client. It runs inside the chat memory advisor,
+     * so a repeated call does not add the prompt to the conversation again.
+     */
+    public CallAdvisor advisor() {
+        return new RetryAdvisor();
+    }
+
+    /**
+     * The wait before the given retry (1 for the first), exponential with jitter.
+     */
+    long backoffMillis(WorkflowPhase phase, int retry) {
+        PhasePolicy policy = policies.get(phase);
+        long backoff = Math.min(policy.maxBackoffMillis(), policy.backoffMillis() << Math.min(retry - 1, 20));
+        long fixed = backoff / 2;
+        return fixed + ThreadLocalRandom.current().nextLong(backoff - fixed + 1);
+    }
+
+    /**
+     * The time after which a call of the phase is hedged, -1 when it is not hedged.
+     */
+    long hedgeDelayMillis(WorkflowPhase phase) {
+        LatencyWindow window = latencies.get(phase);
+        if (!policies.get(phase).hedge() || window.size() < hedgeMinSamples) {
+            return -1;
+        }
+        return Math.max(hedgeMinDelayMillis, window.percentile(hedgePercentile));
+    }
+
+    /**
+     * Whether the call offers a tool that writes data, so it must not be made twice.
+     */
+    static boolean writesData(ChatClientRequest request) {
+        if (!(request.prompt().getOptions() instanceof ToolCallingChatOptions options)) {
+            return false;
+        }
+        if (options.getToolNames() != null && options.getToolNames().stream().anyMatch(ToolSelector.WRITE_TOOLS::contains)) {
+            return true;
+        }
+        return options.getToolCallbacks() != null && options.getToolCallbacks().stream()
+                .anyMatch(callback -> ToolSelector.WRITE_TOOLS.contains(callback.getToolDefinition().name()));
+    }
+
+    /**
+     * Whether the failure is transient, so the call can be repeated.
+     */
+    static boolean isRetryable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NonTransientAiException) {
+                return false;
+            }
+            if (cause instanceof TransientAiException || cause instanceof ResourceAccessException
+                    || cause instanceof HttpServerErrorException || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class RetryAdvisor implements CallAdvisor {
+
+        @Override
+        public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+            if (!(request.context().get(WorkflowPhase.CONTEXT_KEY) instanceof WorkflowPhase phase)) {
+                return chain.nextCall(request);
+            }
+            LlmBulkheads.Permit permit =
+                    request.context().get(LlmBulkheads.PERMIT) instanceof LlmBulkheads.Permit p ? p : null;
+            boolean writesData = writesData(request);
+            int maxAttempts = writesData ? 1 : policies.get(phase).maxAttempts();
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return call(phase, request, chain, writesData);
+                } catch (RuntimeException e) {
+                    if (attempt >= maxAttempts || !isRetryable(e)) {
+                        throw e;
+                    }
+                    long backoff = backoffMillis(phase, attempt);
+                    retries.get(phase).increment();
+                    log.warn("The {} call failed ({}), retry {} of {} in {} ms",
+                            phase, e.getMessage(), attempt, maxAttempts - 1, backoff);
+                    if (permit != null) {
+                        permit.release(false);
+                    }
+                    pause(backoff);
+                    if (permit != null) {
+                        permit.acquire();
+                    }
+                }
+            }
+        }
+
+        private ChatClientResponse call(WorkflowPhase phase, ChatClientRequest request, CallAdvisorChain chain,
+                                        boolean writesData) {
+            long hedgeDelay = writesData ? -1 : hedgeDelayMillis(phase);
+            long start = System.nanoTime();
+            if (hedgeDelay < 0) {
+                ChatClientResponse response = chain.copy(this).nextCall(request);
+                latencies.get(phase).record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return response;
+            }
+            return hedged(phase, request, chain, hedgeDelay);
+        }
+
+        /**
+         * Starts the call, and a second one when the first has not returned after the hedge delay.
+         * The first successful response is taken and the other call is cancelled.
+         */
+        private ChatClientResponse hedged(WorkflowPhase phase, ChatClientRequest request, CallAdvisorChain chain,
+                                          long hedgeDelay) {
+            ToolExecutionContext.ToolCallInterceptor interceptor = ToolExecutionContext.current();
+            CompletionService<ChatClientResponse> calls = new ExecutorCompletionService<>(workflowExecutor);
+            List<Attempt> attempts = new ArrayList<>(2);
+            attempts.add(start(calls, interceptor, request, chain, null));
+            try {
+                Future<ChatClientResponse> done = calls.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    Bulkhead bulkhead = request.context().get(LlmBulkheads.BULKHEAD) instanceof Bulkhead b ? b : null;
+                    if (bulkhead == null || bulkhead.tryAcquire()) {
+                        hedges.get(phase).increment();
+                        log.info("The {} call did not return within {} ms, hedging it", phase, hedgeDelay);
+                        attempts.add(start(calls, interceptor, request, chain, bulkhead));
+                    } else {
+                        log.info("The {} call did not return within {} ms, not hedged as the backend is busy",
+                                phase, hedgeDelay);
+                    }
+                }
+                ExecutionException failure = null;
+                for (int pending = attempts.size(); pending > 0; pending--) {
+                    if (done == null) {
+                        done = calls.take();
+                    }
+                    try {
+                        ChatClientResponse response = done.get();
+                        Attempt winner = attempts.get(0).future() == done ? attempts.get(0) : attempts.get(1);
+                        long latencyNanos = System.nanoTime() - winner.startNanos();
+                        latencies.get(phase).record(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+                        if (winner != attempts.get(0)) {
+                            hedgeWins.get(phase).increment();
+                        }
+                        return response;
+                    } catch (ExecutionException e) {
+                        failure = failure == null ? e : failure;
+                        done = null;
+                    }
+                }
+                throw failure.getCause() instanceof RuntimeException runtimeException
+                        ? runtimeException
+                        : new IllegalStateException(failure.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the " + phase + " call");
+            } finally {
+                attempts.forEach(Attempt::cancel);
+            }
+        }
+
+        /**
+         * Starts a call on the workflow executor. A call with a bulkhead permit returns it when it finishes, or when
+         * it is cancelled before it started.
+         */
+        private Attempt start(CompletionService<ChatClientResponse> calls,
+                              ToolExecutionContext.ToolCallInterceptor interceptor,
+                              ChatClientRequest request, CallAdvisorChain chain, Bulkhead bulkhead) {
+            CallAdvisorChain rest = chain.copy(this);
+            AtomicBoolean claimed = new AtomicBoolean();
+            long startNanos = System.nanoTime();
+            Future<ChatClientResponse> future = calls.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    throw new CancellationException("The call was cancelled before it started");
+                }
+                if (bulkhead == null) {
+                    return ToolExecutionContext.callWith(interceptor, () -> rest.nextCall(request));
+                }
+                boolean success = false;
+                try {
+                    ChatClientResponse response = ToolExecutionContext.callWith(interceptor, () -> rest.nextCall(request));
+                    success = true;
+                    return response;
+                } finally {
+                    if (success || !Thread.currentThread().isInterrupted()) {
+                        bulkhead.release(System.nanoTime() - startNanos, success);
+                    } else {
+                        // the other call won, this one is not a failure of the backend
+                        bulkhead.cancel();
+                    }
+                }
+            });
+            return new Attempt(future, startNanos, () -> {
+                future.cancel(true);
+                if (claimed.compareAndSet(false, true) && bulkhead != null) {
+                    bulkhead.cancel();
+                }
+            });
+        }
+
+        private static void pause(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting to retry the LLM call");
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "RetryAdvisor";
+        }
+
+        /**
+         * Runs right inside the chat memory advisor.
+         */
+        @Override
+        public int getOrder() {
+            return Advisor.DEFAULT_CHAT_MEMORY_PRECEDENCE_ORDER + 1;
+        }
+    }
+
+    private record Attempt(Future<ChatClientResponse> future, long startNanos, Runnable canceller) {
+
+        void cancel() {
+            canceller.run();
+        }
+    }
+
+    private record PhasePolicy(int maxAttempts, long backoffMillis, long maxBackoffMillis, boolean hedge) {
+    }
+}
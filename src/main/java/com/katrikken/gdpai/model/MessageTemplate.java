@@ -0,0 +1,72 @@
+package com.katrikken.gdpai.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Message template parsed once into literal text and {@code {placeholder}} parts and rendered in a single pass.
+ * Braces that do not enclose a placeholder name, e.g. in JSON examples, are kept as they are.
+ */
+public final class MessageTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([A-Za-z][A-Za-z0-9_]*)}");
+
+    /**
+     * Literal text around the placeholders, one element more than {@link #names}.
+     */
+    private final String[] literals;
+    private final String[] names;
+    private final int literalLength;
+
+    private MessageTemplate(String[] literals, String[] names) {
+        this.literals = literals;
+        this.names = names;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    public static MessageTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        int position = 0;
+        while (matcher.find()) {
+            literals.add(template.substring(position, matcher.start()));
+            names.add(matcher.group(1));
+            position = matcher.end();
+        }
+        literals.add(template.substring(position));
+        return new MessageTemplate(literals.toArray(String[]::new), names.toArray(String[]::new));
+    }
+
+    /**
+     * @throws IllegalArgumentException if a placeholder of the template has no value
+     */
+    public String render(Map<String, String> values) {
+        int length = literalLength;
+        for (String name : names) {
+            String value = values.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("No value for placeholder {" + name + "}");
+            }
+            length += value.length();
+        }
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < names.length; i++) {
+            text.append(literals[i]).append(values.get(names[i]));
+        }
+        return text.append(literals[names.length]).toString();
+    }
+
+    public Set<String> placeholders() {
+        return new LinkedHashSet<>(List.of(names));
+    }
+}
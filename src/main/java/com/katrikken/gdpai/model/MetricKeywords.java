@@ -0,0 +1,37 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.Metric;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizes the metrics mentioned in free text by the keywords GDP, population and per capita.
+ */
+final class MetricKeywords {
+
+    private static final Pattern PER_CAPITA = Pattern.compile("\\bper[ -]capita\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern GDP = Pattern.compile("\\bgdp\\b(?!\\s+per[ -]capita)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern POPULATION = Pattern.compile("\\bpopulation\\b", Pattern.CASE_INSENSITIVE);
+
+    private MetricKeywords() {
+    }
+
+    /**
+     * Returns the metrics mentioned in the text, empty if there is none.
+     */
+    static Set<Metric> find(String text) {
+        Set<Metric> metrics = EnumSet.noneOf(Metric.class);
+        if (PER_CAPITA.matcher(text).find()) {
+            metrics.add(Metric.GDP_PER_CAPITA);
+        }
+        if (GDP.matcher(text).find()) {
+            metrics.add(Metric.GDP);
+        }
+        if (POPULATION.matcher(text).find()) {
+            metrics.add(Metric.POPULATION);
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,325 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.LLMType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Chooses the LLM backend for every workflow phase of a request.
+ * <p>
+ * Without routing every phase uses the model requested by the client. With routing enabled the plan, tools and
+ * analysis phases use the configured backends (typically the local Ollama model), and the analysis of complex
+ * questions - several countries or comparison keywords - is escalated to a larger model. Escalation is paused while
+ * the larger model is slower than its latency budget or has used up its token budget for the current minute.
+ * While it is paused for latency, one probe call is escalated per probe interval: its latency replaces the average,
+ * which is older than the interval by then, so escalation resumes once the larger model is fast again.
+ */
+@Service
+@Log4j2
+public class ModelRouter {
+
+    public static final String ROUTE_CONTEXT_KEY = "agent.route";
+
+    static final String ROUTE_REQUESTED = "requested";
+    static final String ROUTE_CHEAP = "cheap";
+    static final String ROUTE_ESCALATED = "escalated";
+
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final CountryIndex countryIndex;
+    private final MeterRegistry meterRegistry;
+    private final Map<LLMType, BackendStats> backendStats = new ConcurrentHashMap<>();
+
+    @Value("${app.routing.enabled:false}")
+    private boolean enabled;
+    @Value("${app.routing.plan:}")
+    private String planModel;
+    @Value("${app.routing.tools:}")
+    private String toolsModel;
+    @Value("${app.routing.analysis:}")
+    private String analysisModel;
+    @Value("${app.llm.backends:ollama,openai}")
+    private List<String> enabledBackends;
+    @Value("${app.routing.escalation.model:openai}")
+    private String escalationModel;
+    @Value("${app.routing.escalation.min-countries:2}")
+    private int minCountries;
+    @Value("${app.routing.escalation.keywords:compare,comparison,versus,rank,ranking,correlation}")
+    private List<String> keywords;
+    @Value("${app.routing.escalation.latency-budget-ms:30000}")
+    private long latencyBudgetMs;
+    @Value("${app.routing.escalation.token-budget-per-minute:50000}")
+    private long tokenBudgetPerMinute;
+    @Value("${app.routing.escalation.probe-interval-ms:60000}")
+    private long probeIntervalMs;
+
+    public ModelRouter(CountryIndex countryIndex, MeterRegistry meterRegistry) {
+        this.countryIndex = countryIndex;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Returns the chat clients to use for the phases of one request.
+     *
+     * @param userInput the user's question, used to estimate its complexity
+     * @param requested the backend requested by the client
+     * @param clients   chat client of every backend
+     */
+    public PhaseChatClients route(String userInput, LLMType requested, Function<LLMType, ChatClient> clients) {
+        if (!enabled) {
+            return phase -> prompt(clients.apply(requested), phase, ROUTE_REQUESTED);
+        }
+        boolean complex = isComplex(userInput);
+        return phase -> {
+            LLMType backend = switch (phase) {
+                case PLAN -> backendOrDefault(planModel, requested);
+                case TOOLS -> backendOrDefault(toolsModel, requested);
+                case ANALYSIS -> backendOrDefault(analysisModel, requested);
+            };
+            String route = ROUTE_CHEAP;
+            if (phase == WorkflowPhase.ANALYSIS && complex) {
+                LLMType escalation = LLMType.valueOf(escalationModel.toUpperCase(Locale.ROOT));
+                if (escalation != backend && isEnabled(escalation) && canEscalate(escalation)) {
+                    backend = escalation;
+                    route = ROUTE_ESCALATED;
+                }
+            }
+            log.debug("Routing {} phase to {} ({})", phase, backend, route);
+            return prompt(clients.apply(backend), phase, route);
+        };
+    }
+
+    /**
+     * Questions about several countries or comparisons need a stronger model for the analysis.
+     */
+    boolean isComplex(String userInput) {
+        if (userInput == null) {
+            return false;
+        }
+        String text = userInput.toLowerCase(Locale.ROOT);
+        if (keywords.stream().anyMatch(keyword -> text.contains(keyword.trim().toLowerCase(Locale.ROOT)))) {
+            return true;
+        }
+        return countryIndex.findCountries(userInput).size() >= minCountries;
+    }
+
+    private boolean isEnabled(LLMType backend) {
+        return enabledBackends.stream().anyMatch(name -> name.trim().equalsIgnoreCase(backend.getValue()));
+    }
+
+    private boolean canEscalate(LLMType escalation) {
+        BackendStats stats = statsFor(escalation);
+        if (stats.tokensInCurrentWindow() >= tokenBudgetPerMinute) {
+            escalationCounter("over_token_budget").increment();
+            return false;
+        }
+        if (stats.averageLatencyMillis() > latencyBudgetMs) {
+            if (stats.tryProbe()) {
+                escalationCounter("probe").increment();
+                return true;
+            }
+            escalationCounter("over_latency_budget").increment();
+            return false;
+        }
+        escalationCounter("escalated").increment();
+        return true;
+    }
+
+    private Counter escalationCounter(String outcome) {
+        return Counter.builder("agent.routing.escalations")
+                .description("Analysis calls of complex questions by escalation outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static LLMType backendOrDefault(String configured, LLMType requested) {
+        return configured == null || configured.isBlank()
+                ? requested
+                : LLMType.valueOf(configured.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private static ChatClient.ChatClientRequestSpec prompt(ChatClient chatClient, WorkflowPhase phase, String route) {
+        return chatClient.prompt().advisors(a -> a
+                .param(WorkflowPhase.CONTEXT_KEY, phase)
+                .param(ROUTE_CONTEXT_KEY, route));
+    }
+
+    private BackendStats statsFor(LLMType backend) {
+        return backendStats.computeIfAbsent(backend, b -> new BackendStats(TimeUnit.MILLISECONDS.toNanos(probeIntervalMs)));
+    }
+
+    /**
+     * Advisor recording latency and token usage of every call made through a backend's chat client.
+     * The measurements are exported as metrics per backend, phase and route and feed the escalation budgets.
+     */
+    public CallAdvisor metricsAdvisor(LLMType backend) {
+        return new RouteMetricsAdvisor(backend);
+    }
+
+    private class RouteMetricsAdvisor implements CallAdvisor {
+
+        private final LLMType backend;
+
+        private RouteMetricsAdvisor(LLMType backend) {
+            this.backend = backend;
+        }
+
+        @Override
+        public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+            long start = System.nanoTime();
+            ChatClientResponse response = chain.nextCall(request);
+            long duration = System.nanoTime() - start;
+
+            String phase = String.valueOf(request.context().getOrDefault(WorkflowPhase.CONTEXT_KEY, "unknown"));
+            String route = String.valueOf(request.context().getOrDefault(ROUTE_CONTEXT_KEY, ROUTE_REQUESTED));
+            Timer.builder("agent.llm.calls")
+                    .description("LLM calls by backend, workflow phase and route")
+                    .tags("backend", backend.getValue(), "phase", phase, "route", route)
+                    .register(meterRegistry)
+                    .record(duration, TimeUnit.NANOSECONDS);
+
+            long tokens = totalTokens(response);
+            DistributionSummary.builder("agent.llm.tokens")
+                    .description("Tokens used per LLM call by backend, workflow phase and route")
+                    .tags("backend", backend.getValue(), "phase", phase, "route", route)
+                    .register(meterRegistry)
+                    .record(tokens);
+
+            recordPromptCache(response, phase, route);
+
+            statsFor(backend).record(duration, tokens);
+            return response;
+        }
+
+        /**
+         * Counts prompt tokens served from the provider's prompt cache. Only OpenAI reports them.
+         */
+        private void recordPromptCache(ChatClientResponse response, String phase, String route) {
+            if (response.chatResponse() == null || response.chatResponse().getMetadata() == null) {
+                return;
+            }
+            Usage usage = response.chatResponse().getMetadata().getUsage();
+            if (usage == null || usage.getPromptTokens() == null
+                    || !(usage.getNativeUsage() instanceof OpenAiApi.Usage openAiUsage)
+                    || openAiUsage.promptTokensDetails() == null
+                    || openAiUsage.promptTokensDetails().cachedTokens() == null) {
+                return;
+            }
+            int cached = openAiUsage.promptTokensDetails().cachedTokens();
+            promptTokenCounter("hit", phase, route).increment(cached);
+            promptTokenCounter("miss", phase, route).increment(Math.max(0, usage.getPromptTokens() - cached));
+        }
+
+        private Counter promptTokenCounter(String cache, String phase, String route) {
+            return Counter.builder("agent.llm.prompt.tokens")
+                    .description("Prompt tokens by backend, workflow phase, route and whether the provider had them cached")
+                    .tags("backend", backend.getValue(), "phase", phase, "route", route, "cache", cache)
+                    .register(meterRegistry);
+        }
+
+        private static long totalTokens(ChatClientResponse response) {
+            if (response.chatResponse() == null || response.chatResponse().getMetadata() == null) {
+                return 0;
+            }
+            Usage usage = response.chatResponse().getMetadata().getUsage();
+            return usage == null || usage.getTotalTokens() == null ? 0 : usage.getTotalTokens();
+        }
+
+        @Override
+        public String getName() {
+            return "RouteMetricsAdvisor";
+        }
+
+        /**
+         * Runs inside the bulkhead, so the time spent waiting for the permit of the call is not counted.
+         * The backoff of a retry and the wait for its permit are.
+         */
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE + 10;
+        }
+    }
+
+    /**
+     * Smoothed latency and tokens used in the current one-minute window of a backend.
+     * A latency measured after a pause longer than the probe interval replaces the average instead of being
+     * smoothed into it.
+     */
+    private static class BackendStats {
+
+        private final long probeIntervalNanos;
+        private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+        private final AtomicLong windowTokens = new AtomicLong();
+        private final AtomicLong lastProbe = new AtomicLong();
+        private volatile double averageLatencyMillis;
+        private volatile long lastCall;
+
+        BackendStats(long probeIntervalNanos) {
+            this.probeIntervalNanos = probeIntervalNanos;
+            this.lastCall = System.nanoTime();
+            this.lastProbe.set(lastCall - probeIntervalNanos);
+        }
+
+        void record(long durationNanos, long tokens) {
+            double millis = durationNanos / 1_000_000.0;
+            long now = System.nanoTime();
+            synchronized (this) {
+                averageLatencyMillis = averageLatencyMillis == 0 || now - lastCall >= probeIntervalNanos
+                        ? millis
+                        : averageLatencyMillis + LATENCY_SMOOTHING * (millis - averageLatencyMillis);
+                lastCall = now;
+            }
+            rollWindow();
+            windowTokens.addAndGet(tokens);
+        }
+
+        double averageLatencyMillis() {
+            return averageLatencyMillis;
+        }
+
+        /**
+         * Lets one call through when no call was recorded and no probe was let through for the probe interval.
+         */
+        boolean tryProbe() {
+            long now = System.nanoTime();
+            long probe = lastProbe.get();
+            return now - lastCall >= probeIntervalNanos && now - probe >= probeIntervalNanos
+                    && lastProbe.compareAndSet(probe, now);
+        }
+
+        long tokensInCurrentWindow() {
+            rollWindow();
+            return windowTokens.get();
+        }
+
+        private void rollWindow() {
+            long start = windowStart.get();
+            long now = System.nanoTime();
+            if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+                windowTokens.set(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.katrikken.gdpai.model;
+
+import org.springframework.ai.chat.client.ChatClient;
+
+/**
+ * Chat clients of a single request, chosen per workflow phase.
+ */
+@FunctionalInterface
+public interface PhaseChatClients {
+
+    /**
+     * Starts a prompt for the given phase on the chat client selected for it.
+     */
+    ChatClient.ChatClientRequestSpec prompt(WorkflowPhase phase);
+
+    /**
+     * Uses the same chat client for every phase.
+     */
+    static PhaseChatClients of(ChatClient chatClient) {
+        return phase -> chatClient.prompt().advisors(a -> a.param(WorkflowPhase.CONTEXT_KEY, phase));
+    }
+}
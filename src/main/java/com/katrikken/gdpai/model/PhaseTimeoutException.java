@@ -0,0 +1,20 @@
+package com.katrikken.gdpai.model;
+
+import lombok.Getter;
+
+import java.util.Locale;
+
+/**
+ * Thrown when an LLM call of a workflow phase does not finish within the phase's timeout or the rest of the
+ * request budget.
+ */
+@Getter
+public class PhaseTimeoutException extends RuntimeException {
+
+    private final WorkflowPhase phase;
+
+    public PhaseTimeoutException(WorkflowPhase phase, long timeoutMillis) {
+        super(String.format("The %s phase did not finish within %d ms", phase.name().toLowerCase(Locale.ROOT), timeoutMillis));
+        this.phase = phase;
+    }
+}
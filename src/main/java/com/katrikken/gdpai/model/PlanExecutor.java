@@ -0,0 +1,200 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.dto.PlanSpec;
+import com.katrikken.gdpai.tool.CountryToolService;
+import com.katrikken.gdpai.tool.DataTool;
+import com.katrikken.gdpai.tool.GdpPerCapitaToolService;
+import com.katrikken.gdpai.tool.GdpToolService;
+import com.katrikken.gdpai.tool.PopulationToolService;
+import com.katrikken.gdpai.tool.TextResult;
+import com.katrikken.gdpai.tool.ToolCallRecorder;
+import com.katrikken.gdpai.tool.ToolExecutionContext;
+import com.katrikken.gdpai.tool.ToolResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.ChatClientAttributes;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Fetches the data of a structured plan without the tools call.
+ * <p>
+ * The plan call is asked for a {@link PlanSpec} in JSON through Spring AI structured output. When it parses and names
+ * the countries and metrics needed, the country codes are resolved and the trends of every metric and country are
+ * fetched in parallel on the workflow executor, with the same tool calls the tools call would make: they are served
+ * from the session's {@link DataWorkingSet} and the speculative lookups like the calls of the LLM. Plans that do not
+ * parse, ask for rankings, regions or all countries, name more than app.plan.max-countries countries or a country
+ * that is not found go through the tools call as before. The outcomes are counted in agent.plan.structured.
+ */
+@Service
+@Log4j2
+public class PlanExecutor {
+
+    private final BeanOutputConverter<PlanSpec> converter = new BeanOutputConverter<>(PlanSpec.class);
+    private final CountryToolService countryToolService;
+    private final GdpToolService gdpToolService;
+    private final PopulationToolService populationToolService;
+    private final GdpPerCapitaToolService gdpPerCapitaToolService;
+    private final ExecutorService workflowExecutor;
+    private final Counter executedPlans;
+    private final Counter delegatedPlans;
+    private final Counter unparsedPlans;
+
+    @Value("${app.plan.structured:true}")
+    private boolean enabled = true;
+    @Value("${app.plan.max-countries:6}")
+    private int maxCountries = 6;
+
+    public PlanExecutor(CountryToolService countryToolService,
+                        GdpToolService gdpToolService,
+                        PopulationToolService populationToolService,
+                        GdpPerCapitaToolService gdpPerCapitaToolService,
+                        @Qualifier("workflowExecutor") ExecutorService workflowExecutor,
+                        MeterRegistry meterRegistry) {
+        this.countryToolService = countryToolService;
+        this.gdpToolService = gdpToolService;
+        this.populationToolService = populationToolService;
+        this.gdpPerCapitaToolService = gdpPerCapitaToolService;
+        this.workflowExecutor = workflowExecutor;
+        this.executedPlans = planCounter(meterRegistry, "executed");
+        this.delegatedPlans = planCounter(meterRegistry, "delegated");
+        this.unparsedPlans = planCounter(meterRegistry, "unparsed");
+    }
+
+    private static Counter planCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("agent.plan.structured")
+                .description("Plans executed without the tools call, handed to the tools call, or not parsed")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Asks the plan call for a {@link PlanSpec}: the JSON format instructions are appended to its user message,
+     * so the system message stays the same.
+     */
+    public ChatClient.ChatClientRequestSpec requestPlan(ChatClient.ChatClientRequestSpec spec) {
+        if (!enabled) {
+            return spec;
+        }
+        return spec.advisors(advisor -> advisor.param(ChatClientAttributes.OUTPUT_FORMAT.getKey(), converter.getFormat()));
+    }
+
+    /**
+     * Parses the response of the plan call, null when structured plans are disabled or it is not a plan.
+     */
+    public PlanSpec parse(String planResponse) {
+        if (!enabled || planResponse == null || planResponse.isBlank()) {
+            return null;
+        }
+        try {
+            PlanSpec plan = converter.convert(planResponse);
+            if (plan != null && plan.metrics() != null && !plan.metrics().isEmpty()) {
+                return plan;
+            }
+        } catch (RuntimeException e) {
+            log.debug("The plan is not valid JSON: {}", e.getMessage());
+        }
+        unparsedPlans.increment();
+        log.info("Could not parse the plan, continuing with the tools call");
+        return null;
+    }
+
+    /**
+     * Fetches the data of the plan by calling the tools directly, in parallel.
+     *
+     * @param plan        the parsed plan
+     * @param userInput   the user's question
+     * @param interceptor the interceptor the tool calls pass through, e.g. the session's working set
+     * @return the tool calls in the order of the plan, null when the plan has to go through the tools call
+     */
+    public List<ToolCallRecorder.RecordedCall> execute(PlanSpec plan, String userInput,
+                                                       ToolExecutionContext.ToolCallInterceptor interceptor) {
+        List<String> countries = plan.countries() == null ? List.of() : plan.countries().stream()
+                .filter(name -> name != null && !name.isBlank()).map(String::strip).distinct().toList();
+        if (countries.isEmpty() || countries.size() > maxCountries
+                || ToolSelector.needsCrossCountryData(userInput + "\n" + plan.request())) {
+            delegatedPlans.increment();
+            return null;
+        }
+
+        List<ToolCallRecorder.RecordedCall> codeCalls = await(countries.stream()
+                .map(name -> start(ToolSelector.COUNTRY_CODE, new DataTool.CountryQuery(name), interceptor,
+                        () -> new TextResult(countryToolService.countryNameToCountryCodeTool(new DataTool.CountryQuery(name)))))
+                .toList());
+        Set<String> countryCodes = new LinkedHashSet<>();
+        for (ToolCallRecorder.RecordedCall call : codeCalls) {
+            String code = call.result() instanceof TextResult text ? text.text().strip() : "";
+            if (!code.matches("[A-Z]{3}")) {
+                log.info("Country of the plan not found ({}), continuing with the tools call", code);
+                delegatedPlans.increment();
+                return null;
+            }
+            countryCodes.add(code);
+        }
+
+        List<CompletableFuture<ToolCallRecorder.RecordedCall>> dataCalls = new ArrayList<>();
+        for (String countryCode : countryCodes) {
+            DataTool.CountryCodeQuery query = new DataTool.CountryCodeQuery(countryCode);
+            for (Metric metric : new LinkedHashSet<>(plan.metrics())) {
+                dataCalls.add(switch (metric) {
+                    case GDP -> start("gdpTrendForCountry", query, interceptor,
+                            () -> gdpToolService.gdpTrendForCountry(query));
+                    case POPULATION -> start("populationTrendForCountry", query, interceptor,
+                            () -> populationToolService.populationTrendForCountry(query));
+                    case GDP_PER_CAPITA -> start("gdpPerCapitaTrendForCountry", query, interceptor,
+                            () -> gdpPerCapitaToolService.gdpPerCapitaTrendForCountry(query));
+                });
+            }
+        }
+        List<ToolCallRecorder.RecordedCall> calls = new ArrayList<>(codeCalls);
+        calls.addAll(await(dataCalls));
+        executedPlans.increment();
+        log.info("Executed the plan '{}' with {} tool calls", plan.describe(), calls.size());
+        return calls;
+    }
+
+    private CompletableFuture<ToolCallRecorder.RecordedCall> start(String toolName, Object argument,
+                                                                   ToolExecutionContext.ToolCallInterceptor interceptor,
+                                                                   Supplier<ToolResult> call) {
+        return CompletableFuture.supplyAsync(() -> new ToolCallRecorder.RecordedCall(toolName, argument,
+                interceptor == null ? call.get() : interceptor.intercept(toolName, argument, call)), workflowExecutor);
+    }
+
+    /**
+     * Waits for the calls in order. When the waiting thread is interrupted, e.g. by the phase timeout,
+     * the calls still running are cancelled.
+     */
+    private static <T> List<T> await(List<CompletableFuture<T>> calls) {
+        List<T> results = new ArrayList<>(calls.size());
+        try {
+            for (CompletableFuture<T> call : calls) {
+                results.add(call.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            calls.forEach(call -> call.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while fetching the data of the plan");
+        } catch (ExecutionException e) {
+            calls.forEach(call -> call.cancel(true));
+            throw e.getCause() instanceof RuntimeException runtimeException
+                    ? runtimeException
+                    : new IllegalStateException(e.getCause());
+        }
+    }
+}
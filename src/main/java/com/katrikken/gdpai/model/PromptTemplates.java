@@ -0,0 +1,70 @@
+package com.katrikken.gdpai.model;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Prompts of the workflow phases, compiled once at startup.
+ * <p>
+ * Each phase has a static system message and a user message template with the variable parts. Keeping the system
+ * message byte-identical across requests lets OpenAI prompt caching and Ollama's KV cache reuse the prefix.
+ */
+@Component
+public class PromptTemplates {
+
+    public static final String QUESTION = "question";
+    public static final String DATA = "data";
+
+    private final PhasePrompt plan;
+    private final PhasePrompt tools;
+    private final PhasePrompt analysis;
+    private final PhasePrompt singleCall;
+
+    public PromptTemplates(@Value("${app.system-message.plan}") String planSystem,
+                           @Value("${app.user-message.plan}") String planUser,
+                           @Value("${app.system-message.tools}") String toolsSystem,
+                           @Value("${app.user-message.tools}") String toolsUser,
+                           @Value("${app.system-message.analysis}") String analysisSystem,
+                           @Value("${app.user-message.analysis}") String analysisUser,
+                           @Value("${app.system-message.single-call}") String singleCallSystem,
+                           @Value("${app.user-message.single-call}") String singleCallUser) {
+        this.plan = PhasePrompt.of("plan", planSystem, planUser);
+        this.tools = PhasePrompt.of("tools", toolsSystem, toolsUser);
+        this.analysis = PhasePrompt.of("analysis", analysisSystem, analysisUser);
+        this.singleCall = PhasePrompt.of("single-call", singleCallSystem, singleCallUser);
+    }
+
+    public PhasePrompt plan() {
+        return plan;
+    }
+
+    public PhasePrompt tools() {
+        return tools;
+    }
+
+    public PhasePrompt analysis() {
+        return analysis;
+    }
+
+    public PhasePrompt singleCall() {
+        return singleCall;
+    }
+
+    public record PhasePrompt(String system, MessageTemplate user) {
+
+        static PhasePrompt of(String name, String system, String user) {
+            if (!MessageTemplate.compile(system).placeholders().isEmpty()) {
+                throw new IllegalStateException("System message of " + name
+                        + " must not contain placeholders, move them to app.user-message." + name);
+            }
+            return new PhasePrompt(system.strip(), MessageTemplate.compile(user.strip()));
+        }
+
+        public ChatClient.ChatClientRequestSpec apply(ChatClient.ChatClientRequestSpec spec, Map<String, String> values) {
+            return spec.system(system).user(user.render(values));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.katrikken.gdpai.model;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a session or client IP has used up its request or token budget on /chat.
+ */
+@Getter
+public class RateLimitedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+    private final long limit;
+
+    public RateLimitedException(String message, long retryAfterSeconds, long limit) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.limit = limit;
+    }
+}
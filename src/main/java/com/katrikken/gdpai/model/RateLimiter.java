@@ -0,0 +1,234 @@
+package com.katrikken.gdpai.model;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limits of /chat per session and per client IP, each with one {@link TokenBucket} for requests
+ * and one for LLM tokens. The IP limits cover clients that start a new session for every question. A request without
+ * a session takes only from the buckets of its client IP, as a new session of its own would start with full buckets.
+ * <p>
+ * A request takes one request token and an estimate of its LLM tokens from every bucket, or is rejected with a
+ * {@link RateLimitedException} without taking anything. When it ends, {@link Permit#settle(long)} corrects
+ * the estimate by the tokens the backends reported. The buckets are lock-free and kept in a
+ * {@link ConcurrentHashMap}, keys that have not been used for app.rate-limit.idle-timeout-ms are dropped.
+ * <p>
+ * Configured per key type under app.rate-limit.{session|ip}, e.g. app.rate-limit.session.requests-per-minute.
+ */
+@Component
+@Log4j2
+public class RateLimiter {
+
+    // every this many requests the keys are checked for idle ones
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final boolean enabled;
+    private final long tokensPerRequest;
+    private final long idleTimeoutNanos;
+    private final Map<KeyType, Limits> limits = new EnumMap<>(KeyType.class);
+    private final Map<KeyType, Map<Limit, Counter>> rejections = new EnumMap<>(KeyType.class);
+    private final Map<String, Buckets> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+
+    public RateLimiter(Environment environment, MeterRegistry meterRegistry) {
+        this.enabled = environment.getProperty("app.rate-limit.enabled", Boolean.class, true);
+        this.tokensPerRequest = environment.getProperty("app.rate-limit.tokens-per-request", Long.class, 4000L);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+                environment.getProperty("app.rate-limit.idle-timeout-ms", Long.class, 600000L));
+        for (KeyType keyType : KeyType.values()) {
+            String prefix = "app.rate-limit." + keyType.name().toLowerCase(Locale.ROOT) + ".";
+            limits.put(keyType, new Limits(
+                    environment.getProperty(prefix + "requests-per-minute", Long.class, keyType.defaultRequestsPerMinute),
+                    environment.getProperty(prefix + "request-burst", Long.class, keyType.defaultRequestsPerMinute),
+                    environment.getProperty(prefix + "tokens-per-minute", Long.class, keyType.defaultTokensPerMinute),
+                    environment.getProperty(prefix + "token-burst", Long.class, keyType.defaultTokensPerMinute)));
+
+            Map<Limit, Counter> counters = new EnumMap<>(Limit.class);
+            for (Limit limit : Limit.values()) {
+                counters.put(limit, Counter.builder("agent.ratelimit.rejections")
+                        .description("Chat requests rejected because a rate limit was reached")
+                        .tags("key", keyType.name().toLowerCase(Locale.ROOT), "limit", limit.name().toLowerCase(Locale.ROOT))
+                        .register(meterRegistry));
+            }
+            rejections.put(keyType, counters);
+        }
+        Gauge.builder("agent.ratelimit.keys", buckets, Map::size)
+                .description("Sessions and client IPs with rate limit buckets")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Admits a chat request of the session from the client IP.
+     *
+     * @param sessionId the session of the request, null when the client did not start one
+     * @param prompt the user's question, its tokens are added to the estimate of app.rate-limit.tokens-per-request
+     * @throws RateLimitedException when one of the limits is reached
+     */
+    public Permit acquire(String sessionId, String clientIp, String prompt) {
+        if (!enabled) {
+            return Permit.UNLIMITED;
+        }
+        long now = System.nanoTime();
+        sweepIfDue(now);
+        List<Buckets> keys = sessionId == null
+                ? List.of(bucketsFor(KeyType.IP, clientIp, now))
+                : List.of(bucketsFor(KeyType.SESSION, sessionId, now), bucketsFor(KeyType.IP, clientIp, now));
+        long estimatedTokens = tokensPerRequest + DataReducer.estimateTokens(prompt);
+
+        List<Buckets> taken = new ArrayList<>(keys.size());
+        for (Buckets key : keys) {
+            long waitNanos = key.requests().tryTake(1, now);
+            if (waitNanos > 0) {
+                taken.forEach(t -> t.requests().add(1, now));
+                throw reject(key, Limit.REQUESTS, waitNanos);
+            }
+            taken.add(key);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            Buckets key = keys.get(i);
+            long waitNanos = key.tokens().tryTake(estimatedTokens, now);
+            if (waitNanos > 0) {
+                keys.forEach(k -> k.requests().add(1, now));
+                keys.subList(0, i).forEach(k -> k.tokens().add(estimatedTokens, now));
+                throw reject(key, Limit.TOKENS, waitNanos);
+            }
+        }
+        Buckets first = keys.getFirst();
+        return new Permit(keys, estimatedTokens, first.requests().getCapacity(), first.requests().available(now));
+    }
+
+    /**
+     * Takes a request token of the client IP for creating a session, so new sessions do not get around the limits.
+     *
+     * @throws RateLimitedException when the request limit of the IP is reached
+     */
+    public void acquireSessionStart(String clientIp) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        Buckets ip = bucketsFor(KeyType.IP, clientIp, now);
+        long waitNanos = ip.requests().tryTake(1, now);
+        if (waitNanos > 0) {
+            throw reject(ip, Limit.REQUESTS, waitNanos);
+        }
+    }
+
+    private Buckets bucketsFor(KeyType keyType, String key, long now) {
+        Buckets entry = buckets.computeIfAbsent(keyType.name() + ":" + key, k -> {
+            Limits l = limits.get(keyType);
+            return new Buckets(keyType, k, new TokenBucket(l.requestBurst(), l.requestsPerMinute(), now),
+                    new TokenBucket(l.tokenBurst(), l.tokensPerMinute(), now), new AtomicLong(), new AtomicLong(now));
+        });
+        entry.lastUsed().set(now);
+        return entry;
+    }
+
+    private RateLimitedException reject(Buckets key, Limit limit, long waitNanos) {
+        rejections.get(key.keyType()).get(limit).increment();
+        long rejected = key.rejected().incrementAndGet();
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(Math.min(waitNanos, TimeUnit.HOURS.toNanos(1))) + 1);
+        log.warn("Rate limit of {} reached for {} ({} rejections), retry in {} seconds",
+                limit.name().toLowerCase(Locale.ROOT), key.key(), rejected, retryAfterSeconds);
+        TokenBucket bucket = limit == Limit.REQUESTS ? key.requests() : key.tokens();
+        return new RateLimitedException(String.format("Too many %s for this %s, retry in %d seconds",
+                limit == Limit.REQUESTS ? "requests" : "LLM tokens", key.keyType() == KeyType.SESSION ? "session" : "client",
+                retryAfterSeconds), retryAfterSeconds, bucket.getCapacity());
+    }
+
+    private void sweepIfDue(long now) {
+        if (requests.incrementAndGet() % SWEEP_INTERVAL != 0) {
+            return;
+        }
+        buckets.values().removeIf(b -> now - b.lastUsed().get() > idleTimeoutNanos
+                && b.requests().isFull(now) && b.tokens().isFull(now));
+    }
+
+    /**
+     * Rejections of a session or client IP since its buckets were created, 0 for unknown keys.
+     */
+    public long getRejections(KeyType keyType, String key) {
+        Buckets entry = buckets.get(keyType.name() + ":" + key);
+        return entry == null ? 0 : entry.rejected().get();
+    }
+
+    int getKeyCount() {
+        return buckets.size();
+    }
+
+    public enum KeyType {
+        SESSION(10, 40000), IP(30, 120000);
+
+        private final long defaultRequestsPerMinute;
+        private final long defaultTokensPerMinute;
+
+        KeyType(long defaultRequestsPerMinute, long defaultTokensPerMinute) {
+            this.defaultRequestsPerMinute = defaultRequestsPerMinute;
+            this.defaultTokensPerMinute = defaultTokensPerMinute;
+        }
+    }
+
+    enum Limit {
+        REQUESTS, TOKENS
+    }
+
+    private record Limits(long requestsPerMinute, long requestBurst, long tokensPerMinute, long tokenBurst) {
+    }
+
+    private record Buckets(KeyType keyType, String key, TokenBucket requests, TokenBucket tokens,
+                           AtomicLong rejected, AtomicLong lastUsed) {
+    }
+
+    /**
+     * An admitted request. The request limit and remaining requests of the session, or of the client IP for a request
+     * without a session, are returned in the response headers.
+     */
+    public static final class Permit {
+
+        static final Permit UNLIMITED = new Permit(List.of(), 0, -1, -1);
+
+        private final List<Buckets> keys;
+        private final long estimatedTokens;
+        private final long limit;
+        private final long remaining;
+
+        private Permit(List<Buckets> keys, long estimatedTokens, long limit, long remaining) {
+            this.keys = keys;
+            this.estimatedTokens = estimatedTokens;
+            this.limit = limit;
+            this.remaining = remaining;
+        }
+
+        /**
+         * Replaces the estimated tokens of the request by the tokens it used.
+         */
+        public void settle(long usedTokens) {
+            long now = System.nanoTime();
+            keys.forEach(k -> k.tokens().add(estimatedTokens - usedTokens, now));
+        }
+
+        /**
+         * Request limit (burst) of the session, -1 when rate limiting is disabled.
+         */
+        public long getLimit() {
+            return limit;
+        }
+
+        public long getRemaining() {
+            return remaining;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.LLMType;
+import com.katrikken.gdpai.dto.WorkflowType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution of identical chat requests.
+ * <p>
+ * The first request for a key (normalized prompt, backend and workflow) becomes the leader and runs the workflow,
+ * concurrent requests with the same key wait for the leader's result instead of running their own chain.
+ * A follower waits at most follower-timeout-ms, or what is left of its own request budget if that is shorter, and then
+ * runs the workflow itself; a leader running longer than leader-timeout-ms is no longer joined by new requests.
+ * If the leader is cancelled, one of its followers takes over as the leader and the others wait for it, any other
+ * failure of the leader is passed on to the followers.
+ */
+@Component
+@Log4j2
+public class RequestCoalescer {
+
+    private static final Object LEADER_CANCELLED = new Object();
+
+    private final ConcurrentMap<Key, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final long followerTimeoutMillis;
+    private final long leaderTimeoutNanos;
+
+    private final Counter leaders;
+    private final Counter followers;
+    private final Counter followerTimeouts;
+
+    public RequestCoalescer(@Value("${app.coalescing.enabled:true}") boolean enabled,
+                            @Value("${app.coalescing.follower-timeout-ms:120000}") long followerTimeoutMillis,
+                            @Value("${app.coalescing.leader-timeout-ms:180000}") long leaderTimeoutMillis,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.followerTimeoutMillis = followerTimeoutMillis;
+        this.leaderTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(leaderTimeoutMillis);
+        this.leaders = requestCounter(meterRegistry, "leader");
+        this.followers = requestCounter(meterRegistry, "follower");
+        this.followerTimeouts = requestCounter(meterRegistry, "follower_timeout");
+        Gauge.builder("agent.coalescing.ratio", this, RequestCoalescer::coalescingRatio)
+                .description("Share of coalesced requests that were served by another request's computation")
+                .register(meterRegistry);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String role) {
+        return Counter.builder("agent.coalescing.requests")
+                .description("Chat requests going through request coalescing by role")
+                .tag("role", role)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the computation, or waits for an identical computation already in flight and returns its result.
+     *
+     * @param maxWaitMillis how long the caller can wait for another computation, e.g. the rest of its request budget
+     */
+    public <T> T execute(Key key, long maxWaitMillis, Supplier<T> computation) {
+        if (!enabled) {
+            return computation.get();
+        }
+        long waitMillis = Math.max(0, Math.min(followerTimeoutMillis, maxWaitMillis));
+        long waitUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        while (true) {
+            InFlight existing = inFlight.get(key);
+            if (existing == null || existing.isStale() || existing.result.isCancelled()) {
+                InFlight leader = new InFlight();
+                boolean registered = existing == null
+                        ? inFlight.putIfAbsent(key, leader) == null
+                        : inFlight.replace(key, existing, leader);
+                if (registered) {
+                    return lead(key, leader, computation);
+                }
+                continue;
+            }
+            Object result = follow(key, existing, computation, waitUntil);
+            if (result != LEADER_CANCELLED) {
+                @SuppressWarnings("unchecked")
+                T typed = (T) result;
+                return typed;
+            }
+        }
+    }
+
+    private <T> T lead(Key key, InFlight leader, Supplier<T> computation) {
+        leaders.increment();
+        try {
+            T result = computation.get();
+            leader.result.complete(result);
+            return result;
+        } catch (CancellationException e) {
+            // the leader's client is gone, a follower takes over
+            leader.result.cancel(false);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            leader.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            // completes the future for followers if the computation never returned normally (e.g. interrupted)
+            leader.result.cancel(false);
+            inFlight.remove(key, leader);
+        }
+    }
+
+    /**
+     * Waits for the leader's result, {@link #LEADER_CANCELLED} when the leader was cancelled.
+     */
+    private Object follow(Key key, InFlight leader, Supplier<?> computation, long waitUntil) {
+        log.info("Waiting for in-flight request {}", key);
+        leader.waiting.incrementAndGet();
+        long waitNanos = waitUntil - System.nanoTime();
+        try {
+            Object result = leader.result.get(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+            followers.increment();
+            return result;
+        } catch (TimeoutException e) {
+            log.warn("In-flight request {} did not finish in time, computing it separately", key);
+            followerTimeouts.increment();
+            return computation.get();
+        } catch (CancellationException e) {
+            log.info("In-flight request {} was cancelled, taking over or waiting for the new leader", key);
+            return LEADER_CANCELLED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for in-flight request " + key);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            leader.waiting.decrementAndGet();
+        }
+    }
+
+    int waitingFollowers(Key key) {
+        InFlight leader = inFlight.get(key);
+        return leader == null ? 0 : leader.waiting.get();
+    }
+
+    private double coalescingRatio() {
+        double served = followers.count();
+        double total = served + leaders.count() + followerTimeouts.count();
+        return total == 0 ? 0 : served / total;
+    }
+
+    /**
+     * Identifies identical requests: the prompt is compared ignoring case, extra whitespace and final punctuation.
+     */
+    public record Key(String prompt, LLMType backend, WorkflowType workflow) {
+
+        public static Key of(String prompt, LLMType backend, WorkflowType workflow) {
+            String normalized = prompt == null ? "" : prompt.strip()
+                    .toLowerCase(Locale.ROOT)
+                    .replaceAll("\\s+", " ")
+                    .replaceAll("[?.!]+$", "");
+            return new Key(normalized, backend, workflow);
+        }
+    }
+
+    private class InFlight {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private final long started = System.nanoTime();
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        boolean isStale() {
+            return System.nanoTime() - started > leaderTimeoutNanos;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.tool.ToolExecutionContext;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * The time budget of one chat request, shared by the LLM calls of its workflow phases.
+ * <p>
+ * Every call runs on a thread of the workflow executor with the tool call interceptor of the calling thread, and is
+ * waited for at most the timeout of its phase or the rest of the request budget, whichever is shorter. A call that
+ * runs out of time is interrupted and a {@link PhaseTimeoutException} is thrown. {@link #cancel()} interrupts the
+ * running call and fails the following ones with a {@link CancellationException}, e.g. when the client disconnected.
+ */
+@Log4j2
+public class RequestDeadline {
+
+    private final ExecutorService executor;
+    private final Map<WorkflowPhase, Long> phaseTimeoutMillis;
+    private final Map<WorkflowPhase, Counter> timeouts;
+    private final Counter cancellations;
+    private final long deadlineNanos;
+    private final Set<Future<?>> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    RequestDeadline(ExecutorService executor, long requestTimeoutMillis, Map<WorkflowPhase, Long> phaseTimeoutMillis,
+                    Map<WorkflowPhase, Counter> timeouts, Counter cancellations) {
+        this.executor = executor;
+        this.phaseTimeoutMillis = phaseTimeoutMillis;
+        this.timeouts = timeouts;
+        this.cancellations = cancellations;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeoutMillis);
+    }
+
+    /**
+     * A deadline that never expires, its calls run on the calling thread. Used where no request budget applies.
+     */
+    public static RequestDeadline unbounded() {
+        return new RequestDeadline(null, 0, Map.of(), Map.of(), null);
+    }
+
+    /**
+     * Runs the LLM call of a phase within the phase's timeout and the rest of the request budget.
+     *
+     * @throws PhaseTimeoutException when the call does not finish in time
+     * @throws CancellationException when the request was cancelled
+     */
+    public <T> T call(WorkflowPhase phase, Supplier<T> call) {
+        if (cancelled) {
+            throw new CancellationException("The request was cancelled");
+        }
+        if (executor == null) {
+            return call.get();
+        }
+        long timeoutMillis = Math.min(phaseTimeoutMillis.get(phase), remainingMillis());
+        if (timeoutMillis <= 0) {
+            timeouts.get(phase).increment();
+            throw new PhaseTimeoutException(phase, 0);
+        }
+
+        ToolExecutionContext.ToolCallInterceptor interceptor = ToolExecutionContext.current();
+        Future<T> future = executor.submit(() -> ToolExecutionContext.callWith(interceptor, call));
+        running.add(future);
+        if (cancelled) {
+            // cancelled while the call was being submitted
+            future.cancel(true);
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.get(phase).increment();
+            log.warn("The {} phase did not finish within {} ms, cancelled it", phase, timeoutMillis);
+            throw new PhaseTimeoutException(phase, timeoutMillis);
+        } catch (CancellationException e) {
+            throw new CancellationException("The request was cancelled");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the " + phase + " phase");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            running.remove(future);
+        }
+    }
+
+    /**
+     * Interrupts the running LLM call, later calls fail without being made.
+     */
+    public synchronized void cancel() {
+        if (!cancelled && cancellations != null) {
+            cancellations.increment();
+        }
+        cancelled = true;
+        running.forEach(future -> future.cancel(true));
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * The rest of the request budget, unbounded deadlines report Long.MAX_VALUE.
+     */
+    public long remainingMillis() {
+        return executor == null ? Long.MAX_VALUE : TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+}
@@ -0,0 +1,60 @@
+package com.katrikken.gdpai.model;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Starts the {@link RequestDeadline} of each chat request.
+ * <p>
+ * The whole request gets app.timeouts.request-ms, each LLM call at most the timeout of its phase
+ * (app.timeouts.plan-ms, tools-ms and analysis-ms). Calls running out of time are counted in agent.phase.timeouts
+ * by phase, requests cancelled by their client in agent.requests.cancelled.
+ */
+@Component
+public class RequestDeadlines {
+
+    @Getter
+    private final long requestTimeoutMillis;
+    private final Map<WorkflowPhase, Long> phaseTimeoutMillis = new EnumMap<>(WorkflowPhase.class);
+    private final Map<WorkflowPhase, Counter> timeouts = new EnumMap<>(WorkflowPhase.class);
+    private final ExecutorService workflowExecutor;
+    private final Counter cancelled;
+
+    public RequestDeadlines(@Value("${app.timeouts.request-ms:150000}") long requestTimeoutMillis,
+                            @Value("${app.timeouts.plan-ms:30000}") long planTimeoutMillis,
+                            @Value("${app.timeouts.tools-ms:90000}") long toolsTimeoutMillis,
+                            @Value("${app.timeouts.analysis-ms:60000}") long analysisTimeoutMillis,
+                            @Qualifier("workflowExecutor") ExecutorService workflowExecutor,
+                            MeterRegistry meterRegistry) {
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.workflowExecutor = workflowExecutor;
+        phaseTimeoutMillis.put(WorkflowPhase.PLAN, planTimeoutMillis);
+        phaseTimeoutMillis.put(WorkflowPhase.TOOLS, toolsTimeoutMillis);
+        phaseTimeoutMillis.put(WorkflowPhase.ANALYSIS, analysisTimeoutMillis);
+        for (WorkflowPhase phase : WorkflowPhase.values()) {
+            timeouts.put(phase, Counter.builder("agent.phase.timeouts")
+                    .description("LLM calls cancelled because they ran out of the phase timeout or request budget")
+                    .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        this.cancelled = Counter.builder("agent.requests.cancelled")
+                .description("Chat requests cancelled before they finished, e.g. because the client disconnected")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts the budget of a request now.
+     */
+    public RequestDeadline start() {
+        return new RequestDeadline(workflowExecutor, requestTimeoutMillis, phaseTimeoutMillis, timeouts, cancelled);
+    }
+}
@@ -0,0 +1,205 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.SessionEvictedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounds the sessions of this instance and the chat history they hold.
+ * <p>
+ * Every session start and turn is recorded with the message count and estimated heap size of the session's chat
+ * memory. Sessions without a turn for app.sessions.idle-timeout-ms are evicted by a sweep that runs with the
+ * requests, at most every tenth of the timeout. When there are more than app.sessions.max-sessions sessions the least
+ * recently used ones are evicted right away.
+ * <p>
+ * Eviction clears the chat memory of the session, unless the history changed since this instance recorded it,
+ * i.e. the session went on on another instance sharing the chat memory store. Then this instance only stops tracking it.
+ * Either way a {@link SessionEvictedEvent} is published, so the other state of the session is dropped too.
+ */
+@Component
+@Log4j2
+public class SessionManager {
+
+    // estimated heap of a message without its text: the message, its metadata map and the string header
+    private static final long MESSAGE_OVERHEAD_BYTES = 160;
+
+    private final ChatMemory chatMemory;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long idleTimeoutNanos;
+    private final long sweepIntervalNanos;
+    private final long maxSessions;
+    private final LongSupplier clock;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep;
+    private final Counter idleEvictions;
+    private final Counter capacityEvictions;
+
+    @Autowired
+    public SessionManager(ChatMemory chatMemory,
+                          @Value("${app.sessions.idle-timeout-ms:1800000}") long idleTimeoutMillis,
+                          @Value("${app.sessions.max-sessions:10000}") long maxSessions,
+                          MeterRegistry meterRegistry,
+                          ApplicationEventPublisher eventPublisher) {
+        this(chatMemory, idleTimeoutMillis, maxSessions, meterRegistry, eventPublisher, System::nanoTime);
+    }
+
+    SessionManager(ChatMemory chatMemory, long idleTimeoutMillis, long maxSessions, MeterRegistry meterRegistry,
+                   ApplicationEventPublisher eventPublisher, LongSupplier clock) {
+        this.chatMemory = chatMemory;
+        this.eventPublisher = eventPublisher;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.sweepIntervalNanos = idleTimeoutNanos / 10;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.clock = clock;
+        this.lastSweep = new AtomicLong(clock.getAsLong());
+        this.idleEvictions = evictionCounter(meterRegistry, "idle");
+        this.capacityEvictions = evictionCounter(meterRegistry, "capacity");
+        Gauge.builder("agent.sessions.active", sessions, Map::size)
+                .description("Sessions of this instance")
+                .register(meterRegistry);
+        Gauge.builder("agent.sessions.messages", this, SessionManager::getTotalMessages)
+                .description("Chat memory messages of the sessions of this instance")
+                .register(meterRegistry);
+        Gauge.builder("agent.sessions.bytes", this, SessionManager::getTotalBytes)
+                .description("Estimated heap used by the chat memory of the sessions of this instance")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static Counter evictionCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("agent.sessions.evicted")
+                .description("Sessions evicted with their chat memory by reason")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records a started session, which may evict the least recently used sessions.
+     */
+    public void sessionStarted(String sessionId) {
+        long now = clock.getAsLong();
+        sessions.computeIfAbsent(sessionId, id -> new Session(Footprint.EMPTY, now)).lastUsed().set(now);
+        evictIfDue(now);
+    }
+
+    /**
+     * Records a turn of the session with the current size of its chat memory.
+     */
+    public void turnCompleted(String sessionId) {
+        long now = clock.getAsLong();
+        sessions.put(sessionId, new Session(Footprint.of(chatMemory.get(sessionId)), now));
+        evictIfDue(now);
+    }
+
+    /**
+     * Whether the session was issued by this application: it is tracked by this instance, or has a history in the
+     * chat memory store, e.g. when it went on on another instance.
+     */
+    public boolean isKnown(String sessionId) {
+        return sessions.containsKey(sessionId) || !chatMemory.get(sessionId).isEmpty();
+    }
+
+    public Optional<Footprint> getFootprint(String sessionId) {
+        return Optional.ofNullable(sessions.get(sessionId)).map(Session::footprint);
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public long getTotalMessages() {
+        return sessions.values().stream().mapToLong(s -> s.footprint().messages()).sum();
+    }
+
+    public long getTotalBytes() {
+        return sessions.values().stream().mapToLong(s -> s.footprint().bytes()).sum();
+    }
+
+    private void evictIfDue(long now) {
+        long last = lastSweep.get();
+        if (now - last >= sweepIntervalNanos && lastSweep.compareAndSet(last, now)) {
+            sessions.forEach((id, session) -> {
+                if (now - session.lastUsed().get() > idleTimeoutNanos && sessions.remove(id, session)) {
+                    idleEvictions.increment();
+                    evict(id, session.footprint());
+                }
+            });
+        }
+        if (sessions.size() > maxSessions) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    private synchronized void evictLeastRecentlyUsed() {
+        while (sessions.size() > maxSessions) {
+            Map.Entry<String, Session> oldest = sessions.entrySet().stream()
+                    .min(Comparator.comparingLong(e -> e.getValue().lastUsed().get()))
+                    .orElseThrow();
+            if (sessions.remove(oldest.getKey(), oldest.getValue())) {
+                capacityEvictions.increment();
+                evict(oldest.getKey(), oldest.getValue().footprint());
+            }
+        }
+    }
+
+    private void evict(String sessionId, Footprint footprint) {
+        eventPublisher.publishEvent(new SessionEvictedEvent(sessionId));
+        try {
+            List<Message> history = chatMemory.get(sessionId);
+            if (!history.isEmpty() && !footprint.equals(Footprint.of(history))) {
+                log.debug("Session {} continued on another instance, its chat memory is kept", sessionId);
+                return;
+            }
+            chatMemory.clear(sessionId);
+            log.debug("Evicted session {}: {} messages, {} bytes", sessionId, footprint.messages(), footprint.bytes());
+        } catch (RuntimeException e) {
+            log.error("Could not clear the chat memory of session {}", sessionId, e);
+        }
+    }
+
+    private record Session(Footprint footprint, AtomicLong lastUsed) {
+
+        Session(Footprint footprint, long lastUsed) {
+            this(footprint, new AtomicLong(lastUsed));
+        }
+    }
+
+    /**
+     * Size of the chat memory of a session. The hash of the last message tells histories of the same size apart.
+     *
+     * @param bytes estimated heap of the messages, text counted as UTF-16
+     */
+    public record Footprint(int messages, long bytes, int lastMessageHash) {
+
+        static final Footprint EMPTY = new Footprint(0, 0, 0);
+
+        static Footprint of(List<Message> messages) {
+            if (messages.isEmpty()) {
+                return EMPTY;
+            }
+            long bytes = 0;
+            for (Message message : messages) {
+                bytes += MESSAGE_OVERHEAD_BYTES + 2L * Objects.requireNonNullElse(message.getText(), "").length();
+            }
+            return new Footprint(messages.size(), bytes, Objects.hashCode(messages.getLast().getText()));
+        }
+    }
+}
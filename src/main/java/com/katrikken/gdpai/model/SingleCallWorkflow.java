@@ -0,0 +1,75 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.WorkflowType;
+import com.katrikken.gdpai.tool.ToolCallRecorder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Workflow that plans and calls the tools in a single tool-enabled LLM call.
+ * The analysis call of {@link ChainWorkflow} is only made when the first call returns data instead of an answer.
+ */
+@Log4j2
+@RequiredArgsConstructor
+@Service
+public class SingleCallWorkflow implements AgentWorkflow {
+
+    static final String ANSWER_MARKER = "ANSWER:";
+    static final String DATA_MARKER = "DATA:";
+
+    private final PromptTemplates prompts;
+    private final SpeculativePrefetcher speculativePrefetcher;
+    private final DataReducer dataReducer;
+    private final ToolSelector toolSelector;
+    private final DataWorkingSets workingSets;
+
+    @Override
+    public WorkflowType type() {
+        return WorkflowType.SINGLE_CALL;
+    }
+
+    @Override
+    public String chain(String userInput, PhaseChatClients chatClients, DataWorkingSet workingSet, RequestDeadline deadline) {
+
+        log.info("Received user query: {}", userInput);
+
+        workingSet.startTurn();
+        String keptData = workingSets.reusableData(workingSet, userInput);
+        if (keptData != null) {
+            return analyze(prompts, userInput, keptData, chatClients, deadline);
+        }
+
+        String response;
+        ToolCallRecorder recorder;
+        try (SpeculativePrefetcher.Prefetch prefetch = speculativePrefetcher.start(userInput)) {
+            recorder = new ToolCallRecorder(workingSet.interceptor(prefetch));
+            response = callTools(recorder, deadline, () -> prompts.singleCall()
+                    .apply(chatClients.prompt(WorkflowPhase.TOOLS), Map.of(PromptTemplates.QUESTION, userInput))
+                    .toolCallbacks(toolSelector.select(userInput))
+                    .call().content(), DATA_MARKER);
+        }
+
+        if (response == null || response.isBlank()) {
+            return "ERROR. Could not find data to answer the question";
+        }
+
+        String trimmed = response.strip();
+        if (startsWithIgnoreCase(trimmed, ANSWER_MARKER)) {
+            return trimmed.substring(ANSWER_MARKER.length()).strip();
+        }
+
+        String data = dataReducer.reduce(userInput, recorder.getCalls(), startsWithIgnoreCase(trimmed, DATA_MARKER)
+                ? trimmed.substring(DATA_MARKER.length()).strip()
+                : trimmed);
+        log.info("Obtained data without an answer, running analysis: {}", data);
+
+        return analyze(prompts, userInput, data, chatClients, deadline);
+    }
+
+    private static boolean startsWithIgnoreCase(String text, String prefix) {
+        return text.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+}
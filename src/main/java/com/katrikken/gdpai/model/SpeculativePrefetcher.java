@@ -0,0 +1,208 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.entity.Country;
+import com.katrikken.gdpai.tool.CountryToolService;
+import com.katrikken.gdpai.tool.DataTool;
+import com.katrikken.gdpai.tool.GdpPerCapitaToolService;
+import com.katrikken.gdpai.tool.GdpToolService;
+import com.katrikken.gdpai.tool.PopulationToolService;
+import com.katrikken.gdpai.tool.TextResult;
+import com.katrikken.gdpai.tool.ToolExecutionContext;
+import com.katrikken.gdpai.tool.ToolResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Guesses the data needed to answer a question from the raw prompt and fetches it while the plan LLM call runs.
+ * <p>
+ * Countries are recognized by their names from the COUNTRY table, metrics by the keywords GDP, population
+ * and per capita. The prefetched results are served to the tools phase through {@link ToolExecutionContext}
+ * when the model asks for the same tool with the same input; results that were never asked for are counted as wasted.
+ */
+@Service
+@Log4j2
+public class SpeculativePrefetcher {
+
+    private final CountryIndex countryIndex;
+    private final CountryToolService countryToolService;
+    private final GdpToolService gdpToolService;
+    private final PopulationToolService populationToolService;
+    private final GdpPerCapitaToolService gdpPerCapitaToolService;
+    private final ExecutorService workflowExecutor;
+    private final Counter usedLookups;
+    private final Counter wastedLookups;
+    private final Counter skippedLookups;
+
+    @Value("${app.speculative.enabled:false}")
+    private boolean enabled;
+    @Value("${app.speculative.max-lookups:6}")
+    private int maxLookups;
+
+    public SpeculativePrefetcher(CountryIndex countryIndex,
+                                 CountryToolService countryToolService,
+                                 GdpToolService gdpToolService,
+                                 PopulationToolService populationToolService,
+                                 GdpPerCapitaToolService gdpPerCapitaToolService,
+                                 @Qualifier("workflowExecutor") ExecutorService workflowExecutor,
+                                 MeterRegistry meterRegistry) {
+        this.countryIndex = countryIndex;
+        this.countryToolService = countryToolService;
+        this.gdpToolService = gdpToolService;
+        this.populationToolService = populationToolService;
+        this.gdpPerCapitaToolService = gdpPerCapitaToolService;
+        this.workflowExecutor = workflowExecutor;
+        this.usedLookups = lookupCounter(meterRegistry, "used");
+        this.wastedLookups = lookupCounter(meterRegistry, "wasted");
+        this.skippedLookups = lookupCounter(meterRegistry, "skipped");
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("agent.speculative.lookups")
+                .description("Speculative data lookups started next to the plan call")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts the lookups guessed from the user's question. Returns immediately; the lookups run in the background.
+     * The returned prefetch must be closed when the tools phase is over.
+     */
+    public Prefetch start(String userInput) {
+        if (!enabled || userInput == null || userInput.isBlank()) {
+            return new Prefetch(Map.of());
+        }
+        List<Lookup> lookups = guessLookups(userInput);
+        if (lookups.size() > maxLookups) {
+            skippedLookups.increment(lookups.size() - maxLookups);
+            lookups = lookups.subList(0, maxLookups);
+        }
+        return prefetch(lookups);
+    }
+
+    /**
+     * Submits the lookups to the workflow executor. They run as plain futures of the executor,
+     * so cancelling one interrupts its thread.
+     */
+    Prefetch prefetch(List<Lookup> lookups) {
+        Map<ToolCall, Future<ToolResult>> results = new LinkedHashMap<>();
+        for (Lookup lookup : lookups) {
+            results.put(lookup.toolCall(), workflowExecutor.submit(lookup.call()::get));
+        }
+        log.info("Started {} speculative lookups: {}", results.size(), results.keySet());
+        return new Prefetch(results);
+    }
+
+    /**
+     * Guesses tool calls the tools phase is likely to make: the country code of every recognized country,
+     * followed by the trend of every mentioned metric (or all metrics if none is mentioned) for each country.
+     */
+    List<Lookup> guessLookups(String userInput) {
+        List<Country> countries = countryIndex.findCountries(userInput);
+        if (countries.isEmpty()) {
+            return List.of();
+        }
+
+        Set<Metric> metrics = MetricKeywords.find(userInput);
+        if (metrics.isEmpty()) {
+            metrics = EnumSet.allOf(Metric.class);
+        }
+
+        List<Lookup> lookups = new ArrayList<>();
+        for (Country country : countries) {
+            DataTool.CountryQuery query = new DataTool.CountryQuery(country.getName());
+            lookups.add(new Lookup(new ToolCall("countryNameToCountryCode", query),
+                    () -> new TextResult(countryToolService.countryNameToCountryCodeTool(query))));
+        }
+        for (Country country : countries) {
+            DataTool.CountryCodeQuery query = new DataTool.CountryCodeQuery(country.getCountryCode());
+            for (Metric metric : metrics) {
+                lookups.add(switch (metric) {
+                    case GDP -> new Lookup(new ToolCall("gdpTrendForCountry", query),
+                            () -> gdpToolService.gdpTrendForCountry(query));
+                    case POPULATION -> new Lookup(new ToolCall("populationTrendForCountry", query),
+                            () -> populationToolService.populationTrendForCountry(query));
+                    case GDP_PER_CAPITA -> new Lookup(new ToolCall("gdpPerCapitaTrendForCountry", query),
+                            () -> gdpPerCapitaToolService.gdpPerCapitaTrendForCountry(query));
+                });
+            }
+        }
+        return lookups;
+    }
+
+    /**
+     * A tool name together with the input the LLM would pass to it.
+     */
+    record ToolCall(String toolName, Object argument) {
+    }
+
+    record Lookup(ToolCall toolCall, Supplier<ToolResult> call) {
+    }
+
+    /**
+     * Speculative results of one request. Serves tool calls that match a prefetched lookup,
+     * all other calls are executed as usual.
+     */
+    public class Prefetch implements ToolExecutionContext.ToolCallInterceptor, AutoCloseable {
+
+        private final Map<ToolCall, Future<ToolResult>> results;
+        private final Set<ToolCall> used = ConcurrentHashMap.newKeySet();
+
+        private Prefetch(Map<ToolCall, Future<ToolResult>> results) {
+            this.results = results;
+        }
+
+        @Override
+        public ToolResult intercept(String toolName, Object argument, Supplier<ToolResult> call) {
+            ToolCall toolCall = new ToolCall(toolName, argument);
+            Future<ToolResult> result = results.get(toolCall);
+            if (result != null) {
+                try {
+                    ToolResult value = result.get();
+                    if (used.add(toolCall)) {
+                        usedLookups.increment();
+                    }
+                    log.debug("Served {} from speculative lookup", toolCall);
+                    return value;
+                } catch (ExecutionException | CancellationException e) {
+                    log.warn("Speculative lookup {} failed, calling the tool again", toolCall, e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while waiting for the speculative lookup " + toolCall);
+                }
+            }
+            return call.get();
+        }
+
+        /**
+         * Cancels lookups that are still running, interrupting their threads, and counts those that were not used
+         * as wasted.
+         */
+        @Override
+        public void close() {
+            results.forEach((toolCall, result) -> {
+                if (!used.contains(toolCall)) {
+                    result.cancel(true);
+                    wastedLookups.increment();
+                }
+            });
+        }
+    }
+}
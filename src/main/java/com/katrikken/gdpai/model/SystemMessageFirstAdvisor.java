@@ -0,0 +1,46 @@
+package com.katrikken.gdpai.model;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.core.Ordered;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves system messages in front of the conversation history added by the chat memory advisor,
+ * so that every prompt starts with the same static prefix.
+ */
+public class SystemMessageFirstAdvisor implements CallAdvisor {
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+        List<Message> messages = request.prompt().getInstructions();
+        List<Message> reordered = new ArrayList<>(messages.size());
+        messages.stream().filter(message -> message.getMessageType() == MessageType.SYSTEM).forEach(reordered::add);
+        messages.stream().filter(message -> message.getMessageType() != MessageType.SYSTEM).forEach(reordered::add);
+        if (reordered.equals(messages)) {
+            return chain.nextCall(request);
+        }
+        return chain.nextCall(request.mutate()
+                .prompt(request.prompt().mutate().messages(reordered).build())
+                .build());
+    }
+
+    @Override
+    public String getName() {
+        return "SystemMessageFirstAdvisor";
+    }
+
+    /**
+     * Runs after the chat memory advisor has added the history.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 1000;
+    }
+}
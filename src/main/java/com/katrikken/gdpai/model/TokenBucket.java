@@ -0,0 +1,85 @@
+package com.katrikken.gdpai.model;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Token bucket refilled continuously at a fixed rate up to its capacity.
+ * <p>
+ * The state is replaced with compare-and-set, so concurrent requests of the same key never block each other.
+ * Amounts larger than the capacity are granted when the bucket is full and leave it in debt,
+ * which is paid off by the refill before the next grant. Times are {@link System#nanoTime()} values.
+ */
+class TokenBucket {
+
+    private final long capacity;
+    private final double refillPerNano;
+    private final AtomicReference<State> state;
+
+    TokenBucket(long capacity, long refillPerMinute, long nowNanos) {
+        this.capacity = Math.max(1, capacity);
+        this.refillPerNano = Math.max(0, refillPerMinute) / 60_000_000_000.0;
+        this.state = new AtomicReference<>(new State(this.capacity, nowNanos));
+    }
+
+    /**
+     * Takes the amount if the bucket holds it.
+     *
+     * @return 0 if the amount was taken, otherwise the nanoseconds until it will be available
+     */
+    long tryTake(long amount, long nowNanos) {
+        double needed = Math.min(amount, capacity);
+        while (true) {
+            State current = state.get();
+            double available = current.available(nowNanos);
+            if (available < needed) {
+                return refillPerNano == 0 ? Long.MAX_VALUE : (long) Math.ceil((needed - available) / refillPerNano);
+            }
+            if (state.compareAndSet(current, new State(available - amount, Math.max(nowNanos, current.updatedAt)))) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the amount to the bucket, or takes it without a check when it is negative.
+     */
+    void add(long amount, long nowNanos) {
+        while (true) {
+            State current = state.get();
+            double tokens = Math.min(capacity, current.available(nowNanos) + amount);
+            if (state.compareAndSet(current, new State(tokens, Math.max(nowNanos, current.updatedAt)))) {
+                return;
+            }
+        }
+    }
+
+    long available(long nowNanos) {
+        return (long) Math.floor(state.get().available(nowNanos));
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Whether the bucket is full, i.e. dropping it loses nothing.
+     */
+    boolean isFull(long nowNanos) {
+        return state.get().available(nowNanos) >= capacity;
+    }
+
+    private class State {
+        private final double tokens;
+        private final long updatedAt;
+
+        private State(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+
+        private double available(long nowNanos) {
+            long elapsed = Math.max(0, nowNanos - updatedAt);
+            return Math.min(capacity, tokens + elapsed * refillPerNano);
+        }
+    }
+}
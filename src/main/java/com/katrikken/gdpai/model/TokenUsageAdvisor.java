@@ -0,0 +1,54 @@
+package com.katrikken.gdpai.model;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.core.Ordered;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds up the tokens reported by the backend for every call of a chat client.
+ */
+public class TokenUsageAdvisor implements CallAdvisor {
+
+    private final LongAdder tokens = new LongAdder();
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+        ChatClientResponse response = chain.nextCall(request);
+        if (response.chatResponse() != null && response.chatResponse().getMetadata() != null) {
+            Usage usage = response.chatResponse().getMetadata().getUsage();
+            if (usage != null && usage.getTotalTokens() != null) {
+                tokens.add(usage.getTotalTokens());
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Adds tokens used for this request elsewhere, e.g. by the computation of an identical request it shared.
+     */
+    public void add(long tokens) {
+        this.tokens.add(tokens);
+    }
+
+    /**
+     * Tokens used by all calls so far.
+     */
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    @Override
+    public String getName() {
+        return "TokenUsageAdvisor";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 20;
+    }
+}
@@ -0,0 +1,165 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.tool.ToolRegistry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Chooses the tools offered to the LLM in the tools phase, so the prompt carries only the tool definitions a request
+ * can use and small models have fewer wrong tools to pick from.
+ * <p>
+ * The data request of the plan phase (or the question) is classified by keywords: the metrics it mentions, whether it
+ * names countries, asks for rankings, regions or income groups, calculations or the current year. Every class adds its
+ * tools; when nothing is recognized all read tools are offered. The insert tools are only offered when
+ * app.tools.write-enabled is set and the text asks to insert data.
+ */
+@Service
+@Log4j2
+public class ToolSelector {
+
+    static final String COUNTRY_CODE = "countryNameToCountryCode";
+    static final String CURRENT_YEAR = "getCurrentYear";
+    static final String CALCULATE = "operateOnBigDecimals";
+    static final String GROUP_AGGREGATES = "groupAggregates";
+    static final List<String> RANKINGS = List.of("topCountriesByValue", "topCountriesByGrowth", "topCountriesByCagr", "countryRanks");
+    static final Set<String> WRITE_TOOLS = Set.of("insertGdp", "insertPopulation");
+
+    private static final Map<Metric, List<String>> COUNTRY_TOOLS = Map.of(
+            Metric.GDP, List.of("gdpByCountryYear", "gdpByCountry", "gdpTrendForCountry"),
+            Metric.POPULATION, List.of("populationByCountryYear", "populationByCountry", "populationTrendForCountry"),
+            Metric.GDP_PER_CAPITA, List.of("gdpPerCapitaByCountry", "gdpPerCapitaTrendForCountry"));
+    private static final Map<Metric, List<String>> YEAR_TOOLS = Map.of(
+            Metric.GDP, List.of("gdpByYear", "gdpBetweenYears"),
+            Metric.POPULATION, List.of("populationByYear", "populationBetweenYears"),
+            Metric.GDP_PER_CAPITA, List.of("gdpPerCapitaByYear", "gdpPerCapitaByYearRange"));
+    private static final Map<Metric, String> INSERT_TOOLS = Map.of(
+            Metric.GDP, "insertGdp",
+            Metric.POPULATION, "insertPopulation");
+
+    private static final Pattern ALL_COUNTRIES = Pattern.compile(
+            "\\b(all|every|each|world|worldwide|global|countries)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern RANKING = Pattern.compile(
+            "\\b(top|rank\\w*|largest|biggest|smallest|highest|lowest|fastest|slowest|most|least|leading)\\b",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern GROUP = Pattern.compile(
+            "\\b(region\\w*|income group\\w*|(high|low|middle|upper|lower)[ -]income|continent\\w*)\\b",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern CALCULATION = Pattern.compile(
+            "\\b(difference|differ\\w*|ratio|sum|total|add|subtract|divide\\w*|multipl\\w*|times|compar\\w*|versus|vs)\\b",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern CURRENT = Pattern.compile(
+            "\\b(current|this year|last \\d+ years|past \\d+ years|recent\\w*|latest|today|now)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WRITE = Pattern.compile(
+            "\\b(insert|store|save|add (a |the )?(new )?record)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final ToolRegistry toolRegistry;
+    private final CountryIndex countryIndex;
+    private final DistributionSummary selectedTools;
+
+    @Value("${app.tools.selection.enabled:true}")
+    private boolean enabled = true;
+    @Value("${app.tools.write-enabled:false}")
+    private boolean writeEnabled;
+
+    public ToolSelector(ToolRegistry toolRegistry, CountryIndex countryIndex, MeterRegistry meterRegistry) {
+        this.toolRegistry = toolRegistry;
+        this.countryIndex = countryIndex;
+        this.selectedTools = DistributionSummary.builder("agent.tools.selected")
+                .description("Tools offered to the LLM in one tools phase call")
+                .register(meterRegistry);
+        // fails at startup when a tool known here is not registered, e.g. after renaming it
+        toolRegistry.callbacks(knownTools());
+    }
+
+    private static Set<String> knownTools() {
+        Set<String> names = new LinkedHashSet<>(List.of(COUNTRY_CODE, CURRENT_YEAR, CALCULATE, GROUP_AGGREGATES));
+        names.addAll(RANKINGS);
+        names.addAll(WRITE_TOOLS);
+        COUNTRY_TOOLS.values().forEach(names::addAll);
+        YEAR_TOOLS.values().forEach(names::addAll);
+        return names;
+    }
+
+    /**
+     * Returns the tools for a tools phase call.
+     *
+     * @param text the data request of the plan phase, or the question when there is no plan
+     */
+    public List<ToolCallback> select(String text) {
+        List<ToolCallback> tools = toolRegistry.callbacks(selectNames(text));
+        selectedTools.record(tools.size());
+        return tools;
+    }
+
+    /**
+     * Whether the text asks about rankings, regions or income groups or all countries rather than named countries.
+     */
+    static boolean needsCrossCountryData(String text) {
+        return RANKING.matcher(text).find() || GROUP.matcher(text).find() || ALL_COUNTRIES.matcher(text).find();
+    }
+
+    Set<String> selectNames(String text) {
+        Set<String> names = new LinkedHashSet<>();
+        if (!enabled || text == null || text.isBlank()) {
+            names.addAll(readTools());
+            addWriteTools(names, text, EnumSet.allOf(Metric.class));
+            return names;
+        }
+
+        Set<Metric> mentioned = MetricKeywords.find(text);
+        Set<Metric> metrics = mentioned.isEmpty() ? EnumSet.allOf(Metric.class) : mentioned;
+        boolean countries = !countryIndex.findCountries(text).isEmpty();
+        boolean ranking = RANKING.matcher(text).find();
+        boolean groups = GROUP.matcher(text).find();
+
+        if (countries) {
+            names.add(COUNTRY_CODE);
+            metrics.forEach(metric -> names.addAll(COUNTRY_TOOLS.get(metric)));
+        }
+        if (!countries || ALL_COUNTRIES.matcher(text).find()) {
+            metrics.forEach(metric -> names.addAll(YEAR_TOOLS.get(metric)));
+        }
+        if (ranking) {
+            names.addAll(RANKINGS);
+        }
+        if (groups) {
+            names.add(GROUP_AGGREGATES);
+        }
+        if (CALCULATION.matcher(text).find()) {
+            names.add(CALCULATE);
+        }
+        if (CURRENT.matcher(text).find()) {
+            names.add(CURRENT_YEAR);
+        }
+        if (mentioned.isEmpty() && !countries && !ranking && !groups) {
+            // nothing recognized, the model gets every read tool
+            names.addAll(readTools());
+        }
+        addWriteTools(names, text, metrics);
+        log.debug("Selected {} tools for '{}': {}", names.size(), text, names);
+        return names;
+    }
+
+    private List<String> readTools() {
+        return toolRegistry.getToolNames().stream().filter(name -> !WRITE_TOOLS.contains(name)).toList();
+    }
+
+    private void addWriteTools(Set<String> names, String text, Set<Metric> metrics) {
+        if (writeEnabled && text != null && WRITE.matcher(text).find()) {
+            metrics.stream().map(INSERT_TOOLS::get).filter(Objects::nonNull).forEach(names::add);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.katrikken.gdpai.model;
+
+/**
+ * LLM calls made by the workflows. The phase of a call is passed to the advisors
+ * in the advisor context under {@link #CONTEXT_KEY}.
+ */
+public enum WorkflowPhase {
+    PLAN,
+    TOOLS,
+    ANALYSIS;
+
+    public static final String CONTEXT_KEY = "agent.phase";
+}
@@ -0,0 +1,327 @@
+package com.katrikken.gdpai.repository;
+
+import com.katrikken.gdpai.dto.AnnualValue;
+import com.katrikken.gdpai.dto.CagrValue;
+import com.katrikken.gdpai.dto.GroupAggregate;
+import com.katrikken.gdpai.dto.GroupType;
+import com.katrikken.gdpai.dto.Metric;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Access to the analytics tables METRIC_ANNUAL, METRIC_CAGR and GROUP_AGGREGATE (see schema.sql).
+ * The tables are written in one transaction by {@link #replaceAll} or {@link #applyChanges},
+ * readers keep seeing the previous content until the new one is committed.
+ */
+@Repository
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class AnalyticsRepository {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String ANNUAL_COLUMNS = " (METRIC, COUNTRY_CODE, DATA_YEAR, \"VALUE\", YOY_GROWTH, VALUE_RANK, GROWTH_RANK) ";
+    private static final String CAGR_COLUMNS = " (METRIC, COUNTRY_CODE, START_YEAR, END_YEAR, START_VALUE, END_VALUE, CAGR, CAGR_RANK) ";
+    private static final String GROUP_COLUMNS = " (METRIC, GROUP_TYPE, GROUP_NAME, DATA_YEAR, \"VALUE\", COUNTRIES, YOY_GROWTH) ";
+
+    // one statement per table, the rows are passed as one array per column to the TABLE function
+    private static final String INSERT_ANNUAL = "INSERT INTO METRIC_ANNUAL" + ANNUAL_COLUMNS
+            + "SELECT * FROM TABLE(METRIC VARCHAR(20) = ?, COUNTRY_CODE VARCHAR(3) = ?, DATA_YEAR SMALLINT = ?, "
+            + "\"VALUE\" DECIMAL(30, 10) = ?, YOY_GROWTH DECIMAL(20, 4) = ?, VALUE_RANK INT = ?, GROWTH_RANK INT = ?)";
+    private static final String INSERT_CAGR = "INSERT INTO METRIC_CAGR" + CAGR_COLUMNS
+            + "SELECT * FROM TABLE(METRIC VARCHAR(20) = ?, COUNTRY_CODE VARCHAR(3) = ?, START_YEAR SMALLINT = ?, "
+            + "END_YEAR SMALLINT = ?, START_VALUE DECIMAL(30, 10) = ?, END_VALUE DECIMAL(30, 10) = ?, CAGR DECIMAL(20, 4) = ?, "
+            + "CAGR_RANK INT = ?)";
+    private static final String INSERT_GROUP = "INSERT INTO GROUP_AGGREGATE" + GROUP_COLUMNS
+            + "SELECT * FROM TABLE(METRIC VARCHAR(20) = ?, GROUP_TYPE VARCHAR(20) = ?, GROUP_NAME VARCHAR(100) = ?, "
+            + "DATA_YEAR SMALLINT = ?, \"VALUE\" DECIMAL(30, 10) = ?, COUNTRIES INT = ?, YOY_GROWTH DECIMAL(20, 4) = ?)";
+
+    private static final String MERGE_ANNUAL = "MERGE INTO METRIC_ANNUAL" + ANNUAL_COLUMNS
+            + "KEY (METRIC, DATA_YEAR, COUNTRY_CODE) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String MERGE_CAGR = "MERGE INTO METRIC_CAGR" + CAGR_COLUMNS
+            + "KEY (METRIC, START_YEAR, END_YEAR, COUNTRY_CODE) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String MERGE_GROUP = "MERGE INTO GROUP_AGGREGATE" + GROUP_COLUMNS
+            + "KEY (METRIC, GROUP_TYPE, DATA_YEAR, GROUP_NAME) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_ANNUAL = "DELETE FROM METRIC_ANNUAL WHERE METRIC = ? AND DATA_YEAR = ? AND COUNTRY_CODE = ?";
+    private static final String DELETE_CAGR = "DELETE FROM METRIC_CAGR WHERE METRIC = ? AND START_YEAR = ? AND END_YEAR = ? AND COUNTRY_CODE = ?";
+    private static final String DELETE_GROUP = "DELETE FROM GROUP_AGGREGATE WHERE METRIC = ? AND GROUP_TYPE = ? AND DATA_YEAR = ? AND GROUP_NAME = ?";
+
+    private static final String SELECT_ANNUAL = "SELECT A.METRIC, A.COUNTRY_CODE, C.NAME, A.DATA_YEAR, A.\"VALUE\", "
+            + "A.YOY_GROWTH, A.VALUE_RANK, A.GROWTH_RANK FROM METRIC_ANNUAL A JOIN COUNTRY C ON C.COUNTRY_CODE = A.COUNTRY_CODE ";
+    private static final String TOP_BY_VALUE = SELECT_ANNUAL
+            + "WHERE A.METRIC = ? AND A.DATA_YEAR = ? ORDER BY A.VALUE_RANK %s, A.COUNTRY_CODE LIMIT ?";
+    private static final String TOP_BY_GROWTH = SELECT_ANNUAL
+            + "WHERE A.METRIC = ? AND A.DATA_YEAR = ? AND A.GROWTH_RANK IS NOT NULL ORDER BY A.GROWTH_RANK %s, A.COUNTRY_CODE LIMIT ?";
+    private static final String COUNTRY_RANKS = SELECT_ANNUAL
+            + "WHERE A.METRIC = ? AND A.DATA_YEAR BETWEEN ? AND ? AND A.COUNTRY_CODE = ? ORDER BY A.DATA_YEAR";
+
+    private static final String TOP_BY_CAGR = "SELECT R.METRIC, R.COUNTRY_CODE, C.NAME, R.START_YEAR, R.END_YEAR, "
+            + "R.START_VALUE, R.END_VALUE, R.CAGR, R.CAGR_RANK FROM METRIC_CAGR R JOIN COUNTRY C ON C.COUNTRY_CODE = R.COUNTRY_CODE "
+            + "WHERE R.METRIC = ? AND R.START_YEAR = ? AND R.END_YEAR = ? ORDER BY R.CAGR_RANK %s, R.COUNTRY_CODE LIMIT ?";
+    // periods that are not precomputed, from the values of the first and the last year
+    private static final String TOP_BY_CAGR_COMPUTED = "SELECT R.*, RANK() OVER (ORDER BY R.CAGR DESC) AS CAGR_RANK FROM ("
+            + "SELECT S.METRIC, S.COUNTRY_CODE, C.NAME, S.DATA_YEAR AS START_YEAR, E.DATA_YEAR AS END_YEAR, "
+            + "S.\"VALUE\" AS START_VALUE, E.\"VALUE\" AS END_VALUE, (POWER(CAST(E.\"VALUE\" AS DOUBLE PRECISION) "
+            + "/ CAST(S.\"VALUE\" AS DOUBLE PRECISION), 1.0 / (E.DATA_YEAR - S.DATA_YEAR)) - 1) * 100 AS CAGR "
+            + "FROM METRIC_ANNUAL S "
+            + "JOIN METRIC_ANNUAL E ON E.METRIC = S.METRIC AND E.COUNTRY_CODE = S.COUNTRY_CODE AND E.DATA_YEAR = ? "
+            + "JOIN COUNTRY C ON C.COUNTRY_CODE = S.COUNTRY_CODE "
+            + "WHERE S.METRIC = ? AND S.DATA_YEAR = ? AND S.\"VALUE\" > 0 AND E.\"VALUE\" > 0) R "
+            + "ORDER BY CAGR_RANK %s, R.COUNTRY_CODE LIMIT ?";
+
+    private static final String GROUP_AGGREGATES = "SELECT METRIC, GROUP_TYPE, GROUP_NAME, DATA_YEAR, \"VALUE\", COUNTRIES, YOY_GROWTH "
+            + "FROM GROUP_AGGREGATE WHERE METRIC = ? AND GROUP_TYPE = ? AND DATA_YEAR = ? ORDER BY \"VALUE\" DESC";
+
+    private static final RowMapper<AnnualValue> ANNUAL_MAPPER = (rs, rowNum) -> new AnnualValue(
+            Metric.valueOf(rs.getString(1)), rs.getString(2), rs.getString(3), rs.getInt(4), rs.getBigDecimal(5),
+            getDouble(rs, 6), rs.getInt(7), getInteger(rs, 8));
+    private static final RowMapper<CagrValue> CAGR_MAPPER = (rs, rowNum) -> new CagrValue(
+            Metric.valueOf(rs.getString(1)), rs.getString(2), rs.getString(3), rs.getInt(4), rs.getInt(5),
+            rs.getBigDecimal(6), rs.getBigDecimal(7), rs.getDouble(8), rs.getInt(9));
+    private static final RowMapper<GroupAggregate> GROUP_MAPPER = (rs, rowNum) -> new GroupAggregate(
+            Metric.valueOf(rs.getString(1)), GroupType.valueOf(rs.getString(2)), rs.getString(3), rs.getInt(4),
+            rs.getBigDecimal(5), rs.getInt(6), getDouble(rs, 7));
+
+    /**
+     * Primary key orders of the tables. Rows written in this order only append to the index,
+     * in random order they take twice as long.
+     */
+    public static final Comparator<AnnualValue> ANNUAL_ORDER = Comparator.comparing((AnnualValue a) -> a.metric().name())
+            .thenComparingInt(AnnualValue::year).thenComparing(AnnualValue::countryCode);
+    public static final Comparator<CagrValue> CAGR_ORDER = Comparator.comparing((CagrValue c) -> c.metric().name())
+            .thenComparingInt(CagrValue::startYear).thenComparingInt(CagrValue::endYear).thenComparing(CagrValue::countryCode);
+    public static final Comparator<GroupAggregate> GROUP_ORDER = Comparator.comparing((GroupAggregate g) -> g.metric().name())
+            .thenComparing(g -> g.groupType().name()).thenComparingInt(GroupAggregate::year)
+            .thenComparing(GroupAggregate::groupName);
+
+    private static final ParameterizedPreparedStatementSetter<AnnualValue> ANNUAL_SETTER = (ps, a) -> {
+        ps.setString(1, a.metric().name());
+        ps.setString(2, a.countryCode());
+        ps.setInt(3, a.year());
+        ps.setBigDecimal(4, a.value());
+        setPercent(ps, 5, a.yoyGrowth());
+        ps.setInt(6, a.valueRank());
+        if (a.growthRank() == null) {
+            ps.setNull(7, Types.INTEGER);
+        } else {
+            ps.setInt(7, a.growthRank());
+        }
+    };
+    private static final ParameterizedPreparedStatementSetter<CagrValue> CAGR_SETTER = (ps, c) -> {
+        ps.setString(1, c.metric().name());
+        ps.setString(2, c.countryCode());
+        ps.setInt(3, c.startYear());
+        ps.setInt(4, c.endYear());
+        ps.setBigDecimal(5, c.startValue());
+        ps.setBigDecimal(6, c.endValue());
+        setPercent(ps, 7, c.cagr());
+        ps.setInt(8, c.rank());
+    };
+    private static final ParameterizedPreparedStatementSetter<GroupAggregate> GROUP_SETTER = (ps, g) -> {
+        ps.setString(1, g.metric().name());
+        ps.setString(2, g.groupType().name());
+        ps.setString(3, g.groupName());
+        ps.setInt(4, g.year());
+        ps.setBigDecimal(5, g.value());
+        ps.setInt(6, g.countries());
+        setPercent(ps, 7, g.yoyGrowth());
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile boolean built;
+
+    private static Double getDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Integer getInteger(ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static void setPercent(PreparedStatement ps, int index, Double percent) throws SQLException {
+        if (percent == null) {
+            ps.setNull(index, Types.DECIMAL);
+        } else {
+            ps.setBigDecimal(index, percent(percent));
+        }
+    }
+
+    private static BigDecimal percent(Double percent) {
+        return percent == null ? null : BigDecimal.valueOf(percent).setScale(4, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * The rows as one array per column, the parameters of an INSERT ... SELECT FROM TABLE.
+     */
+    @SafeVarargs
+    private static <T> Object[] columns(List<T> rows, Function<T, Object>... columns) {
+        Object[] arrays = new Object[columns.length];
+        for (int column = 0; column < columns.length; column++) {
+            Object[] values = new Object[rows.size()];
+            for (int row = 0; row < values.length; row++) {
+                values[row] = columns[column].apply(rows.get(row));
+            }
+            arrays[column] = values;
+        }
+        return arrays;
+    }
+
+    private static String rankOrder(boolean lowestFirst) {
+        return lowestFirst ? "DESC" : "ASC";
+    }
+
+    /**
+     * Region and income group of every country that has a region, by country code. The aggregates of the source data
+     * (World, European Union, ...) have none and are left out.
+     */
+    public List<CountryGroups> findCountryGroups() {
+        return jdbcTemplate.query("SELECT COUNTRY_CODE, REGION, INCOME_GROUP FROM COUNTRY WHERE REGION IS NOT NULL ORDER BY COUNTRY_CODE",
+                (rs, rowNum) -> new CountryGroups(rs.getString(1), rs.getString(2), rs.getString(3)));
+    }
+
+    /**
+     * Whether the analytics tables have been written since startup. Until then they are empty
+     * because they are still being built, not because there is no data.
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Replaces the content of the analytics tables in one transaction, with one set-based
+     * INSERT ... SELECT per table. The rows are inserted as given and are expected in primary key order.
+     */
+    @Transactional
+    public void replaceAll(List<AnnualValue> annual, List<CagrValue> cagr, List<GroupAggregate> groups) {
+        jdbcTemplate.update("DELETE FROM METRIC_ANNUAL");
+        jdbcTemplate.update("DELETE FROM METRIC_CAGR");
+        jdbcTemplate.update("DELETE FROM GROUP_AGGREGATE");
+        jdbcTemplate.update(INSERT_ANNUAL, columns(annual, a -> a.metric().name(), AnnualValue::countryCode,
+                AnnualValue::year, AnnualValue::value, a -> percent(a.yoyGrowth()), AnnualValue::valueRank,
+                AnnualValue::growthRank));
+        jdbcTemplate.update(INSERT_CAGR, columns(cagr, c -> c.metric().name(), CagrValue::countryCode,
+                CagrValue::startYear, CagrValue::endYear, CagrValue::startValue, CagrValue::endValue,
+                c -> percent(c.cagr()), CagrValue::rank));
+        jdbcTemplate.update(INSERT_GROUP, columns(groups, g -> g.metric().name(), g -> g.groupType().name(),
+                GroupAggregate::groupName, GroupAggregate::year, GroupAggregate::value, GroupAggregate::countries,
+                g -> percent(g.yoyGrowth())));
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            built = true;
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                built = true;
+            }
+        });
+    }
+
+    /**
+     * Writes the rows that differ from the current content of the analytics tables in one transaction:
+     * rows of a changed or new key are merged, rows of a key that is gone are deleted.
+     * The rows are written as given and are expected in primary key order.
+     */
+    @Transactional
+    public void applyChanges(Changes<AnnualValue> annual, Changes<CagrValue> cagr, Changes<GroupAggregate> groups) {
+        jdbcTemplate.batchUpdate(DELETE_ANNUAL, annual.deleted(), BATCH_SIZE, (ps, a) -> {
+            ps.setString(1, a.metric().name());
+            ps.setInt(2, a.year());
+            ps.setString(3, a.countryCode());
+        });
+        jdbcTemplate.batchUpdate(DELETE_CAGR, cagr.deleted(), BATCH_SIZE, (ps, c) -> {
+            ps.setString(1, c.metric().name());
+            ps.setInt(2, c.startYear());
+            ps.setInt(3, c.endYear());
+            ps.setString(4, c.countryCode());
+        });
+        jdbcTemplate.batchUpdate(DELETE_GROUP, groups.deleted(), BATCH_SIZE, (ps, g) -> {
+            ps.setString(1, g.metric().name());
+            ps.setString(2, g.groupType().name());
+            ps.setInt(3, g.year());
+            ps.setString(4, g.groupName());
+        });
+        jdbcTemplate.batchUpdate(MERGE_ANNUAL, annual.merged(), BATCH_SIZE, ANNUAL_SETTER);
+        jdbcTemplate.batchUpdate(MERGE_CAGR, cagr.merged(), BATCH_SIZE, CAGR_SETTER);
+        jdbcTemplate.batchUpdate(MERGE_GROUP, groups.merged(), BATCH_SIZE, GROUP_SETTER);
+    }
+
+    /**
+     * Countries with the highest values of the metric in the given year, or the lowest when lowestFirst.
+     */
+    public List<AnnualValue> findTopByValue(Metric metric, int year, int limit, boolean lowestFirst) {
+        return jdbcTemplate.query(TOP_BY_VALUE.formatted(rankOrder(lowestFirst)), ANNUAL_MAPPER, metric.name(), year, limit);
+    }
+
+    /**
+     * Countries with the fastest growth of the metric over the previous year, or the slowest when lowestFirst.
+     */
+    public List<AnnualValue> findTopByGrowth(Metric metric, int year, int limit, boolean lowestFirst) {
+        return jdbcTemplate.query(TOP_BY_GROWTH.formatted(rankOrder(lowestFirst)), ANNUAL_MAPPER, metric.name(), year, limit);
+    }
+
+    /**
+     * Values, growth and ranks of a country between the given startYear and endYear (inclusive).
+     */
+    public List<AnnualValue> findCountryRanks(Metric metric, String countryCode, int startYear, int endYear) {
+        return jdbcTemplate.query(COUNTRY_RANKS, ANNUAL_MAPPER, metric.name(), startYear, endYear, countryCode);
+    }
+
+    /**
+     * Countries with the fastest compound annual growth between startYear and endYear, or the slowest when lowestFirst.
+     * Precomputed periods are read from METRIC_CAGR, other periods are computed from the values
+     * of the first and the last year.
+     */
+    public List<CagrValue> findTopByCagr(Metric metric, int startYear, int endYear, int limit, boolean lowestFirst) {
+        List<CagrValue> precomputed = jdbcTemplate.query(TOP_BY_CAGR.formatted(rankOrder(lowestFirst)), CAGR_MAPPER,
+                metric.name(), startYear, endYear, limit);
+        if (!precomputed.isEmpty() || endYear <= startYear) {
+            return precomputed;
+        }
+        return jdbcTemplate.query(TOP_BY_CAGR_COMPUTED.formatted(rankOrder(lowestFirst)), CAGR_MAPPER,
+                endYear, metric.name(), startYear, limit);
+    }
+
+    /**
+     * Totals of the metric per region or income group in the given year, highest first.
+     */
+    public List<GroupAggregate> findGroupAggregates(Metric metric, GroupType groupType, int year) {
+        return jdbcTemplate.query(GROUP_AGGREGATES, GROUP_MAPPER, metric.name(), groupType.name(), year);
+    }
+
+    /**
+     * Rows to merge into and rows to delete from one of the analytics tables.
+     */
+    public record Changes<T>(List<T> merged, List<T> deleted) {
+
+        public int size() {
+            return merged.size() + deleted.size();
+        }
+    }
+
+    /**
+     * Region and income group of a country, the income group may be null.
+     */
+    public record CountryGroups(String countryCode, String region, String incomeGroup) {
+    }
+}
@@ -0,0 +1,112 @@
+package com.katrikken.gdpai.repository;
+
+import com.katrikken.gdpai.dto.DataPoint;
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.dto.YearCountryCursor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Read-only access to GDP, Population and GDP per capita values for year based queries.
+ * <p>
+ * Rows are mapped straight into {@link DataPoint} records with JDBC, so no entities are managed by the
+ * persistence context and no dirty checking happens on the way out. Results are ordered by
+ * (DATA_YEAR, COUNTRY_CODE), which matches the secondary indexes defined in schema.sql.
+ * <p>
+ * The page methods use keyset pagination over the same order: a page starts after a {@link YearCountryCursor}
+ * and holds at most limit rows, so the cost of a page does not depend on how many pages came before it.
+ * <p>
+ * {@link #scanAll} reads a whole table through a forward-only, read-only cursor app.read.fetch-size rows at a time
+ * and hands over one row after the other instead of building a list.
+ */
+@Repository
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class DataPointReadRepository {
+
+    private static final String GDP_PAGE = pageQuery("GDP", "GDP");
+    private static final String POPULATION_PAGE = pageQuery("POPULATION", "POPULATION");
+    private static final String GDP_PER_CAPITA_PAGE = pageQuery("GDP_PER_CAPITA", "GDP_PER_CAPITA_VIEW");
+
+    private static final RowMapper<DataPoint> DATA_POINT_MAPPER =
+            (rs, rowNum) -> new DataPoint(rs.getString(1), rs.getInt(2), rs.getBigDecimal(3));
+
+    private static final Map<Metric, String> ALL = new EnumMap<>(Metric.class);
+
+    static {
+        for (Metric metric : Metric.values()) {
+            ALL.put(metric, "SELECT COUNTRY_CODE, DATA_YEAR, " + metric.getColumn() + " FROM " + metric.getTable()
+                    + " ORDER BY DATA_YEAR, COUNTRY_CODE");
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.read.fetch-size:500}")
+    private int fetchSize;
+
+    private static String pageQuery(String column, String table) {
+        return "SELECT COUNTRY_CODE, DATA_YEAR, " + column + " FROM " + table
+                + " WHERE DATA_YEAR BETWEEN ? AND ? AND (DATA_YEAR > ? OR (DATA_YEAR = ? AND COUNTRY_CODE > ?))"
+                + " ORDER BY DATA_YEAR, COUNTRY_CODE LIMIT ?";
+    }
+
+    private PreparedStatementCreator scanStatement(Metric metric) {
+        return connection -> {
+            PreparedStatement statement = connection.prepareStatement(ALL.get(metric),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        };
+    }
+
+    private List<DataPoint> findPage(String sql, int startYear, int endYear, YearCountryCursor after, int limit) {
+        YearCountryCursor from = after == null ? YearCountryCursor.startOf(startYear) : after;
+        return jdbcTemplate.query(sql, DATA_POINT_MAPPER,
+                startYear, endYear, from.year(), from.year(), from.countryCode(), limit);
+    }
+
+    /**
+     * Finds at most limit GDP values between the given startYear and endYear (inclusive) following the cursor,
+     * or from the start if the cursor is null.
+     */
+    public List<DataPoint> findGdpPage(int startYear, int endYear, YearCountryCursor after, int limit) {
+        return findPage(GDP_PAGE, startYear, endYear, after, limit);
+    }
+
+    /**
+     * Finds at most limit Population values between the given startYear and endYear (inclusive) following the cursor,
+     * or from the start if the cursor is null.
+     */
+    public List<DataPoint> findPopulationPage(int startYear, int endYear, YearCountryCursor after, int limit) {
+        return findPage(POPULATION_PAGE, startYear, endYear, after, limit);
+    }
+
+    /**
+     * Finds at most limit GDP per capita values between the given startYear and endYear (inclusive) following
+     * the cursor, or from the start if the cursor is null.
+     */
+    public List<DataPoint> findGdpPerCapitaPage(int startYear, int endYear, YearCountryCursor after, int limit) {
+        return findPage(GDP_PER_CAPITA_PAGE, startYear, endYear, after, limit);
+    }
+
+    /**
+     * Passes all values of the metric to the consumer row by row, in (DATA_YEAR, COUNTRY_CODE) order.
+     */
+    public void scanAll(Metric metric, Consumer<DataPoint> consumer) {
+        jdbcTemplate.query(scanStatement(metric), (RowCallbackHandler) rs -> consumer.accept(DATA_POINT_MAPPER.mapRow(rs, 0)));
+    }
+}
@@ -0,0 +1,271 @@
+package com.katrikken.gdpai.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Chat memory stored as one file per conversation in a directory that several instances of the application share,
+ * so that any instance can serve any turn of a conversation.
+ * <p>
+ * Messages are written in a compact binary format (type and UTF-8 text of every message, deflated).
+ * Only user, assistant and system messages with their text are kept, which is what the chat memory advisor stores.
+ * <p>
+ * Writes are buffered: {@link #saveAll} only replaces the pending messages of the conversation, which are written by
+ * {@link #flush()} at the end of a turn or by the background flush every flushIntervalMillis. A turn saves the memory
+ * after every LLM call, so it is written once instead of several times. Files are replaced atomically.
+ * <p>
+ * Conversations read or written by this instance are kept in a near-cache. A cached conversation is used as long as
+ * its file has not changed (same file, size and modification time), so turns served by other instances are seen.
+ */
+@Log4j2
+public class FileChatMemoryRepository implements ChatMemoryRepository, Flushable, AutoCloseable {
+
+    private static final String SUFFIX = ".conv";
+    private static final int FORMAT_VERSION = 1;
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private final Path directory;
+    private final Map<String, List<Message>> pending = new ConcurrentHashMap<>();
+    private final Cache<String, Cached> nearCache;
+    private final ScheduledExecutorService flusher;
+    private final Counter fileReads;
+    private final Counter fileWrites;
+    private final Counter nearCacheHits;
+
+    public FileChatMemoryRepository(Path directory, int nearCacheSize, long flushIntervalMillis, MeterRegistry meterRegistry) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create chat memory directory " + directory, e);
+        }
+        this.nearCache = Caffeine.newBuilder().maximumSize(nearCacheSize).build();
+        this.fileReads = Counter.builder("agent.chat.memory.file.reads")
+                .description("Conversations read from the chat memory directory")
+                .register(meterRegistry);
+        this.fileWrites = Counter.builder("agent.chat.memory.file.writes")
+                .description("Conversations written to the chat memory directory")
+                .register(meterRegistry);
+        this.nearCacheHits = Counter.builder("agent.chat.memory.near.cache.hits")
+                .description("Conversations served from the near-cache after checking their file")
+                .register(meterRegistry);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("chat-memory-flush").daemon().factory());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Chat memory stored in {}", directory.toAbsolutePath());
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        List<String> ids = new ArrayList<>(pending.keySet());
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> decodeId(name.substring(0, name.length() - SUFFIX.length())))
+                    .filter(id -> !pending.containsKey(id))
+                    .forEach(ids::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ids;
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        List<Message> unwritten = pending.get(conversationId);
+        if (unwritten != null) {
+            return unwritten;
+        }
+        Path file = fileOf(conversationId);
+        Object stamp = stamp(file);
+        if (stamp == null) {
+            return List.of();
+        }
+        Cached cached = nearCache.getIfPresent(conversationId);
+        if (cached != null && cached.stamp().equals(stamp)) {
+            nearCacheHits.increment();
+            return cached.messages();
+        }
+        List<Message> messages = read(file);
+        fileReads.increment();
+        nearCache.put(conversationId, new Cached(messages, stamp));
+        return messages;
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        pending.put(conversationId, List.copyOf(messages));
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        synchronized (this) {
+            pending.remove(conversationId);
+            nearCache.invalidate(conversationId);
+            try {
+                Files.deleteIfExists(fileOf(conversationId));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending messages of all conversations.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        for (Map.Entry<String, List<Message>> entry : pending.entrySet()) {
+            String conversationId = entry.getKey();
+            List<Message> messages = entry.getValue();
+            Path file = write(conversationId, messages);
+            fileWrites.increment();
+            nearCache.put(conversationId, new Cached(messages, stamp(file)));
+            // messages saved while writing stay pending for the next flush
+            pending.remove(conversationId, messages);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not write the chat memory", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    private Path write(String conversationId, List<Message> messages) throws IOException {
+        Path file = fileOf(conversationId);
+        Path temp = Files.createTempFile(directory, null, ".tmp");
+        try {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new DeflaterOutputStream(Files.newOutputStream(temp), deflater)))) {
+                out.writeByte(FORMAT_VERSION);
+                List<Message> stored = messages.stream().filter(FileChatMemoryRepository::isStored).toList();
+                out.writeInt(stored.size());
+                for (Message message : stored) {
+                    byte[] text = Objects.requireNonNullElse(message.getText(), "").getBytes(StandardCharsets.UTF_8);
+                    out.writeByte(message.getMessageType().ordinal());
+                    out.writeInt(text.length);
+                    out.write(text);
+                }
+            } finally {
+                deflater.end();
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return file;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static List<Message> read(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(Files.newInputStream(file))))) {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unknown chat memory format " + version + " of " + file);
+            }
+            int count = in.readInt();
+            List<Message> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                MessageType type = TYPES[in.readUnsignedByte()];
+                String text = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+                messages.add(switch (type) {
+                    case USER -> new UserMessage(text);
+                    case ASSISTANT -> new AssistantMessage(text);
+                    case SYSTEM -> new SystemMessage(text);
+                    case TOOL -> throw new IOException("Unexpected tool message in " + file);
+                });
+            }
+            return List.copyOf(messages);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isStored(Message message) {
+        return message.getMessageType() != MessageType.TOOL;
+    }
+
+    /**
+     * Identifies the current content of the file, null if there is no file.
+     */
+    private static Object stamp(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return List.of(Objects.requireNonNullElse(attributes.fileKey(), ""), attributes.lastModifiedTime(), attributes.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Conversation ids come from a cookie, so they are encoded instead of being used as file names.
+     */
+    private Path fileOf(String conversationId) {
+        return directory.resolve(Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(conversationId.getBytes(StandardCharsets.UTF_8)) + SUFFIX);
+    }
+
+    private static String decodeId(String fileName) {
+        return new String(Base64.getUrlDecoder().decode(fileName), StandardCharsets.UTF_8);
+    }
+
+    private record Cached(List<Message> messages, Object stamp) {
+    }
+}
@@ -2,7 +2,10 @@ package com.katrikken.gdpai.repository;
 
 import com.katrikken.gdpai.entity.CountryYearId;
 import com.katrikken.gdpai.entity.GdpPerCapita;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -16,6 +19,7 @@ public interface GdpPerCapitaRepository extends JpaRepository<GdpPerCapita, Coun
      * @param countryCode The 3-letter country code (e.g., "USA").
      * @return A list of GdpPerCapita records for that country.
      */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<GdpPerCapita> findByIdCountryCodeOrderByIdDataYear(String countryCode);
 
     /**
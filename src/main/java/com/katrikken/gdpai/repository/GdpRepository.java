@@ -2,7 +2,10 @@ package com.katrikken.gdpai.repository;
 
 import com.katrikken.gdpai.entity.CountryYearId;
 import com.katrikken.gdpai.entity.Gdp;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -13,6 +16,7 @@ public interface GdpRepository extends JpaRepository<Gdp, CountryYearId> {
     /**
      * Finds all GDP data records for a specific country code.
      */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<Gdp> findByIdCountryCodeOrderByIdDataYear(String countryCode);
 
     /**
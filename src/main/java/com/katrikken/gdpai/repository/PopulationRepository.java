@@ -2,7 +2,10 @@ package com.katrikken.gdpai.repository;
 
 import com.katrikken.gdpai.entity.CountryYearId;
 import com.katrikken.gdpai.entity.Population;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -13,6 +16,7 @@ public interface PopulationRepository extends JpaRepository<Population, CountryY
     /**
      * Finds all population data records for a specific country code.
      */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<Population> findByIdCountryCodeOrderByIdDataYear(String countryCode);
 
     /**
@@ -0,0 +1,236 @@
+package com.katrikken.gdpai.tool;
+
+import com.katrikken.gdpai.dto.AnnualValue;
+import com.katrikken.gdpai.dto.CagrValue;
+import com.katrikken.gdpai.dto.GroupAggregate;
+import com.katrikken.gdpai.dto.GroupType;
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.repository.AnalyticsRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Description;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tools over the precomputed analytics tables: rankings by value, growth and compound annual growth,
+ * the ranks of a single country and totals per region or income group.
+ * Until the first build has committed, empty results are reported as still being built instead of as missing data.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class AnalyticsToolService extends DataTool {
+
+    public static final String TOP_BY_VALUE_DESCRIPTION =
+            "Rank countries by GDP, Population or GDP per capita in a year, e.g. the largest economies. Input: RankingQuery. " +
+                    "Output: multi-line string with entries formatted as rank. countryCode countryName: value (growth over the previous year).";
+
+    public static final String TOP_BY_GROWTH_DESCRIPTION =
+            "Rank countries by growth of GDP, Population or GDP per capita over the previous year, e.g. the fastest growing economies in a year. " +
+                    "Input: RankingQuery. Output: multi-line string with entries formatted as rank. countryCode countryName: growth % (value).";
+
+    public static final String TOP_BY_CAGR_DESCRIPTION =
+            "Rank countries by compound annual growth rate of GDP, Population or GDP per capita between two years, " +
+                    "e.g. the fastest growing economies of the 2010s (2010 to 2020). Input: PeriodRankingQuery. " +
+                    "Output: multi-line string with entries formatted as rank. countryCode countryName: growth % per year (start and end value).";
+
+    public static final String COUNTRY_RANKS_DESCRIPTION =
+            "Return the world rank of a country by GDP, Population or GDP per capita and by their growth for each year. " +
+                    "Input: CountryRankQuery. Output: multi-line string with entries formatted as year: value, rank, growth, growth rank.";
+
+    public static final String GROUP_AGGREGATES_DESCRIPTION =
+            "Return total GDP, Population or GDP per capita per region or income group in a year with growth over the previous year. " +
+                    "Input: GroupQuery. Output: multi-line string with entries formatted as group: value (countries, growth).";
+
+    static final int DEFAULT_LIMIT = 10;
+    static final int MAX_LIMIT = 50;
+
+    private static final String METRIC_DESCRIPTION = "The metric: GDP, POPULATION or GDP_PER_CAPITA.";
+    private static final String LIMIT_DESCRIPTION = "Optional. Number of countries to return, 10 by default, at most 50.";
+    private static final String LOWEST_FIRST_DESCRIPTION = "Optional. true to list the lowest values first instead of the highest.";
+
+    private final AnalyticsRepository repository;
+
+    @Value("${app.analytics.enabled:true}")
+    private boolean analyticsEnabled = true;
+
+    private static int limit(Integer limit) {
+        return limit == null || limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+    }
+
+    private static String format(BigDecimal value) {
+        return value.stripTrailingZeros().toPlainString();
+    }
+
+    private static String percent(Double value) {
+        return value == null ? "n/a" : String.format(Locale.ROOT, "%+.2f%%", value);
+    }
+
+    private static String order(Boolean lowestFirst) {
+        return Boolean.TRUE.equals(lowestFirst) ? "lowest first" : "highest first";
+    }
+
+    /**
+     * The answer when no rows were found: the tables may still be being built after startup,
+     * which must not read as missing data.
+     */
+    private String noRows(String noData) {
+        if (analyticsEnabled && !repository.isBuilt()) {
+            return "The analytics tables are still being built after startup, try again in a few seconds "
+                    + "or use the trend tools of the countries.";
+        }
+        return noData;
+    }
+
+    @Tool(name = "topCountriesByValue", description = TOP_BY_VALUE_DESCRIPTION)
+    public String topByValueTool(RankingQuery query) {
+        log.info("topByValueTool called with RankingQuery {}", query);
+        List<AnnualValue> rows = repository.findTopByValue(query.metric(), query.year(), limit(query.limit()),
+                Boolean.TRUE.equals(query.lowestFirst()));
+        if (rows.isEmpty()) {
+            return noRows(String.format("No %s ranking available for year %d.", query.metric().getLabel(), query.year()));
+        }
+        StringBuilder sb = new StringBuilder(String.format("%s ranking %d (%s):",
+                query.metric().getLabel(), query.year(), order(query.lowestFirst())));
+        for (AnnualValue row : rows) {
+            sb.append(String.format("%n%d. %s %s: %s (%s vs previous year)", row.valueRank(), row.countryCode(),
+                    row.countryName(), format(row.value()), percent(row.yoyGrowth())));
+        }
+        return sb.toString();
+    }
+
+    @Tool(name = "topCountriesByGrowth", description = TOP_BY_GROWTH_DESCRIPTION)
+    public String topByGrowthTool(RankingQuery query) {
+        log.info("topByGrowthTool called with RankingQuery {}", query);
+        List<AnnualValue> rows = repository.findTopByGrowth(query.metric(), query.year(), limit(query.limit()),
+                Boolean.TRUE.equals(query.lowestFirst()));
+        if (rows.isEmpty()) {
+            return noRows(String.format("No %s growth ranking available for year %d.", query.metric().getLabel(), query.year()));
+        }
+        StringBuilder sb = new StringBuilder(String.format("%s growth %d over %d (%s):",
+                query.metric().getLabel(), query.year(), query.year() - 1, order(query.lowestFirst())));
+        for (AnnualValue row : rows) {
+            sb.append(String.format("%n%d. %s %s: %s (%s)", row.growthRank(), row.countryCode(),
+                    row.countryName(), percent(row.yoyGrowth()), format(row.value())));
+        }
+        return sb.toString();
+    }
+
+    @Tool(name = "topCountriesByCagr", description = TOP_BY_CAGR_DESCRIPTION)
+    public String topByCagrTool(PeriodRankingQuery query) {
+        log.info("topByCagrTool called with PeriodRankingQuery {}", query);
+        if (query.endYear() <= query.startYear()) {
+            return "Error: endYear must be after startYear.";
+        }
+        List<CagrValue> rows = repository.findTopByCagr(query.metric(), query.startYear(), query.endYear(),
+                limit(query.limit()), Boolean.TRUE.equals(query.lowestFirst()));
+        if (rows.isEmpty()) {
+            return noRows(String.format("No %s growth ranking available for %d to %d.",
+                    query.metric().getLabel(), query.startYear(), query.endYear()));
+        }
+        StringBuilder sb = new StringBuilder(String.format("%s compound annual growth %d to %d (%s):",
+                query.metric().getLabel(), query.startYear(), query.endYear(), order(query.lowestFirst())));
+        for (CagrValue row : rows) {
+            sb.append(String.format("%n%d. %s %s: %s per year (%s to %s)", row.rank(), row.countryCode(),
+                    row.countryName(), percent(row.cagr()), format(row.startValue()), format(row.endValue())));
+        }
+        return sb.toString();
+    }
+
+    @Tool(name = "countryRanks", description = COUNTRY_RANKS_DESCRIPTION)
+    public String countryRanksTool(CountryRankQuery query) {
+        log.info("countryRanksTool called with CountryRankQuery {}", query);
+        int startYear = query.startYear() == null ? Short.MIN_VALUE : query.startYear();
+        int endYear = query.endYear() == null ? Short.MAX_VALUE : query.endYear();
+        List<AnnualValue> rows = repository.findCountryRanks(query.metric(), query.countryCode(), startYear, endYear);
+        if (rows.isEmpty()) {
+            return noRows(String.format("No %s ranks available for country code %s.", query.metric().getLabel(), query.countryCode()));
+        }
+        StringBuilder sb = new StringBuilder(String.format("%s world ranks of %s %s:",
+                query.metric().getLabel(), query.countryCode(), rows.getFirst().countryName()));
+        for (AnnualValue row : rows) {
+            sb.append(String.format("%n%d: %s, rank %d, growth %s, growth rank %s", row.year(), format(row.value()),
+                    row.valueRank(), percent(row.yoyGrowth()), row.growthRank() == null ? "n/a" : row.growthRank()));
+        }
+        return sb.toString();
+    }
+
+    @Tool(name = "groupAggregates", description = GROUP_AGGREGATES_DESCRIPTION)
+    public String groupAggregatesTool(GroupQuery query) {
+        log.info("groupAggregatesTool called with GroupQuery {}", query);
+        List<GroupAggregate> rows = repository.findGroupAggregates(query.metric(), query.groupType(), query.year());
+        String grouping = query.groupType() == GroupType.REGION ? "region" : "income group";
+        if (rows.isEmpty()) {
+            return noRows(String.format("No %s data by %s available for year %d.", query.metric().getLabel(), grouping, query.year()));
+        }
+        StringBuilder sb = new StringBuilder(String.format("%s by %s %d:", query.metric().getLabel(), grouping, query.year()));
+        for (GroupAggregate row : rows) {
+            sb.append(String.format("%n%s: %s (%d countries, %s vs previous year)", row.groupName(), format(row.value()),
+                    row.countries(), percent(row.yoyGrowth())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Input structure for rankings of a single year.
+     */
+    public record RankingQuery(
+            @Description(METRIC_DESCRIPTION)
+            Metric metric,
+            @Description("The specific year of the data (e.g., 2023). Must be a four-digit number.")
+            int year,
+            @Description(LIMIT_DESCRIPTION)
+            Integer limit,
+            @Description(LOWEST_FIRST_DESCRIPTION)
+            Boolean lowestFirst) {
+    }
+
+    /**
+     * Input structure for rankings by compound annual growth between two years.
+     */
+    public record PeriodRankingQuery(
+            @Description(METRIC_DESCRIPTION)
+            Metric metric,
+            @Description("The first year of the period (e.g., 2010).")
+            int startYear,
+            @Description("The last year of the period (e.g., 2020).")
+            int endYear,
+            @Description(LIMIT_DESCRIPTION)
+            Integer limit,
+            @Description(LOWEST_FIRST_DESCRIPTION)
+            Boolean lowestFirst) {
+    }
+
+    /**
+     * Input structure for the ranks of a country.
+     */
+    public record CountryRankQuery(
+            @Description(METRIC_DESCRIPTION)
+            Metric metric,
+            @Description("The 3-letter uppercase country code (e.g., USA, CAN, FRA). " +
+                    "Must be strictly 3 letters, use countryNameToCountryCodeTool tool to get it from country name")
+            String countryCode,
+            @Description("Optional. The first year (e.g., 2014), all years when empty.")
+            Integer startYear,
+            @Description("Optional. The last year (e.g., 2024), all years when empty.")
+            Integer endYear) {
+    }
+
+    /**
+     * Input structure for totals per region or income group.
+     */
+    public record GroupQuery(
+            @Description(METRIC_DESCRIPTION)
+            Metric metric,
+            @Description("REGION (e.g., Europe & Central Asia) or INCOME_GROUP (e.g., High income).")
+            GroupType groupType,
+            @Description("The specific year of the data (e.g., 2023). Must be a four-digit number.")
+            int year) {
+    }
+}
@@ -26,7 +26,7 @@ public class CountryToolService extends DataTool {
      *
      * @return a Function
      */
-    @Tool(description = COUNTRY_NAME_TO_CODE_DESCRIPTION)
+    @Tool(name = "countryNameToCountryCode", description = COUNTRY_NAME_TO_CODE_DESCRIPTION)
     public String countryNameToCountryCodeTool(CountryQuery name) {
         log.info("CountryNameToCountryCodeTool start with name {} ", name);
         String response;
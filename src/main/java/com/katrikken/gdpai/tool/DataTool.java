@@ -1,67 +1,77 @@
 package com.katrikken.gdpai.tool;
 
+import com.katrikken.gdpai.dto.DataPoint;
+import com.katrikken.gdpai.dto.YearCountryCursor;
 import com.katrikken.gdpai.entity.CountryYearId;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Description;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 
 @Log4j2
 public class DataTool {
 
-    protected <T> String buildTrendForCountry(
-            String heading,
-            List<T> items,
-            Function<T, CountryYearId> idExtractor,
-            Function<T, BigDecimal> valueExtractor,
-            String countryCode) {
-
-        if (items == null || items.isEmpty()) {
-            return String.format("No %s data available for country code %s.", heading.toLowerCase(), countryCode);
-        }
+    static final String PAGED_DESCRIPTION = " Returns a limited number of rows per call. When the limit is reached, " +
+            "the last line gives the cursor to pass to get the next rows.";
+    static final String CURSOR_DESCRIPTION = "Optional. Cursor returned by the previous call when the row limit was reached " +
+            "(e.g., 2005:USA), to get the next rows. Leave empty for the first rows.";
+    static final String LIMIT_DESCRIPTION = "Optional. Maximum number of rows to return, capped by the server limit.";
 
-        StringBuilder sb = new StringBuilder();
-        sb.append(heading).append(" ").append(countryCode).append(":\n");
-
-        BigDecimal prev = null;
-        for (T item : items) {
-            CountryYearId id = idExtractor.apply(item);
-            BigDecimal current = valueExtractor.apply(item);
-            composeTrendString(current, prev, sb, id);
-            prev = current;
-        }
+    @Value("${app.tools.result-format:text}")
+    private ResultFormat resultFormat = ResultFormat.TEXT;
+    @Value("${app.tools.max-rows:500}")
+    private int maxRows = 500;
 
-        return sb.toString().trim();
+    /**
+     * Format the results of this tool are rendered in for the LLM.
+     */
+    public ResultFormat getResultFormat() {
+        return resultFormat;
     }
 
-    private void composeTrendString(BigDecimal currentValue, BigDecimal prevValue, StringBuilder sb, CountryYearId id) {
-        String currentStr = currentValue == null ? "null" : currentValue.toPlainString();
-
-        sb.append(id.getDataYear()).append(": ").append(currentStr);
-
-        if (prevValue != null && currentValue != null && prevValue.compareTo(BigDecimal.ZERO) != 0) {
-            BigDecimal diff = currentValue.subtract(prevValue);
-            String diffSign = diff.signum() >= 0 ? "+" : "-";
-            String diffStr = diffSign + diff.abs().toPlainString();
+    protected String render(SeriesResult result) {
+        return result.render(resultFormat);
+    }
 
-            BigDecimal pct = diff.multiply(BigDecimal.valueOf(100))
-                    .divide(prevValue, 6, RoundingMode.HALF_UP)
-                    .setScale(2, RoundingMode.HALF_UP);
+    /**
+     * Runs one page of a keyset paginated query. At most app.tools.max-rows rows are returned,
+     * the result carries the cursor of the next page when there are more rows.
+     */
+    protected SeriesResult findPage(String metric, String cursor, Integer limit, PageQuery query) {
+        YearCountryCursor after;
+        try {
+            after = YearCountryCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return SeriesResult.message(metric, "Error: " + e.getMessage());
+        }
+        int pageSize = limit == null || limit <= 0 ? maxRows : Math.min(limit, maxRows);
+        // one extra row tells whether there is a next page
+        List<DataPoint> rows = query.find(after, pageSize + 1);
+        if (rows.size() <= pageSize) {
+            return SeriesResult.records(metric, rows);
+        }
+        List<DataPoint> page = rows.subList(0, pageSize);
+        return SeriesResult.records(metric, page, YearCountryCursor.after(page.getLast()).toString());
+    }
 
-            String pctStr = diffSign + pct.abs().toPlainString() + "%";
+    @FunctionalInterface
+    protected interface PageQuery {
+        List<DataPoint> find(YearCountryCursor after, int limit);
+    }
 
-            sb.append(", ").append(diffStr).append(", ").append(pctStr);
-        } else if (prevValue != null) {
-            // previous exists but cannot compute percent (current or previous null, or previous is zero)
-            BigDecimal diff = (currentValue == null) ? null : currentValue.subtract(prevValue);
-            String diffStr = diff == null ? "N/A" : (diff.signum() >= 0 ? "+" : "-") + diff.abs().toPlainString();
-            sb.append(", ").append(diffStr).append(", N/A");
+    protected <T> List<DataPoint> toDataPoints(List<T> items,
+                                               Function<T, CountryYearId> idExtractor,
+                                               Function<T, BigDecimal> valueExtractor) {
+        List<DataPoint> points = new ArrayList<>(items.size());
+        for (T item : items) {
+            CountryYearId id = idExtractor.apply(item);
+            points.add(new DataPoint(id.getCountryCode(), id.getDataYear(), valueExtractor.apply(item)));
         }
-
-        sb.append("\n");
+        return points;
     }
 
     public record CountryQuery(
@@ -83,7 +93,15 @@ public class DataTool {
      */
     public record YearQuery(
             @Description("The specific year of the data (e.g., 2023). Must be a four-digit number.")
-            int year) {
+            int year,
+            @Description(CURSOR_DESCRIPTION)
+            String cursor,
+            @Description(LIMIT_DESCRIPTION)
+            Integer limit) {
+
+        public YearQuery(int year) {
+            this(year, null, null);
+        }
     }
 
     /**
@@ -93,7 +111,15 @@ public class DataTool {
             @Description("The inclusive starting year of the range (e.g., 2021).")
             int startYear,
             @Description("The inclusive ending year of the range (e.g., 2023).")
-            int endYear) {
+            int endYear,
+            @Description(CURSOR_DESCRIPTION)
+            String cursor,
+            @Description(LIMIT_DESCRIPTION)
+            Integer limit) {
+
+        public YearRangeQuery(int startYear, int endYear) {
+            this(startYear, endYear, null, null);
+        }
     }
 
 
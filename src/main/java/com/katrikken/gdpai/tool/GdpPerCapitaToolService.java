@@ -1,17 +1,15 @@
 package com.katrikken.gdpai.tool;
 
-import com.katrikken.gdpai.entity.CountryYearId;
+import com.katrikken.gdpai.dto.Metric;
 import com.katrikken.gdpai.entity.GdpPerCapita;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
 import com.katrikken.gdpai.repository.GdpPerCapitaRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -25,81 +23,87 @@ public class GdpPerCapitaToolService extends DataTool {
 
     public static final String GDP_PER_CAPITA_BY_YEAR_DESCRIPTION =
             "Retrieve GDP per capita records for a specific year sorted by country code. Input YearQuery. " +
-                    "Returns a multi-line string with entries formatted as countryCode, year: gdpPerCapita.";
+                    "Returns a multi-line string with entries formatted as countryCode, year: gdpPerCapita." + PAGED_DESCRIPTION;
 
     public static final String GDP_PER_CAPITA_BY_YEAR_RANGE_DESCRIPTION =
-            "Retrieve GDP per capita records for all countries within a year range (inclusive). Input YearRangeQuery. " +
-                    "Returns a multi-line string with entries formatted as countryCode, year: gdpPerCapita.";
+            "Retrieve GDP per capita records for all countries within a year range (inclusive) sorted by year and country code. Input YearRangeQuery. " +
+                    "Returns a multi-line string with entries formatted as countryCode, year: gdpPerCapita." + PAGED_DESCRIPTION;
 
     public static final String GDP_PER_CAPITA_TREND_DESCRIPTION =
             "Return GDP per capita historical trend for a country. Input CountryCodeQuery. " +
                     "Outputs a multi-line string starting with GDP per capita development for the country including percentage growth.";
 
+    static final String METRIC = Metric.GDP_PER_CAPITA.getLabel();
+
     private final GdpPerCapitaRepository repository;
+    private final DataPointReadRepository readRepository;
 
 
-    private String formatGdpPerCapita(GdpPerCapita g) {
-        if (g == null || g.getId() == null) {
-            return "null record";
-        }
-        CountryYearId id = g.getId();
-        String value = Optional.ofNullable(g.getGdpPerCapita()).map(BigDecimal::toString).orElse("null");
-        return String.format("%s, %d: %s", id.getCountryCode(), id.getDataYear(), value);
+    public String gdpPerCapitaByCountry(CountryCodeQuery query) {
+        return render(gdpPerCapitaByCountryCode(query));
     }
 
-    @Tool(description = GDP_PER_CAPITA_BY_COUNTRY_DESCRIPTION)
-    public String gdpPerCapitaByCountry(CountryCodeQuery query) {
+    @Tool(name = "gdpPerCapitaByCountry", description = GDP_PER_CAPITA_BY_COUNTRY_DESCRIPTION)
+    public SeriesResult gdpPerCapitaByCountryCode(CountryCodeQuery query) {
         log.info("gdpPerCapitaByCountry called with query {}", query);
         try {
             List<GdpPerCapita> results = repository.findByIdCountryCodeOrderByIdDataYear(query.countryCode());
-            return results.stream().map(this::formatGdpPerCapita).collect(Collectors.joining("\n"));
+            return SeriesResult.records(METRIC, toDataPoints(results, GdpPerCapita::getId, GdpPerCapita::getGdpPerCapita));
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: GDP per capita data not found for country code %s.", query.countryCode());
+            return SeriesResult.message(METRIC,
+                    String.format("Error: GDP per capita data not found for country code %s.", query.countryCode()));
         }
     }
 
-    @Tool(description = GDP_PER_CAPITA_BY_YEAR_DESCRIPTION)
     public String gdpPerCapitaByYear(YearQuery query) {
+        return render(gdpPerCapitaForYear(query));
+    }
+
+    @Tool(name = "gdpPerCapitaByYear", description = GDP_PER_CAPITA_BY_YEAR_DESCRIPTION)
+    public SeriesResult gdpPerCapitaForYear(YearQuery query) {
         log.info("gdpPerCapitaByYear called with query {}", query);
         try {
-            List<GdpPerCapita> results = repository.findByIdDataYearOrderByIdCountryCode(query.year());
-            return results.stream().map(this::formatGdpPerCapita).collect(Collectors.joining("\n"));
+            return findPage(METRIC, query.cursor(), query.limit(),
+                    (after, limit) -> readRepository.findGdpPerCapitaPage(query.year(), query.year(), after, limit));
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: GDP per capita data not found for year %d.", query.year());
+            return SeriesResult.message(METRIC, String.format("Error: GDP per capita data not found for year %d.", query.year()));
         }
     }
 
-    @Tool(description = GDP_PER_CAPITA_BY_YEAR_RANGE_DESCRIPTION)
     public String gdpPerCapitaByYearRange(YearRangeQuery query) {
+        return render(gdpPerCapitaBetweenYears(query));
+    }
+
+    @Tool(name = "gdpPerCapitaByYearRange", description = GDP_PER_CAPITA_BY_YEAR_RANGE_DESCRIPTION)
+    public SeriesResult gdpPerCapitaBetweenYears(YearRangeQuery query) {
         log.info("gdpPerCapitaByYearRange called with query {}", query);
         try {
-            List<GdpPerCapita> results = repository.findByIdDataYearBetweenOrderByIdCountryCode(query.startYear(), query.endYear());
-            return results.stream().map(this::formatGdpPerCapita).collect(Collectors.joining("\n"));
+            return findPage(METRIC, query.cursor(), query.limit(),
+                    (after, limit) -> readRepository.findGdpPerCapitaPage(query.startYear(), query.endYear(), after, limit));
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: GDP per capita data not found between years %d and %d.", query.startYear(), query.endYear());
+            return SeriesResult.message(METRIC, String.format("Error: GDP per capita data not found between years %d and %d.",
+                    query.startYear(), query.endYear()));
         }
     }
 
-    @Tool(description = GDP_PER_CAPITA_TREND_DESCRIPTION)
     public String gdpPerCapitaTrendForCountryTool(CountryCodeQuery countryCode) {
+        return render(gdpPerCapitaTrendForCountry(countryCode));
+    }
+
+    @Tool(name = "gdpPerCapitaTrendForCountry", description = GDP_PER_CAPITA_TREND_DESCRIPTION)
+    public SeriesResult gdpPerCapitaTrendForCountry(CountryCodeQuery countryCode) {
         log.info("gdpPerCapitaTrendForCountryTool called with CountryCodeQuery {}", countryCode);
         try {
             List<GdpPerCapita> results = repository.findByIdCountryCodeOrderByIdDataYear(countryCode.countryCode());
-            String result = buildTrendForCountry(
-                    "GDP per capita development for the country",
-                    results,
-                    GdpPerCapita::getId,
-                    GdpPerCapita::getGdpPerCapita,
-                    countryCode.countryCode()
-            );
-            log.debug("Generated GDP per capita trend string:\n{}", result);
-            return result;
+            return SeriesResult.trend(METRIC, countryCode.countryCode(),
+                    toDataPoints(results, GdpPerCapita::getId, GdpPerCapita::getGdpPerCapita));
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: GDP per capita data not found for country %s.", countryCode.countryCode());
+            return SeriesResult.message(METRIC,
+                    String.format("Error: GDP per capita data not found for country %s.", countryCode.countryCode()));
         }
     }
 }
@@ -1,17 +1,22 @@
 package com.katrikken.gdpai.tool;
 
+import com.katrikken.gdpai.dto.DataChangedEvent;
+import com.katrikken.gdpai.dto.Metric;
 import com.katrikken.gdpai.entity.CountryYearId;
 import com.katrikken.gdpai.entity.Gdp;
+import com.katrikken.gdpai.entity.GdpPerCapita;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
 import com.katrikken.gdpai.repository.GdpRepository;
+import jakarta.persistence.EntityManagerFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -28,16 +33,21 @@ public class GdpToolService extends DataTool {
                     "Returns a list of formatted strings: countryCode, year: gdpValue.";
     public static final String GET_GDP_BY_YEAR_DESCRIPTION =
             "Retrieve all GDP records for a specific year sorted by country code. Input YearQuery. " +
-                    "Returns a list of formatted strings: countryCode, year: gdpValue.";
+                    "Returns a list of formatted strings: countryCode, year: gdpValue." + PAGED_DESCRIPTION;
     public static final String GET_GDP_BETWEEN_YEARS_DESCRIPTION =
-            "Retrieve GDP records between two years inclusive sorted by country code. Input YearRangeQuery. " +
-                    "Returns a list of formatted strings: countryCode, year: gdpValue.";
+            "Retrieve GDP records between two years inclusive sorted by year and country code. Input YearRangeQuery. " +
+                    "Returns a list of formatted strings: countryCode, year: gdpValue." + PAGED_DESCRIPTION;
     public static final String GDP_TREND_DESCRIPTION =
             "Return GDP historical trend for a country. Input CountryCodeQuery. " +
                     "Outputs a multi-line string starting with GDP development for the country including growth percentage.";
 
 
+    static final String METRIC = Metric.GDP.getLabel();
+
     private final GdpRepository repository;
+    private final DataPointReadRepository readRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ApplicationEventPublisher eventPublisher;
 
     private String formatGdp(Gdp g) {
         if (g == null) {
@@ -48,76 +58,92 @@ public class GdpToolService extends DataTool {
         return String.format("%s, %d: %s", id.getCountryCode(), id.getDataYear(), value);
     }
 
-    @Tool(description = INSERT_GDP_DESCRIPTION)
+    @Tool(name = "insertGdp", description = INSERT_GDP_DESCRIPTION)
     public String insertGdpTool(Gdp gdp) {
         log.info("insertGdpTool called with GDP {}", gdp);
         Gdp saved = repository.save(gdp);
+        // the cached GDP per capita of this country and year is derived from the saved value
+        entityManagerFactory.getCache().evict(GdpPerCapita.class, saved.getId());
+        eventPublisher.publishEvent(new DataChangedEvent(Metric.GDP));
         return formatGdp(saved);
     }
 
 
-    @Tool(description = GET_GDP_BY_COUNTRY_YEAR_DESCRIPTION)
     public String gdpByCountryCodeYearTool(CountryCodeYearQuery query) {
+        return render(gdpByCountryCodeYear(query));
+    }
+
+    @Tool(name = "gdpByCountryYear", description = GET_GDP_BY_COUNTRY_YEAR_DESCRIPTION)
+    public SeriesResult gdpByCountryCodeYear(CountryCodeYearQuery query) {
         log.info("gdpByCountryCodeYearTool called with CountryCodeYearQuery {}", query);
         try {
             Optional<Gdp> gdp = repository.findById(new CountryYearId(query.countryCode(), query.year()));
             if (gdp.isPresent()) {
-                return formatGdp(gdp.get());
+                return SeriesResult.records(METRIC, toDataPoints(List.of(gdp.get()), Gdp::getId, Gdp::getGdp));
             } else {
-                return String.format("GDP data are not available for country code %s in year %d",
-                        query.countryCode(), query.year());
+                return SeriesResult.message(METRIC, String.format("GDP data are not available for country code %s in year %d",
+                        query.countryCode(), query.year()));
             }
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: GDP data not found for country code %s in year %d.",
-                    query.countryCode(), query.year());
+            return SeriesResult.message(METRIC, String.format("Error: GDP data not found for country code %s in year %d.",
+                    query.countryCode(), query.year()));
         }
     }
 
-    @Tool(description = GET_GDP_BY_COUNTRY_DESCRIPTION)
     public String gdpByCountryCodeTool(CountryCodeQuery countryCode) {
+        return render(gdpByCountryCode(countryCode));
+    }
+
+    @Tool(name = "gdpByCountry", description = GET_GDP_BY_COUNTRY_DESCRIPTION)
+    public SeriesResult gdpByCountryCode(CountryCodeQuery countryCode) {
         log.info("gdpByCountryCodeTool called with CountryCodeQuery {}", countryCode);
         try {
             List<Gdp> results = repository.findByIdCountryCodeOrderByIdDataYear(countryCode.countryCode());
-            return results.stream().map(this::formatGdp).collect(Collectors.joining("\n"));
+            return SeriesResult.records(METRIC, toDataPoints(results, Gdp::getId, Gdp::getGdp));
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: GDP data not found for country code %s.", countryCode.countryCode());
+            return SeriesResult.message(METRIC,
+                    String.format("Error: GDP data not found for country code %s.", countryCode.countryCode()));
         }
     }
 
-    @Tool(description = GET_GDP_BY_YEAR_DESCRIPTION)
     public String gdpByYearTool(YearQuery year) {
+        return render(gdpByYear(year));
+    }
+
+    @Tool(name = "gdpByYear", description = GET_GDP_BY_YEAR_DESCRIPTION)
+    public SeriesResult gdpByYear(YearQuery year) {
         log.info("gdpByYearTool called with YearQuery {}", year);
-        List<Gdp> results = repository.findByIdDataYearOrderByIdCountryCode(year.year());
-        return results.stream().map(this::formatGdp).collect(Collectors.joining("\n"));
+        return findPage(METRIC, year.cursor(), year.limit(),
+                (after, limit) -> readRepository.findGdpPage(year.year(), year.year(), after, limit));
     }
 
-    @Tool(description = GET_GDP_BETWEEN_YEARS_DESCRIPTION)
     public String gdpBetweenYearTool(YearRangeQuery interval) {
+        return render(gdpBetweenYears(interval));
+    }
+
+    @Tool(name = "gdpBetweenYears", description = GET_GDP_BETWEEN_YEARS_DESCRIPTION)
+    public SeriesResult gdpBetweenYears(YearRangeQuery interval) {
         log.info("gdpBetweenYearTool called with YearRangeQuery {}", interval);
-        List<Gdp> results = repository.findByIdDataYearBetweenOrderByIdCountryCode(interval.startYear(), interval.endYear());
-        return results.stream().map(this::formatGdp).collect(Collectors.joining("\n"));
+        return findPage(METRIC, interval.cursor(), interval.limit(),
+                (after, limit) -> readRepository.findGdpPage(interval.startYear(), interval.endYear(), after, limit));
     }
 
-    @Tool(description = GDP_TREND_DESCRIPTION)
     public String gdpTrendForCountryTool(CountryCodeQuery countryCode) {
+        return render(gdpTrendForCountry(countryCode));
+    }
+
+    @Tool(name = "gdpTrendForCountry", description = GDP_TREND_DESCRIPTION)
+    public SeriesResult gdpTrendForCountry(CountryCodeQuery countryCode) {
         log.info("gdpTrendForCountryTool called with CountryCodeQuery {}", countryCode);
         try {
             List<Gdp> results = repository.findByIdCountryCodeOrderByIdDataYear(countryCode.countryCode());
-            String result = buildTrendForCountry(
-                    "GDP development for the country",
-                    results,
-                    Gdp::getId,
-                    Gdp::getGdp,
-                    countryCode.countryCode()
-            );
-            log.debug("Generated GDP trend string:\n{}", result);
-            return result;
+            return SeriesResult.trend(METRIC, countryCode.countryCode(), toDataPoints(results, Gdp::getId, Gdp::getGdp));
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: GDP data not found for country %s", countryCode.countryCode());
+            return SeriesResult.message(METRIC,
+                    String.format("Error: GDP data not found for country %s", countryCode.countryCode()));
         }
     }
 }
-
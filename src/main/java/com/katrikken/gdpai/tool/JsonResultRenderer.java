@@ -0,0 +1,36 @@
+package com.katrikken.gdpai.tool;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renders results as a JSON object with the metric, the country of a trend, the points and the message.
+ */
+public class JsonResultRenderer implements ResultRenderer {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Override
+    public String render(SeriesResult result) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("metric", result.getMetric());
+        if (result.getCountryCode() != null) {
+            json.put("countryCode", result.getCountryCode());
+        }
+        if (result.getMessage() != null) {
+            json.put("message", result.getMessage());
+        }
+        json.put("points", result.getPoints());
+        if (result.getNextCursor() != null) {
+            json.put("nextCursor", result.getNextCursor());
+        }
+        try {
+            return MAPPER.writeValueAsString(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not render " + result.getMetric() + " result as JSON", e);
+        }
+    }
+}
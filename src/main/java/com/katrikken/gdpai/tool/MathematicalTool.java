@@ -4,11 +4,13 @@ import lombok.extern.log4j.Log4j2;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.context.annotation.Description;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
 
+@Component
 @Log4j2
 public class MathematicalTool {
 
@@ -17,13 +19,13 @@ public class MathematicalTool {
 
     public static final String OPERATE_ON_BIG_DECIMALS_DESCRIPTION = "Takes a BigDecimalValuesQuery record and performs operations like (first - second).";
 
-    @Tool(description = GET_CURRENT_YEAR_DESCRIPTION)
+    @Tool(name = "getCurrentYear", description = GET_CURRENT_YEAR_DESCRIPTION)
     public String getCurrentYearTool() {
         log.info("getCurrentYearTool called");
         return String.valueOf(LocalDateTime.now().atZone(LocaleContextHolder.getTimeZone().toZoneId()).getYear());
     }
 
-    @Tool(description = OPERATE_ON_BIG_DECIMALS_DESCRIPTION)
+    @Tool(name = "operateOnBigDecimals", description = OPERATE_ON_BIG_DECIMALS_DESCRIPTION)
     public String operateOnBigDecimals(BigDecimalValuesQuery query) {
         log.info("operateOnBigDecimals called with query: " + query);
         if (query.operation.equals("+")) {
@@ -1,17 +1,23 @@
 package com.katrikken.gdpai.tool;
 
+import com.katrikken.gdpai.dto.DataChangedEvent;
+import com.katrikken.gdpai.dto.Metric;
 import com.katrikken.gdpai.entity.CountryYearId;
+import com.katrikken.gdpai.entity.GdpPerCapita;
 import com.katrikken.gdpai.entity.Population;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
 import com.katrikken.gdpai.repository.PopulationRepository;
+import jakarta.persistence.EntityManagerFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
@@ -30,18 +36,25 @@ public class PopulationToolService extends DataTool {
 
     public static final String GET_POPULATION_BY_YEAR_DESCRIPTION =
             "Retrieve all Population records for a specific year sorted by country code. Input: YearQuery. " +
-                    "Output: multi-line string with entries formatted as countryCode, year: population.";
+                    "Output: multi-line string with entries formatted as countryCode, year: population." + PAGED_DESCRIPTION;
 
     public static final String POPULATION_BETWEEN_YEARS_DESCRIPTION =
-            "Retrieve Population records between two years inclusive sorted by country code. Input: YearRangeQuery. " +
-                    "Output: multi-line string with entries formatted as countryCode, year: population.";
+            "Retrieve Population records between two years inclusive sorted by year and country code. Input: YearRangeQuery. " +
+                    "Output: multi-line string with entries formatted as countryCode, year: population." + PAGED_DESCRIPTION;
 
     public static final String POPULATION_TREND_DESCRIPTION =
             "Return Population historical trend for a country. Input CountryCodeQuery. " +
                     "Outputs a multi-line string starting with Population development for the country including growth percentage.";
 
 
+    static final String METRIC = Metric.POPULATION.getLabel();
+    private static final Function<Population, BigDecimal> POPULATION_VALUE =
+            p -> p.getPopulation() == null ? null : new BigDecimal(p.getPopulation());
+
     private final PopulationRepository repository;
+    private final DataPointReadRepository readRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ApplicationEventPublisher eventPublisher;
 
     private String formatPopulation(Population p) {
         if (p == null || p.getId() == null) {
@@ -52,11 +65,14 @@ public class PopulationToolService extends DataTool {
         return String.format("%s, %d: %s", id.getCountryCode(), id.getDataYear(), value);
     }
 
-    @Tool(description = INSERT_POPULATION_DESCRIPTION)
+    @Tool(name = "insertPopulation", description = INSERT_POPULATION_DESCRIPTION)
     public String insertPopulationTool(Population population) {
         log.info("insertPopulationTool called with population: {}", population);
         try {
             Population saved = repository.save(population);
+            // the cached GDP per capita of this country and year is derived from the saved value
+            entityManagerFactory.getCache().evict(GdpPerCapita.class, saved.getId());
+            eventPublisher.publishEvent(new DataChangedEvent(Metric.POPULATION));
             return formatPopulation(saved);
         } catch (Exception e) {
             log.error(e.getMessage(), e);
@@ -65,80 +81,93 @@ public class PopulationToolService extends DataTool {
     }
 
 
-    @Tool(description = GET_POPULATION_BY_COUNTRY_YEAR_DESCRIPTION)
     public String populationByCountryCodeYearTool(CountryCodeYearQuery query) {
+        return render(populationByCountryCodeYear(query));
+    }
+
+    @Tool(name = "populationByCountryYear", description = GET_POPULATION_BY_COUNTRY_YEAR_DESCRIPTION)
+    public SeriesResult populationByCountryCodeYear(CountryCodeYearQuery query) {
         try {
             log.info("populationByCountryCodeYearTool called with query: {}", query);
             Optional<Population> population = repository.findById(new CountryYearId(query.countryCode(), query.year()));
             if (population.isPresent()) {
-                return formatPopulation(population.get());
+                return SeriesResult.records(METRIC, toDataPoints(List.of(population.get()), Population::getId, POPULATION_VALUE));
             } else {
-                return String.format("Population data are not available for country code %s in year %d",
-                        query.countryCode(), query.year());
+                return SeriesResult.message(METRIC, String.format("Population data are not available for country code %s in year %d",
+                        query.countryCode(), query.year()));
             }
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: Population data not found for country code %s in year %d.",
-                    query.countryCode(), query.year());
+            return SeriesResult.message(METRIC, String.format("Error: Population data not found for country code %s in year %d.",
+                    query.countryCode(), query.year()));
         }
     }
 
-    @Tool(description = GET_POPULATION_BY_COUNTRY_DESCRIPTION)
     public String populationByCountryCodeTool(CountryCodeQuery query) {
+        return render(populationByCountryCode(query));
+    }
+
+    @Tool(name = "populationByCountry", description = GET_POPULATION_BY_COUNTRY_DESCRIPTION)
+    public SeriesResult populationByCountryCode(CountryCodeQuery query) {
         log.info("populationByCountryCodeTool called with query: {}", query);
         try {
             List<Population> results = repository.findByIdCountryCodeOrderByIdDataYear(query.countryCode());
-            return results.stream().map(this::formatPopulation).collect(Collectors.joining("\n"));
+            return SeriesResult.records(METRIC, toDataPoints(results, Population::getId, POPULATION_VALUE));
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: Population data not found for country code %s.", query.countryCode());
+            return SeriesResult.message(METRIC,
+                    String.format("Error: Population data not found for country code %s.", query.countryCode()));
         }
     }
 
-    @Tool(description = GET_POPULATION_BY_YEAR_DESCRIPTION)
     public String populationByYearTool(YearQuery query) {
+        return render(populationByYear(query));
+    }
+
+    @Tool(name = "populationByYear", description = GET_POPULATION_BY_YEAR_DESCRIPTION)
+    public SeriesResult populationByYear(YearQuery query) {
         log.info("populationByYearTool called with query: {}", query);
         try {
-            List<Population> results = repository.findByIdDataYearOrderByIdCountryCode(query.year());
-            return results.stream().map(this::formatPopulation).collect(Collectors.joining("\n"));
+            return findPage(METRIC, query.cursor(), query.limit(),
+                    (after, limit) -> readRepository.findPopulationPage(query.year(), query.year(), after, limit));
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: Population data not found for year %d.", query.year());
+            return SeriesResult.message(METRIC, String.format("Error: Population data not found for year %d.", query.year()));
         }
     }
 
-    @Tool(description = POPULATION_BETWEEN_YEARS_DESCRIPTION)
     public String populationBetweenYearTool(YearRangeQuery interval) {
+        return render(populationBetweenYears(interval));
+    }
+
+    @Tool(name = "populationBetweenYears", description = POPULATION_BETWEEN_YEARS_DESCRIPTION)
+    public SeriesResult populationBetweenYears(YearRangeQuery interval) {
         log.info("populationBetweenYearTool called with interval: {}", interval);
         try {
-            List<Population> results = repository.findByIdDataYearBetweenOrderByIdCountryCode(interval.startYear(), interval.endYear());
-            return results.stream().map(this::formatPopulation).collect(Collectors.joining("\n"));
+            return findPage(METRIC, interval.cursor(), interval.limit(),
+                    (after, limit) -> readRepository.findPopulationPage(interval.startYear(), interval.endYear(), after, limit));
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: Population data not found between years %d and %d.", interval.startYear(), interval.endYear());
+            return SeriesResult.message(METRIC, String.format("Error: Population data not found between years %d and %d.",
+                    interval.startYear(), interval.endYear()));
         }
     }
 
-    @Tool(description = POPULATION_TREND_DESCRIPTION)
     public String populationTrendForCountryTool(CountryCodeQuery countryCode) {
+        return render(populationTrendForCountry(countryCode));
+    }
+
+    @Tool(name = "populationTrendForCountry", description = POPULATION_TREND_DESCRIPTION)
+    public SeriesResult populationTrendForCountry(CountryCodeQuery countryCode) {
         log.info("populationTrendForCountryTool called with CountryCodeQuery {}", countryCode);
         try {
             List<Population> results = repository.findByIdCountryCodeOrderByIdDataYear(countryCode.countryCode());
-            String result = buildTrendForCountry(
-                    "Population development for the country",
-                    results,
-                    Population::getId,
-                    p -> {
-                        Long val = p.getPopulation();
-                        return val == null ? null : new BigDecimal(val);
-                    },
-                    countryCode.countryCode()
-            );
-            log.debug("Generated Population trend string:\n{}", result);
-            return result;
+            return SeriesResult.trend(METRIC, countryCode.countryCode(),
+                    toDataPoints(results, Population::getId, POPULATION_VALUE));
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            return String.format("Error: Population data not found for country %s.", countryCode.countryCode());
+            return SeriesResult.message(METRIC,
+                    String.format("Error: Population data not found for country %s.", countryCode.countryCode()));
         }
     }
-}
\ No newline at end of file
+}
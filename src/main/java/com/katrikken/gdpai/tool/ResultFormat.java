@@ -0,0 +1,26 @@
+package com.katrikken.gdpai.tool;
+
+/**
+ * Formats tool results can be rendered in, configured by app.tools.result-format.
+ */
+public enum ResultFormat {
+    /**
+     * One line per value as the tools always returned it: countryCode, year: value, or the trend with growth.
+     */
+    TEXT(new TextResultRenderer()),
+    /**
+     * Table with a row per year and a column per country.
+     */
+    TABLE(new TableResultRenderer()),
+    JSON(new JsonResultRenderer());
+
+    private final ResultRenderer renderer;
+
+    ResultFormat(ResultRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    public ResultRenderer getRenderer() {
+        return renderer;
+    }
+}
@@ -0,0 +1,10 @@
+package com.katrikken.gdpai.tool;
+
+/**
+ * Renders a {@link SeriesResult} into the text handed to the LLM.
+ */
+@FunctionalInterface
+public interface ResultRenderer {
+
+    String render(SeriesResult result);
+}
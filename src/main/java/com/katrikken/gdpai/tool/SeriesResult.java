@@ -0,0 +1,85 @@
+package com.katrikken.gdpai.tool;
+
+import com.katrikken.gdpai.dto.DataPoint;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Values of one metric by country and year returned by a data tool, or the message explaining why there are none.
+ * <p>
+ * The result is immutable, so each format is rendered at most once and then served from the cache.
+ */
+@Getter
+public final class SeriesResult implements ToolResult {
+
+    public enum Kind {
+        /**
+         * Values as stored, sorted as returned by the query.
+         */
+        RECORDS,
+        /**
+         * Values of a single country sorted by year, rendered with the change to the previous year.
+         */
+        TREND
+    }
+
+    private final String metric;
+    private final Kind kind;
+    /**
+     * Country of a trend, null for records.
+     */
+    private final String countryCode;
+    private final List<DataPoint> points;
+    /**
+     * Explanation when the data could not be retrieved, null otherwise.
+     */
+    private final String message;
+    /**
+     * Cursor of the next page when the rows were cut at the row limit, null if there are no more rows.
+     */
+    private final String nextCursor;
+
+    private final Map<ResultFormat, String> rendered = new ConcurrentHashMap<>();
+
+    private SeriesResult(String metric, Kind kind, String countryCode, List<DataPoint> points, String message,
+                         String nextCursor) {
+        this.metric = metric;
+        this.kind = kind;
+        this.countryCode = countryCode;
+        this.points = List.copyOf(points);
+        this.message = message;
+        this.nextCursor = nextCursor;
+    }
+
+    public static SeriesResult records(String metric, List<DataPoint> points) {
+        return records(metric, points, null);
+    }
+
+    /**
+     * One page of records, followed by more rows if nextCursor is not null.
+     */
+    public static SeriesResult records(String metric, List<DataPoint> points, String nextCursor) {
+        return new SeriesResult(metric, Kind.RECORDS, null, points, null, nextCursor);
+    }
+
+    public static SeriesResult trend(String metric, String countryCode, List<DataPoint> points) {
+        return new SeriesResult(metric, Kind.TREND, countryCode, points, null, null);
+    }
+
+    public static SeriesResult message(String metric, String message) {
+        return new SeriesResult(metric, Kind.RECORDS, null, List.of(), message, null);
+    }
+
+    @Override
+    public String render(ResultFormat format) {
+        return rendered.computeIfAbsent(format, f -> f.getRenderer().render(this));
+    }
+
+    @Override
+    public String toString() {
+        return render(ResultFormat.TEXT);
+    }
+}
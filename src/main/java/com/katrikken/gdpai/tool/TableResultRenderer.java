@@ -0,0 +1,47 @@
+package com.katrikken.gdpai.tool;
+
+import com.katrikken.gdpai.dto.DataPoint;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Renders results as a table with a row per year and a column per country, so that country codes and years
+ * are not repeated for every value.
+ */
+public class TableResultRenderer implements ResultRenderer {
+
+    @Override
+    public String render(SeriesResult result) {
+        if (result.getMessage() != null) {
+            return result.getMessage();
+        }
+        if (result.getPoints().isEmpty()) {
+            return "No " + result.getMetric() + " data available.";
+        }
+        Set<String> countries = new LinkedHashSet<>();
+        Map<Integer, Map<String, String>> rows = new TreeMap<>();
+        for (DataPoint p : result.getPoints()) {
+            countries.add(p.countryCode());
+            rows.computeIfAbsent(p.year(), year -> new TreeMap<>())
+                    .put(p.countryCode(), p.value() == null ? "null" : p.value().toPlainString());
+        }
+
+        StringBuilder sb = new StringBuilder(result.getMetric()).append("\nyear");
+        for (String country : countries) {
+            sb.append('|').append(country);
+        }
+        rows.forEach((year, values) -> {
+            sb.append('\n').append(year);
+            for (String country : countries) {
+                sb.append('|').append(values.getOrDefault(country, ""));
+            }
+        });
+        if (result.getNextCursor() != null) {
+            sb.append('\n').append(TextResultRenderer.nextPageHint(result));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,12 @@
+package com.katrikken.gdpai.tool;
+
+/**
+ * Tool result that is plain text in every format, e.g. a country code or a message.
+ */
+public record TextResult(String text) implements ToolResult {
+
+    @Override
+    public String render(ResultFormat format) {
+        return text;
+    }
+}
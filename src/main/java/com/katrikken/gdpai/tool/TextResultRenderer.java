@@ -0,0 +1,94 @@
+package com.katrikken.gdpai.tool;
+
+import com.katrikken.gdpai.dto.DataPoint;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Renders results the way the tools have always returned them.
+ */
+public class TextResultRenderer implements ResultRenderer {
+
+    @Override
+    public String render(SeriesResult result) {
+        if (result.getMessage() != null) {
+            return result.getMessage();
+        }
+        return switch (result.getKind()) {
+            case RECORDS -> renderRecords(result);
+            case TREND -> renderTrend(result);
+        };
+    }
+
+    private static String renderRecords(SeriesResult result) {
+        StringBuilder sb = new StringBuilder();
+        for (DataPoint p : result.getPoints()) {
+            appendRecord(sb, p);
+        }
+        if (result.getNextCursor() != null) {
+            sb.append('\n').append(nextPageHint(result));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends one record as countryCode, year: value, on a new line unless the buffer is empty.
+     */
+    private static void appendRecord(StringBuilder sb, DataPoint p) {
+        if (!sb.isEmpty()) {
+            sb.append('\n');
+        }
+        sb.append(p.countryCode()).append(", ").append(p.year()).append(": ")
+                .append(p.value() == null ? "null" : p.value().toString());
+    }
+
+    static String nextPageHint(SeriesResult result) {
+        return "Row limit reached, more rows are available with cursor " + result.getNextCursor();
+    }
+
+    private static String renderTrend(SeriesResult result) {
+        String heading = result.getMetric() + " development for the country";
+        if (result.getPoints().isEmpty()) {
+            return String.format("No %s data available for country code %s.", heading.toLowerCase(), result.getCountryCode());
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(heading).append(" ").append(result.getCountryCode()).append(":\n");
+
+        BigDecimal prev = null;
+        for (DataPoint point : result.getPoints()) {
+            composeTrendString(point.value(), prev, sb, point.year());
+            prev = point.value();
+        }
+
+        return sb.toString().trim();
+    }
+
+    private static void composeTrendString(BigDecimal currentValue, BigDecimal prevValue, StringBuilder sb, int year) {
+        String currentStr = currentValue == null ? "null" : currentValue.toPlainString();
+
+        sb.append(year).append(": ").append(currentStr);
+
+        if (prevValue != null && currentValue != null && prevValue.compareTo(BigDecimal.ZERO) != 0) {
+            BigDecimal diff = currentValue.subtract(prevValue);
+            String diffSign = diff.signum() >= 0 ? "+" : "-";
+            String diffStr = diffSign + diff.abs().toPlainString();
+
+            BigDecimal pct = diff.multiply(BigDecimal.valueOf(100))
+                    .divide(prevValue, 6, RoundingMode.HALF_UP)
+                    .setScale(2, RoundingMode.HALF_UP);
+
+            String pctStr = diffSign + pct.abs().toPlainString() + "%";
+
+            sb.append(", ").append(diffStr).append(", ").append(pctStr);
+        } else if (prevValue != null) {
+            // previous exists but cannot compute percent (current or previous null, or previous is zero)
+            BigDecimal diff = (currentValue == null) ? null : currentValue.subtract(prevValue);
+            String diffStr = diff == null ? "N/A" : (diff.signum() >= 0 ? "+" : "-") + diff.abs().toPlainString();
+            sb.append(", ").append(diffStr).append(", N/A");
+        }
+
+        sb.append("\n");
+    }
+}
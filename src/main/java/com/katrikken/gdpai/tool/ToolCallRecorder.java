@@ -0,0 +1,37 @@
+package com.katrikken.gdpai.tool;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the raw results of the tool calls made during an LLM call, in call order.
+ * Calls are passed on to the delegate interceptor, if there is one.
+ */
+public class ToolCallRecorder implements ToolExecutionContext.ToolCallInterceptor {
+
+    private final ToolExecutionContext.ToolCallInterceptor delegate;
+    private final List<RecordedCall> calls = new CopyOnWriteArrayList<>();
+
+    public ToolCallRecorder() {
+        this(null);
+    }
+
+    public ToolCallRecorder(ToolExecutionContext.ToolCallInterceptor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ToolResult intercept(String toolName, Object argument, Supplier<ToolResult> call) {
+        ToolResult result = delegate == null ? call.get() : delegate.intercept(toolName, argument, call);
+        calls.add(new RecordedCall(toolName, argument, result));
+        return result;
+    }
+
+    public List<RecordedCall> getCalls() {
+        return List.copyOf(calls);
+    }
+
+    public record RecordedCall(String toolName, Object argument, ToolResult result) {
+    }
+}
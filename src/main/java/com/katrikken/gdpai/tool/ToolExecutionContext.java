@@ -0,0 +1,70 @@
+package com.katrikken.gdpai.tool;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Binds a {@link ToolCallInterceptor} to the thread executing an LLM call.
+ * <p>
+ * Spring AI executes tool calls synchronously on the thread that called the model,
+ * so every tool invoked while {@link #callWith} runs passes through the bound interceptor.
+ */
+public final class ToolExecutionContext {
+
+    private static final ThreadLocal<ToolCallInterceptor> INTERCEPTOR = new ThreadLocal<>();
+
+    private ToolExecutionContext() {
+    }
+
+    /**
+     * Runs the call with the interceptor bound to the current thread.
+     */
+    public static <R> R callWith(ToolCallInterceptor interceptor, Supplier<R> call) {
+        ToolCallInterceptor previous = INTERCEPTOR.get();
+        INTERCEPTOR.set(interceptor);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                INTERCEPTOR.remove();
+            } else {
+                INTERCEPTOR.set(previous);
+            }
+        }
+    }
+
+    /**
+     * The interceptor bound to the current thread, null if there is none. Used to bind it to the thread
+     * the LLM call is handed off to.
+     */
+    public static ToolCallInterceptor current() {
+        return INTERCEPTOR.get();
+    }
+
+    /**
+     * Invokes a tool through the interceptor bound to the current thread, or directly if there is none,
+     * and renders its result in the given format.
+     */
+    public static <T> String invoke(String toolName, T argument, Function<T, ? extends ToolResult> tool, ResultFormat format) {
+        ToolCallInterceptor interceptor = INTERCEPTOR.get();
+        ToolResult result = interceptor == null
+                ? tool.apply(argument)
+                : interceptor.intercept(toolName, argument, () -> tool.apply(argument));
+        return result.render(format);
+    }
+
+    /**
+     * Invokes a tool returning plain text.
+     */
+    public static <T> String invoke(String toolName, T argument, Function<T, String> tool) {
+        return invoke(toolName, argument, a -> new TextResult(tool.apply(a)), ResultFormat.TEXT);
+    }
+
+    /**
+     * Intercepts tool calls made by the LLM, e.g. to serve results that are already available.
+     */
+    @FunctionalInterface
+    public interface ToolCallInterceptor {
+        ToolResult intercept(String toolName, Object argument, Supplier<ToolResult> call);
+    }
+}
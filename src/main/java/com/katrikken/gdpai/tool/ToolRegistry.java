@@ -0,0 +1,182 @@
+package com.katrikken.gdpai.tool;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.util.json.JsonParser;
+import org.springframework.ai.util.json.schema.JsonSchemaGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The tools the LLM can call, shared by all LLM backends.
+ * <p>
+ * Every method annotated with {@link Tool} of the tool services is registered once at startup under the name of the
+ * annotation. The JSON schema of its input is generated at startup, the JSON reader of the input type is prepared
+ * and the method is bound to a generated invoker (a lambda spun by {@link LambdaMetafactory}), so a call only parses
+ * its input and calls the method.
+ * <p>
+ * Tools take at most one parameter, which is the whole tool input. Calls pass through
+ * {@link ToolExecutionContext#invoke}, results of data tools are rendered in their {@link DataTool#getResultFormat()}.
+ * <p>
+ * Callers pass only the tools a request needs, see {@link #callbacks(Collection)}, every tool definition adds its
+ * description and schema to the prompt.
+ */
+@Component
+@Log4j2
+public class ToolRegistry {
+
+    private final Map<String, RegisteredTool> tools = new LinkedHashMap<>();
+    private final List<ToolCallback> all;
+
+    @Autowired
+    public ToolRegistry(List<DataTool> dataTools, MathematicalTool mathematicalTool) {
+        this(concat(dataTools, mathematicalTool));
+    }
+
+    ToolRegistry(Collection<?> toolObjects) {
+        for (Object toolObject : toolObjects) {
+            // sorted, so the tool definitions are always sent in the same order and the prompt prefix can be cached
+            Arrays.stream(ClassUtils.getUserClass(toolObject).getMethods())
+                    .filter(method -> method.isAnnotationPresent(Tool.class))
+                    .sorted(Comparator.comparing(Method::getName))
+                    .forEach(method -> register(toolObject, method, method.getAnnotation(Tool.class)));
+        }
+        all = List.copyOf(tools.values());
+        log.info("Registered {} tools: {}", tools.size(), tools.keySet());
+    }
+
+    private static List<Object> concat(List<DataTool> dataTools, Object... others) {
+        List<Object> all = new ArrayList<>(dataTools);
+        all.addAll(List.of(others));
+        return all;
+    }
+
+    private void register(Object toolObject, Method method, Tool annotation) {
+        String name = StringUtils.hasText(annotation.name()) ? annotation.name() : method.getName();
+        if (method.getParameterCount() > 1) {
+            throw new IllegalStateException("Tool " + name + " must take at most one parameter: " + method);
+        }
+        if (!String.class.equals(method.getReturnType()) && !ToolResult.class.isAssignableFrom(method.getReturnType())) {
+            throw new IllegalStateException("Tool " + name + " must return a String or a ToolResult: " + method);
+        }
+        Class<?> inputType = method.getParameterCount() == 0 ? null : method.getParameterTypes()[0];
+        ToolDefinition definition = ToolDefinition.builder()
+                .name(name)
+                .description(annotation.description())
+                .inputSchema(inputType == null
+                        ? JsonSchemaGenerator.generateForMethodInput(method)
+                        : JsonSchemaGenerator.generateForType(inputType))
+                .build();
+        ResultFormat format = toolObject instanceof DataTool dataTool ? dataTool.getResultFormat() : ResultFormat.TEXT;
+        RegisteredTool tool = new RegisteredTool(definition,
+                inputType == null ? null : JsonParser.getObjectMapper().readerFor(inputType),
+                invoker(toolObject, method), format);
+        if (tools.putIfAbsent(name, tool) != null) {
+            throw new IllegalStateException("Duplicate tool name " + name + ": " + method);
+        }
+    }
+
+    /**
+     * Binds the tool method to its object with a generated lambda, which calls it without reflection.
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> invoker(Object toolObject, Method method) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle implementation = lookup.unreflect(method);
+            Class<?> declaringClass = method.getDeclaringClass();
+            if (method.getParameterCount() == 0) {
+                Supplier<Object> supplier = (Supplier<Object>) LambdaMetafactory.metafactory(lookup, "get",
+                                MethodType.methodType(Supplier.class, declaringClass),
+                                MethodType.methodType(Object.class),
+                                implementation,
+                                MethodType.methodType(method.getReturnType()))
+                        .getTarget().invoke(toolObject);
+                return ignored -> supplier.get();
+            }
+            return (Function<Object, Object>) LambdaMetafactory.metafactory(lookup, "apply",
+                            MethodType.methodType(Function.class, declaringClass),
+                            MethodType.methodType(Object.class, Object.class),
+                            implementation,
+                            MethodType.methodType(method.getReturnType(), method.getParameterTypes()[0]))
+                    .getTarget().invoke(toolObject);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create the invoker of tool method " + method, e);
+        }
+    }
+
+    public Set<String> getToolNames() {
+        return tools.keySet();
+    }
+
+    /**
+     * All tools.
+     */
+    public List<ToolCallback> callbacks() {
+        return all;
+    }
+
+    /**
+     * The tools of the given names, in registration order.
+     *
+     * @throws IllegalArgumentException for an unknown tool name
+     */
+    public List<ToolCallback> callbacks(Collection<String> toolNames) {
+        for (String name : toolNames) {
+            if (!tools.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown tool " + name);
+            }
+        }
+        return tools.values().stream()
+                .filter(tool -> toolNames.contains(tool.definition().name()))
+                .map(ToolCallback.class::cast)
+                .toList();
+    }
+
+    private record RegisteredTool(ToolDefinition definition, ObjectReader inputReader,
+                                  Function<Object, Object> invoker, ResultFormat format) implements ToolCallback {
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return definition;
+        }
+
+        @Override
+        public String call(String toolInput) {
+            Object argument;
+            try {
+                argument = inputReader == null || !StringUtils.hasText(toolInput) ? null : inputReader.readValue(toolInput);
+            } catch (Exception e) {
+                log.warn("Invalid input of tool {}: {}", definition.name(), toolInput, e);
+                return "Error: invalid input for tool " + definition.name() + ": " + e.getMessage();
+            }
+            return ToolExecutionContext.invoke(definition.name(), argument, this::toResult, format);
+        }
+
+        private ToolResult toResult(Object argument) {
+            Object result = invoker.apply(argument);
+            return result instanceof ToolResult toolResult ? toolResult : new TextResult((String) result);
+        }
+    }
+}
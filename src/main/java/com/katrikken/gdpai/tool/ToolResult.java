@@ -0,0 +1,9 @@
+package com.katrikken.gdpai.tool;
+
+/**
+ * Result of a tool call, rendered to text only when it is handed to the LLM.
+ */
+public interface ToolResult {
+
+    String render(ResultFormat format);
+}
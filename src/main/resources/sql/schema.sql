@@ -47,3 +47,65 @@ FROM
 INNER JOIN
     "POPULATION" P ON G.COUNTRY_CODE = P.COUNTRY_CODE AND G.DATA_YEAR = P.DATA_YEAR
 INNER JOIN "COUNTRY" C ON C.COUNTRY_CODE = P.COUNTRY_CODE;
+
+--
+-- Secondary indexes for year-based lookups.
+-- The primary keys are ordered by (COUNTRY_CODE, DATA_YEAR), so queries filtering on a year or a year range
+-- had to scan the whole table. These indexes lead with DATA_YEAR and include the value column,
+-- which lets the year and year-range queries be answered from the index alone in (DATA_YEAR, COUNTRY_CODE) order.
+--
+CREATE INDEX "IDX_GDP_YEAR_COUNTRY" ON "GDP" (DATA_YEAR, COUNTRY_CODE, GDP);
+
+CREATE INDEX "IDX_POPULATION_YEAR_COUNTRY" ON "POPULATION" (DATA_YEAR, COUNTRY_CODE, POPULATION);
+
+--
+-- Analytics tables, rebuilt by AnalyticsBuilder at startup and after data is inserted.
+-- They hold growth rates, ranks and group totals that would otherwise need all rows of a metric
+-- to be fetched and compared by the LLM. Only countries with a region are included,
+-- the aggregates of the source data (World, European Union, High income, ...) have none.
+-- METRIC is the name of the Metric enum (GDP, POPULATION, GDP_PER_CAPITA).
+-- The primary keys are ordered for the lookups (one metric and year or period, a few hundred rows
+-- sorted by rank), secondary rank indexes would triple the cost of writing the tables.
+--
+
+-- Value per country and year with the growth over the previous year (percent)
+-- and the rank among all countries in that year (1 = highest value, fastest growth)
+CREATE TABLE "METRIC_ANNUAL" (
+    METRIC VARCHAR(20) NOT NULL,
+    COUNTRY_CODE VARCHAR(3) NOT NULL,
+    DATA_YEAR SMALLINT NOT NULL,
+    "VALUE" DECIMAL(30, 10) NOT NULL,
+    YOY_GROWTH DECIMAL(20, 4),
+    VALUE_RANK INT NOT NULL,
+    GROWTH_RANK INT,
+
+    PRIMARY KEY (METRIC, DATA_YEAR, COUNTRY_CODE)
+);
+
+-- Compound annual growth rate (percent) per country over the periods set in app.analytics.cagr-periods
+CREATE TABLE "METRIC_CAGR" (
+    METRIC VARCHAR(20) NOT NULL,
+    COUNTRY_CODE VARCHAR(3) NOT NULL,
+    START_YEAR SMALLINT NOT NULL,
+    END_YEAR SMALLINT NOT NULL,
+    START_VALUE DECIMAL(30, 10) NOT NULL,
+    END_VALUE DECIMAL(30, 10) NOT NULL,
+    CAGR DECIMAL(20, 4) NOT NULL,
+    CAGR_RANK INT NOT NULL,
+
+    PRIMARY KEY (METRIC, START_YEAR, END_YEAR, COUNTRY_CODE)
+);
+
+-- Totals per region or income group and year over the countries with data in that year.
+-- GDP per capita of a group is its total GDP divided by its total population.
+CREATE TABLE "GROUP_AGGREGATE" (
+    METRIC VARCHAR(20) NOT NULL,
+    GROUP_TYPE VARCHAR(20) NOT NULL,
+    GROUP_NAME VARCHAR(100) NOT NULL,
+    DATA_YEAR SMALLINT NOT NULL,
+    "VALUE" DECIMAL(30, 10) NOT NULL,
+    COUNTRIES INT NOT NULL,
+    YOY_GROWTH DECIMAL(20, 4),
+
+    PRIMARY KEY (METRIC, GROUP_TYPE, DATA_YEAR, GROUP_NAME)
+);
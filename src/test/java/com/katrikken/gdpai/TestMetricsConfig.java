@@ -0,0 +1,18 @@
+package com.katrikken.gdpai;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Meter registry for test slices, which do not include the metrics auto-configuration.
+ */
+@TestConfiguration
+public class TestMetricsConfig {
+
+    @Bean
+    public MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+}
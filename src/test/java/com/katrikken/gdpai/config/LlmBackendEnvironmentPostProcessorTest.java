@@ -0,0 +1,41 @@
+package com.katrikken.gdpai.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LlmBackendEnvironmentPostProcessorTest {
+
+    private static final String OLLAMA_CHAT = "org.springframework.ai.model.ollama.autoconfigure.OllamaChatAutoConfiguration";
+    private static final String OPENAI_CHAT = "org.springframework.ai.model.openai.autoconfigure.OpenAiChatAutoConfiguration";
+    private static final String OPENAI_EMBEDDING =
+            "org.springframework.ai.model.openai.autoconfigure.OpenAiEmbeddingAutoConfiguration";
+
+    @Test
+    void singleBackend_shouldExcludeTheOtherProviderAndKeepConfiguredExcludes() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("app.llm.backends", "ollama")
+                .withProperty(LlmBackendEnvironmentPostProcessor.EXCLUDE, "com.example.FooAutoConfiguration");
+
+        new LlmBackendEnvironmentPostProcessor().postProcessEnvironment(environment, new SpringApplication());
+
+        assertThat(environment.getProperty(LlmBackendEnvironmentPostProcessor.EXCLUDE, String[].class))
+                .contains("com.example.FooAutoConfiguration", OPENAI_CHAT, OPENAI_EMBEDDING)
+                .doesNotContain(OLLAMA_CHAT);
+        assertThat(environment.getProperty("spring.ai.model.chat")).isEqualTo("ollama");
+    }
+
+    @Test
+    void bothBackends_shouldOnlyExcludeTheUnusedModels() {
+        MockEnvironment environment = new MockEnvironment();
+
+        new LlmBackendEnvironmentPostProcessor().postProcessEnvironment(environment, new SpringApplication());
+
+        assertThat(environment.getProperty(LlmBackendEnvironmentPostProcessor.EXCLUDE, String[].class))
+                .contains(OPENAI_EMBEDDING)
+                .doesNotContain(OLLAMA_CHAT, OPENAI_CHAT);
+        assertThat(environment.getProperty("spring.ai.model.chat")).isNull();
+    }
+}
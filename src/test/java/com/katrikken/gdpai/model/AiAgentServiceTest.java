@@ -0,0 +1,122 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.DataPoint;
+import com.katrikken.gdpai.dto.LLMType;
+import com.katrikken.gdpai.dto.WorkflowType;
+import com.katrikken.gdpai.tool.DataTool;
+import com.katrikken.gdpai.tool.SeriesResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two sessions ask the same first question at the same time, the second one is served the answer of the first.
+ * It has to continue its own conversation from that answer.
+ */
+public class AiAgentServiceTest {
+
+    private static final String QUESTION = "What was the GDP of Czechia?";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InMemoryChatMemoryRepository repository = new InMemoryChatMemoryRepository();
+    private final ChatMemory chatMemory = MessageWindowChatMemory.builder().chatMemoryRepository(repository).build();
+    private final StubChatModel chatModel = new StubChatModel(prompt -> "The GDP of Czechia grew.", 0, 0);
+    private final CountDownLatch leaderStarted = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger computations = new AtomicInteger();
+    private final AtomicBoolean followUpSawData = new AtomicBoolean();
+    private final RequestCoalescer coalescer = new RequestCoalescer(true, 5000, 10000, meterRegistry);
+
+    /**
+     * Fetches the GDP of Czechia into the working set and makes one LLM call, the first question waits for the test.
+     */
+    private final AgentWorkflow workflow = new AgentWorkflow() {
+        @Override
+        public WorkflowType type() {
+            return WorkflowType.CHAIN;
+        }
+
+        @Override
+        public String chain(String userInput, PhaseChatClients chatClients, DataWorkingSet workingSet,
+                            RequestDeadline deadline) {
+            computations.incrementAndGet();
+            if (userInput.equals(QUESTION)) {
+                leaderStarted.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                workingSet.interceptor(null).intercept("gdpTrendForCountry", new DataTool.CountryCodeQuery("CZE"),
+                        () -> SeriesResult.trend("GDP", "CZE",
+                                List.of(new DataPoint("CZE", 2024, BigDecimal.valueOf(345_000_000_000L)))));
+            } else {
+                followUpSawData.set(!workingSet.isEmpty());
+            }
+            return chatClients.prompt(WorkflowPhase.ANALYSIS).user(userInput).call().content();
+        }
+    };
+
+    private AiAgentService service() {
+        LlmBackendRegistry backends = new LlmBackendRegistry(List.of(LlmBackend.of(LLMType.OLLAMA, () -> chatModel)),
+                List.of("ollama"), "ollama", chatMemory, new ModelRouter(null, meterRegistry),
+                new LlmBulkheads(new MockEnvironment(), meterRegistry),
+                new LlmCallPolicy(new MockEnvironment(), null, meterRegistry));
+        return new AiAgentService(backends, chatMemory, repository, List.of(workflow), new ModelRouter(null, meterRegistry),
+                coalescer,
+                new DataWorkingSets(null, null, meterRegistry));
+    }
+
+    @Test
+    void coalescedFollower_continuesItsOwnConversation() throws Exception {
+        AiAgentService service = service();
+        TokenUsageAdvisor leaderTokens = new TokenUsageAdvisor();
+        TokenUsageAdvisor followerTokens = new TokenUsageAdvisor();
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() ->
+                service.chat("ollama", "chain", QUESTION, "leader", leaderTokens, RequestDeadline.unbounded()));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() ->
+                service.chat("ollama", "chain", QUESTION, "follower", followerTokens, RequestDeadline.unbounded()));
+        RequestCoalescer.Key key = RequestCoalescer.Key.of(QUESTION, LLMType.OLLAMA, WorkflowType.CHAIN);
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.waitingFollowers(key) < 1 && System.nanoTime() < waitUntil) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertEquals("The GDP of Czechia grew.", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("The GDP of Czechia grew.", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, computations.get());
+        List<Message> history = chatMemory.get("follower");
+        assertEquals(2, history.size());
+        assertEquals(QUESTION, history.get(0).getText());
+        assertEquals("The GDP of Czechia grew.", history.get(1).getText());
+        assertTrue(leaderTokens.getTokens() > 0);
+        assertEquals(leaderTokens.getTokens(), followerTokens.getTokens());
+
+        // the follow-up is not coalesced with anything, it continues the follower's history and data
+        service.chat("ollama", "chain", "And in 2024?", "follower", new TokenUsageAdvisor(), RequestDeadline.unbounded());
+        assertEquals(2, computations.get());
+        assertTrue(followUpSawData.get());
+        assertEquals(4, chatMemory.get("follower").size());
+        assertEquals(QUESTION, chatMemory.get("follower").get(0).getText());
+        assertFalse(chatMemory.get("leader").stream().anyMatch(message -> "And in 2024?".equals(message.getText())));
+    }
+}
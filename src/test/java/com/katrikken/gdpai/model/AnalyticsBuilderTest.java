@@ -0,0 +1,214 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.TestMetricsConfig;
+import com.katrikken.gdpai.config.ExecutorConfig;
+import com.katrikken.gdpai.dto.AnnualValue;
+import com.katrikken.gdpai.dto.CagrValue;
+import com.katrikken.gdpai.dto.GroupAggregate;
+import com.katrikken.gdpai.dto.GroupType;
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.repository.AnalyticsRepository;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Runs without a test transaction: the builder reads the metrics on other threads,
+ * so the test data has to be committed. The builds at startup and after data changes are disabled,
+ * the tests start every build.
+ */
+@DataJpaTest(properties = "app.analytics.enabled=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({AnalyticsBuilder.class, AnalyticsRepository.class, DataPointReadRepository.class,
+        ExecutorConfig.class, TestMetricsConfig.class})
+@Log4j2
+public class AnalyticsBuilderTest {
+
+    private static final int START_YEAR = 2010;
+    private static final int END_YEAR = 2020;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private AnalyticsBuilder builder;
+    @Autowired
+    private AnalyticsRepository repository;
+
+    /**
+     * The builder keeps the rows it wrote, the analytics tables are emptied by a build without data.
+     */
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("DELETE FROM GDP");
+        jdbcTemplate.update("DELETE FROM POPULATION");
+        jdbcTemplate.update("DELETE FROM COUNTRY WHERE COUNTRY_CODE <> 'CZE'");
+        builder.rebuild();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM METRIC_ANNUAL", Integer.class)).isZero();
+    }
+
+    /**
+     * AAA grows by 10 % a year, BBB by 5 % and CCC not at all. WLD is an aggregate without a region
+     * and is left out of ranks and totals. Every country has a constant population.
+     */
+    private void setupSmallData() {
+        insertCountry("AAA", "Region A", "High income");
+        insertCountry("BBB", "Region B", "High income");
+        insertCountry("CCC", "Region A", "Low income");
+        insertCountry("WLD", null, null);
+        for (int year = START_YEAR; year <= END_YEAR; year++) {
+            insertData("AAA", year, grown(100, 1.10, year), 10);
+            insertData("BBB", year, grown(200, 1.05, year), 20);
+            insertData("CCC", year, BigDecimal.valueOf(50), 2);
+            insertData("WLD", year, BigDecimal.valueOf(10000), 100);
+        }
+    }
+
+    @Test
+    void rebuild_ranksCountriesByValueAndGrowth() {
+        setupSmallData();
+
+        builder.rebuild();
+
+        assertThat(repository.findTopByValue(Metric.GDP, START_YEAR, 10, false))
+                .extracting(AnnualValue::countryCode, AnnualValue::valueRank)
+                .containsExactly(tuple("BBB", 1), tuple("AAA", 2), tuple("CCC", 3));
+        assertThat(repository.findTopByValue(Metric.GDP, START_YEAR, 1, true))
+                .extracting(AnnualValue::countryCode).containsExactly("CCC");
+        assertThat(repository.findTopByGrowth(Metric.GDP, START_YEAR, 10, false)).isEmpty();
+
+        List<AnnualValue> growth = repository.findTopByGrowth(Metric.GDP, 2011, 10, false);
+        assertThat(growth).extracting(AnnualValue::countryCode, AnnualValue::growthRank)
+                .containsExactly(tuple("AAA", 1), tuple("BBB", 2), tuple("CCC", 3));
+        assertThat(growth.getFirst().yoyGrowth()).isCloseTo(10.0, offset(0.001));
+        assertThat(growth.getFirst().countryName()).isEqualTo("AAA Test Name");
+
+        assertThat(repository.findTopByValue(Metric.GDP_PER_CAPITA, START_YEAR, 10, false))
+                .extracting(AnnualValue::countryCode, AnnualValue::valueRank)
+                .containsExactly(tuple("CCC", 1), tuple("AAA", 2), tuple("BBB", 2));
+        assertThat(repository.findCountryRanks(Metric.POPULATION, "AAA", 2019, 2030))
+                .extracting(AnnualValue::year, AnnualValue::valueRank)
+                .containsExactly(tuple(2019, 2), tuple(2020, 2));
+    }
+
+    @Test
+    void rebuild_computesCagrForPrecomputedAndOtherPeriods() {
+        setupSmallData();
+
+        AnalyticsBuilder.BuildStats stats = builder.rebuild();
+
+        // 3 countries * 3 metrics * 3 periods (2010-2015, 2015-2020 and 2010-2020)
+        assertThat(stats.cagrRows()).isEqualTo(27);
+        List<CagrValue> decade = repository.findTopByCagr(Metric.GDP, START_YEAR, END_YEAR, 10, false);
+        assertThat(decade).extracting(CagrValue::countryCode).containsExactly("AAA", "BBB", "CCC");
+        assertThat(decade.getFirst().cagr()).isCloseTo(10.0, offset(0.001));
+        assertThat(decade.get(1).cagr()).isCloseTo(5.0, offset(0.001));
+        assertThat(decade.getFirst().startValue()).isEqualByComparingTo("100");
+
+        List<CagrValue> computed = repository.findTopByCagr(Metric.GDP, 2011, 2013, 10, true);
+        assertThat(computed).extracting(CagrValue::countryCode, CagrValue::rank)
+                .containsExactly(tuple("CCC", 3), tuple("BBB", 2), tuple("AAA", 1));
+        assertThat(computed.getLast().cagr()).isCloseTo(10.0, offset(0.001));
+    }
+
+    @Test
+    void rebuild_aggregatesRegionsAndIncomeGroups() {
+        setupSmallData();
+
+        builder.rebuild();
+
+        List<GroupAggregate> regions = repository.findGroupAggregates(Metric.GDP, GroupType.REGION, 2011);
+        assertThat(regions).extracting(GroupAggregate::groupName, GroupAggregate::countries)
+                .containsExactly(tuple("Region B", 1), tuple("Region A", 2));
+        assertThat(regions.getLast().value()).isEqualByComparingTo("160");
+        assertThat(regions.getLast().yoyGrowth()).isCloseTo(160.0 / 150 * 100 - 100, offset(0.0001));
+
+        assertThat(repository.findGroupAggregates(Metric.POPULATION, GroupType.INCOME_GROUP, START_YEAR))
+                .extracting(GroupAggregate::groupName, g -> g.value().intValue())
+                .containsExactly(tuple("High income", 30), tuple("Low income", 2));
+        assertThat(repository.findGroupAggregates(Metric.GDP_PER_CAPITA, GroupType.REGION, START_YEAR))
+                .extracting(GroupAggregate::groupName, g -> g.value().intValue())
+                .containsExactlyInAnyOrder(tuple("Region A", 12), tuple("Region B", 10));
+    }
+
+    @Test
+    void rebuild_replacesPreviousContent() {
+        setupSmallData();
+        AnalyticsBuilder.BuildStats first = builder.rebuild();
+
+        jdbcTemplate.update("UPDATE GDP SET GDP = 1000 WHERE COUNTRY_CODE = 'CCC'");
+        AnalyticsBuilder.BuildStats second = builder.rebuild();
+
+        assertThat(second.annualRows()).isEqualTo(first.annualRows());
+        // the values and ranks of CCC and the ranks of the countries it passed
+        assertThat(second.writtenRows()).isLessThan(first.annualRows());
+        assertThat(repository.findTopByValue(Metric.GDP, START_YEAR, 1, false))
+                .extracting(AnnualValue::countryCode).containsExactly("CCC");
+    }
+
+    /**
+     * A dataset of the same size as the production one: 265 countries, 1960 - 2024, GDP and population.
+     */
+    @Test
+    void rebuild_fullSizeDataset() {
+        List<Object[]> countries = new ArrayList<>();
+        List<Object[]> gdp = new ArrayList<>();
+        List<Object[]> population = new ArrayList<>();
+        for (int i = 0; i < 265; i++) {
+            String code = "" + (char) ('A' + i / 26 / 26 % 26) + (char) ('A' + i / 26 % 26) + (char) ('A' + i % 26);
+            countries.add(new Object[]{code, "Country " + code, "Region " + i % 7, "Income " + i % 4});
+            for (int year = 1960; year <= 2024; year++) {
+                gdp.add(new Object[]{code, year, new BigDecimal("123456789.123456").multiply(BigDecimal.valueOf(year - 1950 + i))});
+                population.add(new Object[]{code, year, 1_000_000L + 1000L * (year - 1960) * (i + 1)});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO COUNTRY (COUNTRY_CODE, NAME, REGION, INCOME_GROUP) VALUES (?, ?, ?, ?)", countries);
+        jdbcTemplate.batchUpdate("INSERT INTO GDP (COUNTRY_CODE, DATA_YEAR, GDP) VALUES (?, ?, ?)", gdp);
+        jdbcTemplate.batchUpdate("INSERT INTO POPULATION (COUNTRY_CODE, DATA_YEAR, POPULATION) VALUES (?, ?, ?)", population);
+
+        AnalyticsBuilder.BuildStats full = builder.rebuild();
+        List<AnalyticsBuilder.BuildStats> rebuilds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // one inserted value, as by insertGdpTool
+            jdbcTemplate.update("UPDATE GDP SET GDP = GDP * 2 WHERE COUNTRY_CODE = 'AAA' AND DATA_YEAR = ?", 2000 + i);
+            rebuilds.add(builder.rebuild());
+        }
+        log.info("Full size analytics build: {}, after a changed value: {} ms, {} rows written",
+                full, rebuilds.stream().map(AnalyticsBuilder.BuildStats::millis).toList(), rebuilds.getLast().writtenRows());
+
+        assertThat(full.annualRows()).isEqualTo(3 * 265 * 65);
+        assertThat(full.writtenRows()).isEqualTo(full.annualRows() + full.cagrRows() + full.groupRows());
+        assertThat(rebuilds.getLast().writtenRows()).isLessThan(2000);
+        assertThat(repository.findTopByValue(Metric.GDP, 2024, 1, false))
+                .extracting(AnnualValue::countryCode).containsExactly("AKE");
+    }
+
+    private void insertCountry(String code, String region, String incomeGroup) {
+        jdbcTemplate.update("INSERT INTO COUNTRY (COUNTRY_CODE, NAME, REGION, INCOME_GROUP) VALUES (?, ?, ?, ?)",
+                code, code + " Test Name", region, incomeGroup);
+    }
+
+    private void insertData(String code, int year, BigDecimal gdp, long population) {
+        jdbcTemplate.update("INSERT INTO GDP (COUNTRY_CODE, DATA_YEAR, GDP) VALUES (?, ?, ?)", code, year, gdp);
+        jdbcTemplate.update("INSERT INTO POPULATION (COUNTRY_CODE, DATA_YEAR, POPULATION) VALUES (?, ?, ?)", code, year, population);
+    }
+
+    private static BigDecimal grown(int base, double rate, int year) {
+        return BigDecimal.valueOf(base * Math.pow(rate, year - START_YEAR)).setScale(6, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,69 @@
+package com.katrikken.gdpai.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class BulkheadTest {
+
+    @Test
+    void acquire_overLimitWithFullQueue_rejectsImmediately() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead(1, 1, 1, 0, 1000);
+
+        assertNull(bulkhead.acquire(0));
+        assertEquals(Bulkhead.Rejection.QUEUE_FULL, bulkhead.acquire(1000));
+        assertEquals(1, bulkhead.getInFlight());
+    }
+
+    @Test
+    void acquire_overLimit_timesOutInQueue() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead(1, 1, 1, 1, 1000);
+
+        assertNull(bulkhead.acquire(0));
+        assertEquals(Bulkhead.Rejection.WAIT_TIMEOUT, bulkhead.acquire(20));
+        assertEquals(0, bulkhead.getWaiting());
+    }
+
+    @Test
+    void acquire_overLimit_proceedsWhenPermitIsReleased() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(1, 1, 1, 1, 1000);
+        assertNull(bulkhead.acquire(0));
+
+        CompletableFuture<Bulkhead.Rejection> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return bulkhead.acquire(5000);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (bulkhead.getWaiting() == 0) {
+            Thread.onSpinWait();
+        }
+        bulkhead.release(TimeUnit.MILLISECONDS.toNanos(10), true);
+
+        assertNull(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, bulkhead.getInFlight());
+    }
+
+    @Test
+    void release_adaptsLimitToLatency() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead(2, 1, 4, 0, 100);
+
+        for (int i = 0; i < 10; i++) {
+            assertNull(bulkhead.acquire(0));
+            bulkhead.release(TimeUnit.MILLISECONDS.toNanos(10), true);
+        }
+        assertEquals(4, bulkhead.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            assertNull(bulkhead.acquire(0));
+            bulkhead.release(TimeUnit.MILLISECONDS.toNanos(500), true);
+        }
+        assertEquals(1, bulkhead.getLimit());
+        assertEquals(1, bulkhead.retryAfterSeconds());
+    }
+}
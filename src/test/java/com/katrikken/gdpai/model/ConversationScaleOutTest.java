@@ -0,0 +1,101 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.repository.FileChatMemoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Two instances of the application on one machine, sharing the chat memory directory.
+ * The turns of every conversation alternate between the instances, each turn has to see all the earlier ones.
+ */
+public class ConversationScaleOutTest {
+
+    private static final int CONVERSATIONS = 8;
+    private static final int TURNS = 6;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Answers with the number of the turn, counted from the user messages in the prompt.
+     */
+    private static final ChatModel TURN_COUNTER = prompt -> {
+        long turn = prompt.getInstructions().stream().filter(m -> m.getMessageType() == MessageType.USER).count();
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("turn " + turn))));
+    };
+
+    private record Node(FileChatMemoryRepository repository, ChatClient chatClient) {
+
+        static Node start(Path directory) {
+            FileChatMemoryRepository repository = new FileChatMemoryRepository(directory, 100, 3_600_000, new SimpleMeterRegistry());
+            ChatMemory chatMemory = MessageWindowChatMemory.builder().chatMemoryRepository(repository).maxMessages(100).build();
+            ChatClient chatClient = ChatClient.builder(TURN_COUNTER)
+                    .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build())
+                    .build();
+            return new Node(repository, chatClient);
+        }
+
+        String turn(String conversationId, String question) throws Exception {
+            String answer = chatClient.prompt(question)
+                    .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, conversationId))
+                    .call()
+                    .content();
+            repository.flush();
+            return answer;
+        }
+    }
+
+    @Test
+    void turnsAlternatingBetweenInstances_seeTheWholeConversation() throws Exception {
+        List<Node> nodes = List.of(Node.start(directory), Node.start(directory));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<String>>> conversations = IntStream.range(0, CONVERSATIONS)
+                    .mapToObj(c -> executor.submit(() -> {
+                        String conversationId = "conversation-" + c;
+                        List<String> answers = new ArrayList<>();
+                        for (int turn = 0; turn < TURNS; turn++) {
+                            // a load balancer without sticky sessions, the next turn goes to the other instance
+                            Node node = nodes.get((c + turn) % nodes.size());
+                            answers.add(node.turn(conversationId, "question " + turn));
+                        }
+                        return answers;
+                    }))
+                    .toList();
+
+            List<String> expected = IntStream.rangeClosed(1, TURNS).mapToObj(t -> "turn " + t).toList();
+            for (Future<List<String>> conversation : conversations) {
+                assertEquals(expected, conversation.get());
+            }
+        } finally {
+            nodes.forEach(node -> node.repository().close());
+        }
+
+        Node restarted = Node.start(directory);
+        List<Message> history = restarted.repository().findByConversationId("conversation-0");
+        assertEquals(2 * TURNS, history.size());
+        assertEquals("question 0", history.getFirst().getText());
+        assertEquals(CONVERSATIONS, restarted.repository().findConversationIds().size());
+        restarted.repository().close();
+    }
+}
@@ -0,0 +1,117 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.TestMetricsConfig;
+import com.katrikken.gdpai.dto.DataPoint;
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.tool.AnalyticsToolService;
+import com.katrikken.gdpai.tool.DataTool;
+import com.katrikken.gdpai.tool.SeriesResult;
+import com.katrikken.gdpai.tool.TextResult;
+import com.katrikken.gdpai.tool.ToolCallRecorder.RecordedCall;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@Import({DataReducer.class, CountryIndex.class, TestMetricsConfig.class})
+@TestPropertySource(properties = {"app.reduction.token-budget=400", "app.reduction.max-points-per-series=8"})
+public class DataReducerTest {
+
+    @Autowired
+    private DataReducer dataReducer;
+
+    @Test
+    void reduce_dropsCountriesAndYearsNotInQuestion() {
+        List<DataPoint> rows = IntStream.rangeClosed(2010, 2020)
+                .boxed()
+                .flatMap(year -> Stream.of(point("CZE", year, 1000 + year), point("USA", year, 5000 + year)))
+                .toList();
+        List<RecordedCall> calls = List.of(
+                new RecordedCall("countryNameToCountryCode", new DataTool.CountryQuery("Czechia"), new TextResult("CZE")),
+                new RecordedCall("gdpBetweenYears", new DataTool.YearRangeQuery(2010, 2020),
+                        SeriesResult.records("GDP", rows)));
+
+        String reduced = dataReducer.reduce("What was the GDP of Czechia between 2015 and 2017?", calls, "LLM data");
+
+        assertEquals("""
+                GDP, CZE, 2015-2017 (3 values):
+                2015: 3015; 2016: 3016; 2017: 3017
+                stats: min 2015: 3015, max 2017: 3017, mean 3016, change 2015-2017: +0.07%, CAGR 0.03%
+                countryNameToCountryCode: CZE
+                Data reported by the tools phase:
+                LLM data""", reduced);
+    }
+
+    @Test
+    void reduce_keepsResultsOfOtherToolsNextToSeries() {
+        List<DataPoint> trend = IntStream.rangeClosed(2020, 2024)
+                .mapToObj(year -> point("CZE", year, 1000 + year))
+                .toList();
+        List<RecordedCall> calls = List.of(
+                new RecordedCall("gdpTrendForCountry", new DataTool.CountryCodeQuery("CZE"),
+                        SeriesResult.trend("GDP", "CZE", trend)),
+                new RecordedCall("countryRanksTool",
+                        new AnalyticsToolService.CountryRankQuery(Metric.GDP, "CZE", 2020, 2024),
+                        new TextResult("CZE GDP rank: 2020: 48 of 200; 2024: 45 of 200")));
+
+        String reduced = dataReducer.reduce("How did the GDP of Czechia and its rank develop?", calls,
+                "Czechia moved from rank 48 to 45.");
+
+        assertThat(reduced).startsWith("GDP, CZE, 2020-2024 (5 values):")
+                .contains("countryRanksTool: CZE GDP rank: 2020: 48 of 200; 2024: 45 of 200")
+                .endsWith("Data reported by the tools phase:\nCzechia moved from rank 48 to 45.");
+        assertThat(DataReducer.estimateTokens(reduced)).isLessThanOrEqualTo(400);
+    }
+
+    @Test
+    void reduce_downsamplesLongTrend() {
+        List<DataPoint> trend = IntStream.rangeClosed(1960, 2024)
+                .mapToObj(year -> point("CZE", year, year - 1900))
+                .toList();
+        List<RecordedCall> calls = List.of(new RecordedCall("gdpPerCapitaTrendForCountry",
+                new DataTool.CountryCodeQuery("CZE"), SeriesResult.trend("GDP per capita", "CZE", trend)));
+
+        String reduced = dataReducer.reduce("Summarize GDP per capita of Czechia", calls, "LLM data");
+
+        assertThat(reduced).startsWith("GDP per capita, CZE, 1960-2024 (65 values, 8 shown):\n1960: 60; ");
+        assertThat(reduced).contains("2024: 124", "stats: min 1960: 60, max 2024: 124, mean 92, change 1960-2024: +106.67%");
+    }
+
+    @Test
+    void reduce_enforcesTokenBudget() {
+        List<DataPoint> rows = IntStream.range(0, 200)
+                .mapToObj(i -> point(String.format("%c%cX", 'A' + i / 26, 'A' + i % 26), 2024, 1000 + i))
+                .toList();
+        List<RecordedCall> calls = List.of(new RecordedCall("gdpByYear", new DataTool.YearQuery(2024),
+                SeriesResult.records("GDP", rows)));
+
+        String reduced = dataReducer.reduce("Which countries had the largest GDP in 2024?", calls, "LLM data");
+
+        assertThat(DataReducer.estimateTokens(reduced)).isLessThanOrEqualTo(400);
+        assertThat(reduced).startsWith("GDP, AAX, 2024: 1000\n").contains("more series omitted to fit the token budget");
+    }
+
+    @Test
+    void reduce_withoutToolData_truncatesLlmData() {
+        String data = "x".repeat(4000);
+
+        String reduced = dataReducer.reduce("What is the GDP of Czechia?", List.of(), data);
+
+        assertThat(DataReducer.estimateTokens(reduced)).isLessThanOrEqualTo(400);
+        assertThat(reduced).endsWith("[truncated to fit the token budget]");
+    }
+
+    private static DataPoint point(String countryCode, int year, long value) {
+        return new DataPoint(countryCode, year, BigDecimal.valueOf(value));
+    }
+}
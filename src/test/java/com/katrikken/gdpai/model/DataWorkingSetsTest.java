@@ -0,0 +1,168 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.TestMetricsConfig;
+import com.katrikken.gdpai.config.ExecutorConfig;
+import com.katrikken.gdpai.dto.DataChangedEvent;
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.dto.SessionEvictedEvent;
+import com.katrikken.gdpai.entity.Country;
+import com.katrikken.gdpai.entity.CountryYearId;
+import com.katrikken.gdpai.entity.Gdp;
+import com.katrikken.gdpai.repository.AnalyticsRepository;
+import com.katrikken.gdpai.repository.CountryRepository;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
+import com.katrikken.gdpai.repository.GdpRepository;
+import com.katrikken.gdpai.tool.AnalyticsToolService;
+import com.katrikken.gdpai.tool.CountryToolService;
+import com.katrikken.gdpai.tool.GdpPerCapitaToolService;
+import com.katrikken.gdpai.tool.GdpToolService;
+import com.katrikken.gdpai.tool.MathematicalTool;
+import com.katrikken.gdpai.tool.PopulationToolService;
+import com.katrikken.gdpai.tool.ToolExecutionContext;
+import com.katrikken.gdpai.tool.ToolRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a question and its follow-up through {@link ChainWorkflow} against {@link StubChatModel}, whose tools phase
+ * calls the GDP trend tool, and compares the LLM calls and latency of both turns.
+ */
+@DataJpaTest
+@Import({DataWorkingSets.class, ChainWorkflow.class, PlanExecutor.class, PromptTemplates.class, DataReducer.class, SpeculativePrefetcher.class,
+        CountryIndex.class, CountryToolService.class, GdpToolService.class, PopulationToolService.class,
+        GdpPerCapitaToolService.class, AnalyticsToolService.class, AnalyticsRepository.class, MathematicalTool.class,
+        ToolRegistry.class, ToolSelector.class, DataPointReadRepository.class, ExecutorConfig.class, TestMetricsConfig.class})
+@Log4j2
+public class DataWorkingSetsTest {
+
+    private static final String GDP_TREND = "gdpTrendForCountry";
+
+    @Autowired
+    private DataWorkingSets workingSets;
+    @Autowired
+    private ChainWorkflow chainWorkflow;
+    @Autowired
+    private ToolRegistry toolRegistry;
+    @Autowired
+    private CountryRepository countryRepository;
+    @Autowired
+    private GdpRepository gdpRepository;
+
+    @BeforeEach
+    void setupData() {
+        countryRepository.save(Country.builder().countryCode("CZE").name("Czechia").build());
+        countryRepository.save(Country.builder().countryCode("AUT").name("Austria").build());
+        for (int year = 2015; year <= 2024; year++) {
+            gdpRepository.save(new Gdp(new CountryYearId("CZE", year), BigDecimal.valueOf(1000L + 10L * year)));
+        }
+    }
+
+    @Test
+    void followUp_isAnsweredFromTheDataOfTheFirstTurn() {
+        AtomicReference<String> analysisPrompt = new AtomicReference<>();
+        StubChatModel chatModel = new StubChatModel(prompt -> {
+            if (prompt.contains("Data request:")) {
+                // the tools phase calls a tool on the calling thread, like the tool calling of Spring AI does
+                return callTool(GDP_TREND, "{\"countryCode\":\"CZE\"}");
+            }
+            if (prompt.contains("User's question:")) {
+                return "Find GDP trend data on Czechia.";
+            }
+            analysisPrompt.set(prompt);
+            return "answer";
+        }, 20, 0.05);
+        PhaseChatClients chatClients = PhaseChatClients.of(ChatClient.create(chatModel));
+        DataWorkingSet workingSet = workingSets.forSession("follow-up");
+
+        Turn first = turn("How did the GDP of Czechia develop?", chatModel, chatClients, workingSet);
+        Turn followUp = turn("And what was it in 2020?", chatModel, chatClients, workingSet);
+        log.info("First turn: {}, follow-up: {}", first, followUp);
+
+        assertEquals(3, first.calls());
+        assertEquals(1, followUp.calls());
+        assertThat(followUp.latencyMillis()).isLessThan(first.latencyMillis());
+        assertThat(analysisPrompt.get()).contains(DataWorkingSets.EARLIER_DATA.strip()).contains("2020");
+        assertEquals(List.of("GDP of CZE 2015-2024 (10 values)"), workingSet.describe());
+    }
+
+    @Test
+    void repeatedToolCall_isServedFromTheWorkingSet() {
+        DataWorkingSet workingSet = workingSets.newWorkingSet();
+        AtomicInteger executed = new AtomicInteger();
+        ToolExecutionContext.ToolCallInterceptor interceptor = workingSet.interceptor((toolName, argument, call) -> {
+            executed.incrementAndGet();
+            return call.get();
+        });
+
+        String fetched = ToolExecutionContext.callWith(interceptor, () -> callTool(GDP_TREND, "{\"countryCode\":\"CZE\"}"));
+        String served = ToolExecutionContext.callWith(interceptor, () -> callTool(GDP_TREND, "{\"countryCode\":\"cze\"}"));
+        String year = ToolExecutionContext.callWith(interceptor,
+                () -> callTool("gdpByCountryYear", "{\"countryCode\":\"CZE\",\"year\":2020}"));
+
+        assertEquals(1, executed.get());
+        assertEquals(fetched, served);
+        assertThat(year).contains("2020");
+    }
+
+    @Test
+    void reusableData_needsKeptSeries() {
+        DataWorkingSet workingSet = workingSets.newWorkingSet();
+        assertNull(workingSets.reusableData(workingSet, "And in 2020?"));
+
+        ToolExecutionContext.callWith(workingSet.interceptor(null), () -> callTool(GDP_TREND, "{\"countryCode\":\"CZE\"}"));
+        workingSet.startTurn();
+
+        assertThat(workingSets.reusableData(workingSet, "And in 2020?")).contains("2020");
+        assertNull(workingSets.reusableData(workingSet, "And what was the GDP of Austria?"));
+        assertNull(workingSets.reusableData(workingSet, "And the population?"));
+        assertNull(workingSets.reusableData(workingSet, "Which countries had the largest GDP in 2020?"));
+    }
+
+    @Test
+    void changedDataOrEvictedSession_dropsTheKeptSeries() {
+        DataWorkingSet workingSet = workingSets.forSession("changed");
+        ToolExecutionContext.callWith(workingSet.interceptor(null), () -> callTool(GDP_TREND, "{\"countryCode\":\"CZE\"}"));
+        workingSet.startTurn();
+
+        workingSets.onDataChanged(new DataChangedEvent(Metric.POPULATION));
+        assertEquals(List.of("GDP of CZE 2015-2024 (10 values)"), workingSet.describe());
+        workingSets.onDataChanged(new DataChangedEvent(Metric.GDP));
+        assertTrue(workingSet.isEmpty());
+        assertNull(workingSets.reusableData(workingSet, "And in 2020?"));
+
+        assertSame(workingSet, workingSets.forSession("changed"));
+        workingSets.onSessionEvicted(new SessionEvictedEvent("changed"));
+        assertNotSame(workingSet, workingSets.forSession("changed"));
+    }
+
+    private String callTool(String toolName, String input) {
+        return toolRegistry.callbacks(List.of(toolName)).getFirst().call(input);
+    }
+
+    private Turn turn(String question, StubChatModel chatModel, PhaseChatClients chatClients, DataWorkingSet workingSet) {
+        chatModel.reset();
+        long start = System.nanoTime();
+        chainWorkflow.chain(question, chatClients, workingSet, RequestDeadline.unbounded());
+        return new Turn(chatModel.getCalls(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private record Turn(int calls, long latencyMillis) {
+    }
+}
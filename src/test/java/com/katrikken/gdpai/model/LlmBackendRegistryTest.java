@@ -0,0 +1,63 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.LLMType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LlmBackendRegistryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Map<LLMType, Integer> created = new EnumMap<>(LLMType.class);
+    private final List<LlmBackend> backends = List.of(backend(LLMType.OLLAMA), backend(LLMType.OPENAI));
+
+    private LlmBackend backend(LLMType type) {
+        return LlmBackend.of(type, () -> {
+            created.merge(type, 1, Integer::sum);
+            return new StubChatModel(prompt -> "answer", 0, 0);
+        });
+    }
+
+    private LlmBackendRegistry registry(List<String> enabled, String defaultModel) {
+        return new LlmBackendRegistry(backends, enabled, defaultModel, MessageWindowChatMemory.builder().build(),
+                new ModelRouter(null, meterRegistry), new LlmBulkheads(new MockEnvironment(), meterRegistry),
+                new LlmCallPolicy(new MockEnvironment(), null, meterRegistry));
+    }
+
+    @Test
+    void onlyTheDefaultBackend_isCreatedAtStartup() {
+        LlmBackendRegistry registry = registry(List.of("ollama", "openai"), "ollama");
+
+        assertEquals(Map.of(LLMType.OLLAMA, 1), created);
+
+        assertSame(registry.chatClient(LLMType.OPENAI), registry.chatClient(LLMType.OPENAI));
+        assertEquals(Map.of(LLMType.OLLAMA, 1, LLMType.OPENAI, 1), created);
+        assertEquals("answer", registry.chatClient(LLMType.OPENAI).prompt("question").call().content());
+    }
+
+    @Test
+    void disabledBackend_isNeverCreated() {
+        LlmBackendRegistry registry = registry(List.of(" Ollama "), "ollama");
+
+        assertEquals(Set.of(LLMType.OLLAMA), registry.getEnabled());
+        assertFalse(registry.isEnabled(LLMType.OPENAI));
+        assertThrows(IllegalArgumentException.class, () -> registry.chatClient(LLMType.OPENAI));
+        assertEquals(Map.of(LLMType.OLLAMA, 1), created);
+    }
+
+    @Test
+    void defaultModelNotEnabled_failsAtStartup() {
+        assertThrows(IllegalStateException.class, () -> registry(List.of("openai"), "ollama"));
+    }
+}
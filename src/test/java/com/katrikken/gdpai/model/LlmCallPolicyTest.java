@@ -0,0 +1,299 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.LLMType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Log4j2
+public class LlmCallPolicyTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ChatMemory chatMemory = MessageWindowChatMemory.builder().build();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private LlmCallPolicy policy(MockEnvironment environment) {
+        return new LlmCallPolicy(environment.withProperty("app.llm-calls.plan.backoff-ms", "10"), executor, meterRegistry);
+    }
+
+    /**
+     * Chat client over {@link StubChatModel}, the calls matching failing throw the given exception.
+     */
+    private PhaseChatClients chatClients(LlmCallPolicy policy, IntPredicate failing, RuntimeException failure,
+                                         IntPredicate slow) {
+        StubChatModel stub = new StubChatModel(prompt -> "answer", 0, 0);
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                int call = calls.incrementAndGet();
+                if (failing.test(call)) {
+                    throw failure;
+                }
+                sleep(slow.test(call) ? 1000 : 20);
+                return stub.call(prompt);
+            }
+        };
+        return PhaseChatClients.of(ChatClient.builder(chatModel)
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build(), policy.advisor())
+                .build());
+    }
+
+    private static String ask(PhaseChatClients chatClients, WorkflowPhase phase) {
+        return chatClients.prompt(phase).user("What was the GDP of Czechia in 2024?").call().content();
+    }
+
+    @Test
+    void transientFailure_isRetriedOnceInTheChatMemory() {
+        PhaseChatClients chatClients = chatClients(policy(new MockEnvironment()), call -> call < 3,
+                new TransientAiException("503 Service Unavailable"), call -> false);
+
+        assertEquals("answer", ask(chatClients, WorkflowPhase.PLAN));
+
+        assertEquals(3, calls.get());
+        assertEquals(2, meterRegistry.get("agent.llm.retries").tag("phase", "plan").counter().count());
+        // the question and the answer, the failed calls did not add the question again
+        assertEquals(2, chatMemory.get(ChatMemory.DEFAULT_CONVERSATION_ID).size());
+    }
+
+    @Test
+    void persistentOrNonTransientFailure_isPassedOn() {
+        PhaseChatClients transientFailures = chatClients(policy(new MockEnvironment()), call -> true,
+                new TransientAiException("503 Service Unavailable"), call -> false);
+        assertThrows(TransientAiException.class, () -> ask(transientFailures, WorkflowPhase.PLAN));
+        assertEquals(3, calls.get());
+
+        calls.set(0);
+        PhaseChatClients nonTransient = chatClients(policy(new MockEnvironment()), call -> true,
+                new NonTransientAiException("401 Unauthorized"), call -> false);
+        assertThrows(NonTransientAiException.class, () -> ask(nonTransient, WorkflowPhase.PLAN));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void backoff_growsWithJitterUpToTheMaximum() {
+        LlmCallPolicy policy = policy(new MockEnvironment()
+                .withProperty("app.llm-calls.analysis.backoff-ms", "400")
+                .withProperty("app.llm-calls.analysis.max-backoff-ms", "1000"));
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.backoffMillis(WorkflowPhase.ANALYSIS, 1)).isBetween(200L, 400L);
+            assertThat(policy.backoffMillis(WorkflowPhase.ANALYSIS, 2)).isBetween(400L, 800L);
+            assertThat(policy.backoffMillis(WorkflowPhase.ANALYSIS, 5)).isBetween(500L, 1000L);
+        }
+    }
+
+    @Test
+    void hedging_cutsTheTailLatency() {
+        // every 10th call takes 1 s instead of 20 ms
+        IntPredicate slow = call -> call % 10 == 0;
+        PhaseChatClients plain = chatClients(policy(new MockEnvironment()), call -> false, null, slow);
+        PhaseChatClients hedged = chatClients(policy(new MockEnvironment()
+                        .withProperty("app.llm-calls.analysis.hedge", "true")
+                        .withProperty("app.llm-calls.hedge.min-samples", "5")
+                        .withProperty("app.llm-calls.hedge.min-delay-ms", "50")),
+                call -> false, null, slow);
+
+        List<Long> plainLatencies = run(plain);
+        calls.set(0);
+        List<Long> hedgedLatencies = run(hedged);
+        log.info("Without hedging: p50 {} ms, max {} ms, with hedging: p50 {} ms, max {} ms, hedges {}",
+                plainLatencies.get(plainLatencies.size() / 2), plainLatencies.getLast(),
+                hedgedLatencies.get(hedgedLatencies.size() / 2), hedgedLatencies.getLast(),
+                hedgesWon());
+
+        assertThat(plainLatencies.getLast()).isGreaterThanOrEqualTo(1000);
+        assertThat(hedgedLatencies.getLast()).isLessThan(500);
+        assertThat(hedgesWon()).isGreaterThan(0);
+    }
+
+    @Test
+    void toolsCallOfferingAWriteTool_isNotRetried() {
+        AtomicInteger inserts = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+        // the tools run, then the call fails, as when the connection drops while the LLM is answering
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                ((ToolCallingChatOptions) prompt.getOptions()).getToolCallbacks().forEach(tool -> tool.call("{}"));
+                if (calls.incrementAndGet() == 1) {
+                    throw new TransientAiException("Connection reset");
+                }
+                return new StubChatModel(p -> "answer", 0, 0).call(prompt);
+            }
+        };
+        LlmCallPolicy policy = policy(new MockEnvironment().withProperty("app.llm-calls.tools.backoff-ms", "10"));
+        PhaseChatClients chatClients = PhaseChatClients.of(ChatClient.builder(chatModel)
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build(), policy.advisor())
+                .build());
+
+        assertThrows(TransientAiException.class, () -> chatClients.prompt(WorkflowPhase.TOOLS)
+                .user("Insert the GDP of Czechia in 2025.")
+                .toolCallbacks(tool("insertGdp", inserts), tool("gdpByCountryYear", reads))
+                .call().content());
+        assertEquals(1, inserts.get());
+
+        calls.set(0);
+        reads.set(0);
+        assertEquals("answer", chatClients.prompt(WorkflowPhase.TOOLS)
+                .user("What was the GDP of Czechia in 2024?")
+                .toolCallbacks(tool("gdpByCountryYear", reads))
+                .call().content());
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    void hedging_needsAFreeBulkheadPermit() {
+        // after 10 fast calls, a call slower than the hedge delay
+        IntPredicate slow = call -> call > 10;
+        for (String limit : List.of("1", "2")) {
+            calls.set(0);
+            MockEnvironment environment = new MockEnvironment()
+                    .withProperty("app.llm-calls.analysis.hedge", "true")
+                    .withProperty("app.llm-calls.hedge.min-samples", "5")
+                    .withProperty("app.llm-calls.hedge.min-delay-ms", "50")
+                    .withProperty("app.bulkhead.ollama.initial-limit", limit)
+                    .withProperty("app.bulkhead.ollama.max-limit", limit);
+            LlmBulkheads bulkheads = new LlmBulkheads(environment, new SimpleMeterRegistry());
+            LlmCallPolicy policy = policy(environment);
+            double fired = hedgesFired();
+            ChatModel chatModel = prompt -> {
+                sleep(slow.test(calls.incrementAndGet()) ? 300 : 20);
+                return new StubChatModel(p -> "answer", 0, 0).call(prompt);
+            };
+            PhaseChatClients chatClients = PhaseChatClients.of(ChatClient.builder(chatModel)
+                    .defaultAdvisors(bulkheads.advisor(LLMType.OLLAMA), MessageChatMemoryAdvisor.builder(chatMemory).build(),
+                            policy.advisor())
+                    .build());
+
+            for (int i = 0; i < 11; i++) {
+                assertEquals("answer", ask(chatClients, WorkflowPhase.ANALYSIS));
+            }
+            // with a limit of 1 the call holds the only permit
+            assertEquals(limit.equals("1") ? 0 : 1, hedgesFired() - fired);
+            assertEquals(limit.equals("1") ? 11 : 12, calls.get());
+        }
+    }
+
+    @Test
+    void retryBackoff_returnsTheBulkheadPermit() throws Exception {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("app.llm-calls.analysis.backoff-ms", "600")
+                .withProperty("app.bulkhead.ollama.initial-limit", "1")
+                .withProperty("app.bulkhead.ollama.max-limit", "1");
+        LlmBulkheads bulkheads = new LlmBulkheads(environment, new SimpleMeterRegistry());
+        ChatModel chatModel = prompt -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new TransientAiException("503 Service Unavailable");
+            }
+            sleep(20);
+            return new StubChatModel(p -> "answer", 0, 0).call(prompt);
+        };
+        PhaseChatClients chatClients = PhaseChatClients.of(ChatClient.builder(chatModel)
+                .defaultAdvisors(bulkheads.advisor(LLMType.OLLAMA), MessageChatMemoryAdvisor.builder(chatMemory).build(),
+                        policy(environment).advisor())
+                .build());
+
+        Future<String> retried = executor.submit(() -> ask(chatClients, WorkflowPhase.ANALYSIS));
+        while (calls.get() == 0) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+        // the first call waits at least 300 ms before its retry, without holding the only permit
+        long start = System.nanoTime();
+        assertEquals("answer", ask(chatClients, WorkflowPhase.ANALYSIS));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(200);
+        assertThat(retried.isDone()).isFalse();
+
+        assertEquals("answer", retried.get(5, TimeUnit.SECONDS));
+        assertEquals(3, calls.get());
+    }
+
+    private static ToolCallback tool(String name, AtomicInteger runs) {
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+            }
+
+            @Override
+            public String call(String toolInput) {
+                runs.incrementAndGet();
+                return "done";
+            }
+        };
+    }
+
+    private double hedgesFired() {
+        return meterRegistry.get("agent.llm.hedges").tags("phase", "analysis", "outcome", "fired").counter().count();
+    }
+
+    private double hedgesWon() {
+        return meterRegistry.get("agent.llm.hedges").tags("phase", "analysis", "outcome", "won").counter().count();
+    }
+
+    @Test
+    void latencyWindow_percentile() {
+        LatencyWindow window = new LatencyWindow(10);
+        assertEquals(-1, window.percentile(0.95));
+        for (long latency = 1; latency <= 20; latency++) {
+            window.record(latency);
+        }
+        // only the last 10 latencies are kept
+        assertEquals(10, window.size());
+        assertEquals(20, window.percentile(0.95));
+        assertEquals(15, window.percentile(0.5));
+    }
+
+    private List<Long> run(PhaseChatClients chatClients) {
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            long start = System.nanoTime();
+            assertEquals("answer", ask(chatClients, WorkflowPhase.ANALYSIS));
+            latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        latencies.sort(null);
+        return latencies;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
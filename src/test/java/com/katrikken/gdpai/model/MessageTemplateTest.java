@@ -0,0 +1,35 @@
+package com.katrikken.gdpai.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MessageTemplateTest {
+
+    @Test
+    void render_replacesPlaceholdersInOnePass() {
+        MessageTemplate template = MessageTemplate.compile("Question: {question}\nData: {data}");
+
+        assertEquals("Question: What about {data}?\nData: 1000",
+                template.render(Map.of("question", "What about {data}?", "data", "1000")));
+        assertEquals(Set.of("question", "data"), template.placeholders());
+    }
+
+    @Test
+    void render_keepsBracesWithoutPlaceholderName() {
+        MessageTemplate template = MessageTemplate.compile("{\"year\": 2024} { } {question}");
+
+        assertEquals("{\"year\": 2024} { } GDP", template.render(Map.of("question", "GDP")));
+    }
+
+    @Test
+    void render_missingValue_throws() {
+        MessageTemplate template = MessageTemplate.compile("Data request: {question}");
+
+        assertThrows(IllegalArgumentException.class, () -> template.render(Map.of()));
+    }
+}
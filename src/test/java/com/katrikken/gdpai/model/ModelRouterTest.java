@@ -0,0 +1,129 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.TestMetricsConfig;
+import com.katrikken.gdpai.dto.LLMType;
+import com.katrikken.gdpai.entity.Country;
+import com.katrikken.gdpai.repository.CountryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The router keeps latency and token statistics, so every test gets a fresh context.
+ */
+@DataJpaTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@Import({ModelRouter.class, CountryIndex.class, TestMetricsConfig.class})
+@TestPropertySource(properties = {"app.routing.enabled=true", "app.routing.plan=ollama", "app.routing.tools=ollama",
+        "app.routing.analysis=ollama", "app.routing.escalation.model=openai",
+        "app.routing.escalation.token-budget-per-minute=100", "app.routing.escalation.latency-budget-ms=200",
+        "app.routing.escalation.probe-interval-ms=300"})
+public class ModelRouterTest {
+
+    @Autowired
+    private ModelRouter modelRouter;
+    @Autowired
+    private CountryRepository countryRepository;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private StubChatModel ollama;
+    private StubChatModel openAi;
+    private Map<LLMType, ChatClient> clients;
+
+    @BeforeEach
+    void setUp() {
+        countryRepository.deleteAllInBatch();
+        countryRepository.save(Country.builder().countryCode("CZE").name("Czechia").build());
+        countryRepository.save(Country.builder().countryCode("AUT").name("Austria").build());
+
+        ollama = new StubChatModel(prompt -> "ollama", 0, 0);
+        openAi = new StubChatModel(prompt -> "openai", 0, 0);
+        clients = Map.of(
+                LLMType.OLLAMA, ChatClient.builder(ollama).defaultAdvisors(modelRouter.metricsAdvisor(LLMType.OLLAMA)).build(),
+                LLMType.OPENAI, ChatClient.builder(openAi).defaultAdvisors(modelRouter.metricsAdvisor(LLMType.OPENAI)).build());
+    }
+
+    @Test
+    void simpleQuestion_staysOnConfiguredBackends() {
+        PhaseChatClients chatClients = modelRouter.route("What was the GDP of Czechia in 2020?", LLMType.OPENAI, clients::get);
+
+        for (WorkflowPhase phase : WorkflowPhase.values()) {
+            assertEquals("ollama", chatClients.prompt(phase).user("question").call().content());
+        }
+        assertEquals(3, ollama.getCalls());
+        assertEquals(0, openAi.getCalls());
+    }
+
+    @Test
+    void complexQuestion_escalatesAnalysisOnly() {
+        PhaseChatClients chatClients = modelRouter.route("Compare the GDP of Czechia and Austria", LLMType.OLLAMA, clients::get);
+
+        assertEquals("ollama", chatClients.prompt(WorkflowPhase.PLAN).user("question").call().content());
+        assertEquals("ollama", chatClients.prompt(WorkflowPhase.TOOLS).user("question").call().content());
+        assertEquals("openai", chatClients.prompt(WorkflowPhase.ANALYSIS).user("question").call().content());
+        assertEquals(1, openAi.getCalls());
+        assertTrue(meterRegistry.get("agent.llm.calls").tags("backend", "openai", "phase", "ANALYSIS",
+                "route", "escalated").timer().count() > 0);
+    }
+
+    @Test
+    void complexQuestion_overTokenBudget_staysOnCheapBackend() {
+        PhaseChatClients chatClients = modelRouter.route("Czechia versus Austria", LLMType.OLLAMA, clients::get);
+        // the stub estimates about 100 tokens for this prompt, which uses up the budget of the minute
+        chatClients.prompt(WorkflowPhase.ANALYSIS).user("x".repeat(400)).call().content();
+
+        assertEquals("ollama", chatClients.prompt(WorkflowPhase.ANALYSIS).user("question").call().content());
+        assertEquals(1, openAi.getCalls());
+        assertTrue(meterRegistry.get("agent.routing.escalations").tag("outcome", "over_token_budget")
+                .counter().count() > 0);
+    }
+
+    @Test
+    void complexQuestion_escalatesAgainAfterTheBackendRecovers() throws InterruptedException {
+        AtomicLong openAiLatency = new AtomicLong(400);
+        StubChatModel slowOpenAi = new StubChatModel(prompt -> {
+            try {
+                Thread.sleep(openAiLatency.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "openai";
+        }, 0, 0);
+        Map<LLMType, ChatClient> slowClients = Map.of(LLMType.OLLAMA, clients.get(LLMType.OLLAMA), LLMType.OPENAI,
+                ChatClient.builder(slowOpenAi).defaultAdvisors(modelRouter.metricsAdvisor(LLMType.OPENAI)).build());
+        PhaseChatClients chatClients = modelRouter.route("Compare the GDP of Czechia and Austria", LLMType.OLLAMA, slowClients::get);
+
+        assertEquals("openai", chatClients.prompt(WorkflowPhase.ANALYSIS).user("question").call().content());
+        // over the latency budget, no probe within the interval
+        assertEquals("ollama", chatClients.prompt(WorkflowPhase.ANALYSIS).user("question").call().content());
+
+        openAiLatency.set(0);
+        Thread.sleep(350);
+        assertEquals("openai", chatClients.prompt(WorkflowPhase.ANALYSIS).user("question").call().content());
+        assertEquals("openai", chatClients.prompt(WorkflowPhase.ANALYSIS).user("question").call().content());
+        assertEquals(3, slowOpenAi.getCalls());
+        assertEquals(1, meterRegistry.get("agent.routing.escalations").tag("outcome", "probe").counter().count());
+        assertEquals(1, meterRegistry.get("agent.routing.escalations").tag("outcome", "over_latency_budget").counter().count());
+    }
+
+    @Test
+    void isComplex_detectsCountriesAndKeywords() {
+        assertTrue(modelRouter.isComplex("Population of Czechia and Austria"));
+        assertTrue(modelRouter.isComplex("Rank the countries by GDP"));
+        assertFalse(modelRouter.isComplex("Population of Czechia in 2000"));
+    }
+}
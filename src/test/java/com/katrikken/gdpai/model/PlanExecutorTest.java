@@ -0,0 +1,173 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.TestMetricsConfig;
+import com.katrikken.gdpai.config.ExecutorConfig;
+import com.katrikken.gdpai.entity.Country;
+import com.katrikken.gdpai.entity.CountryYearId;
+import com.katrikken.gdpai.entity.Gdp;
+import com.katrikken.gdpai.entity.Population;
+import com.katrikken.gdpai.repository.AnalyticsRepository;
+import com.katrikken.gdpai.repository.CountryRepository;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
+import com.katrikken.gdpai.repository.GdpRepository;
+import com.katrikken.gdpai.repository.PopulationRepository;
+import com.katrikken.gdpai.tool.AnalyticsToolService;
+import com.katrikken.gdpai.tool.CountryToolService;
+import com.katrikken.gdpai.tool.GdpPerCapitaToolService;
+import com.katrikken.gdpai.tool.GdpToolService;
+import com.katrikken.gdpai.tool.MathematicalTool;
+import com.katrikken.gdpai.tool.PopulationToolService;
+import com.katrikken.gdpai.tool.ToolRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs questions through {@link ChainWorkflow} against {@link StubChatModel} with a JSON plan, which is executed
+ * without the tools call, and with plans in words, for a ranking or for too many countries, which go through the tools
+ * call.
+ * The plan is executed on other threads, so the test data is committed instead of being rolled back with the test
+ * transaction.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({PlanExecutor.class, ChainWorkflow.class, DataWorkingSets.class, PromptTemplates.class, DataReducer.class,
+        SpeculativePrefetcher.class, CountryIndex.class, CountryToolService.class, GdpToolService.class,
+        PopulationToolService.class, GdpPerCapitaToolService.class, AnalyticsToolService.class, AnalyticsRepository.class,
+        MathematicalTool.class, ToolRegistry.class, ToolSelector.class, DataPointReadRepository.class, ExecutorConfig.class,
+        TestMetricsConfig.class})
+@TestPropertySource(properties = "app.plan.max-countries=2")
+@Log4j2
+public class PlanExecutorTest {
+
+    private static final String QUESTION = "How did the GDP and population of Czechia and Austria develop since 2018?";
+    private static final String JSON_PLAN = """
+            ```json
+            {"request": "Find GDP and Population trends data on Czechia and Austria from 2018 to 2024.",
+             "metrics": ["GDP", "POPULATION"], "countries": ["Czechia", "Austria"], "startYear": 2018, "endYear": 2024}
+            ```""";
+    private static final String TEXT_PLAN = "Find GDP and Population trends data on Czechia and Austria from 2018 to 2024.";
+
+    @Autowired
+    private ChainWorkflow chainWorkflow;
+    @Autowired
+    private DataWorkingSets workingSets;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private CountryRepository countryRepository;
+    @Autowired
+    private GdpRepository gdpRepository;
+    @Autowired
+    private PopulationRepository populationRepository;
+
+    private final AtomicReference<String> planPrompt = new AtomicReference<>();
+    private final AtomicReference<String> analysisPrompt = new AtomicReference<>();
+
+    @BeforeEach
+    void setupData() {
+        cleanup();
+        countryRepository.save(Country.builder().countryCode("CZE").name("Czechia").build());
+        countryRepository.save(Country.builder().countryCode("AUT").name("Austria").build());
+        for (int year = 2010; year <= 2024; year++) {
+            gdpRepository.save(new Gdp(new CountryYearId("CZE", year), BigDecimal.valueOf(1000L + 10L * year)));
+            gdpRepository.save(new Gdp(new CountryYearId("AUT", year), BigDecimal.valueOf(2000L + 10L * year)));
+            populationRepository.save(new Population(new CountryYearId("CZE", year), 10_000_000L + year));
+            populationRepository.save(new Population(new CountryYearId("AUT", year), 9_000_000L + year));
+        }
+    }
+
+    @AfterEach
+    void cleanup() {
+        gdpRepository.deleteAll();
+        populationRepository.deleteAll();
+        countryRepository.deleteAll();
+    }
+
+    private StubChatModel chatModel(Function<String, String> plan) {
+        return new StubChatModel(prompt -> {
+            if (prompt.contains("Data request:")) {
+                return WorkflowHarnessTest.TOOL_DATA;
+            }
+            if (prompt.contains("User's question:")) {
+                planPrompt.set(prompt);
+                return plan.apply(prompt);
+            }
+            analysisPrompt.set(prompt);
+            return "answer";
+        }, 20, 0.05);
+    }
+
+    private double plans(String outcome) {
+        return meterRegistry.get("agent.plan.structured").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    void jsonPlan_isExecutedWithoutTheToolsCall() {
+        double executed = plans("executed");
+        double unparsed = plans("unparsed");
+        StubChatModel structured = chatModel(prompt -> JSON_PLAN);
+        StubChatModel text = chatModel(prompt -> TEXT_PLAN);
+
+        assertEquals("answer", chainWorkflow.chain(QUESTION, PhaseChatClients.of(ChatClient.create(text)),
+                workingSets.newWorkingSet(), RequestDeadline.unbounded()));
+        assertEquals("answer", chainWorkflow.chain(QUESTION, PhaseChatClients.of(ChatClient.create(structured)),
+                workingSets.newWorkingSet(), RequestDeadline.unbounded()));
+        log.info("JSON plan: {} calls, {} prompt tokens, plan in words: {} calls, {} prompt tokens",
+                structured.getCalls(), structured.getPromptTokens(), text.getCalls(), text.getPromptTokens());
+
+        assertThat(planPrompt.get()).contains("JSON");
+        assertEquals(2, structured.getCalls());
+        assertEquals(3, text.getCalls());
+        assertThat(analysisPrompt.get())
+                .contains("GDP, CZE, 2018-2024").contains("GDP, AUT, 2018-2024")
+                .contains("Population, CZE, 2018-2024").contains("Population, AUT, 2018-2024")
+                .doesNotContain("2017:");
+        assertEquals(executed + 1, plans("executed"));
+        assertEquals(unparsed + 1, plans("unparsed"));
+    }
+
+    @Test
+    void planOfARankingOrManyOrUnknownCountries_goesThroughTheToolsCall() {
+        double executed = plans("executed");
+        double delegated = plans("delegated");
+        StubChatModel ranking = chatModel(prompt -> """
+                {"request": "Find the countries with the largest GDP in 2024.", "metrics": ["GDP"], "countries": [],
+                 "startYear": 2024, "endYear": 2024}""");
+        chainWorkflow.chain("Which countries had the largest GDP in 2024?", PhaseChatClients.of(ChatClient.create(ranking)),
+                workingSets.newWorkingSet(), RequestDeadline.unbounded());
+
+        StubChatModel unknown = chatModel(prompt -> """
+                {"request": "Find GDP data on Atlantis.", "metrics": ["GDP"], "countries": ["Atlantis"]}""");
+        chainWorkflow.chain("What was the GDP of Atlantis?", PhaseChatClients.of(ChatClient.create(unknown)),
+                workingSets.newWorkingSet(), RequestDeadline.unbounded());
+
+        StubChatModel many = chatModel(prompt -> """
+                {"request": "Find GDP data on Czechia, Austria and Slovakia.", "metrics": ["GDP"],
+                 "countries": ["Czechia", "Austria", "Slovakia"]}""");
+        chainWorkflow.chain("Compare the GDP of Czechia, Austria and Slovakia.", PhaseChatClients.of(ChatClient.create(many)),
+                workingSets.newWorkingSet(), RequestDeadline.unbounded());
+
+        assertEquals(3, ranking.getCalls());
+        assertEquals(3, unknown.getCalls());
+        assertEquals(3, many.getCalls());
+        assertEquals(delegated + 3, plans("delegated"));
+        assertEquals(executed, plans("executed"));
+    }
+}
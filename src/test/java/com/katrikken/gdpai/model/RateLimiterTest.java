@@ -0,0 +1,97 @@
+package com.katrikken.gdpai.model;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RateLimiterTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private RateLimiter rateLimiter(MockEnvironment environment) {
+        return new RateLimiter(environment
+                .withProperty("app.rate-limit.tokens-per-request", "1000")
+                .withProperty("app.rate-limit.session.requests-per-minute", "1")
+                .withProperty("app.rate-limit.session.request-burst", "2")
+                .withProperty("app.rate-limit.session.tokens-per-minute", "1")
+                .withProperty("app.rate-limit.session.token-burst", "2500")
+                .withProperty("app.rate-limit.ip.requests-per-minute", "1")
+                .withProperty("app.rate-limit.ip.request-burst", "3")
+                .withProperty("app.rate-limit.ip.tokens-per-minute", "1")
+                .withProperty("app.rate-limit.ip.token-burst", "100000"), meterRegistry);
+    }
+
+    @Test
+    void acquire_overSessionRequestLimit_rejectsWithRetryAfter() {
+        RateLimiter limiter = rateLimiter(new MockEnvironment());
+
+        RateLimiter.Permit first = limiter.acquire("s1", "10.0.0.1", "q");
+        first.settle(0);
+        assertEquals(2, first.getLimit());
+        assertEquals(1, first.getRemaining());
+        limiter.acquire("s1", "10.0.0.1", "q").settle(0);
+
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquire("s1", "10.0.0.1", "q"));
+        assertEquals(2, e.getLimit());
+        assertTrue(e.getRetryAfterSeconds() > 0 && e.getRetryAfterSeconds() <= 60);
+        assertEquals(1, limiter.getRejections(RateLimiter.KeyType.SESSION, "s1"));
+        assertEquals(1, meterRegistry.counter("agent.ratelimit.rejections", "key", "session", "limit", "requests").count());
+    }
+
+    @Test
+    void acquire_overIpRequestLimit_rejectsNewSessions() {
+        RateLimiter limiter = rateLimiter(new MockEnvironment());
+
+        limiter.acquire("s1", "10.0.0.1", "q");
+        limiter.acquire("s2", "10.0.0.1", "q");
+        limiter.acquireSessionStart("10.0.0.1");
+
+        assertThrows(RateLimitedException.class, () -> limiter.acquire("s3", "10.0.0.1", "q"));
+        assertThrows(RateLimitedException.class, () -> limiter.acquireSessionStart("10.0.0.1"));
+        assertEquals(2, limiter.getRejections(RateLimiter.KeyType.IP, "10.0.0.1"));
+        // the rejected request did not use the budget of the new session
+        limiter.acquire("s3", "10.0.0.2", "q");
+    }
+
+    @Test
+    void acquire_withoutSession_isChargedToTheClientIp() {
+        RateLimiter limiter = rateLimiter(new MockEnvironment());
+
+        RateLimiter.Permit first = limiter.acquire(null, "10.0.0.1", "q");
+        assertEquals(3, first.getLimit());
+        assertEquals(2, first.getRemaining());
+        limiter.acquire(null, "10.0.0.1", "q");
+        limiter.acquire(null, "10.0.0.1", "q");
+
+        assertThrows(RateLimitedException.class, () -> limiter.acquire(null, "10.0.0.1", "q"));
+        assertEquals(1, limiter.getRejections(RateLimiter.KeyType.IP, "10.0.0.1"));
+        assertEquals(1, limiter.getKeyCount());
+    }
+
+    @Test
+    void acquire_overTokenLimit_rejectsUntilSettledWithActualUsage() {
+        RateLimiter limiter = rateLimiter(new MockEnvironment());
+
+        limiter.acquire("s1", "10.0.0.1", "q").settle(2000);
+
+        // 2500 - 2000 tokens left, the estimate is 1000 tokens
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquire("s1", "10.0.0.1", "q"));
+        assertEquals(2500, e.getLimit());
+        assertEquals(1, meterRegistry.counter("agent.ratelimit.rejections", "key", "session", "limit", "tokens").count());
+    }
+
+    @Test
+    void acquire_disabled_admitsEverything() {
+        RateLimiter limiter = rateLimiter(new MockEnvironment().withProperty("app.rate-limit.enabled", "false"));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(-1, limiter.acquire("s1", "10.0.0.1", "q").getLimit());
+        }
+        assertEquals(0, limiter.getKeyCount());
+    }
+}
@@ -0,0 +1,181 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.LLMType;
+import com.katrikken.gdpai.dto.WorkflowType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestCoalescerTest {
+
+    private static final RequestCoalescer.Key KEY =
+            RequestCoalescer.Key.of("What is the GDP of Czechia?", LLMType.OLLAMA, WorkflowType.CHAIN);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void key_ignoresCaseWhitespaceAndFinalPunctuation() {
+        assertEquals(KEY, RequestCoalescer.Key.of("  what is the  GDP of czechia ", LLMType.OLLAMA, WorkflowType.CHAIN));
+    }
+
+    @Test
+    void execute_concurrentDuplicates_shareOneComputation() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(true, 5000, 10000, meterRegistry);
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> leader = executor.submit(() -> coalescer.execute(KEY, 5000, () -> {
+                computations.incrementAndGet();
+                leaderStarted.countDown();
+                await(release);
+                return "answer";
+            }));
+            assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+            List<Future<String>> followers = IntStream.range(0, 4)
+                    .mapToObj(i -> executor.submit(() -> coalescer.execute(KEY, 5000, () -> {
+                        computations.incrementAndGet();
+                        return "own answer";
+                    })))
+                    .toList();
+            waitForFollowers(coalescer, 4);
+            release.countDown();
+
+            assertEquals("answer", leader.get(5, TimeUnit.SECONDS));
+            for (Future<String> follower : followers) {
+                assertEquals("answer", follower.get(5, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(1, computations.get());
+        assertEquals(0.8, meterRegistry.get("agent.coalescing.ratio").gauge().value(), 0.001);
+    }
+
+    @Test
+    void execute_stuckLeader_followerComputesItself() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(true, 50, 10000, meterRegistry);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, 5000, () -> {
+            leaderStarted.countDown();
+            await(release);
+            return "late answer";
+        }));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+
+        assertEquals("own answer", coalescer.execute(KEY, 5000, () -> "own answer"));
+        assertEquals(1, meterRegistry.get("agent.coalescing.requests").tag("role", "follower_timeout").counter().count());
+        release.countDown();
+        assertEquals("late answer", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void execute_failingLeader_passesFailureToFollowers() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(true, 5000, 10000, meterRegistry);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, 5000, () -> {
+            leaderStarted.countDown();
+            await(release);
+            throw new BackendSaturatedException(LLMType.OLLAMA, 1);
+        }));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, 5000, () -> "own answer"));
+        waitForFollowers(coalescer, 1);
+        release.countDown();
+
+        Exception exception = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof BackendSaturatedException);
+        assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        // the failed computation is not reused by later requests
+        assertEquals("new answer", coalescer.execute(KEY, 5000, () -> "new answer"));
+    }
+
+    @Test
+    void execute_followerWait_isCappedByItsBudget() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(true, 5000, 10000, meterRegistry);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, 5000, () -> {
+            leaderStarted.countDown();
+            await(release);
+            return "late answer";
+        }));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+
+        long started = System.nanoTime();
+        assertEquals("own answer", coalescer.execute(KEY, 50, () -> "own answer"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 2000);
+        release.countDown();
+        assertEquals("late answer", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void execute_cancelledLeader_oneFollowerTakesOver() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(true, 5000, 10000, meterRegistry);
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch releaseTakeover = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, 5000, () -> {
+            leaderStarted.countDown();
+            await(release);
+            // the leader's client disconnected
+            throw new CancellationException("The request was cancelled");
+        }));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> followers = IntStream.range(0, 3)
+                    .mapToObj(i -> executor.submit(() -> coalescer.execute(KEY, 5000, () -> {
+                        computations.incrementAndGet();
+                        await(releaseTakeover);
+                        return "own answer";
+                    })))
+                    .toList();
+            waitForFollowers(coalescer, 3);
+            release.countDown();
+            assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            // the follower that took over leads the others
+            waitForFollowers(coalescer, 2);
+            releaseTakeover.countDown();
+
+            for (Future<String> follower : followers) {
+                assertEquals("own answer", follower.get(5, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(1, computations.get());
+    }
+
+    private static void waitForFollowers(RequestCoalescer coalescer, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.waitingFollowers(KEY) < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.tool.TextResult;
+import com.katrikken.gdpai.tool.ToolExecutionContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestDeadlineTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private RequestDeadlines deadlines(long requestMillis, long phaseMillis) {
+        return new RequestDeadlines(requestMillis, phaseMillis, phaseMillis, phaseMillis, executor, meterRegistry);
+    }
+
+    @Test
+    void call_returnsTheResultWithTheBoundInterceptor() {
+        RequestDeadline deadline = deadlines(5000, 5000).start();
+        ToolExecutionContext.ToolCallInterceptor interceptor = (toolName, argument, call) -> new TextResult("kept");
+
+        ToolExecutionContext.ToolCallInterceptor bound = ToolExecutionContext.callWith(interceptor,
+                () -> deadline.call(WorkflowPhase.TOOLS, ToolExecutionContext::current));
+
+        assertEquals(interceptor, bound);
+    }
+
+    @Test
+    void call_overThePhaseTimeout_isInterruptedAndCounted() {
+        RequestDeadline deadline = deadlines(5000, 100).start();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        PhaseTimeoutException e = assertThrows(PhaseTimeoutException.class,
+                () -> deadline.call(WorkflowPhase.PLAN, () -> sleep(5000, interrupted, finished)));
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+        assertEquals(WorkflowPhase.PLAN, e.getPhase());
+        assertEquals(1, meterRegistry.get("agent.phase.timeouts").tag("phase", "plan").counter().count());
+        assertEquals(0, meterRegistry.get("agent.phase.timeouts").tag("phase", "analysis").counter().count());
+        await(finished);
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    void call_sharesTheRequestBudget() {
+        RequestDeadline deadline = deadlines(300, 250).start();
+
+        deadline.call(WorkflowPhase.PLAN, () -> sleep(200, new AtomicBoolean(), new CountDownLatch(1)));
+        long start = System.nanoTime();
+        assertThrows(PhaseTimeoutException.class,
+                () -> deadline.call(WorkflowPhase.TOOLS, () -> sleep(250, new AtomicBoolean(), new CountDownLatch(1))));
+
+        // the second call only gets what the first one left of the budget
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(200);
+        assertEquals(1, meterRegistry.get("agent.phase.timeouts").tag("phase", "tools").counter().count());
+    }
+
+    @Test
+    void cancel_interruptsTheRunningCallAndFailsLaterCalls() throws Exception {
+        RequestDeadline deadline = deadlines(5000, 5000).start();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(1);
+
+        try (ExecutorService client = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> request = client.submit(() -> deadline.call(WorkflowPhase.ANALYSIS,
+                    () -> sleep(5000, interrupted, finished)));
+            Thread.sleep(100);
+            deadline.cancel();
+
+            Exception e = assertThrows(Exception.class, () -> request.get(2, TimeUnit.SECONDS));
+            assertThat(e).hasCauseInstanceOf(CancellationException.class);
+        }
+        await(finished);
+        assertTrue(interrupted.get());
+        assertThrows(CancellationException.class, () -> deadline.call(WorkflowPhase.PLAN, () -> "not called"));
+        assertEquals(1, meterRegistry.get("agent.requests.cancelled").counter().count());
+    }
+
+    @Test
+    void unbounded_runsOnTheCallingThread() {
+        Thread caller = Thread.currentThread();
+
+        assertEquals(caller, RequestDeadline.unbounded().call(WorkflowPhase.PLAN, Thread::currentThread));
+    }
+
+    private static String sleep(long millis, AtomicBoolean interrupted, CountDownLatch finished) {
+        try {
+            Thread.sleep(millis);
+            return "done";
+        } catch (InterruptedException e) {
+            interrupted.set(true);
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.dto.SessionEvictedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Log4j2
+public class SessionManagerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InMemoryChatMemoryRepository repository = new InMemoryChatMemoryRepository();
+    private final ChatMemory chatMemory = MessageWindowChatMemory.builder().chatMemoryRepository(repository).build();
+    private final AtomicLong nanos = new AtomicLong();
+    private final List<Object> events = new ArrayList<>();
+
+    private SessionManager sessionManager(long idleTimeoutMillis, long maxSessions) {
+        return new SessionManager(chatMemory, idleTimeoutMillis, maxSessions, meterRegistry, events::add, nanos::get);
+    }
+
+    private void advanceMillis(long millis) {
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private double evictions(String reason) {
+        return meterRegistry.get("agent.sessions.evicted").tag("reason", reason).counter().count();
+    }
+
+    @Test
+    void turnCompleted_recordsMessagesAndBytes() {
+        SessionManager sessions = sessionManager(60000, 10);
+        chatMemory.add("s", List.of(new UserMessage("1234"), new AssistantMessage("12345678")));
+
+        sessions.turnCompleted("s");
+
+        SessionManager.Footprint footprint = sessions.getFootprint("s").orElseThrow();
+        assertEquals(2, footprint.messages());
+        assertEquals(2 * 160 + 2 * 12, footprint.bytes());
+        assertEquals(footprint.bytes(), meterRegistry.get("agent.sessions.bytes").gauge().value());
+    }
+
+    @Test
+    void idleSession_isEvictedWithItsChatMemory() {
+        SessionManager sessions = sessionManager(60000, 10);
+        chatMemory.add("idle", new UserMessage("question"));
+        sessions.turnCompleted("idle");
+        advanceMillis(30000);
+        chatMemory.add("active", new UserMessage("question"));
+        sessions.turnCompleted("active");
+
+        advanceMillis(40000);
+        sessions.sessionStarted("new");
+
+        assertFalse(sessions.getFootprint("idle").isPresent());
+        assertTrue(chatMemory.get("idle").isEmpty());
+        assertEquals(1, chatMemory.get("active").size());
+        assertEquals(1, evictions("idle"));
+        assertEquals(List.of(new SessionEvictedEvent("idle")), events);
+    }
+
+    @Test
+    void sessionsOverTheCap_areEvicted() {
+        SessionManager sessions = sessionManager(60000, 3);
+        for (int i = 0; i < 10; i++) {
+            chatMemory.add("s" + i, new UserMessage("question"));
+            sessions.turnCompleted("s" + i);
+            advanceMillis(1);
+        }
+
+        assertEquals(3, sessions.getSessionCount());
+        assertEquals(List.of("s7", "s8", "s9"), repository.findConversationIds().stream().sorted().toList());
+        assertEquals(3, repository.findConversationIds().size());
+        assertEquals(7, evictions("capacity"));
+    }
+
+    @Test
+    void isKnown_onlyForIssuedSessions() {
+        SessionManager sessions = sessionManager(60000, 10);
+        sessions.sessionStarted("started");
+        // a session that went on on another instance sharing the chat memory store
+        chatMemory.add("elsewhere", new UserMessage("question"));
+
+        assertTrue(sessions.isKnown("started"));
+        assertTrue(sessions.isKnown("elsewhere"));
+        assertFalse(sessions.isKnown("chosen-by-the-client"));
+    }
+
+    @Test
+    void sessionContinuedElsewhere_keepsItsChatMemory() {
+        SessionManager sessions = sessionManager(60000, 10);
+        chatMemory.add("s", new UserMessage("first question"));
+        sessions.turnCompleted("s");
+        // the next turn was served by another instance sharing the chat memory store
+        chatMemory.add("s", List.of(new AssistantMessage("answer"), new UserMessage("second question")));
+
+        advanceMillis(70000);
+        sessions.sessionStarted("new");
+
+        assertFalse(sessions.getFootprint("s").isPresent());
+        assertEquals(3, chatMemory.get("s").size());
+    }
+
+    /**
+     * Many short sessions against the stub LLM: the sessions and their chat memory stay bounded.
+     */
+    @Test
+    void soak_sessionsAndChatMemoryStayBounded() {
+        int maxSessions = 100;
+        SessionManager sessions = sessionManager(600000, maxSessions);
+        String longAnswer = "GDP grew by 2.5 percent. ".repeat(80);
+        StubChatModel llm = new StubChatModel(prompt -> longAnswer, 0, 0);
+        ChatClient chatClient = ChatClient.builder(llm)
+                .defaultSystem("You are an economic analyst")
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build())
+                .build();
+
+        long bytesOfFullSessions = 0;
+        for (int session = 0; session < 1000; session++) {
+            String sessionId = "session-" + session;
+            sessions.sessionStarted(sessionId);
+            for (int turn = 0; turn < 3; turn++) {
+                chatClient.prompt("What was the GDP of country " + session + " in " + (2000 + turn) + "?")
+                        .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, sessionId))
+                        .call()
+                        .content();
+                sessions.turnCompleted(sessionId);
+            }
+            advanceMillis(100);
+            if ((session + 1) % 250 == 0) {
+                // the stub keeps the prompts it saw
+                llm.reset();
+                log.info("{} sessions: {} tracked, {} conversations, {} messages, {} bytes of chat memory",
+                        session + 1, sessions.getSessionCount(), repository.findConversationIds().size(),
+                        sessions.getTotalMessages(), sessions.getTotalBytes());
+                assertEquals(maxSessions, sessions.getSessionCount());
+                assertEquals(maxSessions, repository.findConversationIds().size());
+                assertEquals(maxSessions * 6L, sessions.getTotalMessages());
+                if (bytesOfFullSessions == 0) {
+                    bytesOfFullSessions = sessions.getTotalBytes();
+                } else {
+                    // unbounded, every further 250 sessions would add 2.5 times as many bytes
+                    assertThat(sessions.getTotalBytes()).isBetween(bytesOfFullSessions - 1000, bytesOfFullSessions + 1000);
+                }
+            }
+        }
+        assertEquals(900, evictions("capacity"));
+    }
+}
@@ -0,0 +1,150 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.TestMetricsConfig;
+import com.katrikken.gdpai.config.ExecutorConfig;
+import com.katrikken.gdpai.entity.Country;
+import com.katrikken.gdpai.entity.CountryYearId;
+import com.katrikken.gdpai.entity.Gdp;
+import com.katrikken.gdpai.repository.CountryRepository;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
+import com.katrikken.gdpai.repository.GdpRepository;
+import com.katrikken.gdpai.tool.CountryToolService;
+import com.katrikken.gdpai.tool.DataTool;
+import com.katrikken.gdpai.tool.GdpPerCapitaToolService;
+import com.katrikken.gdpai.tool.GdpToolService;
+import com.katrikken.gdpai.tool.PopulationToolService;
+import com.katrikken.gdpai.tool.TextResult;
+import com.katrikken.gdpai.tool.ToolExecutionContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lookups run on other threads, so the test data is committed instead of being rolled back with the test transaction.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({SpeculativePrefetcher.class, CountryIndex.class, CountryToolService.class, GdpToolService.class, PopulationToolService.class,
+        GdpPerCapitaToolService.class, DataPointReadRepository.class, ExecutorConfig.class,
+        TestMetricsConfig.class})
+@TestPropertySource(properties = {"app.speculative.enabled=true", "app.speculative.max-lookups=3"})
+public class SpeculativePrefetcherTest {
+
+    @Autowired
+    private SpeculativePrefetcher prefetcher;
+    @Autowired
+    private CountryRepository countryRepository;
+    @Autowired
+    private GdpRepository gdpRepository;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setupData() {
+        gdpRepository.deleteAll();
+        countryRepository.deleteAll();
+        countryRepository.save(Country.builder().countryCode("CZE").name("Czechia").build());
+        countryRepository.save(Country.builder().countryCode("NER").name("Niger").build());
+        countryRepository.save(Country.builder().countryCode("NGA").name("Nigeria").build());
+        gdpRepository.save(new Gdp(new CountryYearId("CZE", 2023), new BigDecimal("1000")));
+        gdpRepository.save(new Gdp(new CountryYearId("CZE", 2024), new BigDecimal("1100")));
+    }
+
+    @AfterEach
+    void cleanup() {
+        gdpRepository.deleteAll();
+        countryRepository.deleteAll();
+    }
+
+    @Test
+    void guessLookups_countryAndMetricKeywords() {
+        List<SpeculativePrefetcher.Lookup> lookups = prefetcher.guessLookups("What was the GDP per capita of Nigeria in 2020?");
+
+        assertThat(lookups).extracting(l -> l.toolCall().toolName())
+                .containsExactly("countryNameToCountryCode", "gdpPerCapitaTrendForCountry");
+        assertThat(lookups.get(1).toolCall().argument()).isEqualTo(new DataTool.CountryCodeQuery("NGA"));
+    }
+
+    @Test
+    void guessLookups_noMetricKeyword_fetchesAllMetrics() {
+        List<SpeculativePrefetcher.Lookup> lookups = prefetcher.guessLookups("Summarize the economy of Czechia.");
+
+        assertThat(lookups).extracting(l -> l.toolCall().toolName())
+                .containsExactly("countryNameToCountryCode", "gdpTrendForCountry",
+                        "populationTrendForCountry", "gdpPerCapitaTrendForCountry");
+    }
+
+    @Test
+    void guessLookups_noCountry_returnsNothing() {
+        assertThat(prefetcher.guessLookups("What is the GDP of Atlantis?")).isEmpty();
+    }
+
+    @Test
+    void prefetch_servesMatchingToolCallsAndCountsWastedLookups() {
+        AtomicInteger directCalls = new AtomicInteger();
+        double used = lookupCount("used");
+        double wasted = lookupCount("wasted");
+        double skipped = lookupCount("skipped");
+        String trend;
+        try (SpeculativePrefetcher.Prefetch prefetch = prefetcher.start("Describe the economy of Czechia")) {
+            trend = ToolExecutionContext.callWith(prefetch, () -> ToolExecutionContext.invoke("gdpTrendForCountry",
+                    new DataTool.CountryCodeQuery("CZE"), q -> {
+                        directCalls.incrementAndGet();
+                        return "direct";
+                    }));
+        }
+
+        assertEquals("GDP development for the country CZE:\n2023: 1000.0000000000\n" +
+                "2024: 1100.0000000000, +100.0000000000, +10.00%", trend);
+        assertEquals(0, directCalls.get());
+        assertEquals(1.0, lookupCount("used") - used);
+        // countryNameToCountryCode and populationTrendForCountry were fetched but not used, the rest is over the cap
+        assertEquals(2.0, lookupCount("wasted") - wasted);
+        assertEquals(1.0, lookupCount("skipped") - skipped);
+    }
+
+    @Test
+    void close_interruptsRunningLookups() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        double wasted = lookupCount("wasted");
+        SpeculativePrefetcher.Lookup slowLookup = new SpeculativePrefetcher.Lookup(
+                new SpeculativePrefetcher.ToolCall("gdpTrendForCountry", new DataTool.CountryCodeQuery("CZE")), () -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return new TextResult("too late");
+        });
+
+        try (SpeculativePrefetcher.Prefetch ignored = prefetcher.prefetch(List.of(slowLookup))) {
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+        }
+
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertEquals(1.0, lookupCount("wasted") - wasted);
+    }
+
+    private double lookupCount(String outcome) {
+        return meterRegistry.get("agent.speculative.lookups").tag("outcome", outcome).counter().count();
+    }
+}
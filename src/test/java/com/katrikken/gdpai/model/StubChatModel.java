@@ -0,0 +1,145 @@
+package com.katrikken.gdpai.model;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Chat model stand-in for workflow tests and benchmarks.
+ * <p>
+ * Replies with a scripted response to the system message and the last user message of each prompt and simulates
+ * a latency that grows with the prompt size, roughly like a local model does. Tokens are estimated as 4 characters
+ * per token. The definitions of the tools offered in the prompt count as prompt tokens, like providers bill them.
+ * <p>
+ * Prompt caching is simulated the way providers do it: the longest prefix shared with an earlier prompt counts as
+ * cached, is reported as cached tokens in the OpenAI usage and does not add latency.
+ * Calls, prompt, cached and completion tokens are counted for comparisons between workflows.
+ */
+public class StubChatModel implements ChatModel {
+
+    private final Function<String, String> responder;
+    private final long baseLatencyMillis;
+    private final double latencyMillisPerPromptToken;
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+    private final AtomicLong cachedTokens = new AtomicLong();
+    private final List<String> seenPrompts = new CopyOnWriteArrayList<>();
+
+    public StubChatModel(Function<String, String> responder, long baseLatencyMillis, double latencyMillisPerPromptToken) {
+        this.responder = responder;
+        this.baseLatencyMillis = baseLatencyMillis;
+        this.latencyMillisPerPromptToken = latencyMillisPerPromptToken;
+    }
+
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        String reply = responder.apply(prompt.getSystemMessage().getText() + "\n" + prompt.getUserMessage().getText());
+        String text = serialize(prompt);
+        int inputTokens = estimateTokens(text);
+        int cached = Math.min(inputTokens, cachedPrefixLength(text) / 4);
+        int outputTokens = estimateTokens(reply);
+        seenPrompts.add(text);
+
+        calls.incrementAndGet();
+        promptTokens.addAndGet(inputTokens);
+        cachedTokens.addAndGet(cached);
+        completionTokens.addAndGet(outputTokens);
+        sleep(baseLatencyMillis + Math.round((inputTokens - cached) * latencyMillisPerPromptToken));
+
+        OpenAiApi.Usage nativeUsage = new OpenAiApi.Usage(outputTokens, inputTokens, inputTokens + outputTokens,
+                new OpenAiApi.Usage.PromptTokensDetails(null, cached), null);
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(reply))),
+                ChatResponseMetadata.builder()
+                        .usage(new DefaultUsage(inputTokens, outputTokens, inputTokens + outputTokens, nativeUsage))
+                        .build());
+    }
+
+    private static String serialize(Prompt prompt) {
+        StringBuilder text = new StringBuilder();
+        // tool definitions come first, providers cache them as part of the prompt prefix
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options) {
+            for (ToolCallback tool : options.getToolCallbacks()) {
+                ToolDefinition definition = tool.getToolDefinition();
+                text.append("TOOL: ").append(definition.name()).append(' ').append(definition.description())
+                        .append(' ').append(definition.inputSchema()).append('\n');
+            }
+        }
+        for (Message message : prompt.getInstructions()) {
+            text.append(message.getMessageType()).append(": ").append(message.getText()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private int cachedPrefixLength(String text) {
+        int longest = 0;
+        for (String seen : seenPrompts) {
+            int length = 0;
+            int max = Math.min(seen.length(), text.length());
+            while (length < max && seen.charAt(length) == text.charAt(length)) {
+                length++;
+            }
+            longest = Math.max(longest, length);
+        }
+        return longest;
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return ToolCallingChatOptions.builder().build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating LLM latency", e);
+        }
+    }
+
+    public int getCalls() {
+        return calls.get();
+    }
+
+    public long getPromptTokens() {
+        return promptTokens.get();
+    }
+
+    public long getCachedTokens() {
+        return cachedTokens.get();
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens.get();
+    }
+
+    public void reset() {
+        calls.set(0);
+        promptTokens.set(0);
+        completionTokens.set(0);
+        cachedTokens.set(0);
+        seenPrompts.clear();
+    }
+}
@@ -0,0 +1,82 @@
+package com.katrikken.gdpai.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void tryTake_emptyBucket_returnsTimeUntilRefilled() {
+        TokenBucket bucket = new TokenBucket(2, 60, 0);
+
+        assertEquals(0, bucket.tryTake(1, 0));
+        assertEquals(0, bucket.tryTake(1, 0));
+        assertEquals(SECOND, bucket.tryTake(1, 0));
+        assertEquals(SECOND / 2, bucket.tryTake(1, SECOND / 2));
+        assertEquals(0, bucket.tryTake(1, SECOND));
+    }
+
+    @Test
+    void tryTake_refillsUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 60, 0);
+        bucket.tryTake(2, 0);
+
+        assertEquals(2, bucket.available(TimeUnit.MINUTES.toNanos(1)));
+        assertTrue(bucket.isFull(TimeUnit.MINUTES.toNanos(1)));
+    }
+
+    @Test
+    void tryTake_overCapacity_grantedWhenFullAndLeavesDebt() {
+        TokenBucket bucket = new TokenBucket(100, 600, 0);
+
+        assertEquals(0, bucket.tryTake(150, 0));
+        assertEquals(-50, bucket.available(0));
+        // 10 tokens per second pay off the debt and refill 100 tokens
+        assertEquals(15 * SECOND, bucket.tryTake(100, 0));
+    }
+
+    @Test
+    void add_returnsTokensAndTakesNegativeAmounts() {
+        TokenBucket bucket = new TokenBucket(100, 0, 0);
+        bucket.tryTake(80, 0);
+
+        bucket.add(50, 0);
+        assertEquals(70, bucket.available(0));
+        bucket.add(-100, 0);
+        assertEquals(-30, bucket.available(0));
+        assertEquals(Long.MAX_VALUE, bucket.tryTake(1, SECOND));
+        bucket.add(500, 0);
+        assertTrue(bucket.isFull(0));
+    }
+
+    @Test
+    void tryTake_concurrent_grantsExactlyTheCapacity() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(10000, 0, 0);
+        AtomicInteger granted = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                executor.execute(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        if (bucket.tryTake(1, 0) == 0) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+
+        assertEquals(10000, granted.get());
+        assertFalse(bucket.tryTake(1, 0) == 0);
+    }
+}
@@ -0,0 +1,142 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.TestMetricsConfig;
+import com.katrikken.gdpai.entity.Country;
+import com.katrikken.gdpai.repository.AnalyticsRepository;
+import com.katrikken.gdpai.repository.CountryRepository;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
+import com.katrikken.gdpai.tool.AnalyticsToolService;
+import com.katrikken.gdpai.tool.CountryToolService;
+import com.katrikken.gdpai.tool.GdpPerCapitaToolService;
+import com.katrikken.gdpai.tool.GdpToolService;
+import com.katrikken.gdpai.tool.MathematicalTool;
+import com.katrikken.gdpai.tool.PopulationToolService;
+import com.katrikken.gdpai.tool.ToolRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs a fixed question set through the tools phase with all tools and with the selected tools against
+ * {@link StubChatModel} and reports the prompt tokens, the latency and how often the selection contains the tools
+ * that answer the question.
+ */
+@DataJpaTest
+@Import({ToolSelector.class, ToolRegistry.class, CountryIndex.class, CountryToolService.class, GdpToolService.class,
+        PopulationToolService.class, GdpPerCapitaToolService.class, AnalyticsToolService.class, MathematicalTool.class,
+        AnalyticsRepository.class, DataPointReadRepository.class, TestMetricsConfig.class})
+@TestPropertySource(properties = "app.tools.write-enabled=true")
+@Log4j2
+public class ToolSelectorTest {
+
+    /**
+     * Question, data request of the plan phase and the tools that answer it.
+     */
+    private static final List<Case> CASES = List.of(
+            new Case("What was the GDP of Czechia in 2020?", "Find GDP data on Czechia for 2020.",
+                    Set.of("countryNameToCountryCode", "gdpByCountryYear")),
+            new Case("How did the population of Austria develop since 2010?", "Find Population trend data on Austria from 2010.",
+                    Set.of("countryNameToCountryCode", "populationTrendForCountry")),
+            new Case("What was the GDP per capita of Germany in 2024?", "Find GDP per capita data on Germany for 2024.",
+                    Set.of("countryNameToCountryCode", "gdpPerCapitaByCountry")),
+            new Case("Which were the 5 largest economies in 2022?", "Find the top 5 countries by GDP in 2022.",
+                    Set.of("topCountriesByValue")),
+            new Case("Which economies grew the fastest in the 2010s?", "Find countries ranked by GDP compound annual growth from 2010 to 2020.",
+                    Set.of("topCountriesByCagr")),
+            new Case("What was the population of each region in 2023?", "Find Population totals by region for 2023.",
+                    Set.of("groupAggregates")),
+            new Case("How much larger was the economy of Germany than that of Austria in 2021?",
+                    "Find GDP data on Germany and Austria for 2021 and calculate the difference.",
+                    Set.of("countryNameToCountryCode", "gdpByCountryYear", "operateOnBigDecimals")),
+            new Case("What was the GDP of all countries in 2019?", "Find GDP data of all countries for 2019.",
+                    Set.of("gdpByYear")),
+            new Case("How has Czechia developed in the last 10 years?",
+                    "Find GDP, Population and GDP per capita trends data on Czechia for the last 10 years.",
+                    Set.of("countryNameToCountryCode", "gdpTrendForCountry", "populationTrendForCountry",
+                            "gdpPerCapitaTrendForCountry", "getCurrentYear")),
+            new Case("Tell me something interesting.", "Find any data that could be interesting.",
+                    Set.of("gdpByYear", "topCountriesByGrowth")));
+
+    @Autowired
+    private ToolSelector toolSelector;
+    @Autowired
+    private ToolRegistry toolRegistry;
+    @Autowired
+    private CountryRepository countryRepository;
+
+    @BeforeEach
+    void setUp() {
+        countryRepository.save(Country.builder().countryCode("CZE").name("Czechia").build());
+        countryRepository.save(Country.builder().countryCode("AUT").name("Austria").build());
+        countryRepository.save(Country.builder().countryCode("DEU").name("Germany").build());
+    }
+
+    @Test
+    void selectedTools_shrinkThePromptAndContainTheNeededTools() {
+        StubChatModel llm = new StubChatModel(prompt -> "data", 20, 0.05);
+        ChatClient chatClient = ChatClient.create(llm);
+
+        Stats all = run(chatClient, llm, c -> toolRegistry.callbacks());
+        Stats selected = run(chatClient, llm, c -> toolSelector.select(c.question() + "\n" + c.dataRequest()));
+        log.info("All tools: {}", all);
+        log.info("Selected tools: {}", selected);
+
+        assertEquals(CASES.size(), selected.hits(), "every selection contains the tools answering the question");
+        assertThat(selected.promptTokens()).isLessThan(all.promptTokens() / 2);
+        assertThat(selected.avgLatencyMillis()).isLessThan(all.avgLatencyMillis());
+    }
+
+    @Test
+    void writeTools_areOnlyOfferedWhenAsked() {
+        assertThat(toolSelector.selectNames("Find GDP data on Czechia for 2020.")).doesNotContain("insertGdp", "insertPopulation");
+        assertThat(toolSelector.selectNames("Insert the GDP of Czechia for 2025: 350000000000"))
+                .contains("insertGdp", "countryNameToCountryCode")
+                .doesNotContain("insertPopulation");
+    }
+
+    private Stats run(ChatClient chatClient, StubChatModel llm, ToolChoice choice) {
+        long promptTokens = 0;
+        long offered = 0;
+        int hits = 0;
+        long start = System.nanoTime();
+        for (Case c : CASES) {
+            // every prompt is cold, the tool definitions of earlier prompts are not cached
+            llm.reset();
+            List<ToolCallback> callbacks = choice.choose(c);
+            chatClient.prompt(c.dataRequest()).toolCallbacks(callbacks).call().content();
+            promptTokens += llm.getPromptTokens();
+            offered += callbacks.size();
+            Set<String> names = Set.copyOf(callbacks.stream().map(t -> t.getToolDefinition().name()).toList());
+            if (names.containsAll(c.expectedTools())) {
+                hits++;
+            } else {
+                log.info("Missing tools for '{}': offered {}", c.question(), names);
+            }
+        }
+        return new Stats(promptTokens, (double) offered / CASES.size(), hits,
+                (System.nanoTime() - start) / 1_000_000 / CASES.size());
+    }
+
+    @FunctionalInterface
+    private interface ToolChoice {
+        List<ToolCallback> choose(Case c);
+    }
+
+    private record Case(String question, String dataRequest, Set<String> expectedTools) {
+    }
+
+    private record Stats(long promptTokens, double avgTools, int hits, long avgLatencyMillis) {
+    }
+}
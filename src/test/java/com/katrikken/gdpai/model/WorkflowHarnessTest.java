@@ -0,0 +1,152 @@
+package com.katrikken.gdpai.model;
+
+import com.katrikken.gdpai.TestMetricsConfig;
+import com.katrikken.gdpai.config.ExecutorConfig;
+import com.katrikken.gdpai.dto.WorkflowType;
+import com.katrikken.gdpai.repository.AnalyticsRepository;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
+import com.katrikken.gdpai.tool.AnalyticsToolService;
+import com.katrikken.gdpai.tool.CountryToolService;
+import com.katrikken.gdpai.tool.GdpPerCapitaToolService;
+import com.katrikken.gdpai.tool.GdpToolService;
+import com.katrikken.gdpai.tool.MathematicalTool;
+import com.katrikken.gdpai.tool.PopulationToolService;
+import com.katrikken.gdpai.tool.ToolRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the same questions through every {@link AgentWorkflow} against {@link StubChatModel}
+ * and reports the number of LLM calls, tokens and latency of each workflow.
+ */
+@DataJpaTest
+@Import({ChainWorkflow.class, SingleCallWorkflow.class, PlanExecutor.class, PromptTemplates.class, DataReducer.class, SpeculativePrefetcher.class, CountryIndex.class,
+        CountryToolService.class, GdpToolService.class, PopulationToolService.class, GdpPerCapitaToolService.class,
+        AnalyticsToolService.class, AnalyticsRepository.class, MathematicalTool.class, ToolRegistry.class, ToolSelector.class,
+        DataWorkingSets.class, DataPointReadRepository.class, ExecutorConfig.class, TestMetricsConfig.class})
+@Log4j2
+public class WorkflowHarnessTest {
+
+    static final String ANSWER = "The GDP of Czechia grew by 10% between 2023 and 2024.";
+    static final String TOOL_DATA = "GDP development for the country CZE:\n2023: 1000\n2024: 1100, +100, +10.00%";
+
+    /**
+     * The last question gets data instead of an answer from the single call, which triggers the analysis call.
+     */
+    private static final List<String> QUESTIONS = List.of(
+            "What was the GDP of Czechia in 2024?",
+            "How did the GDP of Czechia change between 2023 and 2024?",
+            "Summarize the GDP development of Czechia.",
+            "Compare the GDP of Czechia in 2023 and 2024 and explain it in detail.");
+
+    @Autowired
+    private List<AgentWorkflow> workflows;
+    @Autowired
+    private DataWorkingSets workingSets;
+
+    static String respond(String prompt) {
+        if (prompt.contains("Data request:")) {
+            return TOOL_DATA;
+        }
+        if (prompt.contains("User's question:") && prompt.contains("ANSWER:")) {
+            return prompt.contains("explain it in detail") ? "DATA: " + TOOL_DATA : "ANSWER: " + ANSWER;
+        }
+        if (prompt.contains("User's question:")) {
+            return "Find GDP trend data on Czechia from 2023 to 2024.";
+        }
+        return ANSWER;
+    }
+
+    @Test
+    void compareWorkflows() {
+        StubChatModel chatModel = new StubChatModel(WorkflowHarnessTest::respond, 20, 0.05);
+        ChatMemory chatMemory = MessageWindowChatMemory.builder().build();
+        PhaseChatClients chatClients = PhaseChatClients.of(ChatClient.builder(chatModel)
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build(), new SystemMessageFirstAdvisor())
+                .build());
+
+        WorkflowStats chain = null;
+        WorkflowStats singleCall = null;
+        for (AgentWorkflow workflow : workflows) {
+            chatModel.reset();
+            chatMemory.clear(ChatMemory.DEFAULT_CONVERSATION_ID);
+            DataWorkingSet workingSet = workingSets.newWorkingSet();
+            long start = System.nanoTime();
+            for (String question : QUESTIONS) {
+                assertEquals(ANSWER, workflow.chain(question, chatClients, workingSet, RequestDeadline.unbounded()));
+            }
+            WorkflowStats stats = new WorkflowStats(chatModel.getCalls(), chatModel.getPromptTokens(),
+                    chatModel.getCachedTokens(), chatModel.getCompletionTokens(),
+                    (System.nanoTime() - start) / 1_000_000 / QUESTIONS.size());
+            log.info("{}: {}, cached ratio {}", workflow.type(), stats, String.format("%.2f", stats.cachedRatio()));
+            switch (workflow.type()) {
+                case CHAIN -> chain = stats;
+                case SINGLE_CALL -> singleCall = stats;
+            }
+        }
+
+        assertThat(chain).isNotNull();
+        assertThat(singleCall).isNotNull();
+        assertEquals(3 * QUESTIONS.size(), chain.calls());
+        assertEquals(QUESTIONS.size() + 1, singleCall.calls());
+        assertThat(singleCall.promptTokens()).isLessThan(chain.promptTokens());
+        assertThat(singleCall.avgLatencyMillis()).isLessThan(chain.avgLatencyMillis());
+    }
+
+    @Test
+    void analysisTimeout_returnsTheToolData() {
+        StubChatModel chatModel = new StubChatModel(prompt -> {
+            String response = respond(prompt);
+            if (ANSWER.equals(response)) {
+                sleep(2000);
+            }
+            return response;
+        }, 0, 0);
+        PhaseChatClients chatClients = PhaseChatClients.of(ChatClient.create(chatModel));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            RequestDeadlines deadlines = new RequestDeadlines(5000, 1000, 1000, 200, executor, meterRegistry);
+            ChainWorkflow chain = (ChainWorkflow) workflows.stream()
+                    .filter(workflow -> workflow.type() == WorkflowType.CHAIN).findFirst().orElseThrow();
+
+            long start = System.nanoTime();
+            String response = chain.chain(QUESTIONS.getFirst(), chatClients, workingSets.newWorkingSet(), deadlines.start());
+
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1500);
+            assertEquals(AgentWorkflow.degradedResponse(TOOL_DATA), response);
+            assertEquals(1, meterRegistry.get("agent.phase.timeouts").tag("phase", "analysis").counter().count());
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    record WorkflowStats(int calls, long promptTokens, long cachedTokens, long completionTokens, long avgLatencyMillis) {
+
+        double cachedRatio() {
+            return promptTokens == 0 ? 0 : (double) cachedTokens / promptTokens;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.katrikken.gdpai.repositrory;
+
+import com.katrikken.gdpai.dto.DataPoint;
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.dto.YearCountryCursor;
+import com.katrikken.gdpai.entity.Country;
+import com.katrikken.gdpai.entity.CountryYearId;
+import com.katrikken.gdpai.entity.Gdp;
+import com.katrikken.gdpai.entity.Population;
+import com.katrikken.gdpai.repository.CountryRepository;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
+import com.katrikken.gdpai.repository.GdpRepository;
+import com.katrikken.gdpai.repository.PopulationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@DataJpaTest
+@Import(DataPointReadRepository.class)
+public class DataPointReadRepositoryTest {
+
+    private static final List<String> COUNTRY_CODES = Arrays.asList("USA", "CAN", "MEX", "GBR", "FRA");
+    private static final List<Integer> YEARS = Arrays.asList(2020, 2021, 2022, 2023, 2024);
+
+    @Autowired
+    private DataPointReadRepository readRepository;
+    @Autowired
+    private CountryRepository countryRepository;
+    @Autowired
+    private GdpRepository gdpRepository;
+    @Autowired
+    private PopulationRepository populationRepository;
+
+    /**
+     * Inserts 5 countries * 5 years = 25 records into both GDP and Population tables.
+     * GDP is always 100 times the population, so GDP per capita is 100 for every record.
+     */
+    @BeforeEach
+    void setupData() {
+        gdpRepository.deleteAll();
+        populationRepository.deleteAll();
+        countryRepository.deleteAll();
+
+        long popCounter = 1000000L;
+        for (String code : COUNTRY_CODES) {
+            countryRepository.save(new Country(code, code + " Test Name", "Region A", "High income", null));
+            for (int year : YEARS) {
+                CountryYearId id = new CountryYearId(code, year);
+                populationRepository.save(new Population(id, popCounter));
+                gdpRepository.save(new Gdp(id, BigDecimal.valueOf(popCounter * 100)));
+                popCounter += 1000L;
+            }
+        }
+        gdpRepository.flush();
+        populationRepository.flush();
+    }
+
+    @Test
+    void testFindGdpPage_singleYear_shouldReturnAllCountriesSortedByCode() {
+        List<DataPoint> result = readRepository.findGdpPage(2022, 2022, null, 100);
+
+        assertThat(result).hasSize(5);
+        assertThat(result).extracting(DataPoint::countryCode).containsExactly("CAN", "FRA", "GBR", "MEX", "USA");
+        assertThat(result).allMatch(p -> p.year() == 2022);
+    }
+
+    @Test
+    void testFindGdpPage_shouldReturnRowsSortedByYearAndCode() {
+        List<DataPoint> result = readRepository.findGdpPage(2021, 2023, null, 100);
+
+        assertThat(result).hasSize(15);
+        assertThat(result.getFirst()).extracting(DataPoint::countryCode, DataPoint::year).containsExactly("CAN", 2021);
+        assertThat(result.getLast()).extracting(DataPoint::countryCode, DataPoint::year).containsExactly("USA", 2023);
+    }
+
+    @Test
+    void testFindPopulationPage_shouldReturnPopulationValues() {
+        List<DataPoint> result = readRepository.findPopulationPage(2020, 2020, null, 100);
+
+        assertThat(result).hasSize(5);
+        DataPoint usa = result.getLast();
+        assertThat(usa.countryCode()).isEqualTo("USA");
+        assertThat(usa.value()).isEqualByComparingTo(new BigDecimal("1000000"));
+    }
+
+    @Test
+    void testFindGdpPerCapitaPage_shouldReturnCalculatedValues() {
+        List<DataPoint> result = readRepository.findGdpPerCapitaPage(2024, 2024, null, 100);
+
+        assertThat(result).hasSize(5);
+        assertThat(result).allMatch(p -> p.value().compareTo(new BigDecimal("100")) == 0);
+    }
+
+    @Test
+    void testFindGdpPerCapitaPage_shouldKeepDigitsOfTheDivision() {
+        CountryYearId id = new CountryYearId("USA", 2025);
+        populationRepository.save(new Population(id, 3L));
+        gdpRepository.save(new Gdp(id, new BigDecimal("2000")));
+        gdpRepository.flush();
+        populationRepository.flush();
+
+        BigDecimal value = readRepository.findGdpPerCapitaPage(2025, 2025, null, 100).getFirst().value();
+        assertThat(value.scale()).isGreaterThan(10);
+        assertThat(value.setScale(10, RoundingMode.HALF_UP)).isEqualTo(new BigDecimal("666.6666666667"));
+    }
+
+    @Test
+    void testFindGdpPerCapitaPage_outsideDataset_shouldReturnEmptyList() {
+        assertThat(readRepository.findGdpPerCapitaPage(1960, 1970, null, 100)).isEmpty();
+    }
+
+    @Test
+    void testFindGdpPage_shouldContinueAfterCursor() {
+        List<DataPoint> first = readRepository.findGdpPage(2021, 2023, null, 4);
+        List<DataPoint> second = readRepository.findGdpPage(2021, 2023, YearCountryCursor.after(first.getLast()), 4);
+
+        assertThat(first).extracting(DataPoint::countryCode).containsExactly("CAN", "FRA", "GBR", "MEX");
+        assertThat(second).extracting(DataPoint::countryCode, DataPoint::year)
+                .containsExactly(tuple("USA", 2021), tuple("CAN", 2022), tuple("FRA", 2022), tuple("GBR", 2022));
+        assertThat(readRepository.findGdpPage(2021, 2023, new YearCountryCursor(2023, "MEX"), 4))
+                .extracting(DataPoint::countryCode).containsExactly("USA");
+    }
+
+    @Test
+    void testScanAll_shouldPassAllRowsInPageOrder() {
+        List<DataPoint> scanned = new ArrayList<>();
+        readRepository.scanAll(Metric.GDP, scanned::add);
+
+        assertThat(scanned).containsExactlyElementsOf(readRepository.findGdpPage(2020, 2024, null, 100));
+    }
+}
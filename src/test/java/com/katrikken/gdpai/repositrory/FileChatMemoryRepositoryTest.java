@@ -0,0 +1,114 @@
+package com.katrikken.gdpai.repositrory;
+
+import com.katrikken.gdpai.repository.FileChatMemoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileChatMemoryRepositoryTest {
+
+    // no background flush during the tests
+    private static final long NO_FLUSH = 3_600_000;
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<FileChatMemoryRepository> repositories = new ArrayList<>();
+
+    @AfterEach
+    void close() {
+        repositories.forEach(FileChatMemoryRepository::close);
+    }
+
+    private FileChatMemoryRepository repository() {
+        FileChatMemoryRepository repository = new FileChatMemoryRepository(directory, 100, NO_FLUSH, meterRegistry);
+        repositories.add(repository);
+        return repository;
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).counter().count();
+    }
+
+    @Test
+    void flush_writesMessagesReadByAnotherInstance() throws Exception {
+        FileChatMemoryRepository writer = repository();
+        writer.saveAll("conversation/1", List.of(new SystemMessage("You are an analyst"),
+                new UserMessage("What was the GDP of Czechia in 2020?"), new AssistantMessage("About 245 billion USD, ěščř")));
+        writer.flush();
+
+        List<Message> messages = repository().findByConversationId("conversation/1");
+
+        assertEquals(List.of(MessageType.SYSTEM, MessageType.USER, MessageType.ASSISTANT),
+                messages.stream().map(Message::getMessageType).toList());
+        assertEquals("About 245 billion USD, ěščř", messages.get(2).getText());
+        assertEquals(List.of("conversation/1"), repository().findConversationIds());
+    }
+
+    @Test
+    void saveAll_isBatchedUntilFlush() throws Exception {
+        FileChatMemoryRepository repository = repository();
+        for (int i = 1; i <= 3; i++) {
+            repository.saveAll("c", List.of(new UserMessage("question " + i)));
+        }
+
+        assertEquals(0, count("agent.chat.memory.file.writes"));
+        assertEquals("question 3", repository.findByConversationId("c").getFirst().getText());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+
+        repository.flush();
+
+        assertEquals(1, count("agent.chat.memory.file.writes"));
+        assertEquals("question 3", repository().findByConversationId("c").getFirst().getText());
+    }
+
+    @Test
+    void findByConversationId_usesNearCacheUntilAnotherInstanceWrites() throws Exception {
+        FileChatMemoryRepository first = repository();
+        FileChatMemoryRepository second = repository();
+        first.saveAll("c", List.of(new UserMessage("first")));
+        first.flush();
+
+        first.findByConversationId("c");
+        first.findByConversationId("c");
+        assertEquals(0, count("agent.chat.memory.file.reads"));
+        assertEquals(2, count("agent.chat.memory.near.cache.hits"));
+
+        second.saveAll("c", List.of(new UserMessage("first"), new AssistantMessage("second")));
+        second.flush();
+
+        assertEquals(2, first.findByConversationId("c").size());
+        assertEquals(1, count("agent.chat.memory.file.reads"));
+    }
+
+    @Test
+    void deleteByConversationId_removesPendingAndWrittenMessages() throws Exception {
+        FileChatMemoryRepository repository = repository();
+        repository.saveAll("c", List.of(new UserMessage("question")));
+        repository.flush();
+        repository.saveAll("c", List.of(new UserMessage("question"), new AssistantMessage("answer")));
+
+        repository.deleteByConversationId("c");
+
+        assertTrue(repository.findByConversationId("c").isEmpty());
+        assertTrue(repository().findConversationIds().isEmpty());
+    }
+}
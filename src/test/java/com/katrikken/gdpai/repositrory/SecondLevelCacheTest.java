@@ -0,0 +1,96 @@
+package com.katrikken.gdpai.repositrory;
+
+import com.katrikken.gdpai.entity.CountryYearId;
+import com.katrikken.gdpai.entity.Gdp;
+import com.katrikken.gdpai.entity.GdpPerCapita;
+import com.katrikken.gdpai.entity.Population;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
+import com.katrikken.gdpai.repository.GdpPerCapitaRepository;
+import com.katrikken.gdpai.repository.GdpRepository;
+import com.katrikken.gdpai.repository.PopulationRepository;
+import com.katrikken.gdpai.tool.GdpToolService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs without a test transaction: every repository call commits on its own, as in the application,
+ * so the second-level and query cache are used across calls.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({GdpToolService.class, DataPointReadRepository.class})
+public class SecondLevelCacheTest {
+
+    private static final CountryYearId CZE_2021 = new CountryYearId("CZE", 2021);
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private GdpRepository gdpRepository;
+    @Autowired
+    private PopulationRepository populationRepository;
+    @Autowired
+    private GdpPerCapitaRepository gdpPerCapitaRepository;
+    @Autowired
+    private GdpToolService service;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setupData() {
+        gdpRepository.saveAll(List.of(
+                new Gdp(new CountryYearId("CZE", 2020), new BigDecimal("1000")),
+                new Gdp(CZE_2021, new BigDecimal("1100"))));
+        populationRepository.saveAll(List.of(
+                new Population(new CountryYearId("CZE", 2020), 10L),
+                new Population(CZE_2021, 10L)));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void cleanup() {
+        gdpRepository.deleteAllInBatch();
+        populationRepository.deleteAllInBatch();
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    void perCountryQuery_repeated_isServedFromCache() {
+        List<GdpPerCapita> first = gdpPerCapitaRepository.findByIdCountryCodeOrderByIdDataYear("CZE");
+        long statements = statistics.getPrepareStatementCount();
+        List<GdpPerCapita> second = gdpPerCapitaRepository.findByIdCountryCodeOrderByIdDataYear("CZE");
+
+        assertThat(second).hasSize(2).isEqualTo(first);
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+    }
+
+    @Test
+    void insertGdpTool_evictsCachedGdpPerCapita() {
+        assertThat(gdpPerCapitaRepository.findById(CZE_2021)).get()
+                .extracting(GdpPerCapita::getGdpPerCapita).satisfies(v -> assertThat(v).isEqualByComparingTo("110"));
+        gdpPerCapitaRepository.findByIdCountryCodeOrderByIdDataYear("CZE");
+
+        service.insertGdpTool(new Gdp(CZE_2021, new BigDecimal("2200")));
+
+        assertThat(gdpPerCapitaRepository.findById(CZE_2021)).get()
+                .extracting(GdpPerCapita::getGdpPerCapita).satisfies(v -> assertThat(v).isEqualByComparingTo("220"));
+        assertThat(gdpPerCapitaRepository.findByIdCountryCodeOrderByIdDataYear("CZE").getLast().getGdpPerCapita())
+                .isEqualByComparingTo("220");
+    }
+}
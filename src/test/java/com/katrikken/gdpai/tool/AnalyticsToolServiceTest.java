@@ -0,0 +1,43 @@
+package com.katrikken.gdpai.tool;
+
+import com.katrikken.gdpai.dto.GroupType;
+import com.katrikken.gdpai.dto.Metric;
+import com.katrikken.gdpai.repository.AnalyticsRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs without a test transaction, the analytics tables count as built only once a build has committed.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({AnalyticsToolService.class, AnalyticsRepository.class})
+public class AnalyticsToolServiceTest {
+
+    @Autowired
+    private AnalyticsToolService service;
+    @Autowired
+    private AnalyticsRepository repository;
+
+    @Test
+    void emptyTables_areReportedAsBuildingUntilTheFirstBuildCommits() {
+        AnalyticsToolService.RankingQuery query = new AnalyticsToolService.RankingQuery(Metric.GDP, 2024, null, null);
+        AnalyticsToolService.GroupQuery groupQuery = new AnalyticsToolService.GroupQuery(Metric.GDP, GroupType.REGION, 2024);
+
+        assertThat(service.topByValueTool(query)).startsWith("The analytics tables are still being built");
+        assertThat(service.groupAggregatesTool(groupQuery)).startsWith("The analytics tables are still being built");
+
+        repository.replaceAll(List.of(), List.of(), List.of());
+
+        assertThat(service.topByValueTool(query)).isEqualTo("No GDP ranking available for year 2024.");
+        assertThat(service.groupAggregatesTool(groupQuery)).isEqualTo("No GDP data by region available for year 2024.");
+    }
+}
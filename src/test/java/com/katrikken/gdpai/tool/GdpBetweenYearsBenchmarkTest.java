@@ -0,0 +1,155 @@
+package com.katrikken.gdpai.tool;
+
+import com.katrikken.gdpai.entity.CountryYearId;
+import com.katrikken.gdpai.entity.Gdp;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
+import com.katrikken.gdpai.repository.GdpRepository;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the managed-entity path with the read-only JDBC path of gdpBetweenYearTool
+ * for the full 1960 - 2024 range on a dataset of the same size as the production one
+ * and measures the paged tool calls.
+ * The entity path is measured as it ran before the year indexes: its query is forced onto the primary key,
+ * as dropping the index would commit the test transaction.
+ * Excluded from mvn test, run it with mvn test -Dgroups=benchmark -DexcludedGroups=none.
+ */
+@DataJpaTest
+@Import({GdpToolService.class, DataPointReadRepository.class})
+@Tag("benchmark")
+@Log4j2
+public class GdpBetweenYearsBenchmarkTest {
+
+    private static final int COUNTRIES = 265;
+    private static final int START_YEAR = 1960;
+    private static final int END_YEAR = 2024;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private GdpRepository gdpRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private GdpToolService service;
+    @Autowired
+    private DataPointReadRepository readRepository;
+
+    @BeforeEach
+    void setupData() {
+        jdbcTemplate.update("DELETE FROM GDP");
+        jdbcTemplate.update("DELETE FROM POPULATION");
+        jdbcTemplate.update("DELETE FROM COUNTRY");
+
+        List<Object[]> countries = new ArrayList<>();
+        List<Object[]> gdp = new ArrayList<>();
+        for (int i = 0; i < COUNTRIES; i++) {
+            String code = "" + (char) ('A' + i / 26 / 26 % 26) + (char) ('A' + i / 26 % 26) + (char) ('A' + i % 26);
+            countries.add(new Object[]{code, "Country " + code});
+            for (int year = START_YEAR; year <= END_YEAR; year++) {
+                gdp.add(new Object[]{code, year, new BigDecimal("123456789.123456").multiply(BigDecimal.valueOf(year - 1950 + i))});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO COUNTRY (COUNTRY_CODE, NAME) VALUES (?, ?)", countries);
+        jdbcTemplate.batchUpdate("INSERT INTO GDP (COUNTRY_CODE, DATA_YEAR, GDP) VALUES (?, ?, ?)", gdp);
+    }
+
+    @Test
+    void gdpBetweenYearTool_fullRange_beforeAndAfter() {
+        long before = measure("entity path without the year index", () -> formatEntities(
+                "DATA_YEAR BETWEEN " + START_YEAR + " AND " + END_YEAR));
+        long entityWithIndex = measure("entity path", () -> {
+            entityManager.clear();
+            return gdpRepository.findByIdDataYearBetweenOrderByIdCountryCode(START_YEAR, END_YEAR).stream()
+                    .map(GdpBetweenYearsBenchmarkTest::formatEntity)
+                    .collect(Collectors.joining("\n"));
+        });
+        long after = measure("read-only JDBC path", () -> SeriesResult.records(GdpToolService.METRIC,
+                readRepository.findGdpPage(START_YEAR, END_YEAR, null, Integer.MAX_VALUE)).render(ResultFormat.TEXT));
+
+        log.info("gdpBetweenYearTool {}-{}: entity path without the year index {} us/call, with it {} us/call, "
+                        + "read-only JDBC path {} us/call", START_YEAR, END_YEAR, before / 1000, entityWithIndex / 1000,
+                after / 1000);
+    }
+
+    @Test
+    void gdpByYearTool_beforeAndAfter() {
+        long before = measure("entity path without the year index", () -> formatEntities("DATA_YEAR = " + END_YEAR));
+        long after = measure("read-only JDBC path", () -> SeriesResult.records(GdpToolService.METRIC,
+                readRepository.findGdpPage(END_YEAR, END_YEAR, null, Integer.MAX_VALUE)).render(ResultFormat.TEXT));
+
+        log.info("gdpByYearTool {}: entity path without the year index {} us/call, read-only JDBC path {} us/call",
+                END_YEAR, before / 1000, after / 1000);
+    }
+
+    /**
+     * The entity query as it ran before the year index: on the primary key, whose first column is the country code.
+     */
+    private String formatEntities(String condition) {
+        String primaryKey = jdbcTemplate.queryForObject("SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES "
+                + "WHERE TABLE_NAME = 'GDP' AND INDEX_TYPE_NAME = 'PRIMARY KEY'", String.class);
+        entityManager.clear();
+        @SuppressWarnings("unchecked")
+        List<Gdp> rows = entityManager.getEntityManager().createNativeQuery("SELECT * FROM GDP USE INDEX (\""
+                + primaryKey + "\") WHERE " + condition + " ORDER BY COUNTRY_CODE", Gdp.class).getResultList();
+        return rows.stream().map(GdpBetweenYearsBenchmarkTest::formatEntity).collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * The tool returns one page of at most app.tools.max-rows rows. With keyset pagination the last page
+     * costs about the same as the first one.
+     */
+    @Test
+    void gdpBetweenYearTool_fullRange_isPaged() {
+        DataTool.YearRangeQuery query = new DataTool.YearRangeQuery(START_YEAR, END_YEAR);
+        DataTool.YearRangeQuery lastPage = new DataTool.YearRangeQuery(START_YEAR, END_YEAR, "2024:AAA", null);
+
+        long first = measure("first page", () -> service.gdpBetweenYearTool(query));
+        long last = measure("last page", () -> service.gdpBetweenYearTool(lastPage));
+        log.info("gdpBetweenYearTool {}-{} paged: first page {} us/call, last page {} us/call",
+                START_YEAR, END_YEAR, first / 1000, last / 1000);
+
+        SeriesResult page = service.gdpBetweenYears(query);
+        assertThat(page.getPoints()).hasSize(500);
+        assertThat(page.getNextCursor()).isEqualTo("1961:AJA");
+        assertThat(service.gdpBetweenYears(lastPage).getPoints()).hasSize(COUNTRIES - 1);
+    }
+
+    private long measure(String name, Supplier<String> call) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            call.get();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            assertThat(call.get()).isNotEmpty();
+        }
+        long perCall = (System.nanoTime() - start) / MEASURED_ROUNDS;
+        log.info("{}: {} us/call", name, perCall / 1000);
+        return perCall;
+    }
+
+    private static String formatEntity(Gdp g) {
+        CountryYearId id = g.getId();
+        String value = Optional.ofNullable(g.getGdp()).map(BigDecimal::toString).orElse("null");
+        return String.format("%s, %d: %s", id.getCountryCode(), id.getDataYear(), value);
+    }
+}
@@ -4,6 +4,7 @@ import com.katrikken.gdpai.entity.Country;
 import com.katrikken.gdpai.entity.CountryYearId;
 import com.katrikken.gdpai.entity.Gdp;
 import com.katrikken.gdpai.repository.CountryRepository;
+import com.katrikken.gdpai.repository.DataPointReadRepository;
 import com.katrikken.gdpai.repository.GdpRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -18,7 +19,7 @@ import java.util.List;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @DataJpaTest
-@Import(GdpToolService.class)
+@Import({GdpToolService.class, DataPointReadRepository.class})
 public class GdpToolServiceTest {
     private static final List<String> COUNTRY_CODES = Arrays.asList("USA", "CAN", "MEX", "GBR", "FRA");
     private static final List<Integer> YEARS = Arrays.asList(2020, 2021, 2022, 2023, 2024);
@@ -79,4 +80,22 @@ public class GdpToolServiceTest {
 
         assertEquals(expected, actual);
     }
+
+    @Test
+    void gdpByYearTool_overLimit_returnsPagesWithCursor() {
+        for (String code : COUNTRY_CODES) {
+            if (!countryRepository.existsById(code)) {
+                countryRepository.save(new Country(code, code + " Test Name", "Region A", "High income", null));
+            }
+            gdpRepository.save(new Gdp(new CountryYearId(code, 2024), new BigDecimal("100")));
+        }
+        gdpRepository.flush();
+
+        String firstPage = service.gdpByYearTool(new DataTool.YearQuery(2024, null, 3));
+        String secondPage = service.gdpByYearTool(new DataTool.YearQuery(2024, "2024:GBR", 3));
+
+        assertEquals("CAN, 2024: 100.0000000000\nFRA, 2024: 100.0000000000\nGBR, 2024: 100.0000000000\n"
+                + "Row limit reached, more rows are available with cursor 2024:GBR", firstPage);
+        assertEquals("MEX, 2024: 100.0000000000\nUSA, 2024: 100.0000000000", secondPage);
+    }
 }
@@ -0,0 +1,42 @@
+package com.katrikken.gdpai.tool;
+
+import com.katrikken.gdpai.dto.DataPoint;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SeriesResultTest {
+
+    private static final SeriesResult RECORDS = SeriesResult.records("GDP", List.of(
+            new DataPoint("CZE", 2023, new BigDecimal("1000")),
+            new DataPoint("USA", 2023, new BigDecimal("5000")),
+            new DataPoint("CZE", 2024, new BigDecimal("1100")),
+            new DataPoint("USA", 2024, null)));
+
+    @Test
+    void render_text_matchesToolOutput() {
+        assertEquals("CZE, 2023: 1000\nUSA, 2023: 5000\nCZE, 2024: 1100\nUSA, 2024: null", RECORDS.render(ResultFormat.TEXT));
+    }
+
+    @Test
+    void render_table_hasRowPerYearAndColumnPerCountry() {
+        assertEquals("GDP\nyear|CZE|USA\n2023|1000|5000\n2024|1100|null", RECORDS.render(ResultFormat.TABLE));
+    }
+
+    @Test
+    void render_json() {
+        SeriesResult trend = SeriesResult.trend("Population", "CZE", List.of(new DataPoint("CZE", 2024, new BigDecimal("10"))));
+
+        assertEquals("{\"metric\":\"Population\",\"countryCode\":\"CZE\","
+                + "\"points\":[{\"countryCode\":\"CZE\",\"year\":2024,\"value\":10}]}", trend.render(ResultFormat.JSON));
+    }
+
+    @Test
+    void render_isCachedPerFormat() {
+        assertSame(RECORDS.render(ResultFormat.TABLE), RECORDS.render(ResultFormat.TABLE));
+    }
+}
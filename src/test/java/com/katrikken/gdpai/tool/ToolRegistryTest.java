@@ -0,0 +1,84 @@
+package com.katrikken.gdpai.tool;
+
+import com.katrikken.gdpai.dto.DataPoint;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.annotation.Tool;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ToolRegistryTest {
+
+    private final ToolRegistry registry = new ToolRegistry(List.of(new SampleTools(), new MathematicalTool()));
+
+    @Test
+    void annotatedMethods_areRegisteredWithTheirSchema() {
+        assertEquals(Set.of("gdpOfCountry", "countryCode", "getCurrentYear", "operateOnBigDecimals"), registry.getToolNames());
+
+        ToolCallback tool = registry.callbacks(List.of("gdpOfCountry")).getFirst();
+        assertEquals("GDP of a country", tool.getToolDefinition().description());
+        assertThat(tool.getToolDefinition().inputSchema()).contains("\"countryCode\"");
+    }
+
+    @Test
+    void call_parsesTheInputAndRendersTheResult() {
+        assertEquals("CZE, 2024: 1100", call("gdpOfCountry", "{\"countryCode\":\"CZE\"}"));
+        assertEquals("CZE", call("countryCode", "{\"countryName\":\"Czechia\"}"));
+        assertEquals("3", call("operateOnBigDecimals", "{\"first\":1,\"second\":2,\"operation\":\"+\"}"));
+        assertThat(call("getCurrentYear", "{}")).matches("\\d{4}");
+    }
+
+    @Test
+    void call_withInvalidInput_returnsAnError() {
+        assertThat(call("gdpOfCountry", "{\"countryCode\":")).startsWith("Error: invalid input for tool gdpOfCountry");
+    }
+
+    @Test
+    void call_passesThroughTheBoundInterceptor() {
+        List<Object> arguments = new ArrayList<>();
+        String result = ToolExecutionContext.callWith((toolName, argument, call) -> {
+            arguments.add(argument);
+            return new TextResult(toolName + " intercepted");
+        }, () -> call("gdpOfCountry", "{\"countryCode\":\"CZE\"}"));
+
+        assertEquals("gdpOfCountry intercepted", result);
+        assertEquals(List.of(new DataTool.CountryCodeQuery("CZE")), arguments);
+    }
+
+    @Test
+    void callbacks_selectsASubset() {
+        List<ToolCallback> subset = registry.callbacks(Set.of("gdpOfCountry", "countryCode"));
+
+        assertEquals(List.of("countryCode", "gdpOfCountry"), subset.stream().map(t -> t.getToolDefinition().name()).toList());
+        assertEquals(4, registry.callbacks().size());
+        assertThrows(IllegalArgumentException.class, () -> registry.callbacks(List.of("insertGdp")));
+    }
+
+    private String call(String toolName, String input) {
+        return registry.callbacks(List.of(toolName)).getFirst().call(input);
+    }
+
+    public static class SampleTools extends DataTool {
+
+        @Tool(name = "gdpOfCountry", description = "GDP of a country")
+        public SeriesResult gdp(CountryCodeQuery query) {
+            return SeriesResult.records("GDP", List.of(new DataPoint(query.countryCode(), 2024, new BigDecimal("1100"))));
+        }
+
+        @Tool(name = "countryCode", description = "Country code of a country name")
+        public String countryCode(CountryQuery query) {
+            return "CZE";
+        }
+
+        public String notATool(CountryQuery query) {
+            return "";
+        }
+    }
+}